@@ -0,0 +1,43 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A search kernel built on the incubating Vector API. One probe is broadcast and compared against
+ * a full vector of keys at a time (8 lanes with AVX2, 16 with AVX-512), and the lanes that pass
+ * are counted from the comparison mask. It lives outside src so that the rest of the tree
+ * compiles without the incubator module; compile it against the other classes with
+ * {@code javac --add-modules jdk.incubator.vector -cp out -d out src-vector/*.java} and run with
+ * the same option. {@link SearchKernels} loads it by name and falls back to the scalar kernel when
+ * the class or the module is not available.
+ */
+public class VectorSearchKernel implements IntSearchKernel {
+
+  private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+  @Override
+  public int countLess(int[] keys, int size, int key) {
+    return count(keys, size, key, VectorOperators.LT);
+  }
+
+  @Override
+  public int countLessOrEqual(int[] keys, int size, int key) {
+    return count(keys, size, key, VectorOperators.LE);
+  }
+
+  private static int count(int[] keys, int size, int key,
+      VectorOperators.Comparison comparison) {
+    IntVector probe = IntVector.broadcast(SPECIES, key);
+    int count = 0;
+    int i = 0;
+    for (int bound = SPECIES.loopBound(size); i < bound; i += SPECIES.length()) {
+      count += IntVector.fromArray(SPECIES, keys, i).compare(comparison, probe).trueCount();
+    }
+    // masked loads are not intrinsified on every JDK, so the partial last vector is scalar
+    for (; i < size; i++) {
+      int difference = Integer.compare(keys[i], key);
+      count += (comparison == VectorOperators.LT ? difference < 0 : difference <= 0) ? 1 : 0;
+    }
+    return count;
+  }
+}
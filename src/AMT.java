@@ -1,106 +1,358 @@
-public class AMT {
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+public class AMT implements ParityPartitionedTree {
 
   // root of the AMT
   protected AMTNode root;
 
+  // whether equal values share one counted slot instead of each taking a slot of their own
+  protected final boolean multiset;
+
+  // number of values inserted, counting every duplicate
+  protected int size;
+
+  // number of inserts, so that cursors can tell when their remembered paths are stale
+  protected int modCount;
+
+  // operation counters, or null when metrics are disabled
+  protected AMTMetrics metrics;
+
+  // per-partition filters that reject most misses before the tree is searched, or null
+  protected BlockedBloomFilter evenFilter;
+  protected BlockedBloomFilter oddFilter;
+
+  // recent lookup results for hot keys, or null
+  protected HotKeyCache hotKeys;
+
+  // total number of rotations performed, used to report rotations per insert to JFR
+  protected int rotationCount;
+
+  // tracks rotation bursts for RotationStormEvent
+  private final TreeEvents.RotationWindow rotationWindow =
+      new TreeEvents.RotationWindow(getClass().getSimpleName());
+
+  /**
+   * Creates an empty AMT that stores every duplicate value in a slot of its own.
+   */
+  public AMT() {
+    this(false);
+  }
+
+  /**
+   * Creates an empty AMT.
+   *
+   * @param multiset true to store one counted slot per distinct value, false to store every
+   *                 duplicate in a slot of its own
+   */
+  public AMT(boolean multiset) {
+    this.multiset = multiset;
+  }
+
+  /**
+   * Puts a blocked Bloom filter in front of each partition, so that most lookups of absent values
+   * return without touching the tree. The filters are filled with the values already in the tree
+   * and kept up to date by insert.
+   *
+   * @param expectedPerPartition the number of distinct values each filter is sized for
+   * @param falsePositiveRate    the target rate at which absent values still reach the tree
+   */
+  public void enableBloomFilter(int expectedPerPartition, double falsePositiveRate) {
+    this.evenFilter =
+        BlockedBloomFilter.forFalsePositiveRate(expectedPerPartition, falsePositiveRate);
+    this.oddFilter =
+        BlockedBloomFilter.forFalsePositiveRate(expectedPerPartition, falsePositiveRate);
+    rebuildBloomFilter();
+  }
+
+  /**
+   * Puts a blocked Bloom filter of at most a fixed size in front of each partition, for when
+   * memory rather than the false-positive rate is the constraint. The filters use the number of
+   * hash functions that gives the lowest rate for their size, and are filled and kept up to date
+   * like those of {@link #enableBloomFilter(int, double)}.
+   *
+   * @param expectedPerPartition the number of distinct values each filter is sized for
+   * @param bytesPerPartition    the memory budget of each filter, at least one 64-byte block
+   */
+  public void enableBloomFilter(int expectedPerPartition, long bytesPerPartition) {
+    this.evenFilter = BlockedBloomFilter.forMemoryBudget(expectedPerPartition, bytesPerPartition);
+    this.oddFilter = BlockedBloomFilter.forMemoryBudget(expectedPerPartition, bytesPerPartition);
+    rebuildBloomFilter();
+  }
+
+  /**
+   * Refills the Bloom filters from the values currently in the tree. Filters cannot forget a
+   * value, so this must be called after values are removed for the filters to reject them again.
+   */
+  public void rebuildBloomFilter() {
+    if (this.evenFilter == null) {
+      return;
+    }
+    this.evenFilter.clear();
+    this.oddFilter.clear();
+    for (PrimitiveIterator.OfInt values = iterator(true); values.hasNext(); ) {
+      this.evenFilter.put(values.nextInt());
+    }
+    for (PrimitiveIterator.OfInt values = iterator(false); values.hasNext(); ) {
+      this.oddFilter.put(values.nextInt());
+    }
+  }
+
+  /**
+   * Puts a cache of recent lookup results in front of the tree, so that repeated lookups of hot
+   * keys skip the descent. Inserts invalidate the entry of the inserted value. Lookups rejected by
+   * a Bloom filter never reach the cache.
+   *
+   * @param maxEntries the most keys the cache holds
+   * @return the new cache, whose counters report its hit rate
+   */
+  public HotKeyCache enableHotKeyCache(int maxEntries) {
+    this.hotKeys = new HotKeyCache(maxEntries);
+    return this.hotKeys;
+  }
+
+  /**
+   * @return the hot-key cache of this tree, or null if it was never enabled
+   */
+  public HotKeyCache getHotKeyCache() {
+    return this.hotKeys;
+  }
+
+  /**
+   * Turns on operation counters for this tree. Until this is called no counting is done, so trees
+   * that are never monitored pay only a null check per operation.
+   *
+   * @return the metrics of this tree
+   */
+  public AMTMetrics enableMetrics() {
+    if (this.metrics == null) {
+      this.metrics = new AMTMetrics(this);
+    }
+    return this.metrics;
+  }
+
+  /**
+   * @return the metrics of this tree, or null if they were never enabled
+   */
+  public AMTMetrics getMetrics() {
+    return this.metrics;
+  }
+
+  /**
+   * Captures the current counters and measures the shape of the tree.
+   *
+   * @return a snapshot of the metrics of this tree
+   * @throws IllegalStateException if metrics were never enabled
+   */
+  public AMTMetrics.Snapshot metricsSnapshot() {
+    if (this.metrics == null) {
+      throw new IllegalStateException("Metrics are not enabled for this tree");
+    }
+    return this.metrics.capture(this.root);
+  }
+
   public void insert(int value) {
     // Check if value is less than 1
     if (value < 1) {
       throw new IllegalArgumentException("Value must be greater than or equal to 1");
     }
 
-    if (value % 2 == 0) {
-      // even
-      AMTNode toAdd = new AMTNode(value, true);
+    TreeInsertEvent event = new TreeInsertEvent();
+    event.begin();
+    int rotationsBefore = this.rotationCount;
+    this.modCount++;
+
+    if (evenFilter != null) {
+      (value % 2 == 0 ? evenFilter : oddFilter).put(value);
+    }
+    if (hotKeys != null) {
+      hotKeys.invalidate(value);
+    }
 
+    if (metrics != null) {
+      metrics.inserts.increment();
       if (this.root == null) {
-        toAdd.isRed = false;
-        this.root = toAdd;
-      } else {
-        insertHelperEven(value, this.root);  // Changed to pass value instead of node
-        ensureRedProperty(toAdd);
-        (this.root).isRed = false;
+        metrics.newNodeInserts.increment();
       }
+    }
+
+    boolean isEven = value % 2 == 0;
+    if (this.root == null) {
+      this.root = createNode(value, isEven);
+      this.root.isRed = false;
     } else {
-      // odd
-      AMTNode toAdd = new AMTNode(value, false);
-      if (this.root == null) {
-        toAdd.isRed = false;
-        this.root = toAdd;
-      } else {
-        insertHelperOdd(value, this.root);    // Changed to pass value instead of node
-        ensureRedProperty(toAdd);
-        (this.root).isRed = false;
+      // the helpers return the new red leaf they link, or null when the value filled an empty
+      // slot or a counted slot of an existing node, which leaves the colors unchanged
+      AMTNode linked = isEven ? insertHelperEven(value, this.root)
+          : insertHelperOdd(value, this.root);
+      if (linked != null) {
+        ensureRedProperty(linked);
       }
+      this.root.isRed = false;
+    }
+
+    this.size++;
+
+    int rotations = this.rotationCount - rotationsBefore;
+    rotationWindow.afterInsert(rotations);
+    event.end();
+    if (event.shouldCommit()) {
+      event.tree = getClass().getSimpleName();
+      event.key = Integer.toString(value);
+      event.parity = TreeEvents.parityOf(value);
+      event.depth = depthOf(value);
+      event.rotations = rotations;
+      event.commit();
     }
   }
 
-  protected void insertHelperEven(int value, AMTNode subtree) {
+  /**
+   * Inserts every value of the array, in order.
+   *
+   * @param values the values to insert
+   * @throws IllegalArgumentException if any value is less than 1; the values before it remain
+   *                                  inserted
+   */
+  public void insertAll(int... values) {
+    BulkOperationEvent event = new BulkOperationEvent();
+    event.begin();
+    for (int value : values) {
+      insert(value);
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.tree = getClass().getSimpleName();
+      event.operation = "insertAll";
+      event.count = values.length;
+      event.commit();
+    }
+  }
+
+  /**
+   * Inserts an even value below subtree: into the first empty even slot on its search path, or
+   * into a new red leaf at the end of the path.
+   *
+   * @return the new leaf, or null if no node was added
+   */
+  protected AMTNode insertHelperEven(int value, AMTNode subtree) {
     if (subtree == null) {
-      return;
+      return null;
     }
 
     // If we find a node with even value 0, we can place our value here
     if (subtree.even() == 0) {
       subtree.setValue(value, true);
-      return;
+      if (metrics != null) {
+        metrics.slotFills.increment();
+      }
+      return null;
+    }
+
+    // In multiset mode an equal value only increments the count of its slot
+    if (this.multiset && value == subtree.even()) {
+      ((CountedAMTNode) subtree).incrementCount(true);
+      return null;
     }
 
     // Case 1: Smaller than subtree
     if (value <= subtree.even()) {
       if (subtree.getLeft() == null) {
-        AMTNode newNode = new AMTNode(value, true);
+        AMTNode newNode = createNode(value, true);
         subtree.setLeft(newNode);
         newNode.setUp(subtree);
+        countNewNode();
+        return newNode;
       } else {
-        insertHelperEven(value, subtree.getLeft());
+        return insertHelperEven(value, subtree.getLeft());
       }
     }
     // Case 2: Larger than subtree
     else {
       if (subtree.getRight() == null) {
-        AMTNode newNode = new AMTNode(value, true);
+        AMTNode newNode = createNode(value, true);
         subtree.setRight(newNode);
         newNode.setUp(subtree);
+        countNewNode();
+        return newNode;
       } else {
-        insertHelperEven(value, subtree.getRight());
+        return insertHelperEven(value, subtree.getRight());
       }
     }
   }
 
-  protected void insertHelperOdd(int value, AMTNode subtree) {
+  /**
+   * Inserts an odd value below subtree: into the first empty odd slot on its search path, or
+   * into a new red leaf at the end of the path.
+   *
+   * @return the new leaf, or null if no node was added
+   */
+  protected AMTNode insertHelperOdd(int value, AMTNode subtree) {
     if (subtree == null) {
-      return;
+      return null;
     }
 
     // If we find a node with odd value 0, we can place our value here
     if (subtree.odd() == 0) {
       subtree.setValue(value, false);
-      return;
+      if (metrics != null) {
+        metrics.slotFills.increment();
+      }
+      return null;
+    }
+
+    // In multiset mode an equal value only increments the count of its slot
+    if (this.multiset && value == subtree.odd()) {
+      ((CountedAMTNode) subtree).incrementCount(false);
+      return null;
     }
 
     // Case 1: Smaller than subtree
     if (value <= subtree.odd()) {
       if (subtree.getLeft() == null) {
-        AMTNode newNode = new AMTNode(value, false);
+        AMTNode newNode = createNode(value, false);
         subtree.setLeft(newNode);
         newNode.setUp(subtree);
+        countNewNode();
+        return newNode;
       } else {
-        insertHelperOdd(value, subtree.getLeft());
+        return insertHelperOdd(value, subtree.getLeft());
       }
     }
     // Case 2: Larger than subtree
     else {
       if (subtree.getRight() == null) {
-        AMTNode newNode = new AMTNode(value, false);
+        AMTNode newNode = createNode(value, false);
         subtree.setRight(newNode);
         newNode.setUp(subtree);
+        countNewNode();
+        return newNode;
       } else {
-        insertHelperOdd(value, subtree.getRight());
+        return insertHelperOdd(value, subtree.getRight());
       }
     }
   }
 
+  /**
+   * Creates a node holding a newly inserted value: a counted node in multiset mode and a plain
+   * node otherwise.
+   *
+   * @param value  the value the node stores
+   * @param isEven a boolean that indicates if the value is even or odd
+   * @return the new node
+   */
+  protected AMTNode createNode(int value, boolean isEven) {
+    return this.multiset ? new CountedAMTNode(value, isEven) : new AMTNode(value, isEven);
+  }
+
+  private void countNewNode() {
+    if (metrics != null) {
+      metrics.newNodeInserts.increment();
+    }
+  }
+
   /**
    * Checks if a new red node in the RedBlackTree causes a red property violation by having a red
    * parent. If this is not the case, the method terminates without making any changes to the tree.
@@ -142,6 +394,9 @@ public class AMT {
       parent.flipColor();
       aunt.flipColor();
       grandparent.flipColor();
+      if (metrics != null) {
+        metrics.recolorCascades.increment();
+      }
 
       //Recursive call to ensure red property on the entire tree
       ensureRedProperty(grandparent);
@@ -206,6 +461,11 @@ public class AMT {
       throw new IllegalArgumentException("The child and parent nodes are not related");
     }
 
+    this.rotationCount++;
+    if (metrics != null) {
+      metrics.rotations.increment();
+    }
+
     // Performing the rotations
     if (child.isRightChild()) {
       // Left Rotation
@@ -243,6 +503,44 @@ public class AMT {
     } else {
       this.root = child;
     }
+
+    liftSlot(child, parent, true);
+    liftSlot(child, parent, false);
+  }
+
+  /**
+   * Restores, for one partition, the invariant that an empty slot has no values of its parity
+   * below it after child was rotated above parent. This only breaks when parent holds a value of
+   * that parity and child does not: the value then moves up into child, and the hole it leaves in
+   * parent is filled by shifting the nearest values of the subtree below it up one node at a
+   * time. Every value keeps its position in the in-order sequence of its partition.
+   */
+  private void liftSlot(AMTNode child, AMTNode parent, boolean isEven) {
+    if (slotOf(parent, isEven) == 0 || slotOf(child, isEven) != 0) {
+      return;
+    }
+    parent.moveSlot(child, isEven);
+    // after a right rotation parent's remaining values lie in its right subtree, and after a left
+    // rotation in its left one; child's old subtrees on the other side hold none
+    boolean fromRight = child.getRight() == parent;
+    AMTNode hole = parent;
+    while (true) {
+      AMTNode nearest = fromRight ? hole.getRight() : hole.getLeft();
+      if (nearest == null || slotOf(nearest, isEven) == 0) {
+        return;
+      }
+      AMTNode next = fromRight ? nearest.getLeft() : nearest.getRight();
+      while (next != null && slotOf(next, isEven) != 0) {
+        nearest = next;
+        next = fromRight ? nearest.getLeft() : nearest.getRight();
+      }
+      nearest.moveSlot(hole, isEven);
+      hole = nearest;
+    }
+  }
+
+  private static int slotOf(AMTNode node, boolean isEven) {
+    return isEven ? node.even() : node.odd();
   }
 
   /**
@@ -252,6 +550,35 @@ public class AMT {
    * @return true if the collection contains data one or more times, and false otherwise
    */
   public boolean contains(int data) {
+    if (evenFilter != null && !(data % 2 == 0 ? evenFilter : oddFilter).mightContain(data)) {
+      if (metrics != null) {
+        metrics.misses.increment();
+      }
+      return false;
+    }
+    if (hotKeys != null && data >= 1) {
+      int cached = hotKeys.get(data);
+      if (cached != HotKeyCache.NOT_CACHED) {
+        if (metrics != null) {
+          (cached == HotKeyCache.CACHED_PRESENT ? metrics.hits : metrics.misses).increment();
+        }
+        return cached == HotKeyCache.CACHED_PRESENT;
+      }
+      boolean found = search(data);
+      hotKeys.put(data, found);
+      return found;
+    }
+    return search(data);
+  }
+
+  /**
+   * Searches the tree for data, instrumented when metrics or lookup events are enabled.
+   */
+  private boolean search(int data) {
+    TreeLookupEvent event = new TreeLookupEvent();
+    if (metrics != null || event.isEnabled()) {
+      return containsInstrumented(data, event);
+    }
     if(data % 2 == 0) {
       return containsHelperEven(data, this.root);
     } else {
@@ -259,6 +586,312 @@ public class AMT {
     }
   }
 
+  /**
+   * Looks up a batch of values in one traversal per partition. The values must be sorted in
+   * ascending order; each node on the paths they share is visited once, and the batch is split at
+   * every node into the values left and right of its slot. Values below 1 are never found.
+   *
+   * @param sorted  the values to look up, in ascending order
+   * @param results receives, at the index of each value, whether the value is in the tree
+   */
+  public void containsAllSorted(int[] sorted, boolean[] results) {
+    int[] positions = new int[sorted.length];
+    for (int i = 0; i < sorted.length; i++) {
+      results[i] = false;
+    }
+    for (int parity = 0; parity < 2; parity++) {
+      int count = 0;
+      for (int i = 0; i < sorted.length; i++) {
+        if ((sorted[i] & 1) == parity) {
+          positions[count++] = i;
+        }
+      }
+      containsSortedHelper(root, parity == 0, sorted, positions, 0, count, results);
+    }
+    if (metrics != null) {
+      for (int i = 0; i < sorted.length; i++) {
+        (results[i] ? metrics.hits : metrics.misses).increment();
+      }
+    }
+  }
+
+  /**
+   * Private helper method to look up the values at positions[from, to) below node, recursing into
+   * the left subtree and continuing into the right one in place.
+   */
+  private void containsSortedHelper(AMTNode node, boolean isEven, int[] sorted, int[] positions,
+      int from, int to, boolean[] results) {
+    while (from < to && node != null) {
+      int key = isEven ? node.even() : node.odd();
+      if (key == 0) {
+        // an empty slot has no values of its parity below it
+        return;
+      }
+      int less = firstPositionAtLeast(sorted, positions, from, to, key);
+      int greater = key == Integer.MAX_VALUE ? to
+          : firstPositionAtLeast(sorted, positions, less, to, key + 1);
+      for (int i = less; i < greater; i++) {
+        results[positions[i]] = true;
+      }
+      containsSortedHelper(node.getLeft(), isEven, sorted, positions, from, less, results);
+      node = node.getRight();
+      from = greater;
+    }
+  }
+
+  /**
+   * Returns the first index in [from, to) whose value is at least key, or to if there is none.
+   */
+  private static int firstPositionAtLeast(int[] sorted, int[] positions, int from, int to,
+      int key) {
+    while (from < to) {
+      int mid = (from + to) >>> 1;
+      if (sorted[positions[mid]] < key) {
+        from = mid + 1;
+      } else {
+        to = mid;
+      }
+    }
+    return from;
+  }
+
+  /**
+   * Counts the number of values in the tree, with each duplicate value being counted separately.
+   *
+   * @return the number of values in the tree, including duplicates
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Counts the occurrences of data in the tree. In multiset mode this is a single search;
+   * otherwise rotations can leave equal values on both sides of a match, so both subtrees of a
+   * match are searched.
+   *
+   * @param data the value to count
+   * @return the number of times data was inserted into the tree
+   */
+  public int count(int data) {
+    return data < 1 ? 0 : countHelper(data, data % 2 == 0, this.root);
+  }
+
+  private int countHelper(int data, boolean isEven, AMTNode node) {
+    while (node != null) {
+      int key = slotOf(node, isEven);
+      if (key == 0) {
+        // an empty slot has no values of its parity below it
+        return 0;
+      }
+      if (data == key) {
+        if (this.multiset) {
+          return node.count(isEven);
+        }
+        return 1 + countHelper(data, isEven, node.getLeft())
+            + countHelper(data, isEven, node.getRight());
+      }
+      node = data < key ? node.getLeft() : node.getRight();
+    }
+    return 0;
+  }
+
+  /**
+   * Returns an iterator over the values of one partition in ascending order. Each filled slot is
+   * visited once, so in multiset mode every distinct value appears once, while in the default mode
+   * every duplicate appears. Inserts fill the first empty slot on their path and rotations lift
+   * values into the slots they empty, so a node with an empty slot has no values of that parity
+   * below it and its subtree is skipped.
+   *
+   * @param isEven true to iterate over the even partition, false for the odd partition
+   * @return an iterator over the partition's values; it must not be used across modifications
+   */
+  public PrimitiveIterator.OfInt iterator(boolean isEven) {
+    return new PartitionIterator(this.root, isEven);
+  }
+
+  /**
+   * In-order iterator over the filled slots of one partition.
+   */
+  private static class PartitionIterator implements PrimitiveIterator.OfInt {
+    private final boolean isEven;
+    private final ArrayDeque<AMTNode> stack = new ArrayDeque<>();
+
+    PartitionIterator(AMTNode root, boolean isEven) {
+      this.isEven = isEven;
+      pushLeftSpine(root);
+    }
+
+    private void pushLeftSpine(AMTNode node) {
+      while (node != null && (isEven ? node.even() : node.odd()) != 0) {
+        stack.push(node);
+        node = node.getLeft();
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !stack.isEmpty();
+    }
+
+    @Override
+    public int nextInt() {
+      if (stack.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      AMTNode node = stack.pop();
+      pushLeftSpine(node.getRight());
+      return isEven ? node.even() : node.odd();
+    }
+  }
+
+  /**
+   * Passes every value of one partition in [low, high] to action in ascending order, pruning the
+   * same way as the iterator: subtrees below an empty slot are skipped, a left subtree is skipped
+   * once the slot is below low, and the traversal stops at the first value above high. In
+   * multiset mode every distinct value is passed once.
+   *
+   * @param isEven true to scan the even partition, false for the odd partition
+   * @param low    the smallest value to visit
+   * @param high   the largest value to visit
+   * @param action receives each value in the range
+   */
+  @Override
+  public void forEachInRange(boolean isEven, int low, int high, IntConsumer action) {
+    forEachInRangeWhile(isEven, low, high, value -> {
+      action.accept(value);
+      return true;
+    });
+  }
+
+  /**
+   * Passes values of one partition in [low, high] to action in ascending order like
+   * forEachInRange, but stops as soon as action returns false, so that a caller can take a range
+   * a piece at a time.
+   *
+   * @param isEven true to scan the even partition, false for the odd partition
+   * @param low    the smallest value to visit
+   * @param high   the largest value to visit
+   * @param action receives each value in the range and returns whether to go on
+   * @return true if every value in the range was passed to action and accepted
+   */
+  public boolean forEachInRangeWhile(boolean isEven, int low, int high, IntPredicate action) {
+    ArrayDeque<AMTNode> stack = new ArrayDeque<>();
+    AMTNode node = root;
+    while (true) {
+      // equal values go left, so a slot equal to low still descends left for its copies
+      while (node != null && (isEven ? node.even() : node.odd()) != 0) {
+        if ((isEven ? node.even() : node.odd()) >= low) {
+          stack.push(node);
+          node = node.getLeft();
+        } else {
+          node = node.getRight();
+        }
+      }
+      if (stack.isEmpty()) {
+        return true;
+      }
+      node = stack.pop();
+      int value = isEven ? node.even() : node.odd();
+      if (value > high) {
+        return true;
+      }
+      if (!action.test(value)) {
+        return false;
+      }
+      node = node.getRight();
+    }
+  }
+
+  /**
+   * Creates a cursor for lookups that start near the previous one in the same partition instead
+   * of at the root. A cursor is not thread-safe; each thread should use a cursor of its own.
+   *
+   * @return a new cursor over this tree
+   */
+  public AMTCursor cursor() {
+    return new AMTCursor(this);
+  }
+
+  /**
+   * Builds an immutable, read-optimized copy of this tree. Later changes to this tree are not
+   * reflected in the copy.
+   *
+   * @return a frozen copy of the distinct values in this tree
+   */
+  public FrozenAMT freeze() {
+    return new FrozenAMT(FrozenAMT.distinct(iterator(true)), FrozenAMT.distinct(iterator(false)));
+  }
+
+  /**
+   * Builds a balanced AMT from the sorted values of each partition in linear time. The nodes form
+   * a complete tree in heap order (node i has children 2i and 2i + 1) with the larger partition
+   * filling every node in order; the smaller partition fills the first nodes in heap order, which
+   * form a complete subtree at the top, so an empty slot still has no values of its parity below
+   * it. Nodes on a partly filled last level are red, all others black.
+   *
+   * @param evens the even values in strictly ascending order
+   * @param odds  the odd values in strictly ascending order
+   * @return a new tree holding every value once
+   * @throws IllegalArgumentException if a value is less than 1, of the wrong parity, or out of order
+   */
+  public static AMT fromSorted(int[] evens, int[] odds) {
+    checkSortedPartition(evens, true);
+    checkSortedPartition(odds, false);
+    AMT tree = new AMT();
+    int nodes = Math.max(evens.length, odds.length);
+    if (nodes > 0) {
+      tree.root = buildHeapOrder(1, nodes, evens, odds, new int[2]);
+    }
+    tree.size = evens.length + odds.length;
+    return tree;
+  }
+
+  private static void checkSortedPartition(int[] values, boolean isEven) {
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] < 1) {
+        throw new IllegalArgumentException("Value must be greater than or equal to 1");
+      }
+      if ((values[i] % 2 == 0) != isEven) {
+        throw new IllegalArgumentException(
+            "Value " + values[i] + " is not " + (isEven ? "even" : "odd"));
+      }
+      if (i > 0 && values[i - 1] >= values[i]) {
+        throw new IllegalArgumentException("Values must be in strictly ascending order");
+      }
+    }
+  }
+
+  /**
+   * Builds the subtree at heap index i of a complete tree of the given number of nodes, taking
+   * values in order; next holds the position of the next even and odd value.
+   */
+  private static AMTNode buildHeapOrder(int i, int nodes, int[] evens, int[] odds, int[] next) {
+    if (i > nodes) {
+      return null;
+    }
+    AMTNode left = buildHeapOrder(2 * i, nodes, evens, odds, next);
+    AMTNode node = new AMTNode(0, true);
+    if (i <= evens.length) {
+      node.even = evens[next[0]++];
+    }
+    if (i <= odds.length) {
+      node.odd = odds[next[1]++];
+    }
+    // heap index i sits at depth floor(log2 i); only a partly filled last level is red
+    int lastLevel = 31 - Integer.numberOfLeadingZeros(nodes);
+    node.isRed = (nodes & (nodes + 1)) != 0 && 31 - Integer.numberOfLeadingZeros(i) == lastLevel;
+    node.setLeft(left);
+    if (left != null) {
+      left.setUp(node);
+    }
+    AMTNode right = buildHeapOrder(2 * i + 1, nodes, evens, odds, next);
+    node.setRight(right);
+    if (right != null) {
+      right.setUp(node);
+    }
+    return node;
+  }
+
   /**
    * Private helper method to recursively check whether data is stored in the tree.
    *
@@ -298,4 +931,68 @@ public class AMT {
       return containsHelperOdd(data, node.getRight());
     }
   }
+
+  /**
+   * Iterative lookup that records the number of node comparisons and the outcome in the metrics
+   * when they are enabled, and commits a TreeLookupEvent when the search path is deep enough.
+   *
+   * @param data  the value to check for in the collection
+   * @param event the lookup event to commit if the depth threshold is reached
+   * @return true if the collection contains data one or more times, and false otherwise
+   */
+  private boolean containsInstrumented(int data, TreeLookupEvent event) {
+    boolean isEven = data % 2 == 0;
+    AMTNode node = this.root;
+    int comparisons = 0;
+    boolean found = false;
+
+    while (node != null) {
+      int key = isEven ? node.even() : node.odd();
+      comparisons++;
+      if (data == key) {
+        found = true;
+        break;
+      }
+      node = data < key ? node.getLeft() : node.getRight();
+    }
+
+    if (metrics != null) {
+      metrics.comparisons.add(comparisons);
+      if (found) {
+        metrics.hits.increment();
+      } else {
+        metrics.misses.increment();
+      }
+    }
+    if (comparisons >= TreeEvents.LOOKUP_DEPTH_THRESHOLD && event.shouldCommit()) {
+      event.tree = getClass().getSimpleName();
+      event.key = Integer.toString(data);
+      event.parity = TreeEvents.parityOf(data);
+      event.depth = comparisons;
+      event.found = found;
+      event.commit();
+    }
+    return found;
+  }
+
+  /**
+   * Returns the depth of the first node on the search path of value that holds it.
+   *
+   * @param value the value to look for
+   * @return the 1-based depth of value, or 0 if it is not in the tree
+   */
+  private int depthOf(int value) {
+    boolean isEven = value % 2 == 0;
+    AMTNode node = this.root;
+    int depth = 1;
+    while (node != null) {
+      int key = isEven ? node.even() : node.odd();
+      if (value == key) {
+        return depth;
+      }
+      node = value < key ? node.getLeft() : node.getRight();
+      depth++;
+    }
+    return 0;
+  }
 }
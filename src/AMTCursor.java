@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+/**
+ * A finger into an AMT that starts each lookup where the previous lookup in the same partition
+ * ended. The cursor remembers one search path per partition, together with the range of values
+ * each slot on it can hold, as given by the slots of its ancestors. A lookup climbs its
+ * partition's path only until it reaches a slot whose range strictly contains the key, then
+ * searches down from there, so a key near the previous one costs a few steps instead of a full
+ * search from the root.
+ *
+ * The paths are dropped and the next lookup starts from the root whenever a value has been
+ * inserted since the cursor last used them. Lookups through a cursor bypass the tree's Bloom
+ * filters and metrics. A cursor is not thread-safe, and lookups through it are not synchronized
+ * with writers to the tree.
+ */
+public class AMTCursor {
+
+  private final AMT tree;
+  private final Path even = new Path(true);
+  private final Path odd = new Path(false);
+
+  // the tree's modCount when the paths were recorded
+  private int expectedModCount;
+
+  AMTCursor(AMT tree) {
+    this.tree = tree;
+  }
+
+  /**
+   * Moves the cursor of value's partition to value, or to the last filled slot on the search path
+   * for value when it is absent.
+   *
+   * @param value the value to look for
+   * @return the value at the new position: value itself if it is in the tree, otherwise one of its
+   *         neighbors in its partition, or 0 if the partition is empty
+   */
+  public int seek(int value) {
+    Path path = value % 2 == 0 ? even : odd;
+    path.search(value);
+    return path.depth == 0 ? 0 : path.slot(path.nodes[path.depth - 1]);
+  }
+
+  /**
+   * Checks whether value is in the tree, searching from the position of the cursor in its
+   * partition, and moves the cursor there.
+   *
+   * @param value the value to look for
+   * @return true if the tree contains value one or more times
+   */
+  public boolean contains(int value) {
+    if (value < 1) {
+      return false;
+    }
+    return (value % 2 == 0 ? even : odd).search(value);
+  }
+
+  /**
+   * Forgets the cursor's positions, so the next lookups start from the root.
+   */
+  public void reset() {
+    even.reset();
+    odd.reset();
+  }
+
+  /**
+   * The remembered search path in one partition.
+   */
+  private final class Path {
+    private final boolean isEven;
+
+    // the path from the root, and the exclusive bounds of each slot's range
+    private AMTNode[] nodes = new AMTNode[32];
+    private long[] lows = new long[32];
+    private long[] highs = new long[32];
+    private int depth;
+
+    Path(boolean isEven) {
+      this.isEven = isEven;
+    }
+
+    int slot(AMTNode node) {
+      return isEven ? node.even : node.odd;
+    }
+
+    void reset() {
+      Arrays.fill(nodes, 0, depth, null);
+      depth = 0;
+    }
+
+    boolean search(int value) {
+      if (tree.modCount != expectedModCount) {
+        AMTCursor.this.reset();
+        expectedModCount = tree.modCount;
+      }
+      if (depth == 0) {
+        if (tree.root == null || slot(tree.root) == 0) {
+          return false;
+        }
+        push(tree.root, Long.MIN_VALUE, Long.MAX_VALUE);
+      } else {
+        // climb until the value must lie below the top of the path if it is anywhere in the tree
+        while (depth > 1 && (value <= lows[depth - 1] || value >= highs[depth - 1])) {
+          nodes[--depth] = null;
+        }
+      }
+
+      AMTNode node = nodes[depth - 1];
+      while (true) {
+        int slot = slot(node);
+        if (value == slot) {
+          return true;
+        }
+        AMTNode next = value < slot ? node.getLeft() : node.getRight();
+        // an empty slot means no values of this parity below it
+        if (next == null || slot(next) == 0) {
+          return false;
+        }
+        long low = lows[depth - 1];
+        long high = highs[depth - 1];
+        push(next, value < slot ? low : slot, value < slot ? slot : high);
+        node = next;
+      }
+    }
+
+    private void push(AMTNode node, long low, long high) {
+      if (depth == nodes.length) {
+        nodes = Arrays.copyOf(nodes, depth * 2);
+        lows = Arrays.copyOf(lows, depth * 2);
+        highs = Arrays.copyOf(highs, depth * 2);
+      }
+      nodes[depth] = node;
+      lows[depth] = low;
+      highs[depth] = high;
+      depth++;
+    }
+  }
+}
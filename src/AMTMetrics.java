@@ -0,0 +1,253 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Collects hot-path operation counters for an AMT and measures the shape of the tree on demand.
+ * Counters are striped LongAdders so that concurrent readers of a SynchronizedAMT do not contend on
+ * a single cache line. The metrics can be polled through {@link #snapshot()} or exported over JMX
+ * with {@link #register(String)}.
+ */
+public class AMTMetrics implements AMTMetricsMBean {
+
+  // operation counters, updated by the AMT that owns these metrics
+  final LongAdder inserts = new LongAdder();
+  final LongAdder hits = new LongAdder();
+  final LongAdder misses = new LongAdder();
+  final LongAdder comparisons = new LongAdder();
+  final LongAdder rotations = new LongAdder();
+  final LongAdder recolorCascades = new LongAdder();
+  final LongAdder slotFills = new LongAdder();
+  final LongAdder newNodeInserts = new LongAdder();
+
+  // how long the gauges read over JMX are reused before the tree is walked again
+  static final long GAUGE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  // the tree whose shape the gauges measure
+  private final AMT tree;
+
+  // the last snapshot taken for the JMX gauges and when it was taken
+  private volatile Snapshot gauges;
+  private volatile long gaugesTakenAt;
+
+  AMTMetrics(AMT tree) {
+    this.tree = tree;
+  }
+
+  /**
+   * An immutable point-in-time copy of the counters and gauges.
+   */
+  public static class Snapshot {
+    public final long inserts;
+    public final long hits;
+    public final long misses;
+    public final long comparisons;
+    public final long rotations;
+    public final long recolorCascades;
+    public final long slotFills;
+    public final long newNodeInserts;
+    public final int height;
+    public final int evenDepth;
+    public final int oddDepth;
+    public final int nodeCount;
+
+    Snapshot(AMTMetrics metrics, int height, int evenDepth, int oddDepth, int nodeCount) {
+      this.inserts = metrics.inserts.sum();
+      this.hits = metrics.hits.sum();
+      this.misses = metrics.misses.sum();
+      this.comparisons = metrics.comparisons.sum();
+      this.rotations = metrics.rotations.sum();
+      this.recolorCascades = metrics.recolorCascades.sum();
+      this.slotFills = metrics.slotFills.sum();
+      this.newNodeInserts = metrics.newNodeInserts.sum();
+      this.height = height;
+      this.evenDepth = evenDepth;
+      this.oddDepth = oddDepth;
+      this.nodeCount = nodeCount;
+    }
+
+    /**
+     * @return the mean number of node comparisons made by a lookup, or 0 if there were none
+     */
+    public double averageComparisonsPerLookup() {
+      long lookups = hits + misses;
+      return lookups == 0 ? 0 : comparisons / (double) lookups;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("inserts=%d (slot fills=%d, new nodes=%d), hits=%d, misses=%d, "
+              + "comparisons/lookup=%.2f, rotations=%d, recolor cascades=%d, height=%d, "
+              + "even depth=%d, odd depth=%d, nodes=%d", inserts, slotFills, newNodeInserts, hits,
+          misses, averageComparisonsPerLookup(), rotations, recolorCascades, height, evenDepth,
+          oddDepth, nodeCount);
+    }
+  }
+
+  /**
+   * Captures the counters together with freshly measured gauges. Measuring the gauges walks the
+   * whole tree, so this is meant to be polled at monitoring intervals rather than per operation.
+   *
+   * @return a snapshot of the metrics
+   */
+  public Snapshot snapshot() {
+    return tree.metricsSnapshot();
+  }
+
+  /**
+   * Walks the subtree rooted at root and captures a snapshot with its shape gauges. Callers are
+   * responsible for making sure the tree is not modified during the walk.
+   */
+  Snapshot capture(AMTNode root) {
+    int height = 0;
+    int evenDepth = 0;
+    int oddDepth = 0;
+    int nodeCount = 0;
+
+    // the pending nodes and their depths; a balanced tree keeps both stacks short
+    AMTNode[] nodes = new AMTNode[64];
+    int[] depths = new int[64];
+    int top = 0;
+    if (root != null) {
+      nodes[top] = root;
+      depths[top++] = 1;
+    }
+    while (top > 0) {
+      AMTNode node = nodes[--top];
+      int depth = depths[top];
+      nodes[top] = null;
+      nodeCount++;
+      height = Math.max(height, depth);
+      if (node.even() != 0) {
+        evenDepth = Math.max(evenDepth, depth);
+      }
+      if (node.odd() != 0) {
+        oddDepth = Math.max(oddDepth, depth);
+      }
+      if (top + 2 > nodes.length) {
+        nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        depths = Arrays.copyOf(depths, depths.length * 2);
+      }
+      if (node.getLeft() != null) {
+        nodes[top] = node.getLeft();
+        depths[top++] = depth + 1;
+      }
+      if (node.getRight() != null) {
+        nodes[top] = node.getRight();
+        depths[top++] = depth + 1;
+      }
+    }
+    return new Snapshot(this, height, evenDepth, oddDepth, nodeCount);
+  }
+
+  /**
+   * Registers these metrics with the platform MBean server.
+   *
+   * @param name a name that distinguishes this tree from other registered trees
+   * @return the object name the metrics were registered under
+   * @throws JMException if the name is invalid or already registered
+   */
+  public ObjectName register(String name) throws JMException {
+    ObjectName objectName = new ObjectName(
+        "PredicatePartitionTree:type=AMTMetrics,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    return objectName;
+  }
+
+  @Override
+  public long getInserts() {
+    return inserts.sum();
+  }
+
+  @Override
+  public long getHits() {
+    return hits.sum();
+  }
+
+  @Override
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  @Override
+  public long getComparisons() {
+    return comparisons.sum();
+  }
+
+  @Override
+  public double getAverageComparisonsPerLookup() {
+    long lookups = hits.sum() + misses.sum();
+    return lookups == 0 ? 0 : comparisons.sum() / (double) lookups;
+  }
+
+  @Override
+  public long getRotations() {
+    return rotations.sum();
+  }
+
+  @Override
+  public long getRecolorCascades() {
+    return recolorCascades.sum();
+  }
+
+  @Override
+  public long getSlotFills() {
+    return slotFills.sum();
+  }
+
+  @Override
+  public long getNewNodeInserts() {
+    return newNodeInserts.sum();
+  }
+
+  /**
+   * Returns the snapshot the JMX gauges are read from, taking a new one when the last is older
+   * than GAUGE_INTERVAL_NANOS. A monitoring client reads the gauges one attribute at a time, so
+   * this keeps a poll of all of them to a single walk of the tree.
+   */
+  private Snapshot gauges() {
+    Snapshot cached = gauges;
+    long now = System.nanoTime();
+    if (cached == null || now - gaugesTakenAt >= GAUGE_INTERVAL_NANOS) {
+      cached = snapshot();
+      gauges = cached;
+      gaugesTakenAt = now;
+    }
+    return cached;
+  }
+
+  @Override
+  public int getHeight() {
+    return gauges().height;
+  }
+
+  @Override
+  public int getEvenDepth() {
+    return gauges().evenDepth;
+  }
+
+  @Override
+  public int getOddDepth() {
+    return gauges().oddDepth;
+  }
+
+  @Override
+  public int getNodeCount() {
+    return gauges().nodeCount;
+  }
+
+  @Override
+  public void reset() {
+    inserts.reset();
+    hits.reset();
+    misses.reset();
+    comparisons.reset();
+    rotations.reset();
+    recolorCascades.reset();
+    slotFills.reset();
+    newNodeInserts.reset();
+  }
+}
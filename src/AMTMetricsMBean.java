@@ -0,0 +1,38 @@
+/**
+ * JMX management interface for the operation counters and shape gauges of an AMT. Counters are
+ * cumulative since the metrics were enabled or last reset; gauges are measured at most once per
+ * second, and reads in between return the last measurement.
+ */
+public interface AMTMetricsMBean {
+
+  public long getInserts();
+
+  public long getHits();
+
+  public long getMisses();
+
+  public long getComparisons();
+
+  public double getAverageComparisonsPerLookup();
+
+  public long getRotations();
+
+  public long getRecolorCascades();
+
+  public long getSlotFills();
+
+  public long getNewNodeInserts();
+
+  public int getHeight();
+
+  public int getEvenDepth();
+
+  public int getOddDepth();
+
+  public int getNodeCount();
+
+  /**
+   * Resets all counters to zero. Gauges are unaffected because they are measured from the tree.
+   */
+  public void reset();
+}
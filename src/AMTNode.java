@@ -40,6 +40,17 @@ public class AMTNode {
     return this.odd;
   }
 
+  /**
+   * Returns the number of occurrences of the value with the given parity. This is 1 for a filled
+   * slot and 0 for an empty one, unless the node belongs to an AMT in multiset mode.
+   *
+   * @param isEven whether to count the even or the odd value
+   * @return the number of occurrences stored in that slot
+   */
+  public int count(boolean isEven) {
+    return (isEven ? this.even : this.odd) == 0 ? 0 : 1;
+  }
+
   public AMTNode getLeft() {
     return this.left;
   }
@@ -136,4 +147,21 @@ public class AMTNode {
     else
       this.odd = value;
   }
+
+  /**
+   * Moves the value with the given parity into the same slot of target, leaving this slot empty.
+   * Used by rotations to keep filled slots above empty ones.
+   *
+   * @param target the node whose slot receives the value
+   * @param isEven whether to move the even or the odd value
+   */
+  protected void moveSlot(AMTNode target, boolean isEven) {
+    if (isEven) {
+      target.even = this.even;
+      this.even = 0;
+    } else {
+      target.odd = this.odd;
+      this.odd = 0;
+    }
+  }
 }
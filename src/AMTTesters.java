@@ -1,3 +1,20 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Assertions;
 
@@ -14,4 +31,1047 @@ public class AMTTesters {
     System.out.println(tree.contains(2));  // true
     System.out.println(tree.contains(5));  // false
   }
+
+  @Test
+  public void testMetrics() {
+    AMT tree = new AMT();
+    AMTMetrics metrics = tree.enableMetrics();
+    tree.insert(4);  // new root
+    tree.insert(3);  // fills the odd slot of the root
+    tree.insert(2);  // new node on the left
+    tree.insert(6);  // new node on the right
+
+    Assertions.assertTrue(tree.contains(2));
+    Assertions.assertFalse(tree.contains(8));
+
+    AMTMetrics.Snapshot snapshot = metrics.snapshot();
+    Assertions.assertEquals(4, snapshot.inserts);
+    Assertions.assertEquals(1, snapshot.slotFills);
+    Assertions.assertEquals(3, snapshot.newNodeInserts);
+    Assertions.assertEquals(1, snapshot.hits);
+    Assertions.assertEquals(1, snapshot.misses);
+    Assertions.assertEquals(3, snapshot.nodeCount);
+    Assertions.assertEquals(2, snapshot.height);
+    Assertions.assertEquals(2, snapshot.evenDepth);
+    Assertions.assertEquals(1, snapshot.oddDepth);
+
+    // the JMX gauges reuse one walk of the tree within a polling interval
+    Assertions.assertEquals(3, metrics.getNodeCount());
+    tree.insert(8);
+    Assertions.assertEquals(3, metrics.getNodeCount());
+    Assertions.assertEquals(2, metrics.getHeight());
+    Assertions.assertEquals(4, metrics.snapshot().nodeCount);
+  }
+
+  @Test
+  public void testDiagnostics() {
+    AMT tree = new AMT();
+    RedBlackTree<Integer> rbt = new RedBlackTree<>();
+    Random random = new Random(400);
+    for (int i = 0; i < 1000; i++) {
+      int value = random.nextInt(10000) + 1;
+      tree.insert(value);
+      rbt.insert(value);
+    }
+
+    TreeDiagnostics.Report amtReport = TreeDiagnostics.check(tree);
+    Assertions.assertEquals(0, amtReport.evenOrderViolations);
+    Assertions.assertEquals(0, amtReport.oddOrderViolations);
+    Assertions.assertTrue(amtReport.evenFillRatio > 0 && amtReport.oddFillRatio > 0);
+    Assertions.assertTrue(amtReport.isValid(), amtReport.toString());
+
+    TreeDiagnostics.Report rbtReport = TreeDiagnostics.check(rbt);
+    Assertions.assertEquals(1000, rbtReport.nodeCount);
+    Assertions.assertTrue(rbtReport.isValid(), rbtReport.toString());
+
+    // a red child under a red parent must be reported
+    ((RBTNode<Integer>) rbt.root).isRed = true;
+    Assertions.assertFalse(TreeDiagnostics.check(rbt).isValid());
+
+    // odd values on both sides below an empty odd slot cannot be found, though they are in order
+    AMT hidden = new AMT();
+    hidden.root = new AMTNode(4, true);
+    hidden.root.flipColor();
+    AMTNode left = new AMTNode(2, true);
+    left.setValue(3, false);
+    AMTNode right = new AMTNode(6, true);
+    right.setValue(5, false);
+    hidden.root.setLeft(left);
+    hidden.root.setRight(right);
+    left.setUp(hidden.root);
+    right.setUp(hidden.root);
+    TreeDiagnostics.Report hiddenReport = TreeDiagnostics.check(hidden);
+    Assertions.assertEquals(0, hiddenReport.evenFilledBelowEmpty);
+    Assertions.assertEquals(2, hiddenReport.oddFilledBelowEmpty);
+    Assertions.assertEquals(0, hiddenReport.oddOrderViolations);
+    Assertions.assertFalse(hiddenReport.isValid());
+    left.setValue(0, false);
+    right.setValue(0, false);
+    Assertions.assertTrue(TreeDiagnostics.check(hidden).isValid());
+  }
+
+  @Test
+  public void testBalancing() {
+    // ascending inserts degenerate an unbalanced tree into a list
+    for (boolean multiset : new boolean[] {false, true}) {
+      AMT tree = new AMT(multiset);
+      AMTMetrics metrics = tree.enableMetrics();
+      for (int i = 1; i <= 5000; i++) {
+        tree.insert(i);
+        tree.insert(i % 100 + 1);
+      }
+
+      TreeDiagnostics.Report report = TreeDiagnostics.check(tree);
+      Assertions.assertTrue(report.isValid(), report.toString());
+      Assertions.assertTrue(metrics.snapshot().rotations > 0);
+      Assertions.assertTrue(metrics.snapshot().recolorCascades > 0);
+      Assertions.assertEquals(10000, tree.size());
+      for (int i = 1; i <= 5001; i++) {
+        int expected = i > 5000 ? 0 : i <= 100 ? 51 : 1;
+        Assertions.assertEquals(expected, tree.count(i), "value " + i);
+        Assertions.assertEquals(expected > 0, tree.contains(i), "value " + i);
+      }
+      int previous = 0;
+      int evens = 0;
+      PrimitiveIterator.OfInt iterator = tree.iterator(true);
+      while (iterator.hasNext()) {
+        int value = iterator.nextInt();
+        Assertions.assertTrue(value >= previous && value % 2 == 0);
+        previous = value;
+        evens++;
+      }
+      Assertions.assertEquals(multiset ? 2500 : 5000, evens);
+    }
+  }
+
+  @Test
+  public void testMultiset() {
+    AMT tree = new AMT(true);
+    AMT plain = new AMT();
+    int[] values = {6, 3, 6, 6, 9, 3, 2, 6};
+    for (int value : values) {
+      tree.insert(value);
+      plain.insert(value);
+    }
+
+    Assertions.assertEquals(8, tree.size());
+    Assertions.assertEquals(4, tree.count(6));
+    Assertions.assertEquals(2, tree.count(3));
+    Assertions.assertEquals(1, tree.count(9));
+    Assertions.assertEquals(0, tree.count(4));
+    Assertions.assertEquals(4, plain.count(6));
+    Assertions.assertEquals(2, plain.count(3));
+
+    // one slot per distinct value: 6 and 3 share the root, 2 and 9 are its children
+    Assertions.assertEquals(3, TreeDiagnostics.check(tree).nodeCount);
+    Assertions.assertTrue(TreeDiagnostics.check(plain).nodeCount > 3);
+  }
+
+  @Test
+  public void testFreeze() {
+    AMT tree = new AMT();
+    DualRBT dual = new DualRBT();
+    Random random = new Random(31);
+    for (int i = 0; i < 5000; i++) {
+      int value = random.nextInt(20000) + 1;
+      tree.insert(value);
+      dual.insert(value);
+    }
+
+    FrozenAMT frozen = tree.freeze();
+    FrozenAMT frozenDual = dual.freeze();
+    int[] probes = new int[20002];
+    boolean[] results = new boolean[probes.length];
+    for (int i = 0; i < probes.length; i++) {
+      probes[i] = i - 1;
+    }
+    frozen.containsAll(probes, results);
+
+    for (int i = 0; i < probes.length; i++) {
+      // the tree only accepts values >= 1
+      boolean expected = probes[i] >= 1 && tree.contains(probes[i]);
+      Assertions.assertEquals(expected, frozen.contains(probes[i]), "value " + probes[i]);
+      Assertions.assertEquals(expected, frozenDual.contains(probes[i]), "value " + probes[i]);
+      Assertions.assertEquals(expected, results[i], "batched value " + probes[i]);
+    }
+    Assertions.assertEquals(frozen.size(), frozenDual.size());
+  }
+
+  @Test
+  public void testWideAMT() {
+    WideAMT tree = new WideAMT(16);
+    TreeSet<Integer> expected = new TreeSet<>();
+    Random random = new Random(32);
+    for (int i = 0; i < 20000; i++) {
+      int value = random.nextInt(10000) + 1;
+      if (random.nextInt(3) == 0) {
+        Assertions.assertEquals(expected.remove(value), tree.remove(value));
+      } else {
+        tree.insert(value);
+        expected.add(value);
+      }
+    }
+
+    Assertions.assertEquals(expected.size(), tree.size());
+    for (int value = 0; value <= 10001; value++) {
+      Assertions.assertEquals(expected.contains(value), tree.contains(value), "value " + value);
+    }
+
+    List<Integer> scanned = new ArrayList<>();
+    tree.forEachInRange(2500, 7500, scanned::add);
+    Assertions.assertEquals(new ArrayList<>(expected.subSet(2500, true, 7500, true)),
+        scanned);
+
+    // probes in random order, with repeats and values below 1
+    int[] probes = new int[5000];
+    for (int i = 0; i < probes.length; i++) {
+      probes[i] = random.nextInt(10003) - 1;
+    }
+    boolean[] results = new boolean[probes.length];
+    tree.containsAll(probes, results);
+    for (int i = 0; i < probes.length; i++) {
+      Assertions.assertEquals(expected.contains(probes[i]), results[i], "probe " + probes[i]);
+    }
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new WideAMT(8));
+  }
+
+  @Test
+  public void testBloomFilter() {
+    BlockedBloomFilter filter = BlockedBloomFilter.forFalsePositiveRate(10000, 0.01);
+    for (int value = 2; value <= 20000; value += 2) {
+      filter.put(value);
+    }
+    int falsePositives = 0;
+    for (int value = 2; value <= 20000; value += 2) {
+      Assertions.assertTrue(filter.mightContain(value));
+      if (filter.mightContain(value + 20000)) {
+        falsePositives++;
+      }
+    }
+    Assertions.assertTrue(falsePositives < 200, "false positives: " + falsePositives);
+    Assertions.assertTrue(filter.estimatedFalsePositiveRate(10000) < 0.01);
+
+    // a budget that is not a whole number of blocks: the filter stays within it, and its measured
+    // rate is close to the estimate
+    BlockedBloomFilter budgeted = BlockedBloomFilter.forMemoryBudget(10000, 10000);
+    Assertions.assertTrue(budgeted.sizeInBytes() <= 10000 && budgeted.sizeInBytes() > 10000 - 64);
+    for (int value = 2; value <= 20000; value += 2) {
+      budgeted.put(value);
+    }
+    falsePositives = 0;
+    for (int value = 20001; value <= 220000; value += 2) {
+      if (budgeted.mightContain(value)) {
+        falsePositives++;
+      }
+    }
+    double estimate = budgeted.estimatedFalsePositiveRate(10000);
+    Assertions.assertEquals(estimate, falsePositives / 100000.0, 0.15 * estimate);
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> BlockedBloomFilter.forMemoryBudget(10000, 63));
+
+    AMT tree = new AMT();
+    tree.insert(4);
+    tree.enableBloomFilter(100, 0.01);
+    tree.insert(7);
+    Assertions.assertTrue(tree.contains(4));
+    Assertions.assertTrue(tree.contains(7));
+    Assertions.assertFalse(tree.contains(5));
+
+    AMT budgetedTree = new AMT();
+    budgetedTree.insert(4);
+    budgetedTree.enableBloomFilter(1000, 1000L);
+    budgetedTree.insert(7);
+    Assertions.assertTrue(budgetedTree.evenFilter.sizeInBytes() <= 1000);
+    Assertions.assertTrue(budgetedTree.oddFilter.sizeInBytes() <= 1000);
+    Assertions.assertTrue(budgetedTree.contains(4));
+    Assertions.assertTrue(budgetedTree.contains(7));
+    Assertions.assertFalse(budgetedTree.contains(5));
+  }
+
+  @Test
+  public void testBitmapAMT() {
+    BitmapAMT tree = new BitmapAMT();
+    TreeSet<Integer> expected = new TreeSet<>();
+    Random random = new Random(35);
+    // a dense chunk, a sparse one and a long run, to exercise all three containers
+    for (int i = 0; i < 60000; i++) {
+      int value = random.nextInt(100000) + 1;
+      tree.insert(value);
+      expected.add(value);
+    }
+    for (int i = 0; i < 300; i++) {
+      int value = random.nextInt(1 << 24) + 200000;
+      tree.insert(value);
+      expected.add(value);
+    }
+    for (int value = 500000; value < 700000; value++) {
+      tree.insert(value);
+      expected.add(value);
+    }
+
+    Assertions.assertEquals(expected.size(), tree.size());
+    for (int value = 0; value < 800000; value++) {
+      Assertions.assertEquals(expected.contains(value), tree.contains(value), "value " + value);
+    }
+    Assertions.assertEquals(expected.subSet(99, true, 650001, true).size(),
+        tree.countInRange(99, 650001));
+
+    List<Integer> odds = new ArrayList<>();
+    tree.forEachInRange(false, 1000, 2001, odds::add);
+    List<Integer> expectedOdds = new ArrayList<>();
+    for (int value : expected.subSet(1000, true, 2001, true)) {
+      if (value % 2 != 0) {
+        expectedOdds.add(value);
+      }
+    }
+    Assertions.assertEquals(expectedOdds, odds);
+
+    long before = tree.sizeInBytes();
+    tree.runOptimize();
+    Assertions.assertTrue(tree.sizeInBytes() <= before);
+    Assertions.assertEquals(expected.size(), tree.size());
+  }
+
+  @Test
+  public void testPrimitiveDualRBT() {
+    DualRBT boxed = new DualRBT();
+    DualRBT primitive = new DualRBT(DualRBT.Mode.PRIMITIVE);
+    Random random = new Random(36);
+    for (int i = 0; i < 2000; i++) {
+      int value = random.nextInt(1000) + 1;
+      boxed.insert(value);
+      primitive.insert(value);
+    }
+
+    Assertions.assertEquals(boxed.size(), primitive.size());
+    for (int value = 1; value <= 1001; value++) {
+      Assertions.assertEquals(boxed.contains(value), primitive.contains(value));
+      Assertions.assertEquals(boxed.count(value), primitive.count(value));
+    }
+    FrozenAMT frozen = primitive.freeze();
+    Assertions.assertEquals(boxed.freeze().size(), frozen.size());
+
+    primitive.enableBloomFilter(1000, 0.01);
+    for (int value = 1; value <= 1001; value++) {
+      Assertions.assertEquals(boxed.contains(value), primitive.contains(value));
+    }
+    primitive.enableBloomFilter(1000, 512L);
+    for (int value = 1; value <= 1001; value++) {
+      Assertions.assertEquals(boxed.contains(value), primitive.contains(value));
+    }
+  }
+
+  @Test
+  public void testPartitionedSortedCollection() {
+    PartitionedSortedCollection<Integer> byParity =
+        PartitionedSortedCollection.byParity(partition -> new RedBlackTree<Integer>());
+    DualRBT reference = new DualRBT();
+    Random random = new Random(37);
+    for (int i = 0; i < 1000; i++) {
+      int value = random.nextInt(500) + 1;
+      byParity.insert(value);
+      reference.insert(value);
+    }
+    Assertions.assertEquals(reference.size(), byParity.size());
+    for (int value = 1; value <= 501; value++) {
+      Assertions.assertEquals(reference.contains(value), byParity.contains(value));
+    }
+
+    // the set backends through their adapters keep the same sizes, duplicates included
+    PartitionedSortedCollection<Integer> bySet = PartitionedSortedCollection.byParity(
+        partition -> partition == 0 ? IntSetCollection.ofBPlusTree(16)
+            : IntSetCollection.ofRoaring());
+    random = new Random(37);
+    for (int i = 0; i < 1000; i++) {
+      bySet.insert(random.nextInt(500) + 1);
+    }
+    Assertions.assertEquals(reference.size(), bySet.size());
+    Assertions.assertEquals(byParity.partitionSize(0), bySet.partitionSize(0));
+    Assertions.assertEquals(byParity.partitionSize(1), bySet.partitionSize(1));
+    for (int value = 1; value <= 501; value++) {
+      Assertions.assertEquals(reference.contains(value), bySet.contains(value));
+      Assertions.assertEquals(reference.count(value),
+          ((IntSetCollection) bySet.partition(value & 1)).count(value));
+    }
+    bySet.clear();
+    Assertions.assertEquals(0, bySet.partition(0).size());
+    Assertions.assertFalse(bySet.contains(2));
+
+    // strings by length, with a different backend for the short ones
+    PartitionedSortedCollection<String> byLength = new PartitionedSortedCollection<>(3,
+        s -> Math.min(s.length() / 4, 2),
+        partition -> partition == 0 ? new BinarySearchTree<String>() : new RedBlackTree<String>());
+    for (String s : new String[] {"ab", "abcdef", "abcdefghijk", "ab", "xyz"}) {
+      byLength.insert(s);
+    }
+    Assertions.assertEquals(5, byLength.size());
+    Assertions.assertEquals(3, byLength.partitionSize(0));
+    Assertions.assertTrue(byLength.partition(0) instanceof BinarySearchTree);
+    Assertions.assertTrue(byLength.contains("abcdef"));
+    Assertions.assertFalse(byLength.contains("abcdeg"));
+
+    byLength.clear();
+    Assertions.assertTrue(byLength.isEmpty());
+    Assertions.assertEquals(0, byLength.partitionSize(0));
+    Assertions.assertFalse(byLength.contains("ab"));
+    Assertions.assertThrows(NullPointerException.class, () -> byLength.insert(null));
+  }
+
+  @Test
+  public void testAdaptivePartitionTree() {
+    AdaptivePartitionTree tree = new AdaptivePartitionTree();
+    Set<Integer> expected = new HashSet<>();
+    Random random = new Random(38);
+    // 95% even values, which pushes the tree past the default skew threshold
+    for (int i = 0; i < 20000; i++) {
+      int value = random.nextInt(20) == 0 ? 2 * random.nextInt(50000) + 1
+          : 2 * random.nextInt(50000) + 2;
+      tree.insert(value);
+      expected.add(value);
+      if (i % 997 == 0) {
+        Assertions.assertTrue(tree.contains(value));
+      }
+    }
+    Assertions.assertTrue(tree.isRepartitioned());
+    Assertions.assertEquals(AdaptivePartitionTree.DEFAULT_HOT_PARTITIONS, tree.partitionCount(true));
+    Assertions.assertEquals(1, tree.partitionCount(false));
+    Assertions.assertEquals(20000, tree.size());
+
+    // lookups must agree both while the old AMT is still being migrated and after
+    for (int value = 0; value <= 100002; value++) {
+      Assertions.assertEquals(expected.contains(value), tree.contains(value), "value " + value);
+    }
+    tree.finishMigration();
+    Assertions.assertFalse(tree.isMigrating());
+    for (int value = 0; value <= 100002; value++) {
+      Assertions.assertEquals(expected.contains(value), tree.contains(value), "value " + value);
+    }
+
+    AdaptivePartitionTree balanced = new AdaptivePartitionTree();
+    for (int value = 1; value <= 10000; value++) {
+      balanced.insert(value);
+    }
+    Assertions.assertFalse(balanced.isRepartitioned());
+  }
+
+  @Test
+  public void testRangePartitionedTree() {
+    Random random = new Random(39);
+    int[] sample = new int[512];
+    for (int i = 0; i < sample.length; i++) {
+      sample[i] = random.nextInt(100000);
+    }
+    RangePartitionedTree tree = RangePartitionedTree.fromSample(sample, 16);
+    Assertions.assertEquals(16, tree.partitionCount());
+
+    TreeMap<Integer, Integer> expected = new TreeMap<>();
+    for (int i = 0; i < 50000; i++) {
+      int value = random.nextInt(120000) - 10000;
+      tree.insert(value);
+      expected.merge(value, 1, Integer::sum);
+    }
+    Assertions.assertEquals(50000, tree.size());
+    Assertions.assertEquals(expected.containsKey(500), tree.contains(500));
+    Assertions.assertEquals((int) expected.getOrDefault(500, 0), tree.count(500));
+
+    int[][] queries = {{-20000, 200000}, {100, 5000}, {30000, 30000}, {5, 4}, {-5000, 99999}};
+    for (int[] query : queries) {
+      int expectedCount = 0;
+      List<Integer> expectedValues = new ArrayList<>();
+      if (query[0] <= query[1]) {
+        for (Map.Entry<Integer, Integer> entry
+            : expected.subMap(query[0], true, query[1], true).entrySet()) {
+          expectedCount += entry.getValue();
+          for (int i = 0; i < entry.getValue(); i++) {
+            expectedValues.add(entry.getKey());
+          }
+        }
+      }
+      Assertions.assertEquals(expectedCount, tree.countInRange(query[0], query[1]));
+      Assertions.assertEquals(expectedCount, tree.parallelCountInRange(query[0], query[1]));
+
+      List<Integer> values = new ArrayList<>();
+      tree.forEachInRange(query[0], query[1], values::add);
+      Assertions.assertEquals(expectedValues, values);
+
+      LongAdder scanned = new LongAdder();
+      tree.parallelForEachInRange(query[0], query[1], value -> scanned.increment());
+      Assertions.assertEquals(expectedCount, scanned.intValue());
+    }
+
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new RangePartitionedTree(new int[] {5, 5}));
+  }
+
+  @Test
+  public void testPartitionQuery() {
+    AMT amt = new AMT();
+    DualRBT dual = new DualRBT();
+    DualRBT intDual = new DualRBT(DualRBT.Mode.PRIMITIVE);
+    WideAMT wide = new WideAMT();
+    List<Integer> values = new ArrayList<>();
+    Random random = new Random(40);
+    for (int i = 0; i < 3000; i++) {
+      int value = random.nextInt(2000) + 1;
+      amt.insert(value);
+      dual.insert(value);
+      intDual.insert(value);
+      wide.insert(value);
+      values.add(value);
+    }
+
+    PartitionQuery[] queries = {
+        PartitionQuery.all().even().between(100, 900),
+        PartitionQuery.all().odd().atLeast(1500),
+        PartitionQuery.all().greaterThan(1999).lessThan(Integer.MIN_VALUE + 1),
+        PartitionQuery.all().atMost(50).and(PartitionQuery.all().odd()),
+        PartitionQuery.all().between(777, 777),
+    };
+    for (PartitionQuery query : queries) {
+      List<Integer> expected = new ArrayList<>();
+      for (boolean isEven : new boolean[] {true, false}) {
+        values.stream().filter(v -> (v % 2 == 0) == isEven && query.matches(v)).sorted()
+            .forEach(expected::add);
+      }
+      List<Integer> fromAmt = new ArrayList<>();
+      query.forEach(amt, fromAmt::add);
+      Assertions.assertEquals(expected, fromAmt, query.toString());
+      List<Integer> fromDual = new ArrayList<>();
+      query.forEach(dual, fromDual::add);
+      Assertions.assertEquals(expected, fromDual, query.toString());
+      Assertions.assertEquals(expected.size(), query.count(intDual));
+      Assertions.assertEquals(expected.stream().distinct().count(), query.count(wide));
+    }
+
+    Assertions.assertEquals("scan even [10, 20], skip odd",
+        PartitionQuery.all().even().between(9, 21).toString());
+    Assertions.assertTrue(PartitionQuery.all().even().odd().plan().isEmpty());
+    Assertions.assertTrue(PartitionQuery.all().odd().between(4, 4).plan().isEmpty());
+    Assertions.assertFalse(PartitionQuery.all().odd().plan().scans(true));
+  }
+
+  @Test
+  public void testContainsAllSorted() {
+    AMT tree = new AMT();
+    Random random = new Random(41);
+    for (int i = 0; i < 5000; i++) {
+      tree.insert(random.nextInt(10000) + 1);
+    }
+    int[] probes = new int[3000];
+    for (int i = 0; i < probes.length; i++) {
+      probes[i] = random.nextInt(10002) - 1;
+    }
+    Arrays.sort(probes);
+    boolean[] results = new boolean[probes.length];
+    Arrays.fill(results, true);
+    tree.containsAllSorted(probes, results);
+    for (int i = 0; i < probes.length; i++) {
+      Assertions.assertEquals(probes[i] >= 1 && tree.contains(probes[i]), results[i],
+          "value " + probes[i]);
+    }
+  }
+
+  @Test
+  public void testCoalescingAMTService() throws Exception {
+    AMT tree = new AMT();
+    CoalescingAMTService service = new CoalescingAMTService(tree, 64, 100_000,
+        Executors.defaultThreadFactory());
+    int threads = 8;
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<?>> workers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      final int id = t;
+      workers.add(pool.submit(() -> {
+        for (int i = 0; i < 500; i++) {
+          int value = id * 1000 + i + 1;
+          service.insert(value);
+          // a completed insert is visible to every later lookup
+          Assertions.assertTrue(service.contains(value));
+        }
+        return null;
+      }));
+    }
+    for (Future<?> worker : workers) {
+      worker.get();
+    }
+    pool.shutdown();
+
+    List<CompletableFuture<Boolean>> lookups = new ArrayList<>();
+    for (int value = 1; value <= 8000; value++) {
+      lookups.add(service.containsAsync(value));
+    }
+    for (int value = 1; value <= 8000; value++) {
+      Assertions.assertEquals((value - 1) % 1000 < 500, lookups.get(value - 1).join());
+    }
+    Assertions.assertEquals(4000, service.size());
+    Assertions.assertTrue(service.batchCount() < service.operationCount());
+    Assertions.assertThrows(IllegalArgumentException.class, () -> service.insert(0));
+
+    CompletableFuture<Void> pending = service.insertAsync(99999);
+    service.close();
+    Assertions.assertTrue(pending.isDone());
+    Assertions.assertTrue(tree.contains(99999));
+    Assertions.assertThrows(IllegalStateException.class, () -> service.contains(1));
+  }
+
+  @Test
+  public void testSetAlgebra() {
+    Random random = new Random(45);
+    AMT a = new AMT();
+    AMT b = new AMT();
+    DualRBT dualA = new DualRBT(DualRBT.Mode.PRIMITIVE);
+    DualRBT dualB = new DualRBT();
+    TreeSet<Integer> setA = new TreeSet<>();
+    TreeSet<Integer> setB = new TreeSet<>();
+    // skewed toward even values so the partitions differ in size
+    for (int i = 0; i < 3000; i++) {
+      int value = random.nextInt(4000) + 1;
+      int other = random.nextInt(3000) * 2 + 2;
+      a.insert(value);
+      dualA.insert(value);
+      setA.add(value);
+      b.insert(other);
+      dualB.insert(other);
+      setB.add(other);
+    }
+
+    TreeSet<Integer> union = new TreeSet<>(setA);
+    union.addAll(setB);
+    TreeSet<Integer> intersection = new TreeSet<>(setA);
+    intersection.retainAll(setB);
+    TreeSet<Integer> difference = new TreeSet<>(setA);
+    difference.removeAll(setB);
+
+    List<AMT> amts = List.of(SetAlgebra.union(a, b),
+        SetAlgebra.intersect(a, b), SetAlgebra.difference(a, b));
+    List<DualRBT> duals = List.of(SetAlgebra.union(dualA, dualB),
+        SetAlgebra.intersect(dualA, dualB), SetAlgebra.difference(dualA, dualB));
+    List<TreeSet<Integer>> expected =
+        List.of(union, intersection, difference);
+    for (int k = 0; k < expected.size(); k++) {
+      AMT amt = amts.get(k);
+      DualRBT dual = duals.get(k);
+      Assertions.assertEquals(expected.get(k).size(), amt.size());
+      Assertions.assertEquals(expected.get(k).size(), dual.size());
+      Assertions.assertEquals(DualRBT.Mode.PRIMITIVE, dual.mode());
+      for (int value = 1; value <= 6002; value++) {
+        boolean present = expected.get(k).contains(value);
+        Assertions.assertEquals(present, amt.contains(value), "value " + value);
+        Assertions.assertEquals(present, dual.contains(value), "value " + value);
+      }
+      TreeDiagnostics.Report report = TreeDiagnostics.check(amt);
+      Assertions.assertEquals(0, report.evenOrderViolations);
+      Assertions.assertEquals(0, report.oddOrderViolations);
+      Assertions.assertTrue(report.isValid(), report.toString());
+      // the bulk-built tree keeps accepting inserts
+      amt.insert(9999);
+      Assertions.assertTrue(amt.contains(9999));
+    }
+
+    // the boxed mode of the first argument is kept and its trees are valid red-black trees
+    List<Integer> sorted = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      sorted.add(i / 3);
+    }
+    RedBlackTree<Integer> rbt = RedBlackTree.fromSorted(sorted);
+    TreeDiagnostics.Report rbtReport = TreeDiagnostics.check(rbt);
+    Assertions.assertTrue(rbtReport.isValid(), rbtReport.toString());
+    Assertions.assertEquals(3, rbt.count(100));
+    rbt.insert(100);
+    Assertions.assertEquals(4, rbt.count(100));
+    Assertions.assertEquals(DualRBT.Mode.BOXED, SetAlgebra.union(dualB, dualA).mode());
+
+    Assertions.assertArrayEquals(new int[] {1, 2, 3, 5, 7},
+        SetAlgebra.union(new int[] {1, 3, 5}, new int[] {2, 3, 7}));
+    Assertions.assertArrayEquals(new int[] {3},
+        SetAlgebra.intersect(new int[] {1, 3, 5}, new int[] {2, 3, 7}));
+    Assertions.assertArrayEquals(new int[] {1, 5},
+        SetAlgebra.difference(new int[] {1, 3, 5}, new int[] {2, 3, 7}));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> AMT.fromSorted(new int[] {4, 2}, new int[0]));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> AMT.fromSorted(new int[] {3}, new int[0]));
+  }
+
+  @Test
+  public void testCursors() {
+    Random random = new Random(47);
+    AMT tree = new AMT();
+    RedBlackTree<Integer> rbt = new RedBlackTree<>();
+    for (int i = 0; i < 5000; i++) {
+      int value = random.nextInt(20000) + 1;
+      tree.insert(value);
+      rbt.insert(value);
+    }
+    AMTCursor cursor = tree.cursor();
+    BSTCursor<Integer> rbtCursor = rbt.cursor();
+    // an ascending scan, then jumps in both directions
+    for (int value = 1; value <= 20001; value++) {
+      Assertions.assertEquals(tree.contains(value), cursor.contains(value), "value " + value);
+      Assertions.assertEquals(rbt.contains(value), rbtCursor.contains(value), "value " + value);
+    }
+    for (int i = 0; i < 20000; i++) {
+      int value = random.nextInt(20002) + (i % 2 == 0 ? 0 : -1);
+      Assertions.assertEquals(value >= 1 && tree.contains(value), cursor.contains(value));
+      Assertions.assertEquals(rbt.contains(value), rbtCursor.contains(value));
+    }
+
+    // seek lands on the value or on a neighbor of the same parity
+    int absent = 1;
+    while (tree.contains(absent) || tree.contains(absent + 2)) {
+      absent += 2;
+    }
+    int landed = cursor.seek(absent);
+    Assertions.assertTrue(landed % 2 == 1 && landed != absent && tree.contains(landed));
+    Assertions.assertEquals(Integer.valueOf(rbt.contains(100) ? 100 : rbtCursor.seek(100)),
+        rbtCursor.seek(100));
+
+    // inserts invalidate the remembered paths
+    cursor.seek(absent);
+    rbtCursor.seek(absent);
+    tree.insert(absent);
+    rbt.insert(absent);
+    Assertions.assertTrue(cursor.contains(absent));
+    Assertions.assertTrue(rbtCursor.contains(absent));
+    Assertions.assertEquals(Integer.valueOf(absent), rbtCursor.current());
+    rbt.clear();
+    Assertions.assertNull(rbtCursor.current());
+    Assertions.assertFalse(rbtCursor.contains(absent));
+    Assertions.assertFalse(new AMT().cursor().contains(2));
+  }
+
+  @Test
+  public void testHotKeyCache() {
+    // every cached key must stay reachable through evictions and deletions
+    HotKeyCache cache = new HotKeyCache(100);
+    Map<Integer, Boolean> cached = new HashMap<>();
+    Random random = new Random(48);
+    for (int i = 0; i < 100000; i++) {
+      int key = random.nextInt(400) + 1;
+      int operation = random.nextInt(10);
+      if (operation < 6) {
+        int result = cache.get(key);
+        if (result != HotKeyCache.NOT_CACHED) {
+          Assertions.assertEquals(cached.get(key), result == HotKeyCache.CACHED_PRESENT);
+        }
+      } else if (operation < 9) {
+        boolean present = random.nextBoolean();
+        cache.put(key, present);
+        cached.put(key, present);
+      } else {
+        cache.invalidate(key);
+        Assertions.assertEquals(HotKeyCache.NOT_CACHED, cache.get(key));
+      }
+      Assertions.assertTrue(cache.size() <= 100);
+    }
+    Assertions.assertTrue(cache.evictions() > 0 && cache.invalidations() > 0);
+
+    AMT tree = new AMT();
+    HotKeyCache hot = tree.enableHotKeyCache(64);
+    AMTMetrics metrics = tree.enableMetrics();
+    for (int i = 1; i <= 1000; i += 3) {
+      tree.insert(i);
+    }
+    for (int round = 0; round < 10; round++) {
+      for (int key = 1; key <= 32; key++) {
+        Assertions.assertEquals(key % 3 == 1, tree.contains(key));
+      }
+    }
+    // each key is admitted on its second miss
+    Assertions.assertEquals(64, hot.misses());
+    Assertions.assertEquals(256, hot.hits());
+    Assertions.assertEquals(0.8, hot.hitRate(), 1e-9);
+    Assertions.assertEquals(320, metrics.snapshot().hits + metrics.snapshot().misses);
+
+    // an insert invalidates a cached miss
+    Assertions.assertFalse(tree.contains(2));
+    tree.insert(2);
+    Assertions.assertTrue(tree.contains(2));
+    Assertions.assertEquals(1, hot.invalidations());
+
+    // cold keys cycle through the cache without pushing out a referenced hot key
+    long hitsBefore = hot.hits();
+    for (int key = 100; key < 1000; key++) {
+      tree.contains(key);
+      tree.contains(key);
+      Assertions.assertTrue(tree.contains(1));
+    }
+    Assertions.assertEquals(900, hot.hits() - hitsBefore);
+    Assertions.assertEquals(64, hot.size());
+    Assertions.assertTrue(hot.evictions() > 0);
+    Assertions.assertThrows(UnsupportedOperationException.class,
+        () -> new SynchronizedAMT().enableHotKeyCache(16));
+  }
+
+  @Test
+  public void testSynchronizedScans() throws Exception {
+    SynchronizedAMT amt = new SynchronizedAMT();
+    SynchronizedDualRBT dual = new SynchronizedDualRBT();
+    Thread writer = new Thread(() -> {
+      for (int value = 1; value <= 20000; value++) {
+        amt.insert(value);
+        dual.insert(value);
+      }
+    });
+    writer.start();
+    // scans running alongside the writer always see a sorted prefix of what was inserted
+    while (writer.isAlive()) {
+      for (boolean isEven : new boolean[] {true, false}) {
+        int[] last = {0};
+        amt.forEachInRange(isEven, 1, 20000, value -> {
+          Assertions.assertEquals(last[0] == 0 ? (isEven ? 2 : 1) : last[0] + 2, value);
+          last[0] = value;
+        });
+        last[0] = 0;
+        dual.forEachInRange(isEven, 1, 20000, value -> {
+          Assertions.assertEquals(last[0] == 0 ? (isEven ? 2 : 1) : last[0] + 2, value);
+          last[0] = value;
+        });
+        int previous = 0;
+        for (PrimitiveIterator.OfInt values = amt.iterator(isEven);
+            values.hasNext(); ) {
+          int value = values.nextInt();
+          Assertions.assertTrue(value > previous);
+          previous = value;
+        }
+      }
+      boolean[] results = new boolean[2];
+      amt.containsAllSorted(new int[] {1, 2}, results);
+      dual.freeze();
+    }
+    writer.join();
+    Assertions.assertEquals(20000, amt.freeze().size());
+    Assertions.assertEquals(20000, dual.freeze().size());
+    Assertions.assertThrows(UnsupportedOperationException.class, amt::cursor);
+  }
+
+  @Test
+  public void testCompactLayouts() {
+    AMT amt = new AMT();
+    CompactAMT compact = new CompactAMT();
+    DualRBT primitive = new DualRBT(DualRBT.Mode.PRIMITIVE);
+    DualRBT compactDual = new DualRBT(DualRBT.Mode.COMPACT);
+    Random random = new Random(49);
+    for (int i = 0; i < 2000; i++) {
+      int value = random.nextInt(1000) + 1;
+      amt.insert(value);
+      compact.insert(value);
+      primitive.insert(value);
+      compactDual.insert(value);
+    }
+    Assertions.assertEquals(amt.root.toLevelOrderString(), compact.toLevelOrderString());
+    Assertions.assertEquals(amt.size(), compact.size());
+
+    // both trees rebalance the same way on ascending inserts too
+    AMT ascending = new AMT();
+    CompactAMT compactAscending = new CompactAMT();
+    for (int value = 1; value <= 3000; value++) {
+      ascending.insert(value);
+      compactAscending.insert(value);
+    }
+    Assertions.assertEquals(ascending.root.toLevelOrderString(),
+        compactAscending.toLevelOrderString());
+    Assertions.assertEquals(primitive.size(), compactDual.size());
+    for (int value = 1; value <= 1001; value++) {
+      Assertions.assertEquals(amt.contains(value), compact.contains(value));
+      Assertions.assertEquals(amt.count(value), compact.count(value));
+      Assertions.assertEquals(primitive.contains(value), compactDual.contains(value));
+      Assertions.assertEquals(primitive.count(value), compactDual.count(value));
+    }
+
+    for (boolean isEven : new boolean[] {true, false}) {
+      PrimitiveIterator.OfInt expected = amt.iterator(isEven);
+      PrimitiveIterator.OfInt actual = compact.iterator(isEven);
+      while (expected.hasNext()) {
+        Assertions.assertEquals(expected.nextInt(), actual.nextInt());
+      }
+      Assertions.assertFalse(actual.hasNext());
+
+      List<Integer> expectedRange = new ArrayList<>();
+      List<Integer> actualRange = new ArrayList<>();
+      primitive.forEachInRange(isEven, 200, 700, expectedRange::add);
+      compactDual.forEachInRange(isEven, 200, 700, actualRange::add);
+      Assertions.assertEquals(expectedRange, actualRange);
+      expectedRange.clear();
+      actualRange.clear();
+      amt.forEachInRange(isEven, 200, 700, expectedRange::add);
+      compact.forEachInRange(isEven, 200, 700, actualRange::add);
+      Assertions.assertEquals(expectedRange, actualRange);
+    }
+
+    Assertions.assertEquals(primitive.freeze().size(), compactDual.freeze().size());
+    DualRBT built = DualRBT.fromSorted(DualRBT.Mode.COMPACT, new int[] {2, 4, 8}, new int[] {1, 9});
+    Assertions.assertEquals(DualRBT.Mode.COMPACT, built.mode());
+    Assertions.assertTrue(built.contains(8) && built.contains(9) && !built.contains(3));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> compact.insert(0));
+  }
+
+  /**
+   * Tests that the tree has exactly the shape and colors of an IntRedBlackTree built from the
+   * same keys, for both parities and with duplicates.
+   */
+  @Test
+  public void testCompactIntRedBlackTree() {
+    for (int parity = 0; parity < 2; parity++) {
+      CompactIntRedBlackTree tree = new CompactIntRedBlackTree(parity == 0);
+      IntRedBlackTree reference = new IntRedBlackTree();
+      Random random = new Random(49 + parity);
+
+      for (int i = 0; i < 500; i++) {
+        int value = random.nextInt(200) * 2 + parity;
+        tree.insert(value);
+        reference.insert(value);
+        Assertions.assertEquals(reference.toLevelOrderString(), tree.toLevelOrderString());
+      }
+
+      Assertions.assertEquals(reference.size(), tree.size());
+      for (int value = -1; value <= 400; value++) {
+        Assertions.assertEquals(reference.contains(value), tree.contains(value));
+        Assertions.assertEquals(reference.count(value), tree.count(value));
+      }
+
+      StringBuilder expected = new StringBuilder();
+      reference.forEachInRange(100, 300, value -> expected.append(value).append(' '));
+      StringBuilder actual = new StringBuilder();
+      tree.forEachInRange(100, 300, value -> actual.append(value).append(' '));
+      Assertions.assertEquals(expected.toString(), actual.toString());
+    }
+  }
+
+  /**
+   * Tests the parity check, negative keys, and the bulk build against IntRedBlackTree's.
+   */
+  @Test
+  public void testCompactIntRedBlackTreeParity() {
+    CompactIntRedBlackTree odd = new CompactIntRedBlackTree(false);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> odd.insert(4));
+    odd.insert(-3);
+    odd.insert(-1);
+    odd.insert(1);
+    Assertions.assertTrue(odd.contains(-3));
+    Assertions.assertFalse(odd.contains(-2));
+    StringBuilder sb = new StringBuilder();
+    odd.forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, value -> sb.append(value).append(' '));
+    Assertions.assertEquals("-3 -1 1 ", sb.toString());
+
+    int[] sorted = {2, 4, 4, 6, 10, 12, 14, 20, 22, 30};
+    Assertions.assertEquals(IntRedBlackTree.fromSorted(sorted).toLevelOrderString(),
+        CompactIntRedBlackTree.fromSorted(true, sorted).toLevelOrderString());
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> CompactIntRedBlackTree.fromSorted(true, new int[] {2, 3}));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> CompactIntRedBlackTree.fromSorted(true, new int[] {4, 2}));
+  }
+
+  @Test
+  public void testBalancingPolicies() {
+    for (StandardBalancingPolicy policy : StandardBalancingPolicy.values()) {
+      BalancedTree<Integer> tree = new BalancedTree<>(policy);
+      RedBlackTree<Integer> reference = new RedBlackTree<>();
+      Random random = new Random(50);
+      for (int i = 0; i < 3000; i++) {
+        int value = random.nextInt(2000);
+        tree.insert(value);
+        reference.insert(value);
+      }
+      checkBalanced(policy, tree.getRoot());
+      Assertions.assertEquals(reference.size(), tree.size());
+      List<Integer> expected = new ArrayList<>();
+      List<Integer> actual = new ArrayList<>();
+      inOrder(reference.root, expected);
+      inOrder(tree.root, actual);
+      Assertions.assertEquals(expected, actual, policy.name());
+      for (int value = -1; value <= 2001; value++) {
+        Assertions.assertEquals(reference.contains(value), tree.contains(value));
+        Assertions.assertEquals(reference.count(value), tree.count(value));
+      }
+
+      // ascending inserts would make an unbalanced tree a list
+      BalancedTree<Integer> sorted = new BalancedTree<>(policy);
+      int n = 4096;
+      for (int value = 1; value <= n; value++) {
+        sorted.insert(value);
+      }
+      checkBalanced(policy, sorted.getRoot());
+      double log2 = Math.log(n + 1) / Math.log(2);
+      double bound = policy == StandardBalancingPolicy.AVL ? 1.45 * log2
+          : policy == StandardBalancingPolicy.SCAPEGOAT ? Math.log(n) / Math.log(1.5) + 1
+          : policy == StandardBalancingPolicy.TREAP ? 4 * log2 : 2 * log2;
+      Assertions.assertTrue(sorted.height() <= bound, policy + " height " + sorted.height());
+      sorted.clear();
+      Assertions.assertEquals(0, sorted.size());
+    }
+
+    // a policy that never rebalances leaves the plain BinarySearchTree shape
+    BalancedTree<Integer> unbalanced = new BalancedTree<>(new BalancingPolicy() {
+      @Override
+      public int initialMetadata() {
+        return 0;
+      }
+
+      @Override
+      public <T extends Comparable<T>> void afterInsert(BalancedTree<T> tree,
+          BalancedNode<T> node) {
+      }
+    });
+    for (int value = 1; value <= 100; value++) {
+      unbalanced.insert(value);
+    }
+    Assertions.assertEquals(100, unbalanced.height());
+    Assertions.assertThrows(NullPointerException.class, () -> new BalancedTree<Integer>(null));
+    Assertions.assertThrows(NullPointerException.class, () -> unbalanced.insert(null));
+  }
+
+  private static void inOrder(BSTNode<Integer> node, List<Integer> values) {
+    if (node != null) {
+      inOrder(node.getLeft(), values);
+      values.add(node.getData());
+      inOrder(node.getRight(), values);
+    }
+  }
+
+  /**
+   * Checks the parent links and the invariants of policy below node.
+   *
+   * @return the black height for LLRB, otherwise the height of the subtree
+   */
+  private static int checkBalanced(StandardBalancingPolicy policy, BalancedNode<Integer> node) {
+    if (node == null) {
+      return 0;
+    }
+    BalancedNode<Integer> left = node.getLeft();
+    BalancedNode<Integer> right = node.getRight();
+    Assertions.assertTrue(left == null || left.getUp() == node);
+    Assertions.assertTrue(right == null || right.getUp() == node);
+    int leftHeight = checkBalanced(policy, left);
+    int rightHeight = checkBalanced(policy, right);
+    int metadata = node.getMetadata();
+    switch (policy) {
+      case LLRB:
+        Assertions.assertFalse(right != null && right.getMetadata() == 1, "red right child");
+        Assertions.assertFalse(metadata == 1 && left != null && left.getMetadata() == 1,
+            "red node with a red child");
+        Assertions.assertEquals(leftHeight, rightHeight, "black height");
+        return leftHeight + (metadata == 1 ? 0 : 1);
+      case AA:
+        int leftLevel = left == null ? 0 : left.getMetadata();
+        int rightLevel = right == null ? 0 : right.getMetadata();
+        Assertions.assertEquals(metadata - 1, leftLevel, "left level");
+        Assertions.assertTrue(rightLevel == metadata || rightLevel == metadata - 1, "right level");
+        Assertions.assertTrue(right == null || right.getRight() == null
+            || right.getRight().getMetadata() < metadata, "right grandchild level");
+        break;
+      case AVL:
+        Assertions.assertEquals(1 + Math.max(leftHeight, rightHeight), metadata, "height");
+        Assertions.assertTrue(Math.abs(leftHeight - rightHeight) <= 1, "balance");
+        break;
+      case TREAP:
+        Assertions.assertTrue(left == null || left.getMetadata() <= metadata, "heap order");
+        Assertions.assertTrue(right == null || right.getMetadata() <= metadata, "heap order");
+        break;
+      default:
+        break;
+    }
+    return 1 + Math.max(leftHeight, rightHeight);
+  }
 }
@@ -0,0 +1,209 @@
+import java.util.PrimitiveIterator;
+
+/**
+ * A parity-partitioned tree that changes its layout when the data turns out to be skewed. It
+ * starts as an AMT, which only pays off when even and odd values arrive in similar numbers: with a
+ * feed that is almost all even, most AMT nodes carry an empty odd slot.
+ *
+ * The tree counts the values of each parity and keeps a small uniform sample of each. Once one
+ * parity holds more than the skew threshold of all values, the tree repartitions: the cold parity
+ * goes into a single IntRedBlackTree, and the hot parity into a RangePartitionedTree split at
+ * quantiles of its sample, one IntRedBlackTree per range. Those nodes hold one key each, so no
+ * slot is wasted, and each range tree is balanced and only as deep as its share of the data
+ * requires.
+ *
+ * The old AMT is migrated incrementally: every insert or contains after the switch moves a few
+ * values over on the calling thread, and lookups consult both layouts until the move is done.
+ * Values must be greater than or equal to 1, as in AMT. This class is not thread-safe.
+ */
+class AdaptivePartitionTree {
+
+  public static final double DEFAULT_SKEW_THRESHOLD = 0.9;
+  public static final int DEFAULT_HOT_PARTITIONS = 8;
+
+  // no repartitioning below this many values, where the layout hardly matters
+  static final int MIN_SIZE_FOR_REPARTITION = 4096;
+
+  // the number of values sampled per parity to choose the split points of the hot parity
+  static final int SAMPLE_SIZE = 256;
+
+  // the number of values migrated from the old AMT per operation
+  static final int MIGRATION_STEP = 64;
+
+  private final double skewThreshold;
+  private final int hotPartitions;
+
+  // the original layout, or null once everything has been migrated out of it
+  private AMT amt = new AMT();
+
+  // per parity (0 even, 1 odd): value counts and reservoir samples
+  private final int[] counts = new int[2];
+  private final int[][] samples = new int[2][SAMPLE_SIZE];
+  private int randomState = 0x2545F491;
+
+  // the repartitioned layout, or null before the switch: one range-partitioned tree per parity
+  private RangePartitionedTree[] ranges;
+
+  // the old AMT's partitions, read in order while migrating, or null
+  private PrimitiveIterator.OfInt evenSource;
+  private PrimitiveIterator.OfInt oddSource;
+
+  public AdaptivePartitionTree() {
+    this(DEFAULT_SKEW_THRESHOLD, DEFAULT_HOT_PARTITIONS);
+  }
+
+  /**
+   * Creates an empty tree.
+   *
+   * @param skewThreshold the share of all values, in (0.5, 1], that one parity must reach for the
+   *                      tree to repartition
+   * @param hotPartitions the number of ranges the hot parity is split into
+   */
+  public AdaptivePartitionTree(double skewThreshold, int hotPartitions) {
+    if (skewThreshold <= 0.5 || skewThreshold > 1) {
+      throw new IllegalArgumentException("Skew threshold must be in (0.5, 1]");
+    }
+    if (hotPartitions < 1) {
+      throw new IllegalArgumentException("Hot partitions must be greater than or equal to 1");
+    }
+    this.skewThreshold = skewThreshold;
+    this.hotPartitions = hotPartitions;
+  }
+
+  public void insert(int value) {
+    if (value < 1) {
+      throw new IllegalArgumentException("Value must be greater than or equal to 1");
+    }
+    int parity = value & 1;
+    sample(parity, value);
+    counts[parity]++;
+
+    if (ranges == null) {
+      amt.insert(value);
+      if (shouldRepartition()) {
+        repartition();
+      }
+    } else {
+      rangeOf(value).insert(value);
+      migrateStep();
+    }
+  }
+
+  public boolean contains(int value) {
+    if (value < 1) {
+      return false;
+    }
+    if (ranges == null) {
+      return amt.contains(value);
+    }
+    migrateStep();
+    // values not yet migrated are still in the AMT
+    return rangeOf(value).contains(value) || (amt != null && amt.contains(value));
+  }
+
+  public int size() {
+    return counts[0] + counts[1];
+  }
+
+  /**
+   * @return true once the tree has switched to the skew layout, even if migration is not done
+   */
+  public boolean isRepartitioned() {
+    return ranges != null;
+  }
+
+  /**
+   * @return true while values are still being moved out of the old AMT
+   */
+  public boolean isMigrating() {
+    return amt != null && ranges != null;
+  }
+
+  /**
+   * @param isEven true for the even partition, false for the odd partition
+   * @return the number of range trees the partition is split into, or 1 before repartitioning
+   */
+  public int partitionCount(boolean isEven) {
+    return ranges == null ? 1 : ranges[isEven ? 0 : 1].partitionCount();
+  }
+
+  /**
+   * Moves every remaining value out of the old AMT now instead of a few per operation.
+   */
+  public void finishMigration() {
+    while (isMigrating()) {
+      migrateStep();
+    }
+  }
+
+  /**
+   * Replaces a random element of the parity's sample with value, so that every value seen so far
+   * is in the sample with equal probability (reservoir sampling).
+   */
+  private void sample(int parity, int value) {
+    int seen = counts[parity];
+    if (seen < SAMPLE_SIZE) {
+      samples[parity][seen] = value;
+      return;
+    }
+    randomState ^= randomState << 13;
+    randomState ^= randomState >>> 17;
+    randomState ^= randomState << 5;
+    int slot = (int) (((randomState & 0xFFFFFFFFL) * (seen + 1)) >>> 32);
+    if (slot < SAMPLE_SIZE) {
+      samples[parity][slot] = value;
+    }
+  }
+
+  private boolean shouldRepartition() {
+    int total = counts[0] + counts[1];
+    return total >= MIN_SIZE_FOR_REPARTITION
+        && Math.max(counts[0], counts[1]) >= skewThreshold * total;
+  }
+
+  /**
+   * Switches to the skew layout and starts migrating the AMT into it.
+   */
+  private void repartition() {
+    int hot = counts[0] >= counts[1] ? 0 : 1;
+    ranges = new RangePartitionedTree[2];
+    ranges[hot] = RangePartitionedTree.fromSample(samples[hot], hotPartitions);
+    ranges[1 - hot] = new RangePartitionedTree(new int[0]);
+    // the AMT receives no more inserts, so its iterators stay valid
+    evenSource = amt.iterator(true);
+    oddSource = amt.iterator(false);
+  }
+
+  /**
+   * Returns the range-partitioned tree responsible for value in the skew layout.
+   */
+  private RangePartitionedTree rangeOf(int value) {
+    return ranges[value & 1];
+  }
+
+  /**
+   * Moves up to MIGRATION_STEP values from the old AMT into the range trees, and drops the AMT
+   * once both of its partitions have been read.
+   */
+  private void migrateStep() {
+    if (amt == null) {
+      return;
+    }
+    int moved = 0;
+    while (moved < MIGRATION_STEP && evenSource.hasNext()) {
+      int value = evenSource.nextInt();
+      rangeOf(value).insert(value);
+      moved++;
+    }
+    while (moved < MIGRATION_STEP && oddSource.hasNext()) {
+      int value = oddSource.nextInt();
+      rangeOf(value).insert(value);
+      moved++;
+    }
+    if (!evenSource.hasNext() && !oddSource.hasNext()) {
+      amt = null;
+      evenSource = null;
+      oddSource = null;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+import java.util.Arrays;
+
+/**
+ * A finger into a BinarySearchTree that starts each lookup where the previous one ended. The
+ * cursor remembers the search path to its position together with the range of values each node
+ * on it can hold, as given by its ancestors. A lookup climbs that path only until it reaches a
+ * node whose range strictly contains the key, then searches down from there, so on a balanced
+ * tree a key d positions away from the previous one costs O(log d) steps instead of O(log n).
+ *
+ * The path is dropped and the next lookup starts from the root whenever the tree has been
+ * modified since the cursor last used it. A cursor is not thread-safe, and lookups through it
+ * are not synchronized with writers to the tree.
+ *
+ * @param <T> the type of data the tree holds
+ */
+public class BSTCursor<T extends Comparable<T>> {
+
+  private final BinarySearchTree<T> tree;
+
+  // the path from the root to the current position, and the exclusive bounds of each node's
+  // range, where null means unbounded
+  private BSTNode<T>[] nodes;
+  private Object[] lows;
+  private Object[] highs;
+  private int depth;
+
+  // the tree's modCount when the path was recorded
+  private int expectedModCount;
+
+  @SuppressWarnings("unchecked")
+  BSTCursor(BinarySearchTree<T> tree) {
+    this.tree = tree;
+    this.nodes = (BSTNode<T>[]) new BSTNode<?>[32];
+    this.lows = new Object[32];
+    this.highs = new Object[32];
+  }
+
+  /**
+   * Moves the cursor to key, or to the last node on the search path for key when it is absent.
+   *
+   * @param key the value to look for
+   * @return the value at the new position: key itself if it is in the tree, otherwise one of its
+   *         neighbors in the tree, or null if the tree is empty
+   * @throws NullPointerException if key is null
+   */
+  public T seek(T key) {
+    search(key);
+    return depth == 0 ? null : nodes[depth - 1].getData();
+  }
+
+  /**
+   * Checks whether key is in the tree, searching from the cursor's position, and moves the cursor
+   * there.
+   *
+   * @param key the value to look for
+   * @return true if the tree contains key one or more times
+   * @throws NullPointerException if key is null
+   */
+  public boolean contains(T key) {
+    return search(key);
+  }
+
+  /**
+   * @return the value at the cursor's position, or null before the first lookup
+   */
+  public T current() {
+    return depth == 0 || tree.modCount != expectedModCount ? null : nodes[depth - 1].getData();
+  }
+
+  /**
+   * Forgets the cursor's position, so the next lookup starts from the root.
+   */
+  public void reset() {
+    Arrays.fill(nodes, 0, depth, null);
+    depth = 0;
+  }
+
+  private boolean search(T key) {
+    if (key == null) {
+      throw new NullPointerException("Provided data is null!");
+    }
+    if (depth == 0 || tree.modCount != expectedModCount) {
+      reset();
+      expectedModCount = tree.modCount;
+      if (tree.root == null) {
+        return false;
+      }
+      push(tree.root, null, null);
+    } else {
+      // climb until the key must lie below the top of the path if it is anywhere in the tree
+      while (depth > 1 && !strictlyInside(key, depth - 1)) {
+        nodes[--depth] = null;
+      }
+    }
+
+    BSTNode<T> node = nodes[depth - 1];
+    while (true) {
+      int comparison = key.compareTo(node.getData());
+      if (comparison == 0) {
+        return true;
+      }
+      BSTNode<T> next = comparison < 0 ? node.getLeft() : node.getRight();
+      if (next == null) {
+        return false;
+      }
+      Object low = lows[depth - 1];
+      Object high = highs[depth - 1];
+      push(next, comparison < 0 ? low : node.getData(), comparison < 0 ? node.getData() : high);
+      node = next;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean strictlyInside(T key, int frame) {
+    return (lows[frame] == null || key.compareTo((T) lows[frame]) > 0)
+        && (highs[frame] == null || key.compareTo((T) highs[frame]) < 0);
+  }
+
+  private void push(BSTNode<T> node, Object low, Object high) {
+    if (depth == nodes.length) {
+      nodes = Arrays.copyOf(nodes, depth * 2);
+      lows = Arrays.copyOf(lows, depth * 2);
+      highs = Arrays.copyOf(highs, depth * 2);
+    }
+    nodes[depth] = node;
+    lows[depth] = low;
+    highs[depth] = high;
+    depth++;
+  }
+}
@@ -31,6 +31,21 @@ public class BSTNode<T> {
      */
     public T getData() { return this.data; }
 
+    /**
+     * @return the number of occurrences of the value stored in this node, which is always 1
+     * unless the node belongs to a tree in multiset mode
+     */
+    public int getCount() { return 1; }
+
+    /**
+     * Records one more occurrence of the value stored in this node. Only the counted nodes used
+     * by trees in multiset mode support this.
+     * @throws UnsupportedOperationException if this node does not count occurrences
+     */
+    public void incrementCount() {
+        throw new UnsupportedOperationException("This node does not count occurrences");
+    }
+
     /**
      * @return the reference to the left child of this node, 
      * or null if this node has no left child
@@ -7,6 +7,22 @@
  */
 public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T> {
 
+  /**
+   * Creates an empty tree that stores every duplicate value in a node of its own.
+   */
+  public BSTRotation() {
+    super();
+  }
+
+  /**
+   * Creates an empty tree.
+   *
+   * @param multiset true to store one counted node per distinct value
+   */
+  public BSTRotation(boolean multiset) {
+    super(multiset);
+  }
+
   /**
    * Performs the rotation operation on the provided nodes within this tree. When the provided child
    * is a left child of the provided parent, this method will perform a right rotation. When the
@@ -0,0 +1,65 @@
+/**
+ * This class represents a node in a BalancedTree and inherits from BSTNode. Besides its value and
+ * links it holds one int of metadata whose meaning is up to the tree's BalancingPolicy: a color,
+ * a level, a height or a priority.
+ */
+public class BalancedNode<T> extends BSTNode<T> {
+
+    // the balancing metadata of this node
+    protected int metadata;
+
+    /**
+     * Constructor that creates a new node with the value data and the given metadata.
+     * Both parent and child references of the new node are initialized to null.
+     * @param data the value the new node stores
+     * @param metadata the initial balancing metadata
+     */
+    public BalancedNode(T data, int metadata) {
+        super(data);
+        this.metadata = metadata;
+    }
+
+    /**
+     * Overrides the getLeft() method from BSTNode so that child reference is returned
+     * as a BalancedNode and does not need to be casted.
+     */
+    @Override
+    public BalancedNode<T> getLeft() {
+        return (BalancedNode<T>)this.left;
+    }
+
+    /**
+     * Overrides the getRight() method from BSTNode so that child reference is returned
+     * as a BalancedNode and does not need to be casted.
+     */
+    @Override
+    public BalancedNode<T> getRight() {
+        return (BalancedNode<T>)this.right;
+    }
+
+    /**
+     * Overrides the getUp() method from BSTNode so that child reference is returned
+     * as a BalancedNode and does not need to be casted.
+     */
+    @Override
+    public BalancedNode<T> getUp() {
+        return (BalancedNode<T>)this.up;
+    }
+
+    /**
+     * @return the balancing metadata of this node
+     */
+    public int getMetadata() {
+        return this.metadata;
+    }
+
+    /**
+     * Returns a string representation for this node.
+     * @return a string representation of the node's value and metadata
+     */
+    @Override
+    public String toString() {
+        return this.data.toString() + "[" + this.metadata + "]";
+    }
+
+}
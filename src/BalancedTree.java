@@ -0,0 +1,97 @@
+/**
+ * A binary search tree whose balancing scheme is supplied by a BalancingPolicy, so that LLRB, AA,
+ * AVL, treap and scapegoat balancing all run behind the same SortedCollection API. The tree
+ * inserts like BinarySearchTree, with equal values going left, and then hands the new node to its
+ * policy, which rebalances with BSTRotation.rotate. Duplicates are stored as separate nodes.
+ *
+ * @param <T> the type of data the tree holds
+ */
+public class BalancedTree<T extends Comparable<T>> extends BSTRotation<T> {
+
+  private final BalancingPolicy policy;
+
+  // number of values in the tree, including duplicates
+  protected int size;
+
+  /**
+   * Creates an empty tree.
+   *
+   * @param policy the balancing scheme, for example one of StandardBalancingPolicy
+   * @throws NullPointerException if policy is null
+   */
+  public BalancedTree(BalancingPolicy policy) {
+    super();
+    if (policy == null) {
+      throw new NullPointerException("Provided policy is null!");
+    }
+    this.policy = policy;
+  }
+
+  public BalancingPolicy policy() {
+    return policy;
+  }
+
+  /**
+   * Inserts a new data value and lets the policy rebalance the tree.
+   *
+   * @param data the new value being inserted
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public void insert(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Provided data is null!");
+    }
+    this.modCount++;
+    BalancedNode<T> toAdd = createNode(data);
+    this.size++;
+    if (this.root == null) {
+      this.root = toAdd;
+    } else {
+      insertHelper(toAdd, this.root);
+    }
+    policy.afterInsert(this, toAdd);
+  }
+
+  /**
+   * Returns the number of values in the tree from a counter instead of a walk over every node.
+   *
+   * @return the number of values in the tree, including duplicates
+   */
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    this.size = 0;
+  }
+
+  /**
+   * @return the number of nodes on the longest path from the root to a leaf, 0 for an empty tree
+   */
+  public int height() {
+    return heightHelper(this.root);
+  }
+
+  private int heightHelper(BSTNode<T> node) {
+    if (node == null) {
+      return 0;
+    }
+    return 1 + Math.max(heightHelper(node.getLeft()), heightHelper(node.getRight()));
+  }
+
+  /**
+   * @return the root of the tree, or null if the tree is empty
+   */
+  protected BalancedNode<T> getRoot() {
+    return (BalancedNode<T>) this.root;
+  }
+
+  @Override
+  protected BalancedNode<T> createNode(T data) {
+    return new BalancedNode<>(data, policy.initialMetadata());
+  }
+}
@@ -0,0 +1,23 @@
+/**
+ * This interface defines how a BalancedTree keeps itself balanced. A policy chooses the metadata
+ * of each new node and repairs the tree after each insert, changing its shape only through the
+ * tree's rotate method. StandardBalancingPolicy provides the common schemes.
+ */
+public interface BalancingPolicy {
+
+    /**
+     * Returns the metadata a newly inserted node starts with.
+     * @return the initial metadata of a new node
+     */
+    public int initialMetadata();
+
+    /**
+     * Restores the policy's invariants after node was linked into the tree as a new leaf, or as
+     * the root of a previously empty tree.
+     * @param tree the tree node was inserted into; its size already counts node
+     * @param node the new node
+     */
+    public <T extends Comparable<T>> void afterInsert(BalancedTree<T> tree,
+        BalancedNode<T> node);
+
+}
@@ -1,5 +1,7 @@
 import java.util.*;
 import java.time.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryUsage;
@@ -8,6 +10,11 @@ public class Benchmark {
   private static final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
   private static final int WARMUP_ITERATIONS = 5;
   private static final int TEST_ITERATIONS = 10;
+  private static final int MAX_THREADS = 64;
+  private static final long MIXED_DURATION_MILLIS = 1000;
+  private static final int[] DEFAULT_THREAD_COUNTS = {1, 4, 16, 64};
+  private static final int[] READ_PERCENTAGES = {50, 95, 99};
+  private static final int LARGE_DATA_SIZE = 10_000_000;
 
   static class BenchmarkResult {
     double avgTimeNanos;
@@ -26,7 +33,44 @@ public class Benchmark {
     }
   }
 
+  static class MixedResult {
+    long totalOps;
+    long minThreadOps;
+    long maxThreadOps;
+    double fairness;
+    double elapsedNanos;
+
+    MixedResult(long[] opsPerThread, double elapsedNanos) {
+      this.elapsedNanos = elapsedNanos;
+      this.minThreadOps = Long.MAX_VALUE;
+      double sumSquares = 0;
+      for (long ops : opsPerThread) {
+        totalOps += ops;
+        minThreadOps = Math.min(minThreadOps, ops);
+        maxThreadOps = Math.max(maxThreadOps, ops);
+        sumSquares += (double) ops * ops;
+      }
+      // Jain's fairness index: 1.0 when every thread completed the same number of operations
+      this.fairness = sumSquares == 0 ? 1.0
+          : ((double) totalOps * totalOps) / (opsPerThread.length * sumSquares);
+    }
+
+    double throughput() {
+      return totalOps / (elapsedNanos / 1_000_000_000.0);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Throughput: %.0f ops/s, Per-thread ops: min %d / max %d, Fairness: %.3f",
+          throughput(), minThreadOps, maxThreadOps, fairness);
+    }
+  }
+
   public static void main(String[] args) {
+    // Thread counts for the mixed read/write scenarios, e.g. "1,8,32"; parsed first so that a bad
+    // argument is rejected before any benchmark runs
+    int[] threadCounts = args.length > 0 ? parseThreadCounts(args[0]) : DEFAULT_THREAD_COUNTS;
+
     // Test different dataset sizes
     int[] dataSizes = {1000, 10000, 100000, 1000000};
 
@@ -34,6 +78,41 @@ public class Benchmark {
       System.out.println("\nTesting with dataset size: " + size);
       runBenchmark(size);
     }
+
+    System.out.println("\nTesting skewed workload (95% even) with dataset size: 1000000");
+    runSkewedBenchmark(1000000, 95);
+
+    for (double exponent : new double[] {0.99, 1.2}) {
+      System.out.println("\nTesting Zipf lookups (s = " + exponent + ") with dataset size: 1000000");
+      runZipfBenchmark(1000000, exponent);
+    }
+
+    System.out.println("\nRange Scan Benchmark with dataset size: 1000000");
+    benchmarkRangeScans(1000000);
+
+    System.out.println("\nSet Algebra Benchmark with dataset size: 1000000");
+    benchmarkSetAlgebra(1000000);
+
+    System.out.println("\nBatch Merge Benchmark with dataset size: 1000000");
+    benchmarkBatchMerge(1000000);
+
+    System.out.println("\nCursor Probe Benchmark with dataset size: 1000000");
+    benchmarkCursorProbes(1000000);
+
+    System.out.println("\nBalancing Policy Benchmark with dataset size: 100000");
+    benchmarkBalancingPolicies(100000);
+
+    System.out.println("\nSearch Kernel Benchmark:");
+    benchmarkSearchKernels();
+
+    System.out.println("\nTesting mixed read/write workloads with dataset size: 100000");
+    runMixedBenchmark(100000, threadCounts);
+
+    // Tree height dominates at this size; run with -Dbenchmark.large=true and a heap of 4 GB or more
+    if (Boolean.getBoolean("benchmark.large")) {
+      System.out.println("\nTesting with dataset size: " + LARGE_DATA_SIZE);
+      runLargeBenchmark(LARGE_DATA_SIZE);
+    }
   }
 
   private static void runBenchmark(int dataSize) {
@@ -45,15 +124,29 @@ public class Benchmark {
     System.out.println("\nInsertion Benchmark:");
     BenchmarkResult amtInsert = benchmarkInsertion(new AMT(), insertData, "AMT");
     BenchmarkResult dualInsert = benchmarkInsertion(new DualRBT(), insertData, "Dual RBT");
+    BenchmarkResult intDualInsert = benchmarkInsertion(new DualRBT(DualRBT.Mode.PRIMITIVE),
+        insertData, "Dual RBT (int)");
 
     // Run search benchmarks
     System.out.println("\nSearch Benchmark:");
     BenchmarkResult amtSearch = benchmarkSearch(new AMT(), insertData, searchData, "AMT");
     BenchmarkResult dualSearch = benchmarkSearch(new DualRBT(), insertData, searchData, "Dual RBT");
+    BenchmarkResult intDualSearch = benchmarkSearch(new DualRBT(DualRBT.Mode.PRIMITIVE),
+        insertData, searchData, "Dual RBT (int)");
+    benchmarkFrozenSearch(insertData, searchData);
+    AMT bloomAmt = new AMT();
+    bloomAmt.enableBloomFilter(dataSize / 2, 0.01);
+    DualRBT bloomDual = new DualRBT();
+    bloomDual.enableBloomFilter(dataSize / 2, 0.01);
+    benchmarkSearch(bloomAmt, insertData, searchData, "AMT + Bloom");
+    benchmarkSearch(bloomDual, insertData, searchData, "Dual RBT + Bloom");
 
     // Print comparative results
     printComparison("Insertion", amtInsert, dualInsert);
     printComparison("Search", amtSearch, dualSearch);
+    // the same comparisons against an unboxed baseline
+    printComparison("Insertion (int Dual RBT)", amtInsert, intDualInsert);
+    printComparison("Search (int Dual RBT)", amtSearch, intDualSearch);
   }
 
   private static BenchmarkResult benchmarkInsertion(Object tree, int[] data, String treeName) {
@@ -77,7 +170,8 @@ public class Benchmark {
     long memoryBefore = getUsedMemory();
 
     for (int i = 0; i < TEST_ITERATIONS; i++) {
-      Object freshTree = (tree instanceof AMT) ? new AMT() : new DualRBT();
+      Object freshTree = (tree instanceof AMT) ? new AMT()
+          : new DualRBT(((DualRBT) tree).mode());
 
       long startTime = System.nanoTime();
 
@@ -165,11 +259,642 @@ public class Benchmark {
     return new BenchmarkResult(avgTime, memoryAfter - memoryBefore);
   }
 
+  private static BenchmarkResult benchmarkFrozenSearch(int[] insertData, int[] searchData) {
+    AMT tree = new AMT();
+    for (int value : insertData) {
+      tree.insert(value);
+    }
+    FrozenAMT frozen = tree.freeze();
+    boolean[] results = new boolean[searchData.length];
+
+    // Warmup phase for both the single and the batched lookup
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      for (int value : searchData) {
+        frozen.contains(value);
+      }
+      frozen.containsAll(searchData, results);
+    }
+
+    long singleTime = 0;
+    long batchTime = 0;
+    for (int i = 0; i < TEST_ITERATIONS; i++) {
+      long startTime = System.nanoTime();
+      for (int value : searchData) {
+        frozen.contains(value);
+      }
+      singleTime += System.nanoTime() - startTime;
+
+      startTime = System.nanoTime();
+      frozen.containsAll(searchData, results);
+      batchTime += System.nanoTime() - startTime;
+    }
+
+    System.out.printf("Frozen AMT: Average time: %.2f ms, Batched: %.2f ms%n",
+        singleTime / (double) TEST_ITERATIONS / 1_000_000.0,
+        batchTime / (double) TEST_ITERATIONS / 1_000_000.0);
+
+    return new BenchmarkResult(singleTime / (double) TEST_ITERATIONS, 0);
+  }
+
+  /**
+   * Times the node search of the wide-node trees with the scalar kernel and with the kernel
+   * selected for this JVM, which is the Vector API kernel when src-vector is compiled in and the
+   * benchmark runs with --add-modules jdk.incubator.vector.
+   */
+  private static void benchmarkSearchKernels() {
+    IntSearchKernel[] kernels = {new ScalarSearchKernel(), SearchKernels.DEFAULT};
+    int[] probes = generateRandomData(1_000_000);
+
+    for (int nodeSize : new int[] {16, 32, 64}) {
+      int[] keys = generateRandomData(nodeSize);
+      Arrays.sort(keys);
+      for (IntSearchKernel kernel : kernels) {
+        long checksum = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+          for (int probe : probes) {
+            checksum += kernel.countLess(keys, nodeSize, probe);
+          }
+        }
+        long startTime = System.nanoTime();
+        for (int i = 0; i < TEST_ITERATIONS; i++) {
+          for (int probe : probes) {
+            checksum += kernel.countLess(keys, nodeSize, probe);
+          }
+        }
+        double nanosPerProbe = (System.nanoTime() - startTime)
+            / (double) (TEST_ITERATIONS * probes.length);
+        System.out.printf("%d keys, %s: %.2f ns per probe (checksum %d)%n", nodeSize,
+            kernel.getClass().getSimpleName(), nanosPerProbe, checksum);
+      }
+    }
+  }
+
+  private static void runMixedBenchmark(int dataSize, int[] threadCounts) {
+    int[] insertData = generateRandomData(dataSize);
+
+    for (int readPercent : READ_PERCENTAGES) {
+      System.out.printf("%nMixed Benchmark (%d%% reads / %d%% writes):%n",
+          readPercent, 100 - readPercent);
+      for (int threads : threadCounts) {
+        MixedResult amtMixed = benchmarkMixed(new SynchronizedAMT(), insertData, threads,
+            readPercent);
+        MixedResult dualMixed = benchmarkMixed(new SynchronizedDualRBT(), insertData, threads,
+            readPercent);
+        // the locking granularity differs: SynchronizedAMT guards its one shared tree with a
+        // single lock, while SynchronizedDualRBT locks each parity tree separately
+        System.out.printf("AMT (one lock), %d threads: %s%n", threads, amtMixed);
+        System.out.printf("Dual RBT (one lock per parity), %d threads: %s%n", threads, dualMixed);
+
+        // the service wraps a tree populated up front, since populating it through the service
+        // would wait for one batch per value
+        AMT coalescedTree = new AMT();
+        for (int value : insertData) {
+          coalescedTree.insert(value);
+        }
+        try (CoalescingAMTService service = new CoalescingAMTService(coalescedTree)) {
+          MixedResult coalescedMixed = benchmarkMixed(service, new int[0], threads, readPercent);
+          System.out.printf("Coalesced AMT, %d threads: %s, Mean batch: %.1f%n", threads,
+              coalescedMixed, service.operationCount() / (double) Math.max(1, service.batchCount()));
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs a fixed-duration workload in which every thread interleaves lookups and inserts on the
+   * same shared tree. The tree must be one of the thread-safe wrappers.
+   */
+  private static MixedResult benchmarkMixed(Object tree, int[] initialData, int threads,
+      int readPercent) {
+    if (threads < 1 || threads > MAX_THREADS) {
+      throw new IllegalArgumentException("Thread count must be between 1 and " + MAX_THREADS);
+    }
+    if (readPercent < 0 || readPercent > 100) {
+      throw new IllegalArgumentException("Read percentage must be between 0 and 100");
+    }
+
+    // Populate the tree so that reads are not all misses against an empty tree
+    for (int value : initialData) {
+      insertValue(tree, value);
+    }
+
+    long[] opsPerThread = new long[threads];
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] workers = new Thread[threads];
+
+    for (int t = 0; t < threads; t++) {
+      final int id = t;
+      workers[t] = new Thread(() -> {
+        SplittableRandom random = new SplittableRandom(id * 31L + readPercent);
+        long ops = 0;
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        long deadline = System.nanoTime() + MIXED_DURATION_MILLIS * 1_000_000L;
+        // Check the clock once every 256 operations to keep timing out of the hot loop
+        while ((ops & 0xFF) != 0 || System.nanoTime() < deadline) {
+          int value = random.nextInt(1000000) + 1;
+          if (random.nextInt(100) < readPercent) {
+            containsValue(tree, value);
+          } else {
+            insertValue(tree, value);
+          }
+          ops++;
+        }
+        opsPerThread[id] = ops;
+      });
+      workers[t].start();
+    }
+
+    long startTime = System.nanoTime();
+    start.countDown();
+    for (Thread worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    return new MixedResult(opsPerThread, System.nanoTime() - startTime);
+  }
+
+  /**
+   * Builds each tree once from the same data and times a single pass of inserts and of lookups.
+   * Repeated iterations are skipped because each build alone takes seconds at this size.
+   */
+  private static void runLargeBenchmark(int dataSize) {
+    int[] insertData = generateRandomData(dataSize, dataSize * 4);
+    int[] searchData = generateRandomData(dataSize / 10, dataSize * 4);
+    String[] names = {"AMT", "Compact AMT", "Dual RBT", "Dual RBT (int)", "Dual RBT (compact)",
+        "Wide AMT", "Bitmap AMT"};
+
+    for (String name : names) {
+      Object tree = name.equals("AMT") ? new AMT()
+          : name.equals("Compact AMT") ? new CompactAMT()
+          : name.equals("Dual RBT") ? new DualRBT()
+          : name.equals("Dual RBT (int)") ? new DualRBT(DualRBT.Mode.PRIMITIVE)
+          : name.equals("Dual RBT (compact)") ? new DualRBT(DualRBT.Mode.COMPACT)
+          : name.equals("Wide AMT") ? new WideAMT() : new BitmapAMT();
+      long memoryBefore = getUsedMemory();
+
+      long startTime = System.nanoTime();
+      for (int value : insertData) {
+        insertValue(tree, value);
+      }
+      long insertTime = System.nanoTime() - startTime;
+      long memoryAfter = getUsedMemory();
+
+      startTime = System.nanoTime();
+      for (int value : searchData) {
+        containsValue(tree, value);
+      }
+      long searchTime = System.nanoTime() - startTime;
+
+      System.out.printf("%s: Insert: %s, Search: %.2f ms, %.1f bytes/key%n", name,
+          new BenchmarkResult(insertTime, memoryAfter - memoryBefore),
+          searchTime / 1_000_000.0, (memoryAfter - memoryBefore) / (double) dataSize);
+    }
+  }
+
+  private static void insertValue(Object tree, int value) {
+    if (tree instanceof AMT) {
+      ((AMT) tree).insert(value);
+    } else if (tree instanceof CompactAMT) {
+      ((CompactAMT) tree).insert(value);
+    } else if (tree instanceof AdaptivePartitionTree) {
+      ((AdaptivePartitionTree) tree).insert(value);
+    } else if (tree instanceof CoalescingAMTService) {
+      ((CoalescingAMTService) tree).insert(value);
+    } else if (tree instanceof WideAMT) {
+      ((WideAMT) tree).insert(value);
+    } else if (tree instanceof BitmapAMT) {
+      ((BitmapAMT) tree).insert(value);
+    } else {
+      ((DualRBT) tree).insert(value);
+    }
+  }
+
+  private static boolean containsValue(Object tree, int value) {
+    if (tree instanceof AMT) {
+      return ((AMT) tree).contains(value);
+    } else if (tree instanceof CompactAMT) {
+      return ((CompactAMT) tree).contains(value);
+    } else if (tree instanceof AdaptivePartitionTree) {
+      return ((AdaptivePartitionTree) tree).contains(value);
+    } else if (tree instanceof CoalescingAMTService) {
+      return ((CoalescingAMTService) tree).contains(value);
+    } else if (tree instanceof WideAMT) {
+      return ((WideAMT) tree).contains(value);
+    } else if (tree instanceof BitmapAMT) {
+      return ((BitmapAMT) tree).contains(value);
+    } else {
+      return ((DualRBT) tree).contains(value);
+    }
+  }
+
+  private static int[] parseThreadCounts(String list) {
+    String[] parts = list.split(",");
+    int[] counts = new int[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      counts[i] = Integer.parseInt(parts[i].trim());
+      if (counts[i] < 1 || counts[i] > MAX_THREADS) {
+        throw new IllegalArgumentException("Thread count must be between 1 and " + MAX_THREADS);
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Times a scan over half of the key range of a range-partitioned tree, once in order on the
+   * calling thread and once with its partitions scanned in parallel on the common pool.
+   */
+  private static void benchmarkRangeScans(int dataSize) {
+    int[] insertData = generateRandomData(dataSize, dataSize * 4);
+    int partitionCount = 4 * Runtime.getRuntime().availableProcessors();
+    RangePartitionedTree tree = RangePartitionedTree.fromSample(
+        Arrays.copyOf(insertData, Math.min(dataSize, 64 * partitionCount)), partitionCount);
+    for (int value : insertData) {
+      tree.insert(value);
+    }
+    int low = dataSize;
+    int high = dataSize * 3;
+    LongAdder sum = new LongAdder();
+
+    // Warmup phase for both scans
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      tree.forEachInRange(low, high, sum::add);
+      tree.parallelForEachInRange(low, high, sum::add);
+    }
+
+    long sequentialTime = 0;
+    long parallelTime = 0;
+    for (int i = 0; i < TEST_ITERATIONS; i++) {
+      long startTime = System.nanoTime();
+      tree.forEachInRange(low, high, sum::add);
+      sequentialTime += System.nanoTime() - startTime;
+
+      startTime = System.nanoTime();
+      tree.parallelForEachInRange(low, high, sum::add);
+      parallelTime += System.nanoTime() - startTime;
+    }
+
+    System.out.printf("Range-partitioned (%d partitions): Sequential: %.2f ms, Parallel: %.2f ms%n",
+        partitionCount,
+        sequentialTime / (double) TEST_ITERATIONS / 1_000_000.0,
+        parallelTime / (double) TEST_ITERATIONS / 1_000_000.0);
+  }
+
+  /**
+   * Times the union of two AMTs built by inserting every value of one into a copy of the other,
+   * against SetAlgebra's merge of the sorted partitions and balanced bulk build.
+   */
+  private static void benchmarkSetAlgebra(int dataSize) {
+    int[] dataA = generateRandomData(dataSize, dataSize * 4);
+    int[] dataB = generateRandomData(dataSize, dataSize * 4);
+    AMT a = new AMT();
+    AMT b = new AMT();
+    a.insertAll(dataA);
+    b.insertAll(dataB);
+
+    // Warmup phase for both unions
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      insertUnion(dataA, dataB);
+      SetAlgebra.union(a, b);
+    }
+
+    long insertTime = 0;
+    long mergeTime = 0;
+    for (int i = 0; i < TEST_ITERATIONS; i++) {
+      long startTime = System.nanoTime();
+      insertUnion(dataA, dataB);
+      insertTime += System.nanoTime() - startTime;
+
+      startTime = System.nanoTime();
+      SetAlgebra.union(a, b);
+      mergeTime += System.nanoTime() - startTime;
+    }
+
+    System.out.printf("AMT union: Insert each: %.2f ms, Merge and bulk build: %.2f ms%n",
+        insertTime / (double) TEST_ITERATIONS / 1_000_000.0,
+        mergeTime / (double) TEST_ITERATIONS / 1_000_000.0);
+  }
+
+  /**
+   * Times adding a batch as large as the tree to a RedBlackTree, one insert at a time against
+   * insertAll's sort, bulk build and parallel join-based merge. Each run starts from a fresh tree,
+   * whose construction is not timed.
+   */
+  private static void benchmarkBatchMerge(int dataSize) {
+    int[] treeData = generateRandomData(dataSize, dataSize * 4);
+    List<Integer> batch = new ArrayList<>();
+    for (int value : generateRandomData(dataSize, dataSize * 4)) {
+      batch.add(value);
+    }
+    int iterations = 3;
+    long insertTime = 0;
+    long mergeTime = 0;
+    for (int i = 0; i < WARMUP_ITERATIONS + iterations; i++) {
+      RedBlackTree<Integer> tree = new RedBlackTree<>();
+      for (int value : treeData) {
+        tree.insert(value);
+      }
+      long startTime = System.nanoTime();
+      for (Integer value : batch) {
+        tree.insert(value);
+      }
+      long elapsed = System.nanoTime() - startTime;
+      if (i >= WARMUP_ITERATIONS) {
+        insertTime += elapsed;
+      }
+
+      tree = new RedBlackTree<>();
+      for (int value : treeData) {
+        tree.insert(value);
+      }
+      startTime = System.nanoTime();
+      tree.insertAll(batch);
+      elapsed = System.nanoTime() - startTime;
+      if (i >= WARMUP_ITERATIONS) {
+        mergeTime += elapsed;
+      }
+    }
+
+    System.out.printf(
+        "RedBlackTree batch (%d cores): Insert each: %.2f ms, Parallel merge: %.2f ms%n",
+        Runtime.getRuntime().availableProcessors(),
+        insertTime / (double) iterations / 1_000_000.0,
+        mergeTime / (double) iterations / 1_000_000.0);
+  }
+
+  /**
+   * Times each balancing policy of BalancedTree, and the classic RedBlackTree, on the same
+   * workloads: random inserts, ascending inserts, and lookups in the randomly built tree, half of
+   * which miss. Reports the height each scheme reaches on both insert orders.
+   */
+  private static void benchmarkBalancingPolicies(int dataSize) {
+    int[] randomData = generateRandomData(dataSize, dataSize * 4);
+    int[] searchData = generateRandomData(dataSize, dataSize * 8);
+    List<String> names = new ArrayList<>();
+    names.add("RedBlackTree");
+    for (StandardBalancingPolicy policy : StandardBalancingPolicy.values()) {
+      names.add(policy.name());
+    }
+
+    for (String name : names) {
+      long randomTime = 0;
+      long sortedTime = 0;
+      long searchTime = 0;
+      int randomHeight = 0;
+      int sortedHeight = 0;
+      for (int i = 0; i < WARMUP_ITERATIONS + TEST_ITERATIONS; i++) {
+        SortedCollection<Integer> random = newBalancedTree(name);
+        long startTime = System.nanoTime();
+        for (int value : randomData) {
+          random.insert(value);
+        }
+        long randomElapsed = System.nanoTime() - startTime;
+
+        SortedCollection<Integer> sorted = newBalancedTree(name);
+        startTime = System.nanoTime();
+        for (int value = 1; value <= dataSize; value++) {
+          sorted.insert(value);
+        }
+        long sortedElapsed = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        for (int value : searchData) {
+          random.contains(value);
+        }
+        long searchElapsed = System.nanoTime() - startTime;
+
+        if (i >= WARMUP_ITERATIONS) {
+          randomTime += randomElapsed;
+          sortedTime += sortedElapsed;
+          searchTime += searchElapsed;
+          randomHeight = heightOf(random);
+          sortedHeight = heightOf(sorted);
+        }
+      }
+
+      System.out.printf("%s: Random insert: %.2f ms, Sorted insert: %.2f ms, Search: %.2f ms, "
+              + "Height: %d random / %d sorted%n", name,
+          randomTime / (double) TEST_ITERATIONS / 1_000_000.0,
+          sortedTime / (double) TEST_ITERATIONS / 1_000_000.0,
+          searchTime / (double) TEST_ITERATIONS / 1_000_000.0, randomHeight, sortedHeight);
+    }
+  }
+
+  private static SortedCollection<Integer> newBalancedTree(String name) {
+    return name.equals("RedBlackTree") ? new RedBlackTree<>()
+        : new BalancedTree<>(StandardBalancingPolicy.valueOf(name));
+  }
+
+  private static int heightOf(SortedCollection<Integer> tree) {
+    return tree instanceof BalancedTree ? ((BalancedTree<Integer>) tree).height()
+        : TreeDiagnostics.check((RedBlackTree<Integer>) tree).height;
+  }
+
+  /**
+   * Times a scan-and-probe job, looking up every key of a range in ascending order, with lookups
+   * from the root against lookups through a cursor.
+   */
+  private static void benchmarkCursorProbes(int dataSize) {
+    int[] insertData = generateRandomData(dataSize, dataSize * 4);
+    AMT amt = new AMT();
+    RedBlackTree<Integer> rbt = new RedBlackTree<>();
+    for (int value : insertData) {
+      amt.insert(value);
+      rbt.insert(value);
+    }
+    int probes = dataSize;
+    long[] times = new long[4];
+    for (int i = 0; i < WARMUP_ITERATIONS + TEST_ITERATIONS; i++) {
+      AMTCursor amtCursor = amt.cursor();
+      BSTCursor<Integer> rbtCursor = rbt.cursor();
+      int[] found = new int[4];
+      long[] elapsed = new long[4];
+      long startTime = System.nanoTime();
+      for (int value = 1; value <= probes; value++) {
+        found[0] += amt.contains(value) ? 1 : 0;
+      }
+      elapsed[0] = System.nanoTime() - startTime;
+      startTime = System.nanoTime();
+      for (int value = 1; value <= probes; value++) {
+        found[1] += amtCursor.contains(value) ? 1 : 0;
+      }
+      elapsed[1] = System.nanoTime() - startTime;
+      startTime = System.nanoTime();
+      for (int value = 1; value <= probes; value++) {
+        found[2] += rbt.contains(value) ? 1 : 0;
+      }
+      elapsed[2] = System.nanoTime() - startTime;
+      startTime = System.nanoTime();
+      for (int value = 1; value <= probes; value++) {
+        found[3] += rbtCursor.contains(value) ? 1 : 0;
+      }
+      elapsed[3] = System.nanoTime() - startTime;
+      if (found[0] != found[1] || found[2] != found[3]) {
+        throw new IllegalStateException("Cursor and root lookups disagree");
+      }
+      if (i >= WARMUP_ITERATIONS) {
+        for (int t = 0; t < times.length; t++) {
+          times[t] += elapsed[t];
+        }
+      }
+    }
+
+    System.out.printf("AMT: From root: %.2f ms, Cursor: %.2f ms%n",
+        times[0] / (double) TEST_ITERATIONS / 1_000_000.0,
+        times[1] / (double) TEST_ITERATIONS / 1_000_000.0);
+    System.out.printf("Red-Black Tree: From root: %.2f ms, Cursor: %.2f ms%n",
+        times[2] / (double) TEST_ITERATIONS / 1_000_000.0,
+        times[3] / (double) TEST_ITERATIONS / 1_000_000.0);
+  }
+
+  /**
+   * Builds the union one value at a time: every value of dataB, then every value of dataA not yet
+   * in the tree.
+   */
+  private static AMT insertUnion(int[] dataA, int[] dataB) {
+    AMT union = new AMT();
+    union.insertAll(dataB);
+    for (int value : dataA) {
+      if (!union.contains(value)) {
+        union.insert(value);
+      }
+    }
+    return union;
+  }
+
+  /**
+   * Compares the trees on data in which evenPercent of the values are even, the case the adaptive
+   * tree repartitions for. The adaptive tree finishes migrating before its memory is measured.
+   */
+  private static void runSkewedBenchmark(int dataSize, int evenPercent) {
+    int[] insertData = generateSkewedData(dataSize, evenPercent);
+    int[] searchData = generateSkewedData(dataSize / 10, evenPercent);
+    String[] names = {"AMT", "Dual RBT (int)", "Adaptive"};
+
+    for (String name : names) {
+      Object tree = name.equals("AMT") ? new AMT()
+          : name.equals("Dual RBT (int)") ? new DualRBT(DualRBT.Mode.PRIMITIVE)
+          : new AdaptivePartitionTree();
+      long memoryBefore = getUsedMemory();
+
+      long startTime = System.nanoTime();
+      for (int value : insertData) {
+        insertValue(tree, value);
+      }
+      if (tree instanceof AdaptivePartitionTree) {
+        ((AdaptivePartitionTree) tree).finishMigration();
+      }
+      long insertTime = System.nanoTime() - startTime;
+      long memoryAfter = getUsedMemory();
+
+      startTime = System.nanoTime();
+      for (int value : searchData) {
+        containsValue(tree, value);
+      }
+      long searchTime = System.nanoTime() - startTime;
+
+      System.out.printf("%s: Insert: %s, Search: %.2f ms%n", name,
+          new BenchmarkResult(insertTime, memoryAfter - memoryBefore),
+          searchTime / 1_000_000.0);
+    }
+  }
+
+  private static int[] generateSkewedData(int size, int evenPercent) {
+    Random random = new Random();
+    int[] data = new int[size];
+    for (int i = 0; i < size; i++) {
+      int value = 2 * random.nextInt(500000) + 1;
+      data[i] = random.nextInt(100) < evenPercent ? value + 1 : value;
+    }
+    return data;
+  }
+
+  /**
+   * Looks up keys drawn from a Zipf distribution over the inserted values, the shape of traffic
+   * in which a few hot ids dominate, on an AMT without and with hot-key caches of several sizes.
+   * A tenth of the lookups are for absent values.
+   */
+  private static void runZipfBenchmark(int dataSize, double exponent) {
+    int[] insertData = generateRandomData(dataSize, dataSize * 4);
+    int[] lookups = generateZipfLookups(insertData, dataSize * 2, exponent);
+    int[] cacheSizes = {0, 1024, 65536};
+
+    for (int cacheSize : cacheSizes) {
+      AMT tree = new AMT();
+      for (int value : insertData) {
+        tree.insert(value);
+      }
+      HotKeyCache cache = cacheSize > 0 ? tree.enableHotKeyCache(cacheSize) : null;
+
+      // Warmup phase, which also fills the cache
+      for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+        for (int value : lookups) {
+          tree.contains(value);
+        }
+      }
+      long hitsBefore = cache == null ? 0 : cache.hits();
+      long missesBefore = cache == null ? 0 : cache.misses();
+
+      long startTime = System.nanoTime();
+      for (int i = 0; i < TEST_ITERATIONS; i++) {
+        for (int value : lookups) {
+          tree.contains(value);
+        }
+      }
+      long searchTime = System.nanoTime() - startTime;
+
+      String name = cache == null ? "AMT" : "AMT + cache (" + cacheSize + ")";
+      System.out.printf("%s: Search: %.2f ms", name,
+          searchTime / (double) TEST_ITERATIONS / 1_000_000.0);
+      if (cache != null) {
+        long hits = cache.hits() - hitsBefore;
+        long misses = cache.misses() - missesBefore;
+        System.out.printf(", Cache size: %d, Hit rate: %.2f%%", cache.size(),
+            hits * 100.0 / (hits + misses));
+      }
+      System.out.println();
+    }
+  }
+
+  /**
+   * Draws count lookups whose ranks follow a Zipf distribution with the given exponent; rank r
+   * maps to values[r], so the hot keys are spread over the key space. One lookup in ten is
+   * replaced by a value of the same rank that may be absent.
+   */
+  private static int[] generateZipfLookups(int[] values, int count, double exponent) {
+    double[] cumulative = new double[values.length];
+    double total = 0;
+    for (int rank = 0; rank < values.length; rank++) {
+      total += 1 / Math.pow(rank + 1, exponent);
+      cumulative[rank] = total;
+    }
+    Random random = new Random();
+    int[] lookups = new int[count];
+    for (int i = 0; i < count; i++) {
+      int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+      rank = Math.min(rank < 0 ? -rank - 1 : rank, values.length - 1);
+      lookups[i] = i % 10 == 9 ? values[rank] + values.length * 4 : values[rank];
+    }
+    return lookups;
+  }
+
   private static int[] generateRandomData(int size) {
+    return generateRandomData(size, 1000000);
+  }
+
+  private static int[] generateRandomData(int size, int maxValue) {
     Random random = new Random();
     int[] data = new int[size];
     for (int i = 0; i < size; i++) {
-      data[i] = random.nextInt(1000000) + 1;
+      data[i] = random.nextInt(maxValue) + 1;
     }
     return data;
   }
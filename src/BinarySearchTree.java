@@ -25,6 +25,34 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
    */
   protected BSTNode<T> root;
 
+  /**
+   * Whether equal values share one counted node instead of each taking a node of their own. Only
+   * set while the tree is empty.
+   */
+  protected boolean multiset;
+
+  /**
+   * Number of structural changes, so that cursors can tell when their remembered path is stale.
+   */
+  protected int modCount;
+
+  /**
+   * Creates an empty tree that stores every duplicate value in a node of its own.
+   */
+  public BinarySearchTree() {
+    this(false);
+  }
+
+  /**
+   * Creates an empty tree.
+   *
+   * @param multiset true to store one counted node per distinct value, false to store every
+   *                 duplicate in a node of its own
+   */
+  public BinarySearchTree(boolean multiset) {
+    this.multiset = multiset;
+  }
+
   /**
    * Inserts a new data value into the sorted collection.
    *
@@ -37,7 +65,8 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     if (data == null) {
       throw new NullPointerException("Provided data is null!");
     }
-    BSTNode<T> toAdd = new BSTNode<>(data);
+    this.modCount++;
+    BSTNode<T> toAdd = createNode(data);
     if (this.root == null) {
       this.root = toAdd;
     } else {
@@ -60,6 +89,39 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     return containsHelper(data, this.root);
   }
 
+  /**
+   * Counts the occurrences of data in the collection. In multiset mode this is a single
+   * O(log n) search on a balanced tree; otherwise every node holding an equal value is visited.
+   *
+   * @param data the value to count
+   * @return the number of times data was inserted into the collection
+   */
+  public int count(Comparable<T> data) {
+    if (data == null) {
+      return 0;
+    }
+    return countHelper(data, this.root);
+  }
+
+  /**
+   * Private helper method to recursively count the occurrences of data. Rotations can leave equal
+   * values on both sides of a node, so both subtrees of a match are searched.
+   */
+  private int countHelper(Comparable<T> data, BSTNode<T> node) {
+    if (node == null) {
+      return 0;
+    }
+    int comparison = data.compareTo(node.getData());
+    if (comparison < 0) {
+      return countHelper(data, node.getLeft());
+    } else if (comparison > 0) {
+      return countHelper(data, node.getRight());
+    } else if (this.multiset) {
+      return node.getCount();
+    }
+    return 1 + countHelper(data, node.getLeft()) + countHelper(data, node.getRight());
+  }
+
   /**
    * Private helper method to recursively check whether data is stored in the tree.
    *
@@ -100,7 +162,7 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     if (node == null) {
       return 0;
     }
-    return 1 + sizeHelper(node.getLeft()) + sizeHelper(node.getRight());
+    return node.getCount() + sizeHelper(node.getLeft()) + sizeHelper(node.getRight());
   }
 
   /**
@@ -118,13 +180,36 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
    */
   @Override
   public void clear() {
+    this.modCount++;
     this.root = null;
   }
 
+  /**
+   * Creates a cursor for lookups that start near the previous one instead of at the root. A
+   * cursor is not thread-safe; each thread should use a cursor of its own.
+   *
+   * @return a new cursor over this tree
+   */
+  public BSTCursor<T> cursor() {
+    return new BSTCursor<>(this);
+  }
+
+  /**
+   * Creates a node for a newly inserted value: a counted node in multiset mode and a plain node
+   * otherwise.
+   *
+   * @param data the value the node stores
+   * @return the new node
+   */
+  protected BSTNode<T> createNode(T data) {
+    return this.multiset ? new CountedBSTNode<>(data) : new BSTNode<>(data);
+  }
+
   /**
    * Performs the naive binary search tree insert algorithm to recursively insert the provided
    * newNode (which has already been initialized with a data value) into the provided tree/subtree.
-   * When the provided subtree is null, this method does nothing.
+   * When the provided subtree is null, this method does nothing. In multiset mode a value equal to
+   * one already in the tree increments that node's count, and newNode is left unlinked.
    */
   protected void insertHelper(BSTNode<T> newNode, BSTNode<T> subtree) {
     // Base case : return if subtree is null
@@ -132,6 +217,12 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
       return;
     }
 
+    // Case 0 : Equal to subtree in multiset mode
+    if (this.multiset && newNode.getData().compareTo(subtree.getData()) == 0) {
+      subtree.incrementCount();
+      return;
+    }
+
     // Case 1 : Smaller than subtree
     if (newNode.getData().compareTo(subtree.getData()) <= 0) {
       if (subtree.getLeft() == null) {
@@ -151,18 +242,6 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
         insertHelper(newNode, subtree.getRight());
       }
     }
-
-    // Case 3 : Equal to subtree
-//    if (newNode.getData().compareTo(subtree.getData()) == 0) {
-//      if (subtree.getLeft() == null) {
-//        subtree.setLeft(newNode);
-//        newNode.setUp(subtree);
-//      } else {
-//        newNode.setLeft(subtree.getLeft());
-//        newNode.setUp(subtree);
-//        subtree.setLeft(newNode);
-//      }
-//    }
   }
 
   /**
@@ -341,6 +420,29 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     return true;
   }
 
+  /**
+   * Test 8: Testing duplicate values in multiset mode
+   *
+   * @return true if the program works as intended, false otherwise
+   */
+  public boolean test8() {
+    BinarySearchTree<Integer> bst = new BinarySearchTree<>(true);
+    bst.insert(5);
+    bst.insert(3);
+    bst.insert(5);
+    bst.insert(5);
+    bst.insert(8);
+    bst.insert(3);
+
+    // one node per distinct value
+    if (!"[ 5, 3, 8 ]".equals(bst.root.toLevelOrderString())) {
+      return false;
+    }
+
+    return bst.size() == 6 && bst.count(5) == 3 && bst.count(3) == 2 && bst.count(8) == 1
+        && bst.count(4) == 0;
+  }
+
   /**
    * Main method to run the tests.
    *
@@ -356,6 +458,7 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     System.out.println("Test 5: " + (bst.test5() ? "Test passed" : "Test failed"));
     System.out.println("Test 6: " + (bst.test6() ? "Test passed" : "Test failed"));
     System.out.println("Test 7: " + (bst.test7() ? "Test passed" : "Test failed"));
+    System.out.println("Test 8: " + (bst.test8() ? "Test passed" : "Test failed"));
   }
 }
 
@@ -0,0 +1,117 @@
+import java.util.function.IntConsumer;
+
+/**
+ * A partition tree for dense sets of small positive ints that stores each predicate partition as
+ * a {@link RoaringIntSet} instead of a tree of nodes. Within a partition every value has the same
+ * parity, so the partition stores value / 2: the lowest bit is implied by the partition, and each
+ * chunk of the set covers twice the value range at twice the density. Duplicates are stored once.
+ */
+public class BitmapAMT implements ParityPartitionedTree {
+
+  // the even and odd partitions, each holding value >>> 1
+  private final RoaringIntSet evenSet = new RoaringIntSet();
+  private final RoaringIntSet oddSet = new RoaringIntSet();
+
+  public void insert(int value) {
+    if (value < 1) {
+      throw new IllegalArgumentException("Value must be greater than or equal to 1");
+    }
+    partitionOf(value).add(value >>> 1);
+  }
+
+  public boolean contains(int value) {
+    return value >= 1 && partitionOf(value).contains(value >>> 1);
+  }
+
+  /**
+   * @return the number of distinct values in the tree
+   */
+  public int size() {
+    return evenSet.cardinality() + oddSet.cardinality();
+  }
+
+  /**
+   * Counts the distinct values in [low, high].
+   *
+   * @param low  the smallest value to count
+   * @param high the largest value to count
+   * @return the number of values within the range
+   */
+  public long countInRange(int low, int high) {
+    return countInRange(true, low, high) + countInRange(false, low, high);
+  }
+
+  /**
+   * Counts the distinct values of one partition in [low, high].
+   *
+   * @param isEven true to count the even partition, false for the odd partition
+   * @param low    the smallest value to count
+   * @param high   the largest value to count
+   * @return the number of values of the partition within the range
+   */
+  public long countInRange(boolean isEven, int low, int high) {
+    if (high < 1 || low > high) {
+      return 0;
+    }
+    return (isEven ? evenSet : oddSet).countInRange(firstIndex(isEven, low), lastIndex(isEven,
+        high));
+  }
+
+  /**
+   * Passes every value of one partition in [low, high] to action in ascending order.
+   *
+   * @param isEven true to scan the even partition, false for the odd partition
+   * @param low    the smallest value to visit
+   * @param high   the largest value to visit
+   * @param action receives each value in the range
+   */
+  @Override
+  public void forEachInRange(boolean isEven, int low, int high, IntConsumer action) {
+    if (high < 1 || low > high) {
+      return;
+    }
+    int parity = isEven ? 0 : 1;
+    (isEven ? evenSet : oddSet).forEachInRange(firstIndex(isEven, low), lastIndex(isEven, high),
+        half -> action.accept((half << 1) | parity));
+  }
+
+  /**
+   * Converts every container to its smallest representation, including run encoding.
+   */
+  public void runOptimize() {
+    evenSet.runOptimize();
+    oddSet.runOptimize();
+  }
+
+  /**
+   * @return an estimate of the bytes used to store the values
+   */
+  public long sizeInBytes() {
+    return evenSet.sizeInBytes() + oddSet.sizeInBytes();
+  }
+
+  private RoaringIntSet partitionOf(int value) {
+    return (value % 2 == 0) ? evenSet : oddSet;
+  }
+
+  /**
+   * @return the stored index of the smallest value of the partition that is at least low
+   */
+  private static int firstIndex(boolean isEven, int low) {
+    low = Math.max(low, 1);
+    int index = low >>> 1;
+    // an odd lower bound of the even partition starts one higher
+    boolean lowIsEven = (low & 1) == 0;
+    return (isEven && !lowIsEven) ? index + 1 : index;
+  }
+
+  /**
+   * @return the stored index of the largest value of the partition that is at most high
+   */
+  private static int lastIndex(boolean isEven, int high) {
+    int index = high >>> 1;
+    // an even upper bound of the odd partition ends one lower
+    boolean highIsEven = (high & 1) == 0;
+    return (highIsEven && !isEven) ? index - 1 : index;
+  }
+}
@@ -0,0 +1,211 @@
+import java.util.Arrays;
+
+/**
+ * A blocked Bloom filter over int keys. All bits of a key are set inside one 512-bit block, the
+ * size of a cache line, so a query costs a single cache miss no matter how many hash functions are
+ * used. Blocking raises the false-positive rate slightly above that of a classic Bloom filter with
+ * the same number of bits, which {@link #forFalsePositiveRate} compensates for with a small margin.
+ * {@link #forMemoryBudget} instead fixes the memory and trades the rate for it.
+ */
+public class BlockedBloomFilter {
+
+  // each block is 8 longs: 512 bits, one 64-byte cache line
+  private static final int WORDS_PER_BLOCK = 8;
+  private static final int BITS_PER_BLOCK = WORDS_PER_BLOCK * 64;
+  // bits of the block hash consumed per probe: log2(BITS_PER_BLOCK)
+  private static final int PROBE_BITS = 9;
+  private static final int MAX_HASHES = 16;
+
+  private final long[] words;
+  private final int blocks;
+  private final int hashes;
+
+  private BlockedBloomFilter(long bits, int hashes) {
+    long blockCount = Math.max(1, (bits + BITS_PER_BLOCK - 1) / BITS_PER_BLOCK);
+    if (blockCount > Integer.MAX_VALUE / WORDS_PER_BLOCK) {
+      throw new IllegalArgumentException("Bloom filter would exceed the maximum array size");
+    }
+    this.blocks = (int) blockCount;
+    this.words = new long[this.blocks * WORDS_PER_BLOCK];
+    this.hashes = hashes;
+  }
+
+  /**
+   * Creates a filter sized to reach a target false-positive rate.
+   *
+   * @param expectedInsertions the number of distinct keys the filter is sized for
+   * @param falsePositiveRate  the target false-positive rate, in (0, 1)
+   * @return an empty filter
+   * @throws IllegalArgumentException if either argument is out of range
+   */
+  public static BlockedBloomFilter forFalsePositiveRate(int expectedInsertions,
+      double falsePositiveRate) {
+    if (expectedInsertions < 1) {
+      throw new IllegalArgumentException("Expected insertions must be at least 1");
+    }
+    if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+      throw new IllegalArgumentException("False-positive rate must be between 0 and 1");
+    }
+    // classic optimum m/n = -ln(p) / ln(2)^2, plus 10% for the unevenness of blocking
+    double bitsPerKey = 1.1 * -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+    return new BlockedBloomFilter((long) Math.ceil(bitsPerKey * expectedInsertions),
+        optimalHashes(bitsPerKey));
+  }
+
+  /**
+   * Creates a filter that uses at most a fixed amount of memory, choosing the number of hash
+   * functions that minimizes the false-positive rate for that budget. The bit array is the
+   * largest whole number of 64-byte blocks that fits; {@link #estimatedFalsePositiveRate} gives
+   * the rate to expect.
+   *
+   * @param expectedInsertions the number of distinct keys the filter is sized for
+   * @param bytes              the memory budget for the bit array, at least one 64-byte block
+   * @return an empty filter
+   * @throws IllegalArgumentException if expectedInsertions is less than 1 or bytes is less than 64
+   */
+  public static BlockedBloomFilter forMemoryBudget(int expectedInsertions, long bytes) {
+    if (expectedInsertions < 1) {
+      throw new IllegalArgumentException("Expected insertions must be at least 1");
+    }
+    if (bytes < WORDS_PER_BLOCK * 8) {
+      throw new IllegalArgumentException("Memory budget must hold at least one 64-byte block");
+    }
+    long bits = bytes / (WORDS_PER_BLOCK * 8) * BITS_PER_BLOCK;
+    return new BlockedBloomFilter(bits, optimalHashes(bits / (double) expectedInsertions));
+  }
+
+  private static int optimalHashes(double bitsPerKey) {
+    return (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitsPerKey * Math.log(2))));
+  }
+
+  /**
+   * Adds key to the filter.
+   *
+   * @param key the key to add
+   */
+  public void put(int key) {
+    long hash = mix(key);
+    int base = blockOf(hash) * WORDS_PER_BLOCK;
+    long seed = mix(hash);
+    long probes = seed;
+    for (int i = 0; i < hashes; i++) {
+      if (i > 0 && i % 7 == 0) {
+        // 7 probes of 9 bits use up 63 bits of the probe hash; the shifted hash has only one bit
+        // left, so the next one is derived from the full seed
+        seed = mix(seed);
+        probes = seed;
+      }
+      int bit = (int) (probes & (BITS_PER_BLOCK - 1));
+      probes >>>= PROBE_BITS;
+      words[base + (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  /**
+   * Checks whether key may have been added to the filter.
+   *
+   * @param key the key to look for
+   * @return false if key was definitely never added, true if it probably was
+   */
+  public boolean mightContain(int key) {
+    long hash = mix(key);
+    int base = blockOf(hash) * WORDS_PER_BLOCK;
+    long seed = mix(hash);
+    long probes = seed;
+    for (int i = 0; i < hashes; i++) {
+      if (i > 0 && i % 7 == 0) {
+        seed = mix(seed);
+        probes = seed;
+      }
+      int bit = (int) (probes & (BITS_PER_BLOCK - 1));
+      probes >>>= PROBE_BITS;
+      if ((words[base + (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Removes all keys from the filter.
+   */
+  public void clear() {
+    Arrays.fill(words, 0L);
+  }
+
+  /**
+   * @return the size of the bit array in bytes
+   */
+  public long sizeInBytes() {
+    return words.length * 8L;
+  }
+
+  /**
+   * Estimates the false-positive rate after a number of distinct keys have been added. The keys
+   * per block follow a Poisson distribution, and a query is a false positive of the one block it
+   * hashes to, so the estimate averages the rate of a single block over its possible loads. The
+   * probes of a query may repeat a bit, which leaves fewer bits to miss and is counted too.
+   *
+   * @param insertions the number of distinct keys added
+   * @return the expected fraction of absent keys for which mightContain returns true
+   */
+  public double estimatedFalsePositiveRate(int insertions) {
+    // distinct[d] is the chance that the probes of one query hit exactly d different bits
+    double[] distinct = new double[hashes + 1];
+    distinct[0] = 1;
+    for (int probe = 0; probe < hashes; probe++) {
+      for (int d = probe + 1; d > 0; d--) {
+        distinct[d] = distinct[d] * d / BITS_PER_BLOCK
+            + distinct[d - 1] * (BITS_PER_BLOCK - d + 1) / BITS_PER_BLOCK;
+      }
+      distinct[0] = 0;
+    }
+
+    double keysPerBlock = insertions / (double) blocks;
+    double spread = 10 * Math.sqrt(keysPerBlock) + 10;
+    // the Poisson probabilities are summed in log space so that heavy loads do not underflow
+    double logProbability = -keysPerBlock;
+    double rate = 0;
+    for (int load = 0; load <= keysPerBlock + spread; load++) {
+      if (load > 0) {
+        logProbability += Math.log(keysPerBlock / load);
+      }
+      if (load >= keysPerBlock - spread) {
+        // the chance that a given bit is set by load keys
+        double bitSet = 1 - Math.pow(1 - 1.0 / BITS_PER_BLOCK, (double) hashes * load);
+        double hit = 0;
+        for (int d = 1; d <= hashes; d++) {
+          hit += distinct[d] * Math.pow(bitSet, d);
+        }
+        rate += Math.exp(logProbability) * hit;
+      }
+    }
+    return rate;
+  }
+
+  /**
+   * @return the number of bits set per key
+   */
+  public int hashes() {
+    return hashes;
+  }
+
+  /**
+   * Maps the upper half of the hash onto [0, blocks) without a division.
+   */
+  private int blockOf(long hash) {
+    return (int) (((hash >>> 32) * blocks) >>> 32);
+  }
+
+  /**
+   * The 64-bit finalizer of MurmurHash3, which spreads every input bit over the whole output.
+   */
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value >>> 33;
+    value *= 0xc4ceb9fe1a85ec53L;
+    value ^= value >>> 33;
+    return value;
+  }
+}
@@ -0,0 +1,24 @@
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Recorded when a bulk operation on a tree takes longer than the configured threshold, which
+ * defaults to 10 ms.
+ */
+@Name("ppt.BulkOperation")
+@Label("Bulk Tree Operation")
+@Category("Predicate Partition Tree")
+@Threshold("10 ms")
+public class BulkOperationEvent extends jdk.jfr.Event {
+
+  @Label("Tree")
+  String tree;
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Count")
+  int count;
+}
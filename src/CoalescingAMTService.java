@@ -0,0 +1,327 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A front end that lets many threads share one AMT without handing its lock back and forth on
+ * every call. Callers submit inserts and lookups and receive CompletableFutures; a single flusher
+ * thread collects the pending operations into micro-batches and runs each batch under one lock
+ * acquisition. A batch closes when it reaches the maximum batch size or when the maximum delay has
+ * passed since its first operation arrived, whichever comes first; with a delay of 0 a batch is
+ * whatever queued up while the previous batch ran.
+ *
+ * Within a batch, inserts run first in arrival order, and the lookups then run as one sorted
+ * traversal of the tree (AMT.containsAllSorted), so lookups sharing a path walk it once. An insert
+ * and a lookup of the same batch were concurrent, so the lookup seeing the insert is a valid
+ * ordering. Futures are completed after the lock is released.
+ *
+ * Callers may be any threads. They block only if they join a future, which on JDK 21 and later
+ * parks a virtual thread cheaply, so handlers on virtual threads can use the blocking insert and
+ * contains methods. The flusher thread comes from the ThreadFactory passed in.
+ */
+public class CoalescingAMTService implements AutoCloseable {
+
+  public static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+  public static final long DEFAULT_MAX_DELAY_NANOS = 0;
+
+  private final AMT tree;
+
+  // held while a batch runs and for direct reads of the tree
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+  private final int maxBatchSize;
+  private final long maxDelayNanos;
+  private final Thread flusher;
+  private volatile boolean closed;
+
+  private final LongAdder batches = new LongAdder();
+  private final LongAdder operations = new LongAdder();
+
+  /**
+   * One pending operation: an insert when lookup is null, a lookup otherwise.
+   */
+  private static final class Request {
+    final int value;
+    final CompletableFuture<Void> insert;
+    final CompletableFuture<Boolean> lookup;
+
+    Request(int value, CompletableFuture<Void> insert, CompletableFuture<Boolean> lookup) {
+      this.value = value;
+      this.insert = insert;
+      this.lookup = lookup;
+    }
+
+    void fail(Throwable cause) {
+      if (lookup != null) {
+        lookup.completeExceptionally(cause);
+      } else {
+        insert.completeExceptionally(cause);
+      }
+    }
+  }
+
+  public CoalescingAMTService(AMT tree) {
+    this(tree, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY_NANOS, runnable -> {
+      Thread thread = new Thread(runnable, "amt-coalescer");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Creates a service over tree and starts its flusher thread. The tree must not be modified
+   * other than through this service while the service is open.
+   *
+   * @param tree          the tree operations are applied to
+   * @param maxBatchSize  the number of operations at which a batch closes
+   * @param maxDelayNanos how long a batch waits for more operations after its first one
+   * @param threadFactory creates the flusher thread
+   */
+  public CoalescingAMTService(AMT tree, int maxBatchSize, long maxDelayNanos,
+      ThreadFactory threadFactory) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("Max batch size must be greater than or equal to 1");
+    }
+    if (maxDelayNanos < 0) {
+      throw new IllegalArgumentException("Max delay must not be negative");
+    }
+    this.tree = tree;
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelayNanos = maxDelayNanos;
+    this.flusher = threadFactory.newThread(this::runFlusher);
+    this.flusher.start();
+  }
+
+  /**
+   * Queues an insert of value.
+   *
+   * @return a future that completes once value is in the tree, or exceptionally with an
+   *         IllegalArgumentException if value is less than 1
+   * @throws IllegalStateException if the service is closed
+   */
+  public CompletableFuture<Void> insertAsync(int value) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    submit(new Request(value, future, null));
+    return future;
+  }
+
+  /**
+   * Queues a lookup of value.
+   *
+   * @return a future that completes with whether value is in the tree
+   * @throws IllegalStateException if the service is closed
+   */
+  public CompletableFuture<Boolean> containsAsync(int value) {
+    CompletableFuture<Boolean> future = new CompletableFuture<>();
+    submit(new Request(value, null, future));
+    return future;
+  }
+
+  /**
+   * Inserts value through the next batch and waits for it.
+   *
+   * @throws IllegalArgumentException if value is less than 1
+   */
+  public void insert(int value) {
+    join(insertAsync(value));
+  }
+
+  /**
+   * Looks up value through the next batch and waits for the result.
+   */
+  public boolean contains(int value) {
+    return join(containsAsync(value));
+  }
+
+  /**
+   * @return the number of values in the tree, counting only completed inserts
+   */
+  public int size() {
+    lock.lock();
+    try {
+      return tree.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of batches run so far
+   */
+  public long batchCount() {
+    return batches.sum();
+  }
+
+  /**
+   * @return the number of operations run so far
+   */
+  public long operationCount() {
+    return operations.sum();
+  }
+
+  /**
+   * Stops accepting operations, runs every operation already queued, and waits for the flusher
+   * thread to finish.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    flusher.interrupt();
+    boolean interrupted = false;
+    while (flusher.isAlive()) {
+      try {
+        flusher.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void submit(Request request) {
+    if (closed) {
+      throw new IllegalStateException("Service is closed");
+    }
+    queue.add(request);
+    // the flusher may have made its final pass between the check and the add
+    if (closed && queue.remove(request)) {
+      throw new IllegalStateException("Service is closed");
+    }
+  }
+
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Collects and runs batches until the service is closed and the queue is empty.
+   */
+  private void runFlusher() {
+    List<Request> batch = new ArrayList<>(maxBatchSize);
+    boolean stopping = false;
+    while (true) {
+      try {
+        if (stopping || closed) {
+          stopping = true;
+          // run what is left without waiting; submit stops adding once closed is set
+          if (queue.drainTo(batch, maxBatchSize) == 0) {
+            return;
+          }
+        } else {
+          batch.add(queue.take());
+          fill(batch);
+        }
+      } catch (InterruptedException e) {
+        stopping = true;
+      }
+      if (!batch.isEmpty()) {
+        runBatch(batch);
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Adds queued operations to batch until it is full or the delay since its first operation has
+   * passed.
+   */
+  private void fill(List<Request> batch) throws InterruptedException {
+    long deadline = System.nanoTime() + maxDelayNanos;
+    while (batch.size() < maxBatchSize) {
+      queue.drainTo(batch, maxBatchSize - batch.size());
+      long remaining = deadline - System.nanoTime();
+      if (batch.size() >= maxBatchSize || remaining <= 0) {
+        return;
+      }
+      Request next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        return;
+      }
+      batch.add(next);
+    }
+  }
+
+  /**
+   * Runs a batch under one lock acquisition: inserts in arrival order, then every lookup in one
+   * sorted traversal. Futures are completed once the lock is released.
+   */
+  private void runBatch(List<Request> batch) {
+    int lookupCount = 0;
+    for (Request request : batch) {
+      if (request.lookup != null) {
+        lookupCount++;
+      }
+    }
+    // each lookup's value in the high half and its index in the batch in the low half, so that
+    // sorting orders lookups by value and still tells which request each result belongs to
+    long[] lookups = new long[lookupCount];
+    RuntimeException[] failures = new RuntimeException[batch.size()];
+    int next = 0;
+    for (int i = 0; i < batch.size(); i++) {
+      if (batch.get(i).lookup != null) {
+        lookups[next++] = ((long) batch.get(i).value << 32) | i;
+      }
+    }
+    Arrays.sort(lookups);
+    int[] sorted = new int[lookupCount];
+    for (int i = 0; i < lookupCount; i++) {
+      sorted[i] = (int) (lookups[i] >> 32);
+    }
+    boolean[] results = new boolean[lookupCount];
+
+    lock.lock();
+    try {
+      for (int i = 0; i < batch.size(); i++) {
+        Request request = batch.get(i);
+        if (request.insert != null) {
+          try {
+            tree.insert(request.value);
+          } catch (RuntimeException e) {
+            failures[i] = e;
+          }
+        }
+      }
+      tree.containsAllSorted(sorted, results);
+    } catch (RuntimeException e) {
+      for (Request request : batch) {
+        request.fail(e);
+      }
+      return;
+    } finally {
+      lock.unlock();
+    }
+
+    batches.increment();
+    operations.add(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      Request request = batch.get(i);
+      if (request.insert != null) {
+        if (failures[i] != null) {
+          request.insert.completeExceptionally(failures[i]);
+        } else {
+          request.insert.complete(null);
+        }
+      }
+    }
+    for (int i = 0; i < lookupCount; i++) {
+      batch.get((int) lookups[i]).lookup.complete(results[i]);
+    }
+  }
+}
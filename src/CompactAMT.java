@@ -0,0 +1,390 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Queue;
+import java.util.function.IntConsumer;
+
+/**
+ * An AMT with a smaller node layout, for trees large enough that per-node overhead dominates the
+ * heap. Each node packs its even value, its odd value and its color into a single long and keeps
+ * only its child references: with compressed oops a node takes 32 bytes instead of the 40 of an
+ * AMTNode, which also carries a parent reference and a separate boolean.
+ *
+ * Inserts and lookups follow the same paths as in AMT's default mode and rebalance with the same
+ * cases and slot lifting, so both trees built from the same values have the same shape. No parent
+ * links are needed: an insert walks down from the root recording its path on an explicit stack,
+ * like CompactIntRedBlackTree, and repairs the red property walking back up that stack. The tree
+ * has no multiset mode, Bloom filters, metrics or events.
+ */
+public class CompactAMT implements ParityPartitionedTree {
+
+  /**
+   * A node holding one even and one odd value. The even value sits in the high half of slots and
+   * the odd value in the low half, with 0 marking an empty slot. An even value never uses its
+   * lowest bit, so that bit holds the color.
+   */
+  static final class Node {
+    long slots;
+    Node left;
+    Node right;
+
+    Node(int value, boolean isEven) {
+      slots = isEven ? (long) value << 32 | RED : (value & 0xFFFFFFFFL) | RED;
+    }
+
+    int even() {
+      return (int) (slots >>> 32) & ~1;
+    }
+
+    int odd() {
+      return (int) slots;
+    }
+
+    int slot(boolean isEven) {
+      return isEven ? even() : odd();
+    }
+
+    void setSlot(int value, boolean isEven) {
+      if (isEven) {
+        slots = (long) value << 32 | (slots & (RED | 0xFFFFFFFFL));
+      } else {
+        slots = (slots & 0xFFFFFFFF00000000L) | (value & 0xFFFFFFFFL);
+      }
+    }
+
+    boolean isRed() {
+      return (slots & RED) != 0;
+    }
+
+    @Override
+    public String toString() {
+      return "" + even() + ", Odd: " + odd();
+    }
+  }
+
+  // the color bit: the lowest bit of the even half
+  private static final long RED = 1L << 32;
+
+  // root of the tree
+  protected Node root;
+
+  // number of values in the tree, including duplicates
+  protected int size;
+
+  // the path of the current insert, reused between inserts
+  private Node[] path = new Node[64];
+
+  /**
+   * Inserts a value into the first empty slot of its parity on its search path, or into a new
+   * red leaf at the end of the path followed by the red property repair. Equal values go left, as
+   * in AMT.
+   *
+   * @param value the value to insert
+   * @throws IllegalArgumentException if value is less than 1
+   */
+  public void insert(int value) {
+    if (value < 1) {
+      throw new IllegalArgumentException("Value must be greater than or equal to 1");
+    }
+    boolean isEven = value % 2 == 0;
+    size++;
+    if (root == null) {
+      root = new Node(value, isEven);
+      root.slots &= ~RED;
+      return;
+    }
+
+    int depth = 0;
+    Node node = root;
+    while (node != null) {
+      int slot = node.slot(isEven);
+      if (slot == 0) {
+        node.setSlot(value, isEven);
+        Arrays.fill(path, 0, depth, null);
+        return;
+      }
+      if (depth == path.length) {
+        path = Arrays.copyOf(path, depth * 2);
+      }
+      path[depth++] = node;
+      node = value <= slot ? node.left : node.right;
+    }
+    Node toAdd = new Node(value, isEven);
+    Node parent = path[depth - 1];
+    if (value <= parent.slot(isEven)) {
+      parent.left = toAdd;
+    } else {
+      parent.right = toAdd;
+    }
+    if (depth == path.length) {
+      path = Arrays.copyOf(path, depth * 2);
+    }
+    path[depth] = toAdd;
+    ensureRedProperty(depth);
+    root.slots &= ~RED;
+    Arrays.fill(path, 0, depth + 1, null);
+  }
+
+  /**
+   * Repairs red property violations caused by the red node at path[depth] having a red parent,
+   * following the same cases as AMT.ensureRedProperty with ancestors taken from the path instead
+   * of parent references.
+   */
+  private void ensureRedProperty(int depth) {
+    // a red parent is never the root, so a grandparent exists whenever the loop runs
+    while (depth > 0 && path[depth - 1].isRed()) {
+      Node node = path[depth];
+      Node parent = path[depth - 1];
+      Node grandparent = path[depth - 2];
+      boolean parentIsRight = grandparent.right == parent;
+      Node aunt = parentIsRight ? grandparent.left : grandparent.right;
+
+      // Parent is red, Aunt is red: recolor and continue from the grandparent
+      if (aunt != null && aunt.isRed()) {
+        parent.slots &= ~RED;
+        aunt.slots &= ~RED;
+        grandparent.slots |= RED;
+        depth -= 2;
+        continue;
+      }
+
+      Node greatGrandparent = depth > 2 ? path[depth - 3] : null;
+      // Parent is red, Aunt is black or null: rotate the middle node into the grandparent's place
+      if ((parent.right == node) != parentIsRight) {
+        rotate(node, parent, grandparent);
+        parent = node;
+      }
+      rotate(parent, grandparent, greatGrandparent);
+      parent.slots &= ~RED;
+      grandparent.slots |= RED;
+      return;
+    }
+  }
+
+  /**
+   * Rotates child into the position of its parent below grandparent, or into the root when
+   * grandparent is null, then lifts slots like AMT.rotate so that no empty slot is left above a
+   * filled one.
+   */
+  private void rotate(Node child, Node parent, Node grandparent) {
+    if (parent.right == child) {
+      parent.right = child.left;
+      child.left = parent;
+    } else {
+      parent.left = child.right;
+      child.right = parent;
+    }
+
+    if (grandparent == null) {
+      root = child;
+    } else if (grandparent.left == parent) {
+      grandparent.left = child;
+    } else {
+      grandparent.right = child;
+    }
+
+    liftSlot(child, parent, true);
+    liftSlot(child, parent, false);
+  }
+
+  /**
+   * Moves parent's value of one parity into child when child's slot is empty and fills the hole
+   * with the nearest values below it, as AMT.liftSlot does.
+   */
+  private static void liftSlot(Node child, Node parent, boolean isEven) {
+    if (parent.slot(isEven) == 0 || child.slot(isEven) != 0) {
+      return;
+    }
+    moveSlot(parent, child, isEven);
+    boolean fromRight = child.right == parent;
+    Node hole = parent;
+    while (true) {
+      Node nearest = fromRight ? hole.right : hole.left;
+      if (nearest == null || nearest.slot(isEven) == 0) {
+        return;
+      }
+      Node next = fromRight ? nearest.left : nearest.right;
+      while (next != null && next.slot(isEven) != 0) {
+        nearest = next;
+        next = fromRight ? nearest.left : nearest.right;
+      }
+      moveSlot(nearest, hole, isEven);
+      hole = nearest;
+    }
+  }
+
+  private static void moveSlot(Node from, Node to, boolean isEven) {
+    to.setSlot(from.slot(isEven), isEven);
+    from.setSlot(0, isEven);
+  }
+
+  /**
+   * Checks whether value is in the tree. The search stops at the first empty slot of value's
+   * parity, since no values of that parity lie below it.
+   *
+   * @param value the value to look for
+   * @return true if the tree contains value one or more times
+   */
+  public boolean contains(int value) {
+    if (value < 1) {
+      return false;
+    }
+    boolean isEven = value % 2 == 0;
+    Node node = root;
+    while (node != null) {
+      int slot = node.slot(isEven);
+      if (slot == 0) {
+        return false;
+      }
+      if (value == slot) {
+        return true;
+      }
+      node = value < slot ? node.left : node.right;
+    }
+    return false;
+  }
+
+  /**
+   * Counts the occurrences of value. Rotations can leave equal values on both sides of a node, so
+   * both subtrees of a match are searched.
+   *
+   * @param value the value to count
+   * @return the number of times value was inserted
+   */
+  public int count(int value) {
+    return value < 1 ? 0 : countHelper(value, value % 2 == 0, root);
+  }
+
+  private static int countHelper(int value, boolean isEven, Node node) {
+    while (node != null && node.slot(isEven) != 0 && value != node.slot(isEven)) {
+      node = value < node.slot(isEven) ? node.left : node.right;
+    }
+    if (node == null || node.slot(isEven) == 0) {
+      return 0;
+    }
+    return 1 + countHelper(value, isEven, node.left) + countHelper(value, isEven, node.right);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return root == null;
+  }
+
+  public void clear() {
+    root = null;
+    size = 0;
+  }
+
+  /**
+   * Returns an iterator over the values of one partition in ascending order, with every duplicate
+   * appearing once per occurrence.
+   *
+   * @param isEven true to iterate over the even partition, false for the odd partition
+   * @return an iterator over the partition's values; it must not be used across modifications
+   */
+  public PrimitiveIterator.OfInt iterator(boolean isEven) {
+    return new PartitionIterator(root, isEven);
+  }
+
+  /**
+   * In-order iterator over the filled slots of one partition.
+   */
+  private static class PartitionIterator implements PrimitiveIterator.OfInt {
+    private final boolean isEven;
+    private final ArrayDeque<Node> stack = new ArrayDeque<>();
+
+    PartitionIterator(Node root, boolean isEven) {
+      this.isEven = isEven;
+      pushLeftSpine(root);
+    }
+
+    private void pushLeftSpine(Node node) {
+      while (node != null && node.slot(isEven) != 0) {
+        stack.push(node);
+        node = node.left;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !stack.isEmpty();
+    }
+
+    @Override
+    public int nextInt() {
+      if (stack.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      Node node = stack.pop();
+      pushLeftSpine(node.right);
+      return node.slot(isEven);
+    }
+  }
+
+  /**
+   * Passes every value of one partition in [low, high] to action in ascending order, pruning like
+   * AMT.forEachInRange.
+   *
+   * @param isEven true to scan the even partition, false for the odd partition
+   * @param low    the smallest value to visit
+   * @param high   the largest value to visit
+   * @param action receives each value in the range
+   */
+  @Override
+  public void forEachInRange(boolean isEven, int low, int high, IntConsumer action) {
+    ArrayDeque<Node> stack = new ArrayDeque<>();
+    Node node = root;
+    while (true) {
+      while (node != null && node.slot(isEven) != 0) {
+        if (node.slot(isEven) >= low) {
+          stack.push(node);
+          node = node.left;
+        } else {
+          node = node.right;
+        }
+      }
+      if (stack.isEmpty()) {
+        return;
+      }
+      node = stack.pop();
+      int value = node.slot(isEven);
+      if (value > high) {
+        return;
+      }
+      action.accept(value);
+      node = node.right;
+    }
+  }
+
+  /**
+   * Returns a string representation of the tree in level order, in the same format as
+   * AMTNode.toLevelOrderString() on the root.
+   *
+   * @return a string of the slots of every node in level order, followed by the root's color
+   */
+  public String toLevelOrderString() {
+    if (root == null) {
+      return "[ ]";
+    }
+    Queue<Node> nodeList = new LinkedList<>();
+    nodeList.add(root);
+    StringBuilder sb = new StringBuilder("[ ");
+    while (!nodeList.isEmpty()) {
+      Node node = nodeList.poll();
+      if (node.left != null) {
+        nodeList.add(node.left);
+      }
+      if (node.right != null) {
+        nodeList.add(node.right);
+      }
+      sb.append(node);
+      sb.append(nodeList.isEmpty() ? " ]" : ", ");
+    }
+    return sb.toString() + (root.isRed() ? "(r)" : "(b)");
+  }
+}
@@ -0,0 +1,315 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.function.IntConsumer;
+
+/**
+ * A Red-Black Tree of int keys of a single parity, with a smaller node layout than
+ * IntRedBlackTree. All keys share their lowest bit, so each node keeps its color in that bit of
+ * its key field, and it keeps no parent reference: a node is one int and two child references,
+ * 24 bytes with compressed oops instead of 32.
+ *
+ * An insert walks down from the root recording its path on an explicit stack, then repairs the
+ * red property walking back up that stack. It balances exactly like IntRedBlackTree, so both
+ * trees built from the same keys have the same shape.
+ */
+public class CompactIntRedBlackTree implements IntSortedCollection {
+
+  /**
+   * A node holding one key with its color in the key's lowest bit, and its children.
+   */
+  static final class Node {
+    int bits;
+    Node left;
+    Node right;
+
+    Node(int bits) {
+      this.bits = bits;
+    }
+  }
+
+  // the color bit of a node's bits
+  private static final int RED = 1;
+
+  // the lowest bit shared by every key, 0 for even keys and 1 for odd keys
+  private final int parityBit;
+
+  // root of the tree
+  protected Node root;
+
+  // number of keys in the tree, including duplicates
+  protected int size;
+
+  // the path of the current insert, reused between inserts
+  private Node[] path = new Node[64];
+
+  /**
+   * Creates an empty tree for keys of one parity.
+   *
+   * @param isEven true to hold even keys, false to hold odd keys
+   */
+  public CompactIntRedBlackTree(boolean isEven) {
+    this.parityBit = isEven ? 0 : 1;
+  }
+
+  /**
+   * Inserts a new key. Like IntRedBlackTree, a key equal to one already stored goes to its left.
+   *
+   * @param value the key to insert
+   * @throws IllegalArgumentException if value does not have the tree's parity
+   */
+  @Override
+  public void insert(int value) {
+    if ((value & 1) != parityBit) {
+      throw new IllegalArgumentException("Value " + value + " is not "
+          + (parityBit == 0 ? "even" : "odd"));
+    }
+    int masked = value & ~1;
+    size++;
+    if (root == null) {
+      root = new Node(masked);
+      return;
+    }
+
+    int depth = 0;
+    Node node = root;
+    while (node != null) {
+      if (depth == path.length) {
+        path = Arrays.copyOf(path, depth * 2);
+      }
+      path[depth++] = node;
+      node = masked <= (node.bits & ~1) ? node.left : node.right;
+    }
+    Node toAdd = new Node(masked | RED);
+    Node parent = path[depth - 1];
+    if (masked <= (parent.bits & ~1)) {
+      parent.left = toAdd;
+    } else {
+      parent.right = toAdd;
+    }
+    if (depth == path.length) {
+      path = Arrays.copyOf(path, depth * 2);
+    }
+    path[depth] = toAdd;
+    ensureRedProperty(depth);
+    root.bits &= ~RED;
+    Arrays.fill(path, 0, depth + 1, null);
+  }
+
+  /**
+   * Repairs red property violations caused by the red node at path[depth] having a red parent,
+   * following the same cases as IntRedBlackTree.ensureRedProperty with ancestors taken from the
+   * path instead of parent references.
+   */
+  private void ensureRedProperty(int depth) {
+    // a red parent is never the root, so a grandparent exists whenever the loop runs
+    while (depth > 0 && isRed(path[depth - 1])) {
+      Node node = path[depth];
+      Node parent = path[depth - 1];
+      Node grandparent = path[depth - 2];
+      boolean parentIsRight = grandparent.right == parent;
+      Node aunt = parentIsRight ? grandparent.left : grandparent.right;
+
+      // Parent is red, Aunt is red: recolor and continue from the grandparent
+      if (aunt != null && isRed(aunt)) {
+        parent.bits &= ~RED;
+        aunt.bits &= ~RED;
+        grandparent.bits |= RED;
+        depth -= 2;
+        continue;
+      }
+
+      Node greatGrandparent = depth > 2 ? path[depth - 3] : null;
+      // Parent is red, Aunt is black or null: rotate the middle key into the grandparent's place
+      if ((parent.right == node) != parentIsRight) {
+        rotate(node, parent, grandparent);
+        parent = node;
+      }
+      rotate(parent, grandparent, greatGrandparent);
+      parent.bits &= ~RED;
+      grandparent.bits |= RED;
+      return;
+    }
+  }
+
+  /**
+   * Rotates child into the position of its parent below grandparent, or into the root when
+   * grandparent is null.
+   */
+  private void rotate(Node child, Node parent, Node grandparent) {
+    if (parent.right == child) {
+      parent.right = child.left;
+      child.left = parent;
+    } else {
+      parent.left = child.right;
+      child.right = parent;
+    }
+
+    if (grandparent == null) {
+      root = child;
+    } else if (grandparent.left == parent) {
+      grandparent.left = child;
+    } else {
+      grandparent.right = child;
+    }
+  }
+
+  private static boolean isRed(Node node) {
+    return (node.bits & RED) != 0;
+  }
+
+  private int keyOf(Node node) {
+    return (node.bits & ~1) | parityBit;
+  }
+
+  @Override
+  public boolean contains(int value) {
+    if ((value & 1) != parityBit) {
+      return false;
+    }
+    int masked = value & ~1;
+    Node node = root;
+    while (node != null) {
+      int key = node.bits & ~1;
+      if (masked == key) {
+        return true;
+      }
+      node = masked < key ? node.left : node.right;
+    }
+    return false;
+  }
+
+  @Override
+  public int count(int value) {
+    return (value & 1) != parityBit ? 0 : countHelper(value & ~1, root);
+  }
+
+  /**
+   * Counts the occurrences of a masked key below node. Rotations can leave equal keys on both
+   * sides of a node, so both subtrees of a match are searched.
+   */
+  private int countHelper(int masked, Node node) {
+    while (node != null && masked != (node.bits & ~1)) {
+      node = masked < (node.bits & ~1) ? node.left : node.right;
+    }
+    if (node == null) {
+      return 0;
+    }
+    return 1 + countHelper(masked, node.left) + countHelper(masked, node.right);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return root == null;
+  }
+
+  @Override
+  public void clear() {
+    root = null;
+    size = 0;
+  }
+
+  @Override
+  public void forEachInRange(int low, int high, IntConsumer action) {
+    ArrayDeque<Node> stack = new ArrayDeque<>();
+    Node node = root;
+    while (node != null || !stack.isEmpty()) {
+      // descend left only while smaller keys may still be in range
+      while (node != null) {
+        if (keyOf(node) >= low) {
+          stack.push(node);
+          node = node.left;
+        } else {
+          node = node.right;
+        }
+      }
+      if (stack.isEmpty()) {
+        return;
+      }
+      node = stack.pop();
+      int key = keyOf(node);
+      if (key > high) {
+        return;
+      }
+      action.accept(key);
+      node = node.right;
+    }
+  }
+
+  /**
+   * Builds a balanced tree from keys in ascending order in linear time, without rotations, with
+   * the same shape and colors as IntRedBlackTree.fromSorted.
+   *
+   * @param isEven true to hold even keys, false to hold odd keys
+   * @param sorted the keys in ascending order, possibly with duplicates
+   * @return a new tree holding every key
+   * @throws IllegalArgumentException if the keys are out of order or of the wrong parity
+   */
+  public static CompactIntRedBlackTree fromSorted(boolean isEven, int[] sorted) {
+    CompactIntRedBlackTree tree = new CompactIntRedBlackTree(isEven);
+    for (int i = 0; i < sorted.length; i++) {
+      if ((sorted[i] & 1) != tree.parityBit) {
+        throw new IllegalArgumentException("Value " + sorted[i] + " is not "
+            + (isEven ? "even" : "odd"));
+      }
+      if (i > 0 && sorted[i - 1] > sorted[i]) {
+        throw new IllegalArgumentException("Keys must be in ascending order");
+      }
+    }
+    tree.root = buildHeapOrder(1, sorted, new int[1]);
+    tree.size = sorted.length;
+    return tree;
+  }
+
+  /**
+   * Builds the subtree at heap index i of a complete tree holding sorted, taking keys in order
+   * from next[0].
+   */
+  private static Node buildHeapOrder(int i, int[] sorted, int[] next) {
+    int nodes = sorted.length;
+    if (i > nodes) {
+      return null;
+    }
+    Node left = buildHeapOrder(2 * i, sorted, next);
+    int lastLevel = 31 - Integer.numberOfLeadingZeros(nodes);
+    boolean isRed =
+        (nodes & (nodes + 1)) != 0 && 31 - Integer.numberOfLeadingZeros(i) == lastLevel;
+    Node node = new Node((sorted[next[0]++] & ~1) | (isRed ? RED : 0));
+    node.left = left;
+    node.right = buildHeapOrder(2 * i + 1, sorted, next);
+    return node;
+  }
+
+  /**
+   * Returns a string representation of the tree in level order, in the same format as
+   * IntRedBlackTree.toLevelOrderString().
+   *
+   * @return a string of keys and colors in level order
+   */
+  public String toLevelOrderString() {
+    if (root == null) {
+      return "[ ]";
+    }
+    Queue<Node> nodeList = new LinkedList<>();
+    nodeList.add(root);
+    StringBuilder sb = new StringBuilder("[ ");
+    while (!nodeList.isEmpty()) {
+      Node node = nodeList.poll();
+      if (node.left != null) {
+        nodeList.add(node.left);
+      }
+      if (node.right != null) {
+        nodeList.add(node.right);
+      }
+      sb.append(keyOf(node)).append(isRed(node) ? "(r)" : "(b)");
+      sb.append(nodeList.isEmpty() ? " ]" : ", ");
+    }
+    return sb.toString();
+  }
+}
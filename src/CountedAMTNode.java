@@ -0,0 +1,64 @@
+/**
+ * An AMTNode that also counts the occurrences of each of its two values. It is used by an AMT in
+ * multiset mode so that duplicates do not each take a node slot.
+ */
+public class CountedAMTNode extends AMTNode {
+
+  // number of occurrences of the even and odd values
+  protected int evenCount;
+  protected int oddCount;
+
+  public CountedAMTNode(int value, boolean isEven) {
+    super(value, isEven);
+    if (isEven)
+      this.evenCount = 1;
+    else
+      this.oddCount = 1;
+  }
+
+  @Override
+  public int count(boolean isEven) {
+    return isEven ? this.evenCount : this.oddCount;
+  }
+
+  /**
+   * Records one more occurrence of the value with the given parity.
+   *
+   * @param isEven whether to count the even or the odd value
+   */
+  public void incrementCount(boolean isEven) {
+    if (isEven)
+      this.evenCount++;
+    else
+      this.oddCount++;
+  }
+
+  /**
+   * Fills a slot with a single occurrence of value.
+   */
+  @Override
+  public void setValue(int value, boolean isEven) {
+    super.setValue(value, isEven);
+    if (isEven)
+      this.evenCount = 1;
+    else
+      this.oddCount = 1;
+  }
+
+  /**
+   * Moves the value with the given parity together with its count. Every node of a multiset AMT
+   * is a CountedAMTNode, so target is one too.
+   */
+  @Override
+  protected void moveSlot(AMTNode target, boolean isEven) {
+    CountedAMTNode counted = (CountedAMTNode) target;
+    if (isEven) {
+      counted.evenCount = this.evenCount;
+      this.evenCount = 0;
+    } else {
+      counted.oddCount = this.oddCount;
+      this.oddCount = 0;
+    }
+    super.moveSlot(target, isEven);
+  }
+}
@@ -0,0 +1,28 @@
+/**
+ * A node that stores one distinct value together with the number of times it was inserted. It is
+ * used by a BinarySearchTree in multiset mode so that duplicates do not each take a node.
+ */
+public class CountedBSTNode<T> extends BSTNode<T> {
+
+    // number of occurrences of the value stored in this node
+    protected int count = 1;
+
+    /**
+     * Constructor that creates a new node holding a single occurrence of data.
+     * @param data the value the new node stores
+     */
+    public CountedBSTNode(T data) { super(data); }
+
+    /**
+     * @return the number of occurrences of the value stored in this node
+     */
+    @Override
+    public int getCount() { return this.count; }
+
+    /**
+     * Records one more occurrence of the value stored in this node.
+     */
+    @Override
+    public void incrementCount() { this.count++; }
+
+}
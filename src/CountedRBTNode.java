@@ -0,0 +1,29 @@
+/**
+ * A red-black node that stores one distinct value together with the number of times it was
+ * inserted. It is used by a RedBlackTree in multiset mode so that duplicates do not each take a
+ * node.
+ */
+public class CountedRBTNode<T> extends RBTNode<T> {
+
+    // number of occurrences of the value stored in this node
+    protected int count = 1;
+
+    /**
+     * Constructor that creates a new node holding a single occurrence of data.
+     * @param data the value the new node stores
+     */
+    public CountedRBTNode(T data) { super(data); }
+
+    /**
+     * @return the number of occurrences of the value stored in this node
+     */
+    @Override
+    public int getCount() { return this.count; }
+
+    /**
+     * Records one more occurrence of the value stored in this node.
+     */
+    @Override
+    public void incrementCount() { this.count++; }
+
+}
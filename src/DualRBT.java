@@ -1,10 +1,73 @@
-class DualRBT {
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+class DualRBT implements ParityPartitionedTree {
+
+  /**
+   * How each parity partition stores its values.
+   */
+  enum Mode {
+    /** A RedBlackTree of Integers; every insert and lookup boxes its value. */
+    BOXED,
+    /** An IntRedBlackTree with primitive keys and comparisons. */
+    PRIMITIVE,
+    /** A CompactIntRedBlackTree, which balances like PRIMITIVE with smaller nodes. */
+    COMPACT
+  }
+
+  private final Mode mode;
+
+  // the partitions in BOXED mode, or null
   private RedBlackTree<Integer> evenTree;
   private RedBlackTree<Integer> oddTree;
 
+  // the partitions in PRIMITIVE and COMPACT mode, or null
+  private IntSortedCollection evenInts;
+  private IntSortedCollection oddInts;
+
+  // per-partition filters that reject most misses before the trees are searched, or null
+  private BlockedBloomFilter evenFilter;
+  private BlockedBloomFilter oddFilter;
+
   public DualRBT() {
-    evenTree = new RedBlackTree<Integer>();
-    oddTree = new RedBlackTree<Integer>();
+    this(false);
+  }
+
+  /**
+   * Creates an empty DualRBT.
+   *
+   * @param multiset true to store one counted node per distinct value in each tree
+   */
+  public DualRBT(boolean multiset) {
+    mode = Mode.BOXED;
+    evenTree = RedBlackTree.create(multiset);
+    oddTree = RedBlackTree.create(multiset);
+  }
+
+  /**
+   * Creates an empty DualRBT whose partitions use the given storage. Duplicates are stored as
+   * separate nodes.
+   *
+   * @param mode how each partition stores its values
+   */
+  public DualRBT(Mode mode) {
+    this.mode = mode;
+    if (mode == Mode.PRIMITIVE) {
+      evenInts = new IntRedBlackTree();
+      oddInts = new IntRedBlackTree();
+    } else if (mode == Mode.COMPACT) {
+      evenInts = new CompactIntRedBlackTree(true);
+      oddInts = new CompactIntRedBlackTree(false);
+    } else {
+      evenTree = new RedBlackTree<Integer>();
+      oddTree = new RedBlackTree<Integer>();
+    }
+  }
+
+  public Mode mode() {
+    return mode;
   }
 
   public void insert(int value) {
@@ -12,18 +75,223 @@ class DualRBT {
       throw new IllegalArgumentException("Value must be greater than or equal to 1");
     }
 
-    if (value % 2 == 0) {
+    if (evenInts != null) {
+      (value % 2 == 0 ? evenInts : oddInts).insert(value);
+    } else if (value % 2 == 0) {
       evenTree.insert(value);
     } else {
       oddTree.insert(value);
     }
+    if (evenFilter != null) {
+      (value % 2 == 0 ? evenFilter : oddFilter).put(value);
+    }
   }
 
   public boolean contains(int value) {
+    if (evenFilter != null && !(value % 2 == 0 ? evenFilter : oddFilter).mightContain(value)) {
+      return false;
+    }
+    if (evenInts != null) {
+      return (value % 2 == 0 ? evenInts : oddInts).contains(value);
+    }
     if (value % 2 == 0) {
       return evenTree.contains(value);
     } else {
       return oddTree.contains(value);
     }
   }
+
+  public int size() {
+    if (evenInts != null) {
+      return evenInts.size() + oddInts.size();
+    }
+    return evenTree.size() + oddTree.size();
+  }
+
+  public int count(int value) {
+    if (evenInts != null) {
+      return (value % 2 == 0 ? evenInts : oddInts).count(value);
+    }
+    if (value % 2 == 0) {
+      return evenTree.count(value);
+    } else {
+      return oddTree.count(value);
+    }
+  }
+
+  /**
+   * Passes every value of one partition in [low, high] to action in ascending order. In multiset
+   * mode every distinct value is passed once.
+   *
+   * @param isEven true to scan the even partition, false for the odd partition
+   * @param low    the smallest value to visit
+   * @param high   the largest value to visit
+   * @param action receives each value in the range
+   */
+  @Override
+  public void forEachInRange(boolean isEven, int low, int high, IntConsumer action) {
+    if (evenInts != null) {
+      (isEven ? evenInts : oddInts).forEachInRange(low, high, action);
+      return;
+    }
+    ArrayDeque<BSTNode<Integer>> stack = new ArrayDeque<>();
+    BSTNode<Integer> node = (isEven ? evenTree : oddTree).root;
+    while (true) {
+      while (node != null) {
+        if (node.getData() >= low) {
+          stack.push(node);
+          node = node.getLeft();
+        } else {
+          node = node.getRight();
+        }
+      }
+      if (stack.isEmpty()) {
+        return;
+      }
+      node = stack.pop();
+      int value = node.getData();
+      if (value > high) {
+        return;
+      }
+      action.accept(value);
+      node = node.getRight();
+    }
+  }
+
+  /**
+   * Puts a blocked Bloom filter in front of each tree, so that most lookups of absent values
+   * return without touching the trees. The filters are filled with the values already present and
+   * kept up to date by insert.
+   *
+   * @param expectedPerPartition the number of distinct values each filter is sized for
+   * @param falsePositiveRate    the target rate at which absent values still reach a tree
+   */
+  public void enableBloomFilter(int expectedPerPartition, double falsePositiveRate) {
+    evenFilter = BlockedBloomFilter.forFalsePositiveRate(expectedPerPartition, falsePositiveRate);
+    oddFilter = BlockedBloomFilter.forFalsePositiveRate(expectedPerPartition, falsePositiveRate);
+    rebuildBloomFilter();
+  }
+
+  /**
+   * Puts a blocked Bloom filter of at most a fixed size in front of each partition, for when
+   * memory rather than the false-positive rate is the constraint. The filters use the number of
+   * hash functions that gives the lowest rate for their size, and are filled and kept up to date
+   * like those of {@link #enableBloomFilter(int, double)}.
+   *
+   * @param expectedPerPartition the number of distinct values each filter is sized for
+   * @param bytesPerPartition    the memory budget of each filter, at least one 64-byte block
+   */
+  public void enableBloomFilter(int expectedPerPartition, long bytesPerPartition) {
+    evenFilter = BlockedBloomFilter.forMemoryBudget(expectedPerPartition, bytesPerPartition);
+    oddFilter = BlockedBloomFilter.forMemoryBudget(expectedPerPartition, bytesPerPartition);
+    rebuildBloomFilter();
+  }
+
+  /**
+   * Refills the Bloom filters from the values currently in the trees. Filters cannot forget a
+   * value, so this must be called after values are removed for the filters to reject them again.
+   */
+  public void rebuildBloomFilter() {
+    if (evenFilter == null) {
+      return;
+    }
+    evenFilter.clear();
+    oddFilter.clear();
+    for (int value : distinct(true)) {
+      evenFilter.put(value);
+    }
+    for (int value : distinct(false)) {
+      oddFilter.put(value);
+    }
+  }
+
+  /**
+   * Builds an immutable, read-optimized copy of this tree. Later changes to this tree are not
+   * reflected in the copy.
+   *
+   * @return a frozen copy of the distinct values in this tree
+   */
+  public FrozenAMT freeze() {
+    return new FrozenAMT(distinct(true), distinct(false));
+  }
+
+  /**
+   * Builds a balanced DualRBT from the sorted values of each partition in linear time, without
+   * rotations.
+   *
+   * @param mode  how each partition stores its values
+   * @param evens the even values in ascending order
+   * @param odds  the odd values in ascending order
+   * @return a new tree holding every value
+   * @throws IllegalArgumentException if a value is less than 1, of the wrong parity, or out of order
+   */
+  static DualRBT fromSorted(Mode mode, int[] evens, int[] odds) {
+    for (int value : evens) {
+      checkPartition(value, true);
+    }
+    for (int value : odds) {
+      checkPartition(value, false);
+    }
+    DualRBT tree = new DualRBT(mode);
+    if (mode == Mode.PRIMITIVE) {
+      tree.evenInts = IntRedBlackTree.fromSorted(evens);
+      tree.oddInts = IntRedBlackTree.fromSorted(odds);
+    } else if (mode == Mode.COMPACT) {
+      tree.evenInts = CompactIntRedBlackTree.fromSorted(true, evens);
+      tree.oddInts = CompactIntRedBlackTree.fromSorted(false, odds);
+    } else {
+      tree.evenTree = RedBlackTree.fromSorted(boxed(evens));
+      tree.oddTree = RedBlackTree.fromSorted(boxed(odds));
+    }
+    return tree;
+  }
+
+  private static void checkPartition(int value, boolean isEven) {
+    if (value < 1) {
+      throw new IllegalArgumentException("Value must be greater than or equal to 1");
+    }
+    if ((value % 2 == 0) != isEven) {
+      throw new IllegalArgumentException("Value " + value + " is not " + (isEven ? "even" : "odd"));
+    }
+  }
+
+  private static List<Integer> boxed(int[] values) {
+    List<Integer> list = new ArrayList<>(values.length);
+    for (int value : values) {
+      list.add(value);
+    }
+    return list;
+  }
+
+  /**
+   * Collects the distinct values of one partition in ascending order.
+   */
+  int[] distinct(boolean isEven) {
+    if (evenInts != null) {
+      return FrozenAMT.distinct(isEven ? evenInts : oddInts);
+    }
+    return FrozenAMT.distinct(isEven ? evenTree.root : oddTree.root);
+  }
+
+  /**
+   * Inserts every value of the array, in order.
+   *
+   * @param values the values to insert
+   * @throws IllegalArgumentException if any value is less than 1; the values before it remain
+   *                                  inserted
+   */
+  public void insertAll(int... values) {
+    BulkOperationEvent event = new BulkOperationEvent();
+    event.begin();
+    for (int value : values) {
+      insert(value);
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.tree = getClass().getSimpleName();
+      event.operation = "insertAll";
+      event.count = values.length;
+      event.commit();
+    }
+  }
 }
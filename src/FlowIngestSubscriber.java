@@ -0,0 +1,292 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A Flow.Subscriber that inserts batches of values into an IngestTarget, with demand driven by
+ * how fast the target actually absorbs them. Received batches wait in a queue of at most
+ * maxQueuedBatches for a worker thread that inserts them; whenever a batch is done the worker
+ * measures the insert rate and requests just enough batches to keep about targetLatencyNanos of
+ * work queued. When inserts slow down, for example while the tree rebalances, demand falls with
+ * them and the producer is held back upstream instead of filling a buffer here.
+ *
+ * Progress is published through progress() at most every PROGRESS_INTERVAL_NANOS and once more
+ * at the end; its lag is how long the oldest queued batch has been waiting. Progress items are
+ * dropped for subscribers that fall behind, so a slow observer never stalls ingestion.
+ */
+public class FlowIngestSubscriber implements Flow.Subscriber<int[]> {
+
+  public static final int DEFAULT_MAX_QUEUED_BATCHES = 64;
+  public static final long DEFAULT_TARGET_LATENCY_NANOS = 50_000_000;
+
+  static final long PROGRESS_INTERVAL_NANOS = 100_000_000;
+
+  // weight of the newest sample in the moving average of the insert rate
+  private static final double RATE_SMOOTHING = 0.2;
+
+  private static final Item END = new Item(null, 0);
+
+  private final IngestTarget target;
+  private final int maxQueuedBatches;
+  private final long targetLatencyNanos;
+  private final BlockingQueue<Item> queue;
+  private final Thread worker;
+  private final SubmissionPublisher<Progress> progress = new SubmissionPublisher<>();
+  private final CompletableFuture<Long> completion = new CompletableFuture<>();
+
+  private volatile Flow.Subscription subscription;
+
+  // batches requested from the subscription and batches received, for the demand calculation
+  private long requested;
+  private long received;
+
+  // touched only by the worker thread
+  private long valuesInserted;
+  private long batchesInserted;
+  private double valuesPerSecond;
+  private double valuesPerBatch;
+  private long lastProgressNanos;
+  private final int[][] routed;
+  private final int[] routedCounts;
+
+  /**
+   * A received batch and when it arrived.
+   */
+  private static final class Item {
+    final int[] values;
+    final long receivedNanos;
+
+    Item(int[] values, long receivedNanos) {
+      this.values = values;
+      this.receivedNanos = receivedNanos;
+    }
+  }
+
+  /**
+   * A snapshot of ingestion progress.
+   */
+  public static final class Progress {
+    public final long valuesInserted;
+    public final long batchesInserted;
+    public final double valuesPerSecond;
+    public final int queuedBatches;
+    public final long outstandingDemand;
+    public final long lagNanos;
+
+    Progress(long valuesInserted, long batchesInserted, double valuesPerSecond, int queuedBatches,
+        long outstandingDemand, long lagNanos) {
+      this.valuesInserted = valuesInserted;
+      this.batchesInserted = batchesInserted;
+      this.valuesPerSecond = valuesPerSecond;
+      this.queuedBatches = queuedBatches;
+      this.outstandingDemand = outstandingDemand;
+      this.lagNanos = lagNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Inserted: %d values in %d batches, Rate: %.0f values/s, Queued: %d,"
+              + " Demand: %d, Lag: %.2f ms", valuesInserted, batchesInserted, valuesPerSecond,
+          queuedBatches, outstandingDemand, lagNanos / 1_000_000.0);
+    }
+  }
+
+  public FlowIngestSubscriber(IngestTarget target) {
+    this(target, DEFAULT_MAX_QUEUED_BATCHES, DEFAULT_TARGET_LATENCY_NANOS, runnable -> {
+      Thread thread = new Thread(runnable, "flow-ingest");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Creates a subscriber. Its worker thread starts once it is subscribed.
+   *
+   * @param target             where values are inserted
+   * @param maxQueuedBatches   the most batches ever requested but not yet inserted
+   * @param targetLatencyNanos how much insert work, in time at the measured rate, to keep queued
+   * @param threadFactory      creates the worker thread
+   */
+  public FlowIngestSubscriber(IngestTarget target, int maxQueuedBatches, long targetLatencyNanos,
+      ThreadFactory threadFactory) {
+    if (maxQueuedBatches < 1) {
+      throw new IllegalArgumentException("Max queued batches must be greater than or equal to 1");
+    }
+    this.target = target;
+    this.maxQueuedBatches = maxQueuedBatches;
+    this.targetLatencyNanos = targetLatencyNanos;
+    // one extra slot for the end marker
+    this.queue = new ArrayBlockingQueue<>(maxQueuedBatches + 1);
+    this.worker = threadFactory.newThread(this::run);
+    this.routed = new int[target.partitionCount()][];
+    this.routedCounts = new int[target.partitionCount()];
+  }
+
+  /**
+   * @return a publisher of progress snapshots; it completes when ingestion ends
+   */
+  public Flow.Publisher<Progress> progress() {
+    return progress;
+  }
+
+  /**
+   * @return a future completing with the number of values inserted once the upstream completes,
+   *         or exceptionally if it fails or an insert fails
+   */
+  public CompletableFuture<Long> completion() {
+    return completion;
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    if (this.subscription != null) {
+      subscription.cancel();
+      return;
+    }
+    this.subscription = subscription;
+    worker.start();
+    request(1);
+  }
+
+  @Override
+  public void onNext(int[] values) {
+    boolean queued;
+    // the batch moves from outstanding demand to the queue in one step, so topUpDemand counts it
+    // exactly once; offer never fails while no more batches are requested than the queue can hold
+    synchronized (this) {
+      queued = queue.offer(new Item(values, System.nanoTime()));
+      if (queued) {
+        received++;
+      }
+    }
+    if (!queued) {
+      subscription.cancel();
+      fail(new IllegalStateException("Publisher sent more batches than requested"));
+    }
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    fail(throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    // the queue keeps a slot for the end marker, so only a publisher that ignored demand fills it
+    if (!queue.offer(END)) {
+      fail(new IllegalStateException("Publisher sent more batches than requested"));
+    }
+  }
+
+  private synchronized void request(long batches) {
+    requested += batches;
+    subscription.request(batches);
+  }
+
+  private synchronized long outstandingDemand() {
+    return requested - received;
+  }
+
+  private void fail(Throwable cause) {
+    if (completion.completeExceptionally(cause)) {
+      progress.closeExceptionally(cause);
+      worker.interrupt();
+    }
+  }
+
+  /**
+   * Inserts queued batches and tops up demand after each one, until the end marker or a failure.
+   */
+  private void run() {
+    try {
+      while (!completion.isDone()) {
+        Item item = queue.take();
+        if (item == END) {
+          publishProgress(true);
+          progress.close();
+          completion.complete(valuesInserted);
+          return;
+        }
+        long start = System.nanoTime();
+        insert(item.values);
+        measure(item.values.length, System.nanoTime() - start);
+        publishProgress(false);
+        topUpDemand();
+      }
+    } catch (InterruptedException e) {
+      // failed or cancelled; completion has already been set
+    } catch (RuntimeException e) {
+      subscription.cancel();
+      fail(e);
+    }
+  }
+
+  /**
+   * Routes a batch to its partitions and inserts each partition's share.
+   */
+  private void insert(int[] values) {
+    if (routed.length == 1) {
+      target.insert(0, values, values.length);
+    } else {
+      for (int p = 0; p < routed.length; p++) {
+        if (routed[p] == null || routed[p].length < values.length) {
+          routed[p] = new int[values.length];
+        }
+        routedCounts[p] = 0;
+      }
+      for (int value : values) {
+        int p = target.partitionOf(value);
+        routed[p][routedCounts[p]++] = value;
+      }
+      for (int p = 0; p < routed.length; p++) {
+        if (routedCounts[p] > 0) {
+          target.insert(p, routed[p], routedCounts[p]);
+        }
+      }
+    }
+    valuesInserted += values.length;
+    batchesInserted++;
+  }
+
+  private void measure(int values, long nanos) {
+    double rate = values * 1e9 / Math.max(1, nanos);
+    if (batchesInserted == 1) {
+      valuesPerSecond = rate;
+      valuesPerBatch = values;
+    } else {
+      valuesPerSecond += RATE_SMOOTHING * (rate - valuesPerSecond);
+      valuesPerBatch += RATE_SMOOTHING * (values - valuesPerBatch);
+    }
+  }
+
+  /**
+   * Requests enough batches that, with those already queued or requested, about
+   * targetLatencyNanos of inserts at the measured rate are pending.
+   */
+  private void topUpDemand() {
+    double batchesPerTarget = valuesPerSecond * targetLatencyNanos / 1e9
+        / Math.max(1, valuesPerBatch);
+    long desired = Math.max(1, Math.min(maxQueuedBatches, (long) batchesPerTarget));
+    synchronized (this) {
+      long pending = queue.size() + requested - received;
+      if (pending < desired) {
+        request(desired - pending);
+      }
+    }
+  }
+
+  private void publishProgress(boolean force) {
+    long now = System.nanoTime();
+    if (!force && now - lastProgressNanos < PROGRESS_INTERVAL_NANOS) {
+      return;
+    }
+    lastProgressNanos = now;
+    Item oldest = queue.peek();
+    long lag = oldest == null || oldest == END ? 0 : now - oldest.receivedNanos;
+    progress.offer(new Progress(valuesInserted, batchesInserted, valuesPerSecond, queue.size(),
+        outstandingDemand(), lag), null);
+  }
+}
@@ -0,0 +1,216 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for FlowIngestSubscriber with SubmissionPublisher and hand-written publishers.
+ */
+public class FlowIngestSubscriberTesters {
+
+  @Test
+  public void testFlowIngestSubscriber() throws Exception {
+    DualRBT tree = new DualRBT(DualRBT.Mode.PRIMITIVE);
+    FlowIngestSubscriber subscriber = new FlowIngestSubscriber(IngestTarget.of(tree), 4,
+        FlowIngestSubscriber.DEFAULT_TARGET_LATENCY_NANOS,
+        Executors.defaultThreadFactory());
+    List<FlowIngestSubscriber.Progress> reports = Collections.synchronizedList(new ArrayList<>());
+    CompletableFuture<Void> observed = new CompletableFuture<>();
+    subscriber.progress().subscribe(new Flow.Subscriber<>() {
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(FlowIngestSubscriber.Progress item) {
+        reports.add(item);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        observed.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        observed.complete(null);
+      }
+    });
+
+    try (SubmissionPublisher<int[]> publisher = new SubmissionPublisher<>()) {
+      publisher.subscribe(subscriber);
+      for (int b = 0; b < 200; b++) {
+        int[] batch = new int[1000];
+        for (int i = 0; i < batch.length; i++) {
+          batch[i] = b * 1000 + i + 1;
+        }
+        // blocks whenever the subscriber's demand holds the publisher back
+        publisher.submit(batch);
+      }
+    }
+    Assertions.assertEquals(200000L, (long) subscriber.completion().get());
+    observed.get();
+    Assertions.assertEquals(200000, tree.size());
+    Assertions.assertTrue(tree.contains(123456));
+    FlowIngestSubscriber.Progress last = reports.get(reports.size() - 1);
+    Assertions.assertEquals(200000, last.valuesInserted);
+    Assertions.assertEquals(200, last.batchesInserted);
+
+    FlowIngestSubscriber failing = new FlowIngestSubscriber(IngestTarget.of(new AMT()));
+    try (SubmissionPublisher<int[]> publisher = new SubmissionPublisher<>()) {
+      publisher.subscribe(failing);
+      publisher.submit(new int[] {1, 0});
+    }
+    ExecutionException error = Assertions.assertThrows(
+        ExecutionException.class, () -> failing.completion().get());
+    Assertions.assertTrue(error.getCause() instanceof IllegalArgumentException);
+
+    // a publisher that answers every request at once from its own thread keeps the subscriber's
+    // queue full; demand must never let it overflow, and the end marker must still fit
+    FlowIngestSubscriber eager = new FlowIngestSubscriber(IngestTarget.of(new AMT()), 2,
+        FlowIngestSubscriber.DEFAULT_TARGET_LATENCY_NANOS,
+        Executors.defaultThreadFactory());
+    ExecutorService sender = Executors.newSingleThreadExecutor();
+    int[] sent = {0};
+    eager.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long n) {
+        sender.execute(() -> {
+          for (long i = 0; i < n && sent[0] < 500; i++) {
+            eager.onNext(new int[] {++sent[0]});
+          }
+          if (sent[0] == 500) {
+            sent[0]++;
+            eager.onComplete();
+          }
+        });
+      }
+
+      @Override
+      public void cancel() {
+      }
+    });
+    Assertions.assertEquals(500L, (long) eager.completion().get());
+    sender.shutdown();
+  }
+
+  @Test
+  public void testFlowIngestDemandFollowsThroughput() throws Exception {
+    int maxQueued = 32;
+    int fastBatches = 300;
+    int slowBatches = 120;
+    int total = fastBatches + slowBatches;
+    AtomicLong requested = new AtomicLong();
+    AtomicLong inserted = new AtomicLong();
+    AtomicLong maxPending = new AtomicLong();
+    // batches requested but not yet inserted, seen as each batch starts
+    long[] pendingAtInsert = new long[total];
+    IngestTarget slowing = new IngestTarget() {
+      @Override
+      public int partitionCount() {
+        return 1;
+      }
+
+      @Override
+      public int partitionOf(int value) {
+        return 0;
+      }
+
+      @Override
+      public void insert(int partition, int[] values, int count) {
+        int batch = (int) inserted.get();
+        pendingAtInsert[batch] = requested.get() - batch;
+        if (batch >= fastBatches) {
+          try {
+            // 10 ms per batch, as if the tree were rebalancing
+            Thread.sleep(10);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        inserted.incrementAndGet();
+      }
+    };
+
+    FlowIngestSubscriber subscriber = new FlowIngestSubscriber(slowing, maxQueued,
+        FlowIngestSubscriber.DEFAULT_TARGET_LATENCY_NANOS, Executors.defaultThreadFactory());
+    List<FlowIngestSubscriber.Progress> reports = Collections.synchronizedList(new ArrayList<>());
+    CompletableFuture<Void> observed = new CompletableFuture<>();
+    subscriber.progress().subscribe(new Flow.Subscriber<>() {
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(FlowIngestSubscriber.Progress item) {
+        reports.add(item);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        observed.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        observed.complete(null);
+      }
+    });
+
+    // a publisher that sends every requested batch at once, so only demand holds it back
+    ExecutorService sender = Executors.newSingleThreadExecutor();
+    int[] sent = {0};
+    subscriber.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long n) {
+        long pending = requested.addAndGet(n) - inserted.get();
+        maxPending.accumulateAndGet(pending, Math::max);
+        sender.execute(() -> {
+          for (long i = 0; i < n && sent[0] < total; i++) {
+            subscriber.onNext(new int[1000]);
+            sent[0]++;
+          }
+          if (sent[0] == total) {
+            sent[0]++;
+            subscriber.onComplete();
+          }
+        });
+      }
+
+      @Override
+      public void cancel() {
+      }
+    });
+    Assertions.assertEquals(1000L * total,
+        (long) subscriber.completion().get(30, TimeUnit.SECONDS));
+    sender.shutdown();
+    observed.get(30, TimeUnit.SECONDS);
+
+    // requested batches never exceed what the queue can hold, counting those still in flight
+    Assertions.assertTrue(maxPending.get() <= maxQueued, "max pending " + maxPending.get());
+    long fastPending = 0;
+    for (int i = fastBatches - 50; i < fastBatches; i++) {
+      fastPending = Math.max(fastPending, pendingAtInsert[i]);
+    }
+    long slowPending = 0;
+    for (int i = total - 30; i < total; i++) {
+      slowPending = Math.max(slowPending, pendingAtInsert[i]);
+    }
+    // about 5 batches of 10 ms fill the 50 ms target once inserts have slowed down
+    Assertions.assertTrue(fastPending > 16, "pending while fast " + fastPending);
+    Assertions.assertTrue(slowPending < 10, "pending while slow " + slowPending);
+    Assertions.assertTrue(reports.stream().anyMatch(report -> report.lagNanos > 0));
+  }
+}
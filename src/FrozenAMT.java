@@ -0,0 +1,180 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+
+/**
+ * An immutable, read-only form of a partitioned integer set, produced by {@link AMT#freeze()} or
+ * {@link DualRBT#freeze()}. Each partition is a contiguous int[] in Eytzinger (breadth-first)
+ * order: the children of slot k live at 2k and 2k+1, so the top levels of every search share a few
+ * cache lines and a lookup makes one predictable pass down the array with no branches on the keys.
+ */
+public class FrozenAMT {
+
+  // number of probes whose searches are interleaved by containsAll
+  private static final int BATCH = 8;
+
+  // Eytzinger-ordered keys of each partition; index 0 is unused
+  private final int[] even;
+  private final int[] odd;
+
+  /**
+   * Creates a frozen set from the sorted, distinct values of each partition.
+   */
+  FrozenAMT(int[] sortedEven, int[] sortedOdd) {
+    this.even = eytzinger(sortedEven);
+    this.odd = eytzinger(sortedOdd);
+  }
+
+  /**
+   * @return the number of distinct values in the set
+   */
+  public int size() {
+    return even.length + odd.length - 2;
+  }
+
+  /**
+   * Check whether data is stored in the set.
+   *
+   * @param data the value to check for
+   * @return true if the set contains data, and false otherwise
+   */
+  public boolean contains(int data) {
+    if (data < 1) {
+      return false;
+    }
+    int[] keys = (data % 2 == 0) ? even : odd;
+    int n = keys.length - 1;
+    int k = 1;
+    while (k <= n) {
+      // keys and data are both positive, so the sign bit of the difference is (keys[k] < data)
+      k = (k << 1) | ((keys[k] - data) >>> 31);
+    }
+    // undo the trailing right turns taken after passing the last key that is >= data
+    k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+    return k != 0 && keys[k] == data;
+  }
+
+  /**
+   * Checks a batch of values. The searches of up to eight probes advance one level at a time in
+   * lockstep, so their cache misses overlap instead of being paid one after another.
+   *
+   * @param probes  the values to check for
+   * @param results receives, for each probe, whether the set contains it
+   * @throws IllegalArgumentException if results is shorter than probes
+   */
+  public void containsAll(int[] probes, boolean[] results) {
+    if (results.length < probes.length) {
+      throw new IllegalArgumentException("The results array is shorter than the probes array");
+    }
+    int[] positions = new int[BATCH];
+    for (int start = 0; start < probes.length; start += BATCH) {
+      int count = Math.min(BATCH, probes.length - start);
+      boolean active = true;
+      Arrays.fill(positions, 1);
+      while (active) {
+        active = false;
+        for (int i = 0; i < count; i++) {
+          int data = probes[start + i];
+          int[] keys = (data % 2 == 0) ? even : odd;
+          int k = positions[i];
+          if (data >= 1 && k < keys.length) {
+            positions[i] = (k << 1) | ((keys[k] - data) >>> 31);
+            active = true;
+          }
+        }
+      }
+      for (int i = 0; i < count; i++) {
+        int data = probes[start + i];
+        int[] keys = (data % 2 == 0) ? even : odd;
+        int k = positions[i] >>> (Integer.numberOfTrailingZeros(~positions[i]) + 1);
+        results[start + i] = data >= 1 && k != 0 && keys[k] == data;
+      }
+    }
+  }
+
+  /**
+   * Lays out sorted keys in Eytzinger order, 1-indexed.
+   */
+  private static int[] eytzinger(int[] sorted) {
+    int[] keys = new int[sorted.length + 1];
+    fill(sorted, keys, 0, 1);
+    return keys;
+  }
+
+  /**
+   * Fills the subtree of slot k with sorted keys starting at index next, in order.
+   *
+   * @return the index of the next sorted key to place
+   */
+  private static int fill(int[] sorted, int[] keys, int next, int k) {
+    if (k < keys.length) {
+      next = fill(sorted, keys, next, 2 * k);
+      keys[k] = sorted[next++];
+      next = fill(sorted, keys, next, 2 * k + 1);
+    }
+    return next;
+  }
+
+  /**
+   * Collects the values of an ascending iterator, dropping duplicates.
+   */
+  static int[] distinct(PrimitiveIterator.OfInt ascending) {
+    int[] values = new int[16];
+    int size = 0;
+    while (ascending.hasNext()) {
+      int value = ascending.nextInt();
+      if (size > 0 && values[size - 1] == value) {
+        continue;
+      }
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+    return Arrays.copyOf(values, size);
+  }
+
+  /**
+   * Collects the distinct values of a tree of Integers in ascending order.
+   */
+  static int[] distinct(BSTNode<Integer> root) {
+    int[] values = new int[16];
+    int size = 0;
+    ArrayDeque<BSTNode<Integer>> stack = new ArrayDeque<>();
+    BSTNode<Integer> node = root;
+    while (node != null || !stack.isEmpty()) {
+      while (node != null) {
+        stack.push(node);
+        node = node.getLeft();
+      }
+      node = stack.pop();
+      int value = node.getData();
+      if (size == 0 || values[size - 1] != value) {
+        if (size == values.length) {
+          values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+      }
+      node = node.getRight();
+    }
+    return Arrays.copyOf(values, size);
+  }
+
+  /**
+   * Collects the distinct values of a primitive sorted collection in ascending order.
+   */
+  static int[] distinct(IntSortedCollection tree) {
+    int[][] values = {new int[16]};
+    int[] size = {0};
+    tree.forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, value -> {
+      int n = size[0];
+      if (n == 0 || values[0][n - 1] != value) {
+        if (n == values[0].length) {
+          values[0] = Arrays.copyOf(values[0], n * 2);
+        }
+        values[0][size[0]++] = value;
+      }
+    });
+    return Arrays.copyOf(values[0], size[0]);
+  }
+}
@@ -0,0 +1,258 @@
+import java.util.Arrays;
+
+/**
+ * A bounded cache of recent lookup results for positive int keys, put in front of an AMT so that
+ * hot keys skip the tree descent. It caches misses as well as hits. Keys live in a primitive
+ * open-addressing table with linear probing, kept at most half full, and nothing is boxed.
+ *
+ * A key is admitted on its second miss within a recent window, tracked by a doorkeeper bitset as
+ * in TinyLFU, so keys looked up once do not churn the table. When the cache is full, a CLOCK hand
+ * sweeps the table and evicts the first entry not used since the hand last passed it. Deleted
+ * entries are closed up by shifting later entries of the same probe run back, so the table needs
+ * no tombstones. The cache is not thread-safe.
+ */
+public class HotKeyCache {
+
+  /** Returned by get for a key that is not cached. */
+  public static final int NOT_CACHED = -1;
+  /** Returned by get for a key cached as absent from the tree. */
+  public static final int CACHED_ABSENT = 0;
+  /** Returned by get for a key cached as present in the tree. */
+  public static final int CACHED_PRESENT = 1;
+
+  // flag bits of an entry
+  private static final byte PRESENT = 1;
+  private static final byte REFERENCED = 2;
+
+  private final int maxEntries;
+  private final int mask;
+  private final int shift;
+
+  // key of each slot, 0 for an empty slot, and its flags
+  private final int[] keys;
+  private final byte[] flags;
+  private int size;
+
+  // the next slot the CLOCK hand examines
+  private int hand;
+
+  // one bit per hashed key seen recently; a key is only admitted when its bit is already set
+  private final long[] doorkeeper;
+  private final int doorkeeperMask;
+  private int doorkeeperAdds;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long invalidations;
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param maxEntries the most keys the cache holds
+   * @throws IllegalArgumentException if maxEntries is less than 1 or above 2^29
+   */
+  public HotKeyCache(int maxEntries) {
+    if (maxEntries < 1 || maxEntries > 1 << 29) {
+      throw new IllegalArgumentException("Max entries must be in [1, 2^29]");
+    }
+    this.maxEntries = maxEntries;
+    int capacity = Integer.highestOneBit(maxEntries * 2 - 1) << 1;
+    this.mask = capacity - 1;
+    this.shift = 32 - Integer.numberOfTrailingZeros(capacity);
+    this.keys = new int[capacity];
+    this.flags = new byte[capacity];
+    // eight bits per table slot, cleared after one key per slot has been recorded so that old
+    // sightings age out
+    this.doorkeeper = new long[Math.max(1, capacity / 8)];
+    this.doorkeeperMask = doorkeeper.length * 64 - 1;
+  }
+
+  /**
+   * Looks up a cached result and marks it as recently used.
+   *
+   * @param key a key of at least 1
+   * @return CACHED_PRESENT, CACHED_ABSENT or NOT_CACHED
+   */
+  public int get(int key) {
+    int slot = find(key);
+    if (slot < 0) {
+      misses++;
+      return NOT_CACHED;
+    }
+    hits++;
+    flags[slot] |= REFERENCED;
+    return (flags[slot] & PRESENT) != 0 ? CACHED_PRESENT : CACHED_ABSENT;
+  }
+
+  /**
+   * Caches the result of a lookup, evicting an entry first if the cache is full. A key not yet
+   * cached is admitted only if it was offered before since the doorkeeper was last cleared, so
+   * keys looked up once never displace cached ones.
+   *
+   * @param key     a key of at least 1
+   * @param present whether the key is in the tree
+   */
+  public void put(int key, boolean present) {
+    int slot = find(key);
+    if (slot < 0) {
+      if (!admit(key)) {
+        return;
+      }
+      if (size == maxEntries) {
+        evict();
+      }
+      slot = home(key);
+      while (keys[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = key;
+      size++;
+    }
+    // a new entry starts unreferenced, so one-off keys are the first to go
+    flags[slot] = (byte) ((flags[slot] & REFERENCED) | (present ? PRESENT : 0));
+  }
+
+  /**
+   * Drops the cached result for a key whose presence in the tree has changed.
+   *
+   * @param key the key to drop
+   */
+  public void invalidate(int key) {
+    int slot = find(key);
+    if (slot >= 0) {
+      delete(slot);
+      invalidations++;
+    }
+  }
+
+  /**
+   * Drops every cached result. The counters are kept.
+   */
+  public void clear() {
+    Arrays.fill(keys, 0);
+    Arrays.fill(flags, (byte) 0);
+    Arrays.fill(doorkeeper, 0);
+    doorkeeperAdds = 0;
+    size = 0;
+    hand = 0;
+  }
+
+  /**
+   * @return the number of keys cached
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the most keys the cache holds
+   */
+  public int maxEntries() {
+    return maxEntries;
+  }
+
+  public long hits() {
+    return hits;
+  }
+
+  public long misses() {
+    return misses;
+  }
+
+  public long evictions() {
+    return evictions;
+  }
+
+  public long invalidations() {
+    return invalidations;
+  }
+
+  /**
+   * @return the share of lookups answered from the cache, or 0 before the first lookup
+   */
+  public double hitRate() {
+    long lookups = hits + misses;
+    return lookups == 0 ? 0 : hits / (double) lookups;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Size: %d/%d, Hits: %d, Misses: %d, Hit rate: %.2f%%, Evictions: %d,"
+            + " Invalidations: %d", size, maxEntries, hits, misses, hitRate() * 100, evictions,
+        invalidations);
+  }
+
+  private int home(int key) {
+    return (key * 0x9E3779B9) >>> shift;
+  }
+
+  /**
+   * Records key in the doorkeeper and reports whether it was there already.
+   */
+  private boolean admit(int key) {
+    int bit = (key * 0x85EBCA6B ^ key >>> 16) & doorkeeperMask;
+    long mask = 1L << bit;
+    if ((doorkeeper[bit >>> 6] & mask) != 0) {
+      return true;
+    }
+    doorkeeper[bit >>> 6] |= mask;
+    if (++doorkeeperAdds > doorkeeperMask / 8) {
+      Arrays.fill(doorkeeper, 0);
+      doorkeeperAdds = 0;
+    }
+    return false;
+  }
+
+  /**
+   * @return the slot holding key, or -1
+   */
+  private int find(int key) {
+    for (int slot = home(key); keys[slot] != 0; slot = (slot + 1) & mask) {
+      if (keys[slot] == key) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Advances the CLOCK hand, giving referenced entries a second chance, and evicts the first
+   * unreferenced entry it reaches.
+   */
+  private void evict() {
+    while (true) {
+      int slot = hand;
+      hand = (hand + 1) & mask;
+      if (keys[slot] == 0) {
+        continue;
+      }
+      if ((flags[slot] & REFERENCED) != 0) {
+        flags[slot] &= ~REFERENCED;
+        continue;
+      }
+      delete(slot);
+      evictions++;
+      return;
+    }
+  }
+
+  /**
+   * Empties a slot and shifts back the later entries of its probe run whose home slot is not
+   * between the hole and their current slot, so every entry stays reachable from its home.
+   */
+  private void delete(int slot) {
+    int hole = slot;
+    for (int next = (hole + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+      int home = home(keys[next]);
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        keys[hole] = keys[next];
+        flags[hole] = flags[next];
+        hole = next;
+      }
+    }
+    keys[hole] = 0;
+    flags[hole] = 0;
+    size--;
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Where StreamingIngest delivers parsed values. A target is split into one or more partitions
+ * that can be filled concurrently: each partition gets an inserter thread of its own, and no two
+ * threads ever insert into the same partition.
+ */
+public interface IngestTarget {
+
+    /**
+     * @return the number of partitions, at least 1
+     */
+    public int partitionCount();
+
+    /**
+     * @param value a parsed value
+     * @return the partition value belongs to, in [0, partitionCount())
+     */
+    public int partitionOf(int value);
+
+    /**
+     * Inserts the first count values of a batch, all of which belong to partition.
+     * @param partition the partition the values belong to
+     * @param values the values to insert
+     * @param count how many values of the array to insert
+     */
+    public void insert(int partition, int[] values, int count);
+
+    /**
+     * A target that inserts every value into an AMT from one thread. The AMT's partitions share
+     * nodes, so they cannot be filled concurrently.
+     */
+    public static IngestTarget of(AMT tree) {
+        return new IngestTarget() {
+            @Override
+            public int partitionCount() {
+                return 1;
+            }
+
+            @Override
+            public int partitionOf(int value) {
+                return 0;
+            }
+
+            @Override
+            public void insert(int partition, int[] values, int count) {
+                for (int i = 0; i < count; i++) {
+                    tree.insert(values[i]);
+                }
+            }
+        };
+    }
+
+    /**
+     * A target that fills the even and odd trees of a DualRBT from one thread each. The trees and
+     * their filters are independent, so this is safe without locks as long as nothing else
+     * accesses the DualRBT during ingestion.
+     */
+    public static IngestTarget of(DualRBT tree) {
+        return new IngestTarget() {
+            @Override
+            public int partitionCount() {
+                return 2;
+            }
+
+            @Override
+            public int partitionOf(int value) {
+                return value & 1;
+            }
+
+            @Override
+            public void insert(int partition, int[] values, int count) {
+                for (int i = 0; i < count; i++) {
+                    tree.insert(values[i]);
+                }
+            }
+        };
+    }
+
+    /**
+     * A target that inserts every value into a SortedCollection from one thread. Values are boxed
+     * only at this last step.
+     */
+    public static IngestTarget of(SortedCollection<Integer> collection) {
+        return new IngestTarget() {
+            @Override
+            public int partitionCount() {
+                return 1;
+            }
+
+            @Override
+            public int partitionOf(int value) {
+                return 0;
+            }
+
+            @Override
+            public void insert(int partition, int[] values, int count) {
+                for (int i = 0; i < count; i++) {
+                    collection.insert(values[i]);
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,445 @@
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * A B+-tree of distinct int keys. Every node keeps its keys in a primitive array sized to a few
+ * cache lines, so a lookup touches about log_B(n) nodes instead of the log2(n) of a binary tree.
+ * All keys live in the leaves, which are linked left to right for range scans; inner nodes hold
+ * only routing keys. Removals borrow from or merge with a sibling to keep every node except the
+ * root at least half full.
+ */
+public class IntBPlusTree {
+
+  public static final int MIN_NODE_CAPACITY = 16;
+  public static final int MAX_NODE_CAPACITY = 64;
+  public static final int DEFAULT_NODE_CAPACITY = 32;
+
+  // counts keys within a node; vectorized when the Vector API is available
+  private static final IntSearchKernel KERNEL = SearchKernels.DEFAULT;
+
+  /**
+   * A leaf or inner node. Child i of an inner node holds the keys k with
+   * keys[i - 1] <= k < keys[i].
+   */
+  static final class Node {
+    int size;
+    // one spare slot lets a node overflow by one key before it is split
+    final int[] keys;
+    // null for leaves
+    final Node[] children;
+    // next leaf to the right, null for inner nodes and the last leaf
+    Node next;
+
+    Node(int capacity, boolean leaf) {
+      this.keys = new int[capacity + 1];
+      this.children = leaf ? null : new Node[capacity + 2];
+    }
+
+    boolean isLeaf() {
+      return children == null;
+    }
+  }
+
+  // maximum and minimum number of keys in a node other than the root
+  private final int capacity;
+  private final int minKeys;
+
+  private Node root;
+  private int size;
+
+  // routing key handed up by the last split during an insert
+  private int promoted;
+
+  /**
+   * Creates an empty tree with the default node capacity.
+   */
+  public IntBPlusTree() {
+    this(DEFAULT_NODE_CAPACITY);
+  }
+
+  /**
+   * Creates an empty tree.
+   *
+   * @param nodeCapacity the maximum number of keys in a node
+   * @throws IllegalArgumentException if nodeCapacity is outside [16, 64]
+   */
+  public IntBPlusTree(int nodeCapacity) {
+    if (nodeCapacity < MIN_NODE_CAPACITY || nodeCapacity > MAX_NODE_CAPACITY) {
+      throw new IllegalArgumentException("Node capacity must be between " + MIN_NODE_CAPACITY
+          + " and " + MAX_NODE_CAPACITY);
+    }
+    this.capacity = nodeCapacity;
+    this.minKeys = nodeCapacity / 2;
+    this.root = new Node(nodeCapacity, true);
+  }
+
+  /**
+   * @return the number of keys in the tree
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @return true if the tree holds no keys
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Removes all keys from the tree.
+   */
+  public void clear() {
+    this.root = new Node(capacity, true);
+    this.size = 0;
+  }
+
+  /**
+   * Check whether key is stored in the tree.
+   *
+   * @param key the key to look for
+   * @return true if the tree contains key
+   */
+  public boolean contains(int key) {
+    Node leaf = findLeaf(key);
+    int index = lowerBound(leaf.keys, leaf.size, key);
+    return index < leaf.size && leaf.keys[index] == key;
+  }
+
+  /**
+   * Looks up a batch of keys in one descent. Each node on the paths the keys share is visited
+   * once: an inner node is searched once for every child the batch continues into, and the keys
+   * routed to a leaf are merged with its keys in a single pass.
+   *
+   * @param sorted  the keys to look up, ascending in [from, to)
+   * @param from    the index of the first key
+   * @param to      the index after the last key
+   * @param results receives, at the index of each key, whether the tree contains it
+   */
+  public void containsAllSorted(int[] sorted, int from, int to, boolean[] results) {
+    containsSortedHelper(this.root, sorted, from, to, results);
+  }
+
+  /**
+   * Inserts key into the tree. Keys are distinct, so inserting a key that is already present
+   * leaves the tree unchanged.
+   *
+   * @param key the key to insert
+   * @return true if the key was added, false if it was already present
+   */
+  public boolean insert(int key) {
+    int sizeBefore = this.size;
+    Node split = insertHelper(this.root, key);
+    if (split != null) {
+      Node newRoot = new Node(capacity, false);
+      newRoot.keys[0] = this.promoted;
+      newRoot.children[0] = this.root;
+      newRoot.children[1] = split;
+      newRoot.size = 1;
+      this.root = newRoot;
+    }
+    return this.size != sizeBefore;
+  }
+
+  /**
+   * Removes key from the tree.
+   *
+   * @param key the key to remove
+   * @return true if the key was removed, false if it was not present
+   */
+  public boolean remove(int key) {
+    boolean removed = removeHelper(this.root, key);
+    if (!this.root.isLeaf() && this.root.size == 0) {
+      // the root lost its last routing key in a merge, so its only child becomes the root
+      this.root = this.root.children[0];
+    }
+    return removed;
+  }
+
+  /**
+   * Passes every key in [low, high] to action in ascending order, following the leaf links.
+   *
+   * @param low    the smallest key to visit
+   * @param high   the largest key to visit
+   * @param action receives each key in the range
+   */
+  public void forEachInRange(int low, int high, IntConsumer action) {
+    Node leaf = findLeaf(low);
+    int index = lowerBound(leaf.keys, leaf.size, low);
+    while (leaf != null) {
+      for (; index < leaf.size; index++) {
+        if (leaf.keys[index] > high) {
+          return;
+        }
+        action.accept(leaf.keys[index]);
+      }
+      leaf = leaf.next;
+      index = 0;
+    }
+  }
+
+  /**
+   * Returns an iterator over the keys that are at least from, in ascending order.
+   *
+   * @param from the smallest key to return
+   * @return an iterator that must not be used across modifications of the tree
+   */
+  public PrimitiveIterator.OfInt iterator(int from) {
+    Node start = findLeaf(from);
+    int startIndex = lowerBound(start.keys, start.size, from);
+    return new PrimitiveIterator.OfInt() {
+      private Node leaf = start;
+      private int index = startIndex;
+
+      @Override
+      public boolean hasNext() {
+        while (leaf != null && index >= leaf.size) {
+          leaf = leaf.next;
+          index = 0;
+        }
+        return leaf != null;
+      }
+
+      @Override
+      public int nextInt() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return leaf.keys[index++];
+      }
+    };
+  }
+
+  /**
+   * @return the number of node levels, 1 for a tree that is a single leaf
+   */
+  public int height() {
+    int height = 1;
+    for (Node node = this.root; !node.isLeaf(); node = node.children[0]) {
+      height++;
+    }
+    return height;
+  }
+
+  /**
+   * @return the leaf whose key range covers key
+   */
+  private Node findLeaf(int key) {
+    Node node = this.root;
+    while (!node.isLeaf()) {
+      node = node.children[upperBound(node.keys, node.size, key)];
+    }
+    return node;
+  }
+
+  /**
+   * Private helper method to look up sorted[from, to) below node.
+   */
+  private void containsSortedHelper(Node node, int[] sorted, int from, int to,
+      boolean[] results) {
+    if (node.isLeaf()) {
+      int index = from < to ? lowerBound(node.keys, node.size, sorted[from]) : 0;
+      for (int i = from; i < to; i++) {
+        while (index < node.size && node.keys[index] < sorted[i]) {
+          index++;
+        }
+        results[i] = index < node.size && node.keys[index] == sorted[i];
+      }
+      return;
+    }
+    while (from < to) {
+      int child = upperBound(node.keys, node.size, sorted[from]);
+      int end = from + 1;
+      if (child == node.size) {
+        end = to;
+      } else {
+        // the following keys below the next routing key go to the same child
+        while (end < to && sorted[end] < node.keys[child]) {
+          end++;
+        }
+      }
+      containsSortedHelper(node.children[child], sorted, from, end, results);
+      from = end;
+    }
+  }
+
+  /**
+   * Recursively inserts key into the subtree of node.
+   *
+   * @return the new right sibling of node if node was split, with its routing key in promoted,
+   * or null
+   */
+  private Node insertHelper(Node node, int key) {
+    if (node.isLeaf()) {
+      int index = lowerBound(node.keys, node.size, key);
+      if (index < node.size && node.keys[index] == key) {
+        return null;
+      }
+      System.arraycopy(node.keys, index, node.keys, index + 1, node.size - index);
+      node.keys[index] = key;
+      node.size++;
+      this.size++;
+      return node.size > capacity ? splitLeaf(node) : null;
+    }
+
+    int childIndex = upperBound(node.keys, node.size, key);
+    Node split = insertHelper(node.children[childIndex], key);
+    if (split == null) {
+      return null;
+    }
+    System.arraycopy(node.keys, childIndex, node.keys, childIndex + 1, node.size - childIndex);
+    System.arraycopy(node.children, childIndex + 1, node.children, childIndex + 2,
+        node.size - childIndex);
+    node.keys[childIndex] = this.promoted;
+    node.children[childIndex + 1] = split;
+    node.size++;
+    return node.size > capacity ? splitInner(node) : null;
+  }
+
+  /**
+   * Moves the upper half of an overflowing leaf into a new leaf linked after it.
+   */
+  private Node splitLeaf(Node leaf) {
+    Node right = new Node(capacity, true);
+    int keep = leaf.size / 2;
+    right.size = leaf.size - keep;
+    System.arraycopy(leaf.keys, keep, right.keys, 0, right.size);
+    leaf.size = keep;
+    right.next = leaf.next;
+    leaf.next = right;
+    this.promoted = right.keys[0];
+    return right;
+  }
+
+  /**
+   * Moves the upper half of an overflowing inner node into a new node. The middle key moves up to
+   * the parent instead of into either half.
+   */
+  private Node splitInner(Node node) {
+    Node right = new Node(capacity, false);
+    int middle = node.size / 2;
+    right.size = node.size - middle - 1;
+    System.arraycopy(node.keys, middle + 1, right.keys, 0, right.size);
+    System.arraycopy(node.children, middle + 1, right.children, 0, right.size + 1);
+    java.util.Arrays.fill(node.children, middle + 1, node.size + 1, null);
+    this.promoted = node.keys[middle];
+    node.size = middle;
+    return right;
+  }
+
+  /**
+   * Recursively removes key from the subtree of node, repairing any child left underfull.
+   *
+   * @return true if the key was removed
+   */
+  private boolean removeHelper(Node node, int key) {
+    if (node.isLeaf()) {
+      int index = lowerBound(node.keys, node.size, key);
+      if (index == node.size || node.keys[index] != key) {
+        return false;
+      }
+      System.arraycopy(node.keys, index + 1, node.keys, index, node.size - index - 1);
+      node.size--;
+      this.size--;
+      return true;
+    }
+
+    int childIndex = upperBound(node.keys, node.size, key);
+    boolean removed = removeHelper(node.children[childIndex], key);
+    if (removed && node.children[childIndex].size < minKeys) {
+      rebalance(node, childIndex);
+    }
+    return removed;
+  }
+
+  /**
+   * Refills the underfull child at childIndex by borrowing a key from a sibling that can spare
+   * one, or otherwise merges it with a sibling.
+   */
+  private void rebalance(Node parent, int childIndex) {
+    Node child = parent.children[childIndex];
+    Node left = childIndex > 0 ? parent.children[childIndex - 1] : null;
+    Node right = childIndex < parent.size ? parent.children[childIndex + 1] : null;
+
+    if (left != null && left.size > minKeys) {
+      borrowFromLeft(parent, childIndex, left, child);
+    } else if (right != null && right.size > minKeys) {
+      borrowFromRight(parent, childIndex, child, right);
+    } else if (left != null) {
+      merge(parent, childIndex - 1, left, child);
+    } else {
+      merge(parent, childIndex, child, right);
+    }
+  }
+
+  private void borrowFromLeft(Node parent, int childIndex, Node left, Node child) {
+    System.arraycopy(child.keys, 0, child.keys, 1, child.size);
+    if (child.isLeaf()) {
+      child.keys[0] = left.keys[left.size - 1];
+      parent.keys[childIndex - 1] = child.keys[0];
+    } else {
+      System.arraycopy(child.children, 0, child.children, 1, child.size + 1);
+      child.keys[0] = parent.keys[childIndex - 1];
+      child.children[0] = left.children[left.size];
+      left.children[left.size] = null;
+      parent.keys[childIndex - 1] = left.keys[left.size - 1];
+    }
+    child.size++;
+    left.size--;
+  }
+
+  private void borrowFromRight(Node parent, int childIndex, Node child, Node right) {
+    if (child.isLeaf()) {
+      child.keys[child.size] = right.keys[0];
+      System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+      parent.keys[childIndex] = right.keys[0];
+    } else {
+      child.keys[child.size] = parent.keys[childIndex];
+      child.children[child.size + 1] = right.children[0];
+      parent.keys[childIndex] = right.keys[0];
+      System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+      System.arraycopy(right.children, 1, right.children, 0, right.size);
+      right.children[right.size] = null;
+    }
+    child.size++;
+    right.size--;
+  }
+
+  /**
+   * Appends right to its left sibling and removes right and their separating key from parent.
+   */
+  private void merge(Node parent, int separatorIndex, Node left, Node right) {
+    if (left.isLeaf()) {
+      System.arraycopy(right.keys, 0, left.keys, left.size, right.size);
+      left.size += right.size;
+      left.next = right.next;
+    } else {
+      left.keys[left.size] = parent.keys[separatorIndex];
+      System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+      System.arraycopy(right.children, 0, left.children, left.size + 1, right.size + 1);
+      left.size += right.size + 1;
+    }
+    System.arraycopy(parent.keys, separatorIndex + 1, parent.keys, separatorIndex,
+        parent.size - separatorIndex - 1);
+    System.arraycopy(parent.children, separatorIndex + 2, parent.children, separatorIndex + 1,
+        parent.size - separatorIndex - 1);
+    parent.children[parent.size] = null;
+    parent.size--;
+  }
+
+  /**
+   * @return the number of keys in keys[0, size) that are less than key
+   */
+  static int lowerBound(int[] keys, int size, int key) {
+    return KERNEL.countLess(keys, size, key);
+  }
+
+  /**
+   * @return the number of keys in keys[0, size) that are less than or equal to key
+   */
+  static int upperBound(int[] keys, int size, int key) {
+    return KERNEL.countLessOrEqual(keys, size, key);
+  }
+}
@@ -0,0 +1,334 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayDeque;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.function.IntConsumer;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A Red-Black Tree specialized for int keys. It balances exactly like RedBlackTree, but each node
+ * holds its key as a primitive int, so inserts and lookups neither box values nor make virtual
+ * compareTo calls, and each key costs one node instead of a node plus an Integer.
+ */
+public class IntRedBlackTree implements IntSortedCollection {
+
+  /**
+   * A node holding one int key, its color, and references to its parent and children.
+   */
+  static final class Node {
+    final int key;
+    boolean isRed = true;
+    Node left;
+    Node right;
+    Node up;
+
+    Node(int key) {
+      this.key = key;
+    }
+
+    boolean isRightChild() {
+      return up != null && up.right == this;
+    }
+
+    @Override
+    public String toString() {
+      return key + (isRed ? "(r)" : "(b)");
+    }
+  }
+
+  // root of the tree
+  protected Node root;
+
+  // number of keys in the tree, including duplicates
+  protected int size;
+
+  /**
+   * Inserts a new key. Like RedBlackTree, a key equal to one already stored goes to its left.
+   *
+   * @param value the key to insert
+   */
+  @Override
+  public void insert(int value) {
+    Node toAdd = new Node(value);
+    size++;
+    if (root == null) {
+      toAdd.isRed = false;
+      root = toAdd;
+      return;
+    }
+
+    Node parent = root;
+    while (true) {
+      if (value <= parent.key) {
+        if (parent.left == null) {
+          parent.left = toAdd;
+          break;
+        }
+        parent = parent.left;
+      } else {
+        if (parent.right == null) {
+          parent.right = toAdd;
+          break;
+        }
+        parent = parent.right;
+      }
+    }
+    toAdd.up = parent;
+    ensureRedProperty(toAdd);
+    root.isRed = false;
+  }
+
+  /**
+   * Repairs red property violations caused by a red node with a red parent, following the same
+   * cases as RedBlackTree.ensureRedProperty but iteratively.
+   *
+   * @param node a newly inserted red node
+   */
+  private void ensureRedProperty(Node node) {
+    while (node.up != null && node.up.isRed) {
+      Node parent = node.up;
+      Node grandparent = parent.up;
+      Node aunt = parent.isRightChild() ? grandparent.left : grandparent.right;
+
+      // Parent is red, Aunt is red: recolor and continue from the grandparent
+      if (aunt != null && aunt.isRed) {
+        parent.isRed = false;
+        aunt.isRed = false;
+        grandparent.isRed = true;
+        node = grandparent;
+        continue;
+      }
+
+      // Parent is red, Aunt is black or null: rotate the middle key into the grandparent's place
+      if (parent.isRightChild() != node.isRightChild()) {
+        rotate(node, parent);
+        node = parent;
+        parent = node.up;
+      }
+      rotate(parent, grandparent);
+      parent.isRed = false;
+      grandparent.isRed = true;
+      return;
+    }
+  }
+
+  /**
+   * Rotates child into the position of its parent: a right rotation when child is a left child,
+   * and a left rotation otherwise.
+   */
+  private void rotate(Node child, Node parent) {
+    if (child.isRightChild()) {
+      parent.right = child.left;
+      if (child.left != null) {
+        child.left.up = parent;
+      }
+      child.left = parent;
+    } else {
+      parent.left = child.right;
+      if (child.right != null) {
+        child.right.up = parent;
+      }
+      child.right = parent;
+    }
+
+    child.up = parent.up;
+    parent.up = child;
+    if (child.up == null) {
+      root = child;
+    } else if (child.up.left == parent) {
+      child.up.left = child;
+    } else {
+      child.up.right = child;
+    }
+  }
+
+  @Override
+  public boolean contains(int value) {
+    Node node = root;
+    while (node != null) {
+      if (value == node.key) {
+        return true;
+      }
+      node = value < node.key ? node.left : node.right;
+    }
+    return false;
+  }
+
+  @Override
+  public int count(int value) {
+    return countHelper(value, root);
+  }
+
+  /**
+   * Counts the occurrences of value below node. Rotations can leave equal keys on both sides of a
+   * node, so both subtrees of a match are searched.
+   */
+  private int countHelper(int value, Node node) {
+    while (node != null && value != node.key) {
+      node = value < node.key ? node.left : node.right;
+    }
+    if (node == null) {
+      return 0;
+    }
+    return 1 + countHelper(value, node.left) + countHelper(value, node.right);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return root == null;
+  }
+
+  @Override
+  public void clear() {
+    root = null;
+    size = 0;
+  }
+
+  @Override
+  public void forEachInRange(int low, int high, IntConsumer action) {
+    ArrayDeque<Node> stack = new ArrayDeque<>();
+    Node node = root;
+    while (node != null || !stack.isEmpty()) {
+      // descend left only while smaller keys may still be in range
+      while (node != null) {
+        if (node.key >= low) {
+          stack.push(node);
+          node = node.left;
+        } else {
+          node = node.right;
+        }
+      }
+      if (stack.isEmpty()) {
+        return;
+      }
+      node = stack.pop();
+      if (node.key > high) {
+        return;
+      }
+      action.accept(node.key);
+      node = node.right;
+    }
+  }
+
+  /**
+   * Builds a balanced tree from keys in ascending order in linear time, without rotations. The
+   * nodes form a complete tree in heap order; nodes on a partly filled last level are red and all
+   * others black, so every path has the same number of black nodes.
+   *
+   * @param sorted the keys in ascending order, possibly with duplicates
+   * @return a new tree holding every key
+   * @throws IllegalArgumentException if the keys are out of order
+   */
+  public static IntRedBlackTree fromSorted(int[] sorted) {
+    for (int i = 1; i < sorted.length; i++) {
+      if (sorted[i - 1] > sorted[i]) {
+        throw new IllegalArgumentException("Keys must be in ascending order");
+      }
+    }
+    IntRedBlackTree tree = new IntRedBlackTree();
+    tree.root = buildHeapOrder(1, sorted, new int[1]);
+    tree.size = sorted.length;
+    return tree;
+  }
+
+  /**
+   * Builds the subtree at heap index i of a complete tree holding sorted, taking keys in order
+   * from next[0].
+   */
+  private static Node buildHeapOrder(int i, int[] sorted, int[] next) {
+    int nodes = sorted.length;
+    if (i > nodes) {
+      return null;
+    }
+    Node left = buildHeapOrder(2 * i, sorted, next);
+    Node node = new Node(sorted[next[0]++]);
+    int lastLevel = 31 - Integer.numberOfLeadingZeros(nodes);
+    node.isRed = (nodes & (nodes + 1)) != 0 && 31 - Integer.numberOfLeadingZeros(i) == lastLevel;
+    node.left = left;
+    if (left != null) {
+      left.up = node;
+    }
+    node.right = buildHeapOrder(2 * i + 1, sorted, next);
+    if (node.right != null) {
+      node.right.up = node;
+    }
+    return node;
+  }
+
+  /**
+   * Returns a string representation of the tree in level order, in the same format as
+   * RBTNode.toLevelOrderString().
+   *
+   * @return a string of keys and colors in level order
+   */
+  public String toLevelOrderString() {
+    if (root == null) {
+      return "[ ]";
+    }
+    Queue<Node> nodeList = new LinkedList<>();
+    nodeList.add(root);
+    StringBuilder sb = new StringBuilder("[ ");
+    while (!nodeList.isEmpty()) {
+      Node node = nodeList.poll();
+      if (node.left != null) {
+        nodeList.add(node.left);
+      }
+      if (node.right != null) {
+        nodeList.add(node.right);
+      }
+      sb.append(node);
+      sb.append(nodeList.isEmpty() ? " ]" : ", ");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Tests that the tree has exactly the shape and colors of a RedBlackTree built from the same
+   * keys, including duplicates.
+   */
+  @Test
+  public void testMatchesRedBlackTree() {
+    IntRedBlackTree tree = new IntRedBlackTree();
+    RedBlackTree<Integer> reference = new RedBlackTree<>();
+    java.util.Random random = new java.util.Random(36);
+
+    for (int i = 0; i < 500; i++) {
+      int value = random.nextInt(200);
+      tree.insert(value);
+      reference.insert(value);
+      assertEquals(reference.root.toLevelOrderString(), tree.toLevelOrderString());
+    }
+
+    assertEquals(reference.size(), tree.size());
+    for (int value = -1; value <= 200; value++) {
+      assertEquals(reference.contains(value), tree.contains(value));
+      assertEquals(reference.count(value), tree.count(value));
+    }
+  }
+
+  /**
+   * Tests range traversal with duplicates and bounds outside the stored keys.
+   */
+  @Test
+  public void testForEachInRange() {
+    IntRedBlackTree tree = new IntRedBlackTree();
+    int[] values = {50, 20, 80, 20, 10, 90, 60, 30};
+    for (int value : values) {
+      tree.insert(value);
+    }
+
+    StringBuilder sb = new StringBuilder();
+    tree.forEachInRange(15, 60, value -> sb.append(value).append(' '));
+    assertEquals("20 20 30 50 60 ", sb.toString());
+
+    StringBuilder all = new StringBuilder();
+    tree.forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, value -> all.append(value).append(' '));
+    assertEquals("10 20 20 30 50 60 80 90 ", all.toString());
+  }
+}
@@ -0,0 +1,28 @@
+/**
+ * Searches a sorted run of int keys, such as the keys of one wide node. Implementations count
+ * across the whole run instead of branching on each comparison, so their cost depends only on the
+ * run length and not on where the probe falls.
+ */
+public interface IntSearchKernel {
+
+    /**
+     * Counts the keys in keys[0, size) that are less than key. For sorted keys this is the index
+     * of the first key that is greater than or equal to key.
+     * @param keys the sorted keys
+     * @param size the number of keys to search
+     * @param key the probe
+     * @return the number of keys less than key
+     */
+    public int countLess(int[] keys, int size, int key);
+
+    /**
+     * Counts the keys in keys[0, size) that are less than or equal to key. For sorted keys this is
+     * the index of the first key that is greater than key.
+     * @param keys the sorted keys
+     * @param size the number of keys to search
+     * @param key the probe
+     * @return the number of keys less than or equal to key
+     */
+    public int countLessOrEqual(int[] keys, int size, int key);
+
+}
@@ -0,0 +1,137 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Adapts an int set, an IntBPlusTree or a RoaringIntSet, to SortedCollection so that it can back
+ * a partition of a PartitionedSortedCollection. The set stores each distinct value once, and the
+ * adapter counts the further copies of a value beside it, so size() includes duplicates as the
+ * SortedCollection contract requires.
+ */
+public abstract class IntSetCollection implements SortedCollection<Integer> {
+
+  // copies of each value beyond the one in the set
+  private final Map<Integer, Integer> extraCopies = new HashMap<>();
+
+  // the number of values inserted, including duplicates
+  private int size;
+
+  /**
+   * Creates an empty collection backed by an IntBPlusTree.
+   *
+   * @param nodeCapacity the maximum number of keys in a node of the tree
+   * @return an empty collection
+   * @throws IllegalArgumentException if nodeCapacity is outside [16, 64]
+   */
+  public static IntSetCollection ofBPlusTree(int nodeCapacity) {
+    IntBPlusTree tree = new IntBPlusTree(nodeCapacity);
+    return new IntSetCollection() {
+      @Override
+      protected boolean add(int value) {
+        return tree.insert(value);
+      }
+
+      @Override
+      protected boolean setContains(int value) {
+        return tree.contains(value);
+      }
+
+      @Override
+      protected void clearSet() {
+        tree.clear();
+      }
+    };
+  }
+
+  /**
+   * Creates an empty collection backed by a RoaringIntSet, which holds only non-negative values.
+   *
+   * @return an empty collection
+   */
+  public static IntSetCollection ofRoaring() {
+    RoaringIntSet set = new RoaringIntSet();
+    return new IntSetCollection() {
+      @Override
+      protected boolean add(int value) {
+        return set.add(value);
+      }
+
+      @Override
+      protected boolean setContains(int value) {
+        return set.contains(value);
+      }
+
+      @Override
+      protected void clearSet() {
+        set.clear();
+      }
+    };
+  }
+
+  /**
+   * Adds value to the set.
+   *
+   * @return true if the value was added, false if it was already present
+   */
+  protected abstract boolean add(int value);
+
+  /**
+   * @return true if value is in the set
+   */
+  protected abstract boolean setContains(int value);
+
+  /**
+   * Removes all values from the set.
+   */
+  protected abstract void clearSet();
+
+  /**
+   * Inserts a new data value. A value already in the set is counted as one more copy.
+   *
+   * @param data the new value being inserted
+   * @throws NullPointerException     if data is null
+   * @throws IllegalArgumentException if the set cannot hold data, such as a negative value in a
+   *                                  RoaringIntSet
+   */
+  @Override
+  public void insert(Integer data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Provided data is null!");
+    }
+    if (!add(data)) {
+      extraCopies.merge(data, 1, Integer::sum);
+    }
+    size++;
+  }
+
+  @Override
+  public boolean contains(Comparable<Integer> data) {
+    return data instanceof Integer && setContains((Integer) data);
+  }
+
+  /**
+   * Counts the occurrences of value in the collection.
+   *
+   * @param value the value to count
+   * @return the number of times value was inserted
+   */
+  public int count(int value) {
+    return setContains(value) ? 1 + extraCopies.getOrDefault(value, 0) : 0;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public void clear() {
+    clearSet();
+    extraCopies.clear();
+    size = 0;
+  }
+}
@@ -0,0 +1,58 @@
+import java.util.function.IntConsumer;
+
+/**
+ * This interface defines an ADT for data structures that store a collection of
+ * int values in their natural ordering without boxing them. It mirrors
+ * SortedCollection for primitive keys.
+ */
+public interface IntSortedCollection {
+
+    /**
+     * Inserts a new value into the sorted collection.
+     * @param value the new value being inserted
+     */
+    public void insert(int value);
+
+    /**
+     * Check whether value is stored in the collection.
+     * @param value the value to check for in the collection
+     * @return true if the collection contains value one or more times,
+     * and false otherwise
+     */
+    public boolean contains(int value);
+
+    /**
+     * Counts the occurrences of value in the collection.
+     * @param value the value to count
+     * @return the number of times value was inserted
+     */
+    public int count(int value);
+
+    /**
+     * Counts the number of values in the collection, with each duplicate value
+     * being counted separately within the value returned.
+     * @return the number of values in the collection, including duplicates
+     */
+    public int size();
+
+    /**
+     * Checks if the collection is empty.
+     * @return true if the collection contains 0 values, false otherwise
+     */
+    public boolean isEmpty();
+
+    /**
+     * Removes all values and duplicates from the collection.
+     */
+    public void clear();
+
+    /**
+     * Passes every value in [low, high] to action in ascending order, with
+     * duplicates passed once per occurrence.
+     * @param low the smallest value to visit
+     * @param high the largest value to visit
+     * @param action receives each value in the range
+     */
+    public void forEachInRange(int low, int high, IntConsumer action);
+
+}
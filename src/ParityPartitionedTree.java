@@ -0,0 +1,18 @@
+import java.util.function.IntConsumer;
+
+/**
+ * A tree that splits its values into an even and an odd partition and can traverse each
+ * partition in order. PartitionQuery runs against any such tree.
+ */
+public interface ParityPartitionedTree {
+
+    /**
+     * Passes every value of one partition in [low, high] to action in ascending order.
+     * @param isEven true to scan the even partition, false for the odd partition
+     * @param low the smallest value to visit
+     * @param high the largest value to visit
+     * @param action receives each value in the range
+     */
+    public void forEachInRange(boolean isEven, int low, int high, IntConsumer action);
+
+}
@@ -0,0 +1,216 @@
+import java.util.function.IntConsumer;
+
+/**
+ * A filter over the values of a ParityPartitionedTree, built as a conjunction of parity predicates
+ * and value ranges, such as "even and between a and b" or "odd and at least x". Each call returns
+ * a new, narrower query; queries are immutable.
+ *
+ * A query is compiled into a Plan that skips every partition whose parity cannot match and scans
+ * the others with an ordered range traversal, with the range tightened to the partition's parity.
+ * Running a query therefore costs time proportional to the tree's height plus its output, instead
+ * of a contains call for every candidate value.
+ */
+public final class PartitionQuery {
+
+  private static final PartitionQuery ALL =
+      new PartitionQuery(true, true, Integer.MIN_VALUE, Integer.MAX_VALUE);
+  private static final PartitionQuery NONE =
+      new PartitionQuery(false, false, Integer.MAX_VALUE, Integer.MIN_VALUE);
+
+  // whether even and odd values can match
+  private final boolean even;
+  private final boolean odd;
+
+  // the inclusive range matching values must lie in; empty when low > high
+  private final int low;
+  private final int high;
+
+  private PartitionQuery(boolean even, boolean odd, int low, int high) {
+    this.even = even;
+    this.odd = odd;
+    this.low = low;
+    this.high = high;
+  }
+
+  /**
+   * @return a query matching every value
+   */
+  public static PartitionQuery all() {
+    return ALL;
+  }
+
+  /**
+   * @return a query matching no value
+   */
+  public static PartitionQuery none() {
+    return NONE;
+  }
+
+  /**
+   * @return this query restricted to even values
+   */
+  public PartitionQuery even() {
+    return new PartitionQuery(even, false, low, high);
+  }
+
+  /**
+   * @return this query restricted to odd values
+   */
+  public PartitionQuery odd() {
+    return new PartitionQuery(false, odd, low, high);
+  }
+
+  /**
+   * @return this query restricted to values in [from, to]
+   */
+  public PartitionQuery between(int from, int to) {
+    return new PartitionQuery(even, odd, Math.max(low, from), Math.min(high, to));
+  }
+
+  /**
+   * @return this query restricted to values greater than or equal to bound
+   */
+  public PartitionQuery atLeast(int bound) {
+    return between(bound, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @return this query restricted to values less than or equal to bound
+   */
+  public PartitionQuery atMost(int bound) {
+    return between(Integer.MIN_VALUE, bound);
+  }
+
+  /**
+   * @return this query restricted to values greater than bound
+   */
+  public PartitionQuery greaterThan(int bound) {
+    return bound == Integer.MAX_VALUE ? NONE : atLeast(bound + 1);
+  }
+
+  /**
+   * @return this query restricted to values less than bound
+   */
+  public PartitionQuery lessThan(int bound) {
+    return bound == Integer.MIN_VALUE ? NONE : atMost(bound - 1);
+  }
+
+  /**
+   * @return a query matching the values matched by both this query and other
+   */
+  public PartitionQuery and(PartitionQuery other) {
+    return new PartitionQuery(even && other.even, odd && other.odd, Math.max(low, other.low),
+        Math.min(high, other.high));
+  }
+
+  /**
+   * Checks a single value against the query without consulting any tree.
+   *
+   * @param value the value to check
+   * @return true if value satisfies every predicate of the query
+   */
+  public boolean matches(int value) {
+    return value >= low && value <= high && ((value & 1) == 0 ? even : odd);
+  }
+
+  /**
+   * Compiles the query into the partition scans that answer it.
+   *
+   * @return the plan for this query
+   */
+  public Plan plan() {
+    // tighten the range to the first and last value of each parity, in long to avoid overflow
+    long evenLow = (long) low + (low & 1);
+    long evenHigh = (long) high - (high & 1);
+    long oddLow = (long) low + ((low & 1) ^ 1);
+    long oddHigh = (long) high - ((high & 1) ^ 1);
+    return new Plan(even && evenLow <= evenHigh, (int) evenLow, (int) evenHigh,
+        odd && oddLow <= oddHigh, (int) oddLow, (int) oddHigh);
+  }
+
+  /**
+   * Passes every matching value of tree to action: the even partition first, then the odd
+   * partition, each in ascending order.
+   */
+  public void forEach(ParityPartitionedTree tree, IntConsumer action) {
+    plan().forEach(tree, action);
+  }
+
+  /**
+   * @return the number of matching values in tree, with duplicates counted as the tree's range
+   *         traversal reports them
+   */
+  public int count(ParityPartitionedTree tree) {
+    return plan().count(tree);
+  }
+
+  @Override
+  public String toString() {
+    return plan().toString();
+  }
+
+  /**
+   * The compiled form of a query: for each partition, whether it is scanned and the range scanned.
+   */
+  public static final class Plan {
+    private final boolean scanEven;
+    private final int evenLow;
+    private final int evenHigh;
+    private final boolean scanOdd;
+    private final int oddLow;
+    private final int oddHigh;
+
+    private Plan(boolean scanEven, int evenLow, int evenHigh, boolean scanOdd, int oddLow,
+        int oddHigh) {
+      this.scanEven = scanEven;
+      this.evenLow = evenLow;
+      this.evenHigh = evenHigh;
+      this.scanOdd = scanOdd;
+      this.oddLow = oddLow;
+      this.oddHigh = oddHigh;
+    }
+
+    /**
+     * @return true if no value can match, so running the plan touches no partition
+     */
+    public boolean isEmpty() {
+      return !scanEven && !scanOdd;
+    }
+
+    /**
+     * @param isEven true for the even partition, false for the odd partition
+     * @return true if the plan scans the partition
+     */
+    public boolean scans(boolean isEven) {
+      return isEven ? scanEven : scanOdd;
+    }
+
+    /**
+     * Passes every matching value of tree to action: the even partition first, then the odd
+     * partition, each in ascending order.
+     */
+    public void forEach(ParityPartitionedTree tree, IntConsumer action) {
+      if (scanEven) {
+        tree.forEachInRange(true, evenLow, evenHigh, action);
+      }
+      if (scanOdd) {
+        tree.forEachInRange(false, oddLow, oddHigh, action);
+      }
+    }
+
+    /**
+     * @return the number of matching values in tree
+     */
+    public int count(ParityPartitionedTree tree) {
+      int[] count = {0};
+      forEach(tree, value -> count[0]++);
+      return count[0];
+    }
+
+    @Override
+    public String toString() {
+      return (scanEven ? "scan even [" + evenLow + ", " + evenHigh + "]" : "skip even") + ", "
+          + (scanOdd ? "scan odd [" + oddLow + ", " + oddHigh + "]" : "skip odd");
+    }
+  }
+}
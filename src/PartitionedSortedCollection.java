@@ -0,0 +1,162 @@
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * A SortedCollection that splits its values into a fixed number of partitions by a classifier and
+ * stores each partition in a SortedCollection of its own. This generalizes DualRBT: DualRBT is the
+ * case of two partitions chosen by parity with a RedBlackTree in each. Any key type can be
+ * partitioned, and the backend factory can pick a different structure for each partition.
+ *
+ * Backends are created the first time a value is inserted into their partition, and each
+ * partition keeps its own size, so size() never asks the backends. Every insert is counted, so a
+ * backend must keep duplicates like RedBlackTree and BinarySearchTree do. The set structures
+ * IntBPlusTree and RoaringIntSet drop them, so they are plugged in through IntSetCollection, which
+ * counts the copies beside the set.
+ */
+public class PartitionedSortedCollection<T extends Comparable<T>> implements SortedCollection<T> {
+
+  private final ToIntFunction<T> classifier;
+  private final IntFunction<? extends SortedCollection<T>> backendFactory;
+
+  // the backend of each partition, or null until a value is inserted into it
+  private final SortedCollection<T>[] partitions;
+
+  // the number of values in each partition, including duplicates
+  private final int[] partitionSizes;
+
+  // the number of values in all partitions, including duplicates
+  private int size;
+
+  /**
+   * Creates an empty collection.
+   *
+   * @param partitionCount the number of partitions
+   * @param classifier     maps each value to its partition, in [0, partitionCount)
+   * @param backendFactory creates the backend for a partition given its index
+   * @throws IllegalArgumentException if partitionCount is less than 1
+   */
+  @SuppressWarnings("unchecked")
+  public PartitionedSortedCollection(int partitionCount, ToIntFunction<T> classifier,
+      IntFunction<? extends SortedCollection<T>> backendFactory) {
+    if (partitionCount < 1) {
+      throw new IllegalArgumentException("Partition count must be greater than or equal to 1");
+    }
+    this.classifier = classifier;
+    this.backendFactory = backendFactory;
+    this.partitions = (SortedCollection<T>[]) new SortedCollection<?>[partitionCount];
+    this.partitionSizes = new int[partitionCount];
+  }
+
+  /**
+   * Creates an empty collection of Integers split into an even and an odd partition, like
+   * DualRBT. The even partition has index 0 and the odd partition index 1.
+   *
+   * @param backendFactory creates the backend for a partition given its index
+   * @return an empty parity-partitioned collection
+   */
+  public static PartitionedSortedCollection<Integer> byParity(
+      IntFunction<? extends SortedCollection<Integer>> backendFactory) {
+    return new PartitionedSortedCollection<>(2, value -> value & 1, backendFactory);
+  }
+
+  /**
+   * Inserts a new data value into the partition chosen by the classifier.
+   *
+   * @param data the new value being inserted
+   * @throws NullPointerException     if data argument is null
+   * @throws IllegalArgumentException if the classifier maps data outside [0, partitionCount)
+   */
+  @Override
+  public void insert(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Provided data is null!");
+    }
+    int partition = partitionOf(data);
+    SortedCollection<T> backend = partitions[partition];
+    if (backend == null) {
+      backend = backendFactory.apply(partition);
+      partitions[partition] = backend;
+    }
+    backend.insert(data);
+    partitionSizes[partition]++;
+    size++;
+  }
+
+  /**
+   * Check whether data is stored in the collection. Only the partition that data classifies into
+   * is searched.
+   *
+   * @param data the value to check for in the collection
+   * @return true if the collection contains data one or more times, and false otherwise
+   * @throws ClassCastException if data is not a T, since the classifier cannot be applied to it
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean contains(Comparable<T> data) {
+    if (data == null) {
+      return false;
+    }
+    SortedCollection<T> backend = partitions[partitionOf((T) data)];
+    return backend != null && backend.contains(data);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Removes all values from every partition. The backends are kept for reuse.
+   */
+  @Override
+  public void clear() {
+    for (int i = 0; i < partitions.length; i++) {
+      if (partitions[i] != null) {
+        partitions[i].clear();
+      }
+      partitionSizes[i] = 0;
+    }
+    size = 0;
+  }
+
+  /**
+   * @return the number of partitions
+   */
+  public int partitionCount() {
+    return partitions.length;
+  }
+
+  /**
+   * @param partition the index of a partition
+   * @return the number of values in the partition, including duplicates
+   */
+  public int partitionSize(int partition) {
+    return partitionSizes[partition];
+  }
+
+  /**
+   * Returns the backend of a partition, so that operations it offers beyond SortedCollection can
+   * be used. Values must not be inserted into it directly, or the partition sizes go stale.
+   *
+   * @param partition the index of a partition
+   * @return the backend, or null if nothing has been inserted into the partition yet
+   */
+  public SortedCollection<T> partition(int partition) {
+    return partitions[partition];
+  }
+
+  private int partitionOf(T data) {
+    int partition = classifier.applyAsInt(data);
+    if (partition < 0 || partition >= partitions.length) {
+      throw new IllegalArgumentException(
+          "Classifier returned partition " + partition + " for " + data + ", expected [0, "
+              + partitions.length + ")");
+    }
+    return partition;
+  }
+}
@@ -0,0 +1,341 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Join-based algorithms on detached red-black subtrees, used by RedBlackTree for split, join and
+ * its bulk set operations. Every subtree travels with its black height, so a join only walks the
+ * spine of the taller side down to the height of the shorter one and costs O(log n); a split is a
+ * series of joins along one search path and also costs O(log n).
+ *
+ * Union, intersection and difference split one tree at the root of the other and recurse on the
+ * two halves, which share no nodes, so the halves run as separate tasks on a ForkJoinPool. The
+ * algorithms reuse the nodes of their inputs instead of copying them, and leave the inputs
+ * unusable.
+ */
+final class RBTJoin {
+
+  // subtrees with a black height up to this (at most 2^(2h) nodes) are combined sequentially
+  static final int SEQUENTIAL_BLACK_HEIGHT = 6;
+
+  private RBTJoin() {
+  }
+
+  /**
+   * The bulk operations on two trees.
+   */
+  enum Op {
+    /** Every value of either tree; a value in both keeps only the first tree's nodes. */
+    UNION,
+    /** Every value of either tree, keeping all occurrences from both. */
+    MERGE,
+    /** Every value in both trees, once, or with the smaller count in multiset mode. */
+    INTERSECT,
+    /** Every value of the first tree that is not in the second. */
+    DIFFERENCE
+  }
+
+  /**
+   * A detached subtree, whose root has no parent, and its black height: the number of black nodes
+   * on any path from the root down to a leaf, 0 for an empty subtree.
+   */
+  static final class Piece<T> {
+    final RBTNode<T> root;
+    final int blackHeight;
+
+    Piece(RBTNode<T> root, int blackHeight) {
+      this.root = root;
+      this.blackHeight = blackHeight;
+      if (root != null) {
+        root.setUp(null);
+      }
+    }
+
+    /**
+     * Measures the black height of a valid red-black subtree along its left spine.
+     */
+    static <T> Piece<T> of(RBTNode<T> root) {
+      int blackHeight = 0;
+      for (RBTNode<T> node = root; node != null; node = node.getLeft()) {
+        if (!node.isRed) {
+          blackHeight++;
+        }
+      }
+      return new Piece<>(root, blackHeight);
+    }
+  }
+
+  /**
+   * The subtrees on either side of a split key, and how many occurrences of the key were removed.
+   */
+  static final class Split<T> {
+    final Piece<T> left;
+    final Piece<T> right;
+    final int matched;
+
+    Split(Piece<T> left, Piece<T> right, int matched) {
+      this.left = left;
+      this.right = right;
+      this.matched = matched;
+    }
+  }
+
+  /**
+   * Joins two subtrees with a pivot node between them. Every value of left must be at most the
+   * pivot's and every value of right at least the pivot's.
+   *
+   * @return the joined subtree, with a black root
+   */
+  static <T> Piece<T> join(Piece<T> left, RBTNode<T> pivot, Piece<T> right) {
+    left = blackRoot(left);
+    right = blackRoot(right);
+    pivot.setLeft(null);
+    pivot.setRight(null);
+    RBTNode<T> root;
+    int blackHeight;
+    if (left.blackHeight > right.blackHeight) {
+      root = joinRight(left.root, left.blackHeight, pivot, right.root, right.blackHeight);
+      blackHeight = left.blackHeight;
+    } else if (right.blackHeight > left.blackHeight) {
+      root = joinLeft(left.root, left.blackHeight, pivot, right.root, right.blackHeight);
+      blackHeight = right.blackHeight;
+    } else {
+      pivot.isRed = false;
+      setLeft(pivot, left.root);
+      setRight(pivot, right.root);
+      return new Piece<>(pivot, left.blackHeight + 1);
+    }
+    // a red root left by a rotation at the top is recolored, which adds one black level
+    if (root.isRed) {
+      root.isRed = false;
+      blackHeight++;
+    }
+    return new Piece<>(root, blackHeight);
+  }
+
+  /**
+   * Joins two subtrees without a pivot, using the largest node of left as the pivot.
+   */
+  static <T> Piece<T> join(Piece<T> left, Piece<T> right) {
+    if (left.root == null) {
+      return right;
+    }
+    if (right.root == null) {
+      return left;
+    }
+    RBTNode<T>[] last = newNodeHolder();
+    Piece<T> rest = splitLast(left.root, left.blackHeight, last);
+    return join(rest, last[0], right);
+  }
+
+  /**
+   * Splits a subtree around key. Nodes equal to key go to the left side when equalToLeft is set;
+   * otherwise they are removed and their occurrences counted.
+   */
+  static <T extends Comparable<T>> Split<T> split(Piece<T> tree, T key, boolean equalToLeft) {
+    RBTNode<T> node = tree.root;
+    if (node == null) {
+      return new Split<>(tree, tree, 0);
+    }
+    int childHeight = node.isRed ? tree.blackHeight : tree.blackHeight - 1;
+    Piece<T> left = new Piece<>(node.getLeft(), childHeight);
+    Piece<T> right = new Piece<>(node.getRight(), childHeight);
+    int comparison = key.compareTo(node.getData());
+    if (comparison < 0) {
+      Split<T> inner = split(left, key, equalToLeft);
+      return new Split<>(inner.left, join(inner.right, node, right), inner.matched);
+    } else if (comparison > 0 || equalToLeft) {
+      Split<T> inner = split(right, key, equalToLeft);
+      return new Split<>(join(left, node, inner.left), inner.right, inner.matched);
+    }
+    // rotations can leave equal values on both sides of a match
+    Split<T> lower = split(left, key, false);
+    Split<T> upper = split(right, key, false);
+    return new Split<>(lower.left, upper.right,
+        lower.matched + node.getCount() + upper.matched);
+  }
+
+  /**
+   * Combines two subtrees, forking the two halves of every large enough step on the current
+   * ForkJoinPool.
+   */
+  static <T extends Comparable<T>> Piece<T> combine(Op op, Piece<T> a, Piece<T> b,
+      boolean multiset) {
+    if (a.root == null) {
+      return op == Op.UNION || op == Op.MERGE ? b : a;
+    }
+    if (b.root == null) {
+      return op == Op.INTERSECT ? b : a;
+    }
+    // difference splits the tree it keeps values from at the root of the other
+    Piece<T> pivotSide = op == Op.DIFFERENCE ? b : a;
+    Piece<T> splitSide = op == Op.DIFFERENCE ? a : b;
+    RBTNode<T> pivot = pivotSide.root;
+    int childHeight = pivot.isRed ? pivotSide.blackHeight : pivotSide.blackHeight - 1;
+    Piece<T> pivotLeft = new Piece<>(pivot.getLeft(), childHeight);
+    Piece<T> pivotRight = new Piece<>(pivot.getRight(), childHeight);
+    Split<T> split = split(splitSide, pivot.getData(), op == Op.MERGE && !multiset);
+
+    Piece<T> left;
+    Piece<T> right;
+    Piece<T> leftA = op == Op.DIFFERENCE ? split.left : pivotLeft;
+    Piece<T> leftB = op == Op.DIFFERENCE ? pivotLeft : split.left;
+    Piece<T> rightA = op == Op.DIFFERENCE ? split.right : pivotRight;
+    Piece<T> rightB = op == Op.DIFFERENCE ? pivotRight : split.right;
+    if (Math.max(a.blackHeight, b.blackHeight) > SEQUENTIAL_BLACK_HEIGHT
+        && ForkJoinTask.inForkJoinPool()) {
+      CombineTask<T> leftTask = new CombineTask<>(op, leftA, leftB, multiset);
+      leftTask.fork();
+      right = combine(op, rightA, rightB, multiset);
+      left = leftTask.join();
+    } else {
+      left = combine(op, leftA, leftB, multiset);
+      right = combine(op, rightA, rightB, multiset);
+    }
+
+    switch (op) {
+      case MERGE:
+        if (multiset && split.matched > 0) {
+          ((CountedRBTNode<T>) pivot).count += split.matched;
+        }
+        return join(left, pivot, right);
+      case INTERSECT:
+        if (split.matched == 0) {
+          return join(left, right);
+        }
+        if (multiset) {
+          CountedRBTNode<T> counted = (CountedRBTNode<T>) pivot;
+          counted.count = Math.min(counted.count, split.matched);
+        }
+        return join(left, pivot, right);
+      case DIFFERENCE:
+        return join(left, right);
+      default:
+        return join(left, pivot, right);
+    }
+  }
+
+  /**
+   * Runs combine on a ForkJoinPool.
+   */
+  static <T extends Comparable<T>> Piece<T> combine(Op op, Piece<T> a, Piece<T> b,
+      boolean multiset, ForkJoinPool pool) {
+    return pool.invoke(new CombineTask<>(op, a, b, multiset));
+  }
+
+  /**
+   * One half of a combine step.
+   */
+  private static final class CombineTask<T extends Comparable<T>> extends RecursiveTask<Piece<T>> {
+    private static final long serialVersionUID = 1L;
+
+    private final Op op;
+    private final Piece<T> a;
+    private final Piece<T> b;
+    private final boolean multiset;
+
+    CombineTask(Op op, Piece<T> a, Piece<T> b, boolean multiset) {
+      this.op = op;
+      this.a = a;
+      this.b = b;
+      this.multiset = multiset;
+    }
+
+    @Override
+    protected Piece<T> compute() {
+      return combine(op, a, b, multiset);
+    }
+  }
+
+  /**
+   * Walks down the right spine of left to the first black node of the given black height, hangs
+   * the pivot there with right as its other child, and restores the red property on the way back
+   * up with a left rotation where two red nodes meet.
+   */
+  private static <T> RBTNode<T> joinRight(RBTNode<T> left, int leftHeight, RBTNode<T> pivot,
+      RBTNode<T> right, int rightHeight) {
+    if ((left == null || !left.isRed) && leftHeight == rightHeight) {
+      pivot.isRed = true;
+      setLeft(pivot, left);
+      setRight(pivot, right);
+      return pivot;
+    }
+    RBTNode<T> child = joinRight(left.getRight(), left.isRed ? leftHeight : leftHeight - 1,
+        pivot, right, rightHeight);
+    setRight(left, child);
+    if (!left.isRed && child.isRed && child.getRight() != null && child.getRight().isRed) {
+      child.getRight().isRed = false;
+      setRight(left, child.getLeft());
+      setLeft(child, left);
+      return child;
+    }
+    return left;
+  }
+
+  /**
+   * The mirror image of joinRight, walking down the left spine of right.
+   */
+  private static <T> RBTNode<T> joinLeft(RBTNode<T> left, int leftHeight, RBTNode<T> pivot,
+      RBTNode<T> right, int rightHeight) {
+    if ((right == null || !right.isRed) && leftHeight == rightHeight) {
+      pivot.isRed = true;
+      setLeft(pivot, left);
+      setRight(pivot, right);
+      return pivot;
+    }
+    RBTNode<T> child = joinLeft(left, leftHeight, pivot, right.getLeft(),
+        right.isRed ? rightHeight : rightHeight - 1);
+    setLeft(right, child);
+    if (!right.isRed && child.isRed && child.getLeft() != null && child.getLeft().isRed) {
+      child.getLeft().isRed = false;
+      setLeft(right, child.getRight());
+      setRight(child, right);
+      return child;
+    }
+    return right;
+  }
+
+  /**
+   * Removes the largest node of a subtree into last[0] and returns the rest.
+   */
+  private static <T> Piece<T> splitLast(RBTNode<T> node, int blackHeight, RBTNode<T>[] last) {
+    int childHeight = node.isRed ? blackHeight : blackHeight - 1;
+    Piece<T> left = new Piece<>(node.getLeft(), childHeight);
+    if (node.getRight() == null) {
+      last[0] = node;
+      return left;
+    }
+    Piece<T> rest = splitLast(node.getRight(), childHeight, last);
+    return join(left, node, rest);
+  }
+
+  /**
+   * Turns a red root black, which raises the black height by one.
+   */
+  private static <T> Piece<T> blackRoot(Piece<T> piece) {
+    if (piece.root != null && piece.root.isRed) {
+      piece.root.isRed = false;
+      return new Piece<>(piece.root, piece.blackHeight + 1);
+    }
+    return piece;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> RBTNode<T>[] newNodeHolder() {
+    return (RBTNode<T>[]) new RBTNode<?>[1];
+  }
+
+  private static <T> void setLeft(RBTNode<T> parent, RBTNode<T> child) {
+    parent.setLeft(child);
+    if (child != null) {
+      child.setUp(parent);
+    }
+  }
+
+  private static <T> void setRight(RBTNode<T> parent, RBTNode<T> child) {
+    parent.setRight(child);
+    if (child != null) {
+      child.setUp(parent);
+    }
+  }
+}
@@ -0,0 +1,280 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+
+/**
+ * A tree partitioned by value range instead of by a predicate. Partition i holds the values in
+ * [splitPoints[i - 1], splitPoints[i]), with the first and last partitions open-ended, and each
+ * partition is an IntRedBlackTree with its own size.
+ *
+ * A range scan or count only visits the partitions overlapping the range, and a count takes the
+ * size of every partition the range covers entirely without visiting it. The parallel variants
+ * scan the overlapping partitions as separate tasks on a ForkJoinPool, so scans over large ranges
+ * scale with the number of cores. Inserts are not thread-safe and must not run concurrently with
+ * any other operation, including the parallel scans.
+ */
+class RangePartitionedTree {
+
+  // ascending, distinct lower bounds of every partition but the first
+  private final int[] splitPoints;
+  private final IntRedBlackTree[] partitions;
+  private int size;
+
+  /**
+   * Creates an empty tree with the given partition boundaries.
+   *
+   * @param splitPoints the lower bounds of every partition but the first, strictly ascending
+   * @throws IllegalArgumentException if splitPoints is not strictly ascending
+   */
+  public RangePartitionedTree(int[] splitPoints) {
+    for (int i = 1; i < splitPoints.length; i++) {
+      if (splitPoints[i] <= splitPoints[i - 1]) {
+        throw new IllegalArgumentException("Split points must be strictly ascending");
+      }
+    }
+    this.splitPoints = splitPoints.clone();
+    this.partitions = new IntRedBlackTree[splitPoints.length + 1];
+    for (int i = 0; i < partitions.length; i++) {
+      partitions[i] = new IntRedBlackTree();
+    }
+  }
+
+  /**
+   * Creates an empty tree whose partitions split a sample of the expected values into parts of
+   * about equal size.
+   *
+   * @param sample         values drawn from the expected data; it is not modified
+   * @param partitionCount the number of partitions to aim for
+   * @return an empty tree with at most partitionCount partitions
+   */
+  public static RangePartitionedTree fromSample(int[] sample, int partitionCount) {
+    return new RangePartitionedTree(splitPoints(sample, partitionCount));
+  }
+
+  /**
+   * Chooses up to partitionCount - 1 distinct split points at evenly spaced quantiles of a sample.
+   *
+   * @param sample         values drawn from the expected data; it is not modified
+   * @param partitionCount the number of partitions to aim for
+   * @return strictly ascending split points; fewer than requested if the sample repeats values
+   */
+  static int[] splitPoints(int[] sample, int partitionCount) {
+    if (partitionCount < 1) {
+      throw new IllegalArgumentException("Partition count must be greater than or equal to 1");
+    }
+    if (sample.length == 0) {
+      return new int[0];
+    }
+    int[] sorted = sample.clone();
+    Arrays.sort(sorted);
+    int[] points = new int[partitionCount - 1];
+    int count = 0;
+    for (int i = 1; i < partitionCount; i++) {
+      int point = sorted[(int) ((long) i * sorted.length / partitionCount)];
+      // a split at the minimum would leave the first partition empty
+      if (point != sorted[0] && (count == 0 || points[count - 1] != point)) {
+        points[count++] = point;
+      }
+    }
+    return Arrays.copyOf(points, count);
+  }
+
+  public void insert(int value) {
+    partitions[partitionOf(value)].insert(value);
+    size++;
+  }
+
+  public boolean contains(int value) {
+    return partitions[partitionOf(value)].contains(value);
+  }
+
+  public int count(int value) {
+    return partitions[partitionOf(value)].count(value);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    for (IntRedBlackTree partition : partitions) {
+      partition.clear();
+    }
+    size = 0;
+  }
+
+  public int partitionCount() {
+    return partitions.length;
+  }
+
+  /**
+   * @param partition the index of a partition
+   * @return the number of values in the partition, including duplicates
+   */
+  public int partitionSize(int partition) {
+    return partitions[partition].size();
+  }
+
+  /**
+   * Passes every value in [low, high] to action in ascending order, with duplicates passed once
+   * per occurrence. Partitions outside the range are not visited.
+   */
+  public void forEachInRange(int low, int high, IntConsumer action) {
+    if (low > high) {
+      return;
+    }
+    int last = partitionOf(high);
+    for (int i = partitionOf(low); i <= last; i++) {
+      partitions[i].forEachInRange(low, high, action);
+    }
+  }
+
+  /**
+   * Counts the values in [low, high], including duplicates.
+   */
+  public int countInRange(int low, int high) {
+    if (low > high) {
+      return 0;
+    }
+    int count = 0;
+    int last = partitionOf(high);
+    for (int i = partitionOf(low); i <= last; i++) {
+      count += countInPartition(i, low, high);
+    }
+    return count;
+  }
+
+  /**
+   * Passes every value in [low, high] to action, scanning the overlapping partitions in parallel
+   * on pool. Values arrive in no particular order and from several threads at once, so action
+   * must be thread-safe. Returns when every value has been passed.
+   */
+  public void parallelForEachInRange(int low, int high, IntConsumer action, ForkJoinPool pool) {
+    if (low > high) {
+      return;
+    }
+    pool.invoke(new ScanTask(partitionOf(low), partitionOf(high) + 1, low, high, action));
+  }
+
+  public void parallelForEachInRange(int low, int high, IntConsumer action) {
+    parallelForEachInRange(low, high, action, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Counts the values in [low, high], counting the overlapping partitions in parallel on pool.
+   */
+  public int parallelCountInRange(int low, int high, ForkJoinPool pool) {
+    if (low > high) {
+      return 0;
+    }
+    return pool.invoke(new CountTask(partitionOf(low), partitionOf(high) + 1, low, high));
+  }
+
+  public int parallelCountInRange(int low, int high) {
+    return parallelCountInRange(low, high, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Counts the values of one partition in [low, high], without visiting it when the range covers
+   * the whole partition.
+   */
+  private int countInPartition(int partition, int low, int high) {
+    boolean coversStart = partition == 0 ? low == Integer.MIN_VALUE
+        : low <= splitPoints[partition - 1];
+    boolean coversEnd = partition == splitPoints.length ? high == Integer.MAX_VALUE
+        : high >= splitPoints[partition] - 1;
+    if (coversStart && coversEnd) {
+      return partitions[partition].size();
+    }
+    int[] count = {0};
+    partitions[partition].forEachInRange(low, high, value -> count[0]++);
+    return count[0];
+  }
+
+  /**
+   * Returns the index of the partition responsible for value.
+   */
+  private int partitionOf(int value) {
+    // the number of split points at or below value is the index of its partition
+    int low = 0;
+    int high = splitPoints.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (splitPoints[mid] <= value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Scans partitions [from, to), splitting the span in half until one partition is left.
+   */
+  private final class ScanTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final int low;
+    private final int high;
+    private final IntConsumer action;
+
+    ScanTask(int from, int to, int low, int high, IntConsumer action) {
+      this.from = from;
+      this.to = to;
+      this.low = low;
+      this.high = high;
+      this.action = action;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        partitions[from].forEachInRange(low, high, action);
+        return;
+      }
+      int mid = (from + to) >>> 1;
+      invokeAll(new ScanTask(from, mid, low, high, action),
+          new ScanTask(mid, to, low, high, action));
+    }
+  }
+
+  /**
+   * Counts partitions [from, to), splitting the span in half until one partition is left.
+   */
+  private final class CountTask extends RecursiveTask<Integer> {
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final int low;
+    private final int high;
+
+    CountTask(int from, int to, int low, int high) {
+      this.from = from;
+      this.to = to;
+      this.low = low;
+      this.high = high;
+    }
+
+    @Override
+    protected Integer compute() {
+      if (to - from == 1) {
+        return countInPartition(from, low, high);
+      }
+      int mid = (from + to) >>> 1;
+      CountTask right = new CountTask(mid, to, low, high);
+      right.fork();
+      int left = new CountTask(from, mid, low, high).compute();
+      return left + right.join();
+    }
+  }
+}
@@ -1,5 +1,15 @@
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.jupiter.api.Test;
 
 /**
@@ -11,6 +21,42 @@ import org.junit.jupiter.api.Test;
  */
 public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
 
+  // total number of rotations performed, used to report rotations per insert to JFR
+  protected int rotationCount;
+
+  // tracks rotation bursts for RotationStormEvent
+  private final TreeEvents.RotationWindow rotationWindow =
+      new TreeEvents.RotationWindow(getClass().getSimpleName());
+
+  /**
+   * Creates an empty tree that stores every duplicate value in a node of its own.
+   */
+  public RedBlackTree() {
+    super();
+  }
+
+  /**
+   * Creates an empty tree. This is a factory rather than a second constructor because JUnit only
+   * runs the tests of a class that declares a single constructor.
+   *
+   * @param multiset true to store one counted node per distinct value, which keeps heavy
+   *                 duplicates from growing the tree
+   * @return the new tree
+   */
+  public static <T extends Comparable<T>> RedBlackTree<T> create(boolean multiset) {
+    RedBlackTree<T> tree = new RedBlackTree<>();
+    tree.multiset = multiset;
+    return tree;
+  }
+
+  /**
+   * Creates a red node for a newly inserted value, with an occurrence count in multiset mode.
+   */
+  @Override
+  protected RBTNode<T> createNode(T data) {
+    return this.multiset ? new CountedRBTNode<>(data) : new RBTNode<>(data);
+  }
+
   /**
    * Checks if a new red node in the RedBlackTree causes a red property violation by having a red
    * parent. If this is not the case, the method terminates without making any changes to the tree.
@@ -102,7 +148,12 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
     if (data == null) {
       throw new NullPointerException("Provided data is null!");
     }
-    RBTNode<T> toAdd = new RBTNode<>(data);
+    TreeInsertEvent event = new TreeInsertEvent();
+    event.begin();
+    int rotationsBefore = this.rotationCount;
+    this.modCount++;
+
+    RBTNode<T> toAdd = createNode(data);
     if (this.root == null) {
       toAdd.isRed = false;
       this.root = toAdd;
@@ -110,9 +161,357 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
     } else {
       toAdd.isRed = true;
       insertHelper(toAdd, this.root);
-      ensureRedProperty(toAdd);
+      // in multiset mode a duplicate only increments a count and toAdd stays unlinked
+      if (toAdd.getUp() != null) {
+        ensureRedProperty(toAdd);
+      }
       ((RBTNode<T>) this.root).isRed = false;
     }
+
+    int rotations = this.rotationCount - rotationsBefore;
+    rotationWindow.afterInsert(rotations);
+    event.end();
+    if (event.shouldCommit()) {
+      event.tree = getClass().getSimpleName();
+      event.key = data.toString();
+      event.parity = (data instanceof Integer) ? TreeEvents.parityOf((Integer) data) : null;
+      event.depth = depthOf(toAdd);
+      event.rotations = rotations;
+      event.commit();
+    }
+  }
+
+  /**
+   * Performs the rotation and counts it for JFR reporting.
+   */
+  @Override
+  protected void rotate(BSTNode<T> child, BSTNode<T> parent)
+      throws NullPointerException, IllegalArgumentException {
+    super.rotate(child, parent);
+    this.rotationCount++;
+  }
+
+  /**
+   * Check whether data is stored in the tree. When deep lookup events are being recorded, the
+   * search path is measured and a TreeLookupEvent is committed if it reaches the depth threshold.
+   *
+   * @param data the value to check for in the collection
+   * @return true if the collection contains data one or more times, and false otherwise
+   */
+  @Override
+  public boolean contains(Comparable<T> data) {
+    TreeLookupEvent event = new TreeLookupEvent();
+    if (data == null || !event.isEnabled()) {
+      return super.contains(data);
+    }
+
+    BSTNode<T> node = this.root;
+    int depth = 0;
+    boolean found = false;
+    while (node != null) {
+      depth++;
+      int comparison = data.compareTo(node.getData());
+      if (comparison == 0) {
+        found = true;
+        break;
+      }
+      node = comparison < 0 ? node.getLeft() : node.getRight();
+    }
+
+    if (depth >= TreeEvents.LOOKUP_DEPTH_THRESHOLD && event.shouldCommit()) {
+      event.tree = getClass().getSimpleName();
+      event.key = data.toString();
+      event.parity = (data instanceof Integer) ? TreeEvents.parityOf((Integer) data) : null;
+      event.depth = depth;
+      event.found = found;
+      event.commit();
+    }
+    return found;
+  }
+
+  /**
+   * @return the 1-based depth of the node within this tree
+   */
+  private int depthOf(BSTNode<T> node) {
+    int depth = 0;
+    while (node != null) {
+      depth++;
+      node = node.getUp();
+    }
+    return depth;
+  }
+
+  /**
+   * Builds a balanced tree from values in ascending order in linear time, without comparisons
+   * beyond an order check and without rotations. The nodes form a complete tree in heap order;
+   * nodes on a partly filled last level are red and all others black, so every path has the same
+   * number of black nodes.
+   *
+   * @param sorted the values in ascending order, possibly with duplicates
+   * @return a new tree storing every value in a node of its own
+   * @throws IllegalArgumentException if the values are out of order
+   * @throws NullPointerException     if a value is null
+   */
+  public static <T extends Comparable<T>> RedBlackTree<T> fromSorted(List<T> sorted) {
+    for (int i = 0; i < sorted.size(); i++) {
+      if (sorted.get(i) == null) {
+        throw new NullPointerException("Provided data is null!");
+      }
+      if (i > 0 && sorted.get(i - 1).compareTo(sorted.get(i)) > 0) {
+        throw new IllegalArgumentException("Values must be in ascending order");
+      }
+    }
+    RedBlackTree<T> tree = new RedBlackTree<>();
+    tree.root = tree.buildHeapOrder(1, sorted, null, new int[1]);
+    return tree;
+  }
+
+  /**
+   * Builds the subtree at heap index i of a complete tree holding sorted, taking values in order
+   * from next[0]. In multiset mode counts holds the occurrences of each value.
+   */
+  private RBTNode<T> buildHeapOrder(int i, List<T> sorted, int[] counts, int[] next) {
+    int nodes = sorted.size();
+    if (i > nodes) {
+      return null;
+    }
+    RBTNode<T> left = buildHeapOrder(2 * i, sorted, counts, next);
+    RBTNode<T> node = createNode(sorted.get(next[0]));
+    if (counts != null) {
+      ((CountedRBTNode<T>) node).count = counts[next[0]];
+    }
+    next[0]++;
+    int lastLevel = 31 - Integer.numberOfLeadingZeros(nodes);
+    node.isRed = (nodes & (nodes + 1)) != 0 && 31 - Integer.numberOfLeadingZeros(i) == lastLevel;
+    node.setLeft(left);
+    if (left != null) {
+      left.setUp(node);
+    }
+    RBTNode<T> right = buildHeapOrder(2 * i + 1, sorted, counts, next);
+    node.setRight(right);
+    if (right != null) {
+      right.setUp(node);
+    }
+    return node;
+  }
+
+  /**
+   * The two trees a split leaves on either side of its key.
+   */
+  public static final class Split<T extends Comparable<T>> {
+    // the values less than the key
+    public final RedBlackTree<T> left;
+    // the values greater than the key
+    public final RedBlackTree<T> right;
+    // the number of occurrences of the key, which belong to neither tree
+    public final int matches;
+
+    Split(RedBlackTree<T> left, RedBlackTree<T> right, int matches) {
+      this.left = left;
+      this.right = right;
+      this.matches = matches;
+    }
+  }
+
+  /**
+   * Splits this tree around key in O(log n), moving its nodes into two new trees in the same mode:
+   * one with the values less than key and one with the values greater. This tree is left empty.
+   *
+   * @param key the value to split around
+   * @return the two trees and the number of occurrences of key, which are removed
+   * @throws NullPointerException if key is null
+   */
+  public Split<T> split(T key) {
+    if (key == null) {
+      throw new NullPointerException("Provided data is null!");
+    }
+    RBTJoin.Split<T> split = RBTJoin.split(RBTJoin.Piece.of(rootNode()), key, false);
+    this.root = null;
+    this.modCount++;
+    return new Split<>(withRoot(split.left), withRoot(split.right), split.matched);
+  }
+
+  /**
+   * Joins two trees with a pivot value between them in O(log n), walking the taller tree only down
+   * to the black height of the shorter one. Both trees are left empty.
+   *
+   * @param left  a tree whose values are all at most pivot
+   * @param pivot the value that goes between the trees
+   * @param right a tree in the same mode whose values are all at least pivot
+   * @return a new tree holding the values of both trees and pivot
+   * @throws IllegalArgumentException if the trees are in different modes, are the same tree, or
+   *                                  have values on the wrong side of pivot; in multiset mode,
+   *                                  values equal to pivot are also on the wrong side
+   * @throws NullPointerException     if pivot is null
+   */
+  public static <T extends Comparable<T>> RedBlackTree<T> join(RedBlackTree<T> left, T pivot,
+      RedBlackTree<T> right) {
+    if (pivot == null) {
+      throw new NullPointerException("Provided data is null!");
+    }
+    checkCompatible(left, right);
+    BSTNode<T> largest = left.root;
+    while (largest != null && largest.getRight() != null) {
+      largest = largest.getRight();
+    }
+    BSTNode<T> smallest = right.root;
+    while (smallest != null && smallest.getLeft() != null) {
+      smallest = smallest.getLeft();
+    }
+    int bound = left.multiset ? 1 : 0;
+    if ((largest != null && pivot.compareTo(largest.getData()) < bound)
+        || (smallest != null && smallest.getData().compareTo(pivot) < bound)) {
+      throw new IllegalArgumentException("The pivot must lie between the values of both trees");
+    }
+
+    RedBlackTree<T> tree = create(left.multiset);
+    tree.root = RBTJoin.join(RBTJoin.Piece.of(left.rootNode()), tree.createNode(pivot),
+        RBTJoin.Piece.of(right.rootNode())).root;
+    left.root = null;
+    right.root = null;
+    left.modCount++;
+    right.modCount++;
+    return tree;
+  }
+
+  /**
+   * Adds every value of other that is not already in this tree, on the common ForkJoinPool.
+   *
+   * @see #union(RedBlackTree, ForkJoinPool)
+   */
+  public void union(RedBlackTree<T> other) {
+    union(other, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Adds every value of other that is not already in this tree, in O(m log(n / m + 1)) work for
+   * trees of m and n values, with the independent halves of the merge run in parallel on pool.
+   * Values in both trees keep this tree's occurrences. The nodes of other are moved into this
+   * tree and other is left empty.
+   *
+   * @param other a tree in the same mode
+   * @param pool  runs the parallel steps
+   * @throws IllegalArgumentException if the trees are in different modes or are the same tree
+   */
+  public void union(RedBlackTree<T> other, ForkJoinPool pool) {
+    combine(RBTJoin.Op.UNION, other, pool);
+  }
+
+  /**
+   * Keeps only the values that are also in other, on the common ForkJoinPool.
+   *
+   * @see #intersect(RedBlackTree, ForkJoinPool)
+   */
+  public void intersect(RedBlackTree<T> other) {
+    intersect(other, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Keeps only the values that are also in other, with the same cost and parallelism as union.
+   * Each remaining value is stored once, or in multiset mode with the smaller of its two counts.
+   * Other is left empty.
+   *
+   * @param other a tree in the same mode
+   * @param pool  runs the parallel steps
+   * @throws IllegalArgumentException if the trees are in different modes or are the same tree
+   */
+  public void intersect(RedBlackTree<T> other, ForkJoinPool pool) {
+    combine(RBTJoin.Op.INTERSECT, other, pool);
+  }
+
+  /**
+   * Removes every value that is in other, on the common ForkJoinPool.
+   *
+   * @see #difference(RedBlackTree, ForkJoinPool)
+   */
+  public void difference(RedBlackTree<T> other) {
+    difference(other, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Removes every occurrence of every value that is in other, with the same cost and parallelism
+   * as union. Other is left empty.
+   *
+   * @param other a tree in the same mode
+   * @param pool  runs the parallel steps
+   * @throws IllegalArgumentException if the trees are in different modes or are the same tree
+   */
+  public void difference(RedBlackTree<T> other, ForkJoinPool pool) {
+    combine(RBTJoin.Op.DIFFERENCE, other, pool);
+  }
+
+  /**
+   * Inserts every value of a batch, on the common ForkJoinPool.
+   *
+   * @see #insertAll(Collection, ForkJoinPool)
+   */
+  public void insertAll(Collection<? extends T> values) {
+    insertAll(values, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Inserts every value of a batch, keeping duplicates as insert does. The batch is sorted,
+   * bulk-built into a balanced tree and merged into this one in parallel on pool, which for large
+   * batches is much cheaper than inserting the values one at a time.
+   *
+   * @param values the values to insert
+   * @param pool   runs the parallel steps
+   * @throws NullPointerException if a value is null; no value is inserted then
+   */
+  public void insertAll(Collection<? extends T> values, ForkJoinPool pool) {
+    List<T> sorted = new ArrayList<>(values);
+    for (T value : sorted) {
+      if (value == null) {
+        throw new NullPointerException("Provided data is null!");
+      }
+    }
+    sorted.sort(null);
+    RedBlackTree<T> batch = create(this.multiset);
+    int[] counts = null;
+    if (this.multiset) {
+      // one counted node per distinct value
+      counts = new int[sorted.size()];
+      int distinct = 0;
+      for (T value : sorted) {
+        if (distinct > 0 && value.compareTo(sorted.get(distinct - 1)) == 0) {
+          counts[distinct - 1]++;
+        } else {
+          sorted.set(distinct, value);
+          counts[distinct++] = 1;
+        }
+      }
+      sorted = sorted.subList(0, distinct);
+    }
+    batch.root = batch.buildHeapOrder(1, sorted, counts, new int[1]);
+    combine(RBTJoin.Op.MERGE, batch, pool);
+  }
+
+  private void combine(RBTJoin.Op op, RedBlackTree<T> other, ForkJoinPool pool) {
+    checkCompatible(this, other);
+    this.root = RBTJoin.combine(op, RBTJoin.Piece.of(rootNode()),
+        RBTJoin.Piece.of(other.rootNode()), this.multiset, pool).root;
+    other.root = null;
+    this.modCount++;
+    other.modCount++;
+  }
+
+  private static void checkCompatible(RedBlackTree<?> first, RedBlackTree<?> second) {
+    if (first == second) {
+      throw new IllegalArgumentException("A tree cannot be combined with itself");
+    }
+    if (first.multiset != second.multiset) {
+      throw new IllegalArgumentException("Both trees must be multisets or neither");
+    }
+  }
+
+  private RBTNode<T> rootNode() {
+    return (RBTNode<T>) this.root;
+  }
+
+  private RedBlackTree<T> withRoot(RBTJoin.Piece<T> piece) {
+    RedBlackTree<T> tree = create(this.multiset);
+    tree.root = piece.root;
+    return tree;
   }
 
   /**
@@ -232,6 +631,155 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
 
     assertEquals(expectedLevelOrder, bst.root.toLevelOrderString());
   }
-}
 
+  /**
+   * Tests that duplicates in multiset mode share one node and are still counted by size().
+   */
+  @Test
+  public void testMultisetDuplicates() {
+    RedBlackTree<Integer> bst = create(true);
+
+    for (int i = 0; i < 100; i++) {
+      bst.insert(7);
+    }
+    bst.insert(3);
+    bst.insert(9);
+
+    assertEquals("[ 7(b), 3(r), 9(r) ]", bst.root.toLevelOrderString());
+    assertEquals(102, bst.size());
+    assertEquals(100, bst.count(7));
+    assertEquals(0, bst.count(8));
+  }
 
+  /**
+   * Tests that split and join keep every value on the correct side and produce valid trees.
+   */
+  @Test
+  public void testSplitJoin() {
+    Random random = new Random(46);
+    RedBlackTree<Integer> tree = new RedBlackTree<>();
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      int value = random.nextInt(1000);
+      tree.insert(value);
+      values.add(value);
+    }
+    Collections.sort(values);
+    int key = 500;
+    List<Integer> less = new ArrayList<>();
+    List<Integer> greater = new ArrayList<>();
+    for (int value : values) {
+      if (value < key) {
+        less.add(value);
+      } else if (value > key) {
+        greater.add(value);
+      }
+    }
+    Split<Integer> split = tree.split(key);
+    assertTrue(tree.isEmpty());
+    assertTrue(split.matches > 0);
+    assertEquals(values.size() - less.size() - greater.size(), split.matches);
+    assertEquals(less, valuesOf(split.left));
+    assertEquals(greater, valuesOf(split.right));
+    assertTrue(TreeDiagnostics.check(split.left).isValid());
+    assertTrue(TreeDiagnostics.check(split.right).isValid());
+
+    // a very short tree joins onto a tall one
+    RedBlackTree<Integer> small = new RedBlackTree<>();
+    small.insert(900);
+    RedBlackTree<Integer> joined = join(split.left, key, small);
+    assertTrue(TreeDiagnostics.check(joined).isValid(), TreeDiagnostics.check(joined).toString());
+    List<Integer> expected = new ArrayList<>(less);
+    expected.add(key);
+    expected.add(900);
+    assertEquals(expected, valuesOf(joined));
+
+    RedBlackTree<Integer> multiset = create(true);
+    multiset.insert(1);
+    assertThrows(IllegalArgumentException.class,
+        () -> join(multiset, 1, RedBlackTree.<Integer>create(true)));
+    assertThrows(IllegalArgumentException.class, () -> join(multiset, 2, new RedBlackTree<>()));
+    assertThrows(IllegalArgumentException.class, () -> join(split.right, 0, small));
+  }
+
+  /**
+   * Tests union, intersection, difference and multi-insert against counts of the inputs, in both
+   * modes and on a pool with several workers.
+   */
+  @Test
+  public void testParallelSetOperations() {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    for (boolean multiset : new boolean[] {false, true}) {
+      Random random = new Random(multiset ? 1 : 2);
+      List<Integer> first = new ArrayList<>();
+      List<Integer> second = new ArrayList<>();
+      Map<Integer, Integer> firstCounts = new HashMap<>();
+      Map<Integer, Integer> secondCounts = new HashMap<>();
+      for (int i = 0; i < 20000; i++) {
+        first.add(random.nextInt(30000));
+        second.add(random.nextInt(30000) + 10000);
+        firstCounts.merge(first.get(i), 1, Integer::sum);
+        secondCounts.merge(second.get(i), 1, Integer::sum);
+      }
+
+      RedBlackTree<Integer> union = treeOf(first, multiset);
+      union.union(treeOf(second, multiset), pool);
+      RedBlackTree<Integer> intersection = treeOf(first, multiset);
+      RedBlackTree<Integer> other = treeOf(second, multiset);
+      intersection.intersect(other, pool);
+      assertTrue(other.isEmpty());
+      RedBlackTree<Integer> difference = treeOf(first, multiset);
+      difference.difference(treeOf(second, multiset), pool);
+      RedBlackTree<Integer> merged = treeOf(first, multiset);
+      merged.insertAll(second, pool);
+
+      for (RedBlackTree<Integer> tree : List.of(union, intersection, difference, merged)) {
+        TreeDiagnostics.Report report = TreeDiagnostics.check(tree);
+        assertTrue(report.isValid(), report.toString());
+      }
+      for (int value = 0; value < 40000; value++) {
+        boolean a = firstCounts.containsKey(value);
+        boolean b = secondCounts.containsKey(value);
+        assertEquals(a || b, union.contains(value));
+        assertEquals(a && b, intersection.contains(value));
+        assertEquals(a && !b, difference.contains(value));
+        // a value in both inputs keeps the copies of the receiving tree
+        if (a) {
+          assertEquals((int) firstCounts.get(value), union.count(value));
+        }
+        assertEquals(firstCounts.getOrDefault(value, 0) + secondCounts.getOrDefault(value, 0),
+            merged.count(value));
+      }
+      assertEquals(first.size() + second.size(), merged.size());
+    }
+    pool.shutdown();
+  }
+
+  private static RedBlackTree<Integer> treeOf(List<Integer> values, boolean multiset) {
+    RedBlackTree<Integer> tree = create(multiset);
+    for (int value : values) {
+      tree.insert(value);
+    }
+    return tree;
+  }
+
+  /**
+   * Returns the values of a tree in ascending order, one entry per node.
+   */
+  private static List<Integer> valuesOf(RedBlackTree<Integer> tree) {
+    List<Integer> values = new ArrayList<>();
+    ArrayDeque<BSTNode<Integer>> stack = new ArrayDeque<>();
+    BSTNode<Integer> node = tree.root;
+    while (node != null || !stack.isEmpty()) {
+      while (node != null) {
+        stack.push(node);
+        node = node.getLeft();
+      }
+      node = stack.pop();
+      values.add(node.getData());
+      node = node.getRight();
+    }
+    return values;
+  }
+
+}
@@ -0,0 +1,503 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of non-negative ints in the style of Roaring bitmaps. Values are grouped into
+ * chunks of 2^16 by their upper 16 bits, and each chunk stores its lower 16 bits in whichever
+ * container is smallest for its density:
+ * <ul>
+ *   <li>a sorted array of 16-bit values while the chunk holds at most 4096 values,</li>
+ *   <li>a 65536-bit bitmap once it holds more,</li>
+ *   <li>a list of runs when the values form long consecutive stretches.</li>
+ * </ul>
+ * Containers switch representation on their own as they fill: an array that outgrows 4096 values
+ * and a bitmap at every 4096 values are re-evaluated, and a run container that fragments falls
+ * back to an array or a bitmap.
+ */
+public class RoaringIntSet {
+
+  // an array container holding more values than this is larger than a bitmap
+  static final int ARRAY_MAX = 4096;
+  // chunk keys and their containers, sorted by key
+  private char[] keys = new char[4];
+  private Container[] containers = new Container[4];
+  private int chunks;
+  private int cardinality;
+
+  /**
+   * Adds value to the set.
+   *
+   * @param value the value to add
+   * @return true if the value was added, false if it was already present
+   * @throws IllegalArgumentException if value is negative
+   */
+  public boolean add(int value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Value must be non-negative");
+    }
+    char high = (char) (value >>> 16);
+    int index = Arrays.binarySearch(keys, 0, chunks, high);
+    if (index < 0) {
+      index = -index - 1;
+      if (chunks == keys.length) {
+        keys = Arrays.copyOf(keys, chunks * 2);
+        containers = Arrays.copyOf(containers, chunks * 2);
+      }
+      System.arraycopy(keys, index, keys, index + 1, chunks - index);
+      System.arraycopy(containers, index, containers, index + 1, chunks - index);
+      keys[index] = high;
+      containers[index] = new ArrayContainer();
+      chunks++;
+    }
+    Container container = containers[index];
+    int before = container.cardinality();
+    containers[index] = container.add((char) value);
+    if (containers[index].cardinality() == before) {
+      return false;
+    }
+    cardinality++;
+    return true;
+  }
+
+  /**
+   * Check whether value is in the set.
+   *
+   * @param value the value to look for
+   * @return true if the set contains value
+   */
+  public boolean contains(int value) {
+    if (value < 0) {
+      return false;
+    }
+    int index = Arrays.binarySearch(keys, 0, chunks, (char) (value >>> 16));
+    return index >= 0 && containers[index].contains((char) value);
+  }
+
+  /**
+   * @return the number of values in the set
+   */
+  public int cardinality() {
+    return cardinality;
+  }
+
+  /**
+   * Counts the values in [low, high].
+   *
+   * @param low  the smallest value to count
+   * @param high the largest value to count
+   * @return the number of values of the set within the range
+   */
+  public long countInRange(int low, int high) {
+    long count = 0;
+    low = Math.max(low, 0);
+    if (low > high) {
+      return 0;
+    }
+    for (int i = firstChunk(low); i < chunks && keys[i] <= (high >>> 16) && high >= 0; i++) {
+      count += containers[i].countRange(lowWithin(i, low), highWithin(i, high));
+    }
+    return count;
+  }
+
+  /**
+   * Passes every value in [low, high] to action in ascending order.
+   *
+   * @param low    the smallest value to visit
+   * @param high   the largest value to visit
+   * @param action receives each value in the range
+   */
+  public void forEachInRange(int low, int high, IntConsumer action) {
+    low = Math.max(low, 0);
+    if (low > high) {
+      return;
+    }
+    for (int i = firstChunk(low); i < chunks && keys[i] <= (high >>> 16) && high >= 0; i++) {
+      containers[i].forEach(keys[i] << 16, lowWithin(i, low), highWithin(i, high), action);
+    }
+  }
+
+  /**
+   * Removes all values from the set.
+   */
+  public void clear() {
+    keys = new char[4];
+    containers = new Container[4];
+    chunks = 0;
+    cardinality = 0;
+  }
+
+  /**
+   * Converts every container to its smallest representation, including run encoding for chunks
+   * that are not yet due for automatic re-evaluation.
+   */
+  public void runOptimize() {
+    for (int i = 0; i < chunks; i++) {
+      containers[i] = containers[i].optimize();
+    }
+  }
+
+  /**
+   * @return an estimate of the bytes used by the containers' value storage
+   */
+  public long sizeInBytes() {
+    long bytes = chunks * 2L;
+    for (int i = 0; i < chunks; i++) {
+      bytes += containers[i].sizeInBytes();
+    }
+    return bytes;
+  }
+
+  private int firstChunk(int low) {
+    int index = Arrays.binarySearch(keys, 0, chunks, (char) (low >>> 16));
+    return index < 0 ? -index - 1 : index;
+  }
+
+  private int lowWithin(int chunk, int low) {
+    return keys[chunk] == (low >>> 16) ? (low & 0xFFFF) : 0;
+  }
+
+  private int highWithin(int chunk, int high) {
+    return keys[chunk] == (high >>> 16) ? (high & 0xFFFF) : 0xFFFF;
+  }
+
+  /**
+   * The lower 16 bits of the values of one chunk.
+   */
+  abstract static class Container {
+
+    /**
+     * Adds a value, returning the container that now holds the chunk: this one, or a different
+     * representation if the density changed enough.
+     */
+    abstract Container add(char value);
+
+    abstract boolean contains(char value);
+
+    abstract int cardinality();
+
+    /**
+     * Counts the values in [low, high], both in 0..65535.
+     */
+    abstract int countRange(int low, int high);
+
+    /**
+     * Passes base | v to action for each value v in [low, high], in ascending order.
+     */
+    abstract void forEach(int base, int low, int high, IntConsumer action);
+
+    abstract int numberOfRuns();
+
+    abstract int sizeInBytes();
+
+    /**
+     * @return the smallest representation of this container's values
+     */
+    Container optimize() {
+      int runs = numberOfRuns();
+      int card = cardinality();
+      int runBytes = 4 * runs;
+      int denseBytes = card <= ARRAY_MAX ? 2 * card : 8192;
+      if (runBytes < denseBytes) {
+        return this instanceof RunContainer ? this : RunContainer.from(this, runs);
+      }
+      if (card <= ARRAY_MAX) {
+        return this instanceof ArrayContainer ? this : ArrayContainer.from(this);
+      }
+      return this instanceof BitmapContainer ? this : BitmapContainer.from(this);
+    }
+  }
+
+  /**
+   * A sorted array of up to 4096 values.
+   */
+  static final class ArrayContainer extends Container {
+    char[] values = new char[4];
+    int size;
+
+    static ArrayContainer from(Container source) {
+      ArrayContainer array = new ArrayContainer();
+      array.values = new char[Math.max(4, source.cardinality())];
+      source.forEach(0, 0, 0xFFFF, value -> array.values[array.size++] = (char) value);
+      return array;
+    }
+
+    @Override
+    Container add(char value) {
+      int index = Arrays.binarySearch(values, 0, size, value);
+      if (index >= 0) {
+        return this;
+      }
+      index = -index - 1;
+      if (size == values.length) {
+        values = Arrays.copyOf(values, Math.min(ARRAY_MAX + 1, size * 2));
+      }
+      System.arraycopy(values, index, values, index + 1, size - index);
+      values[index] = value;
+      size++;
+      return size > ARRAY_MAX ? optimize() : this;
+    }
+
+    @Override
+    boolean contains(char value) {
+      return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    @Override
+    int cardinality() {
+      return size;
+    }
+
+    @Override
+    int countRange(int low, int high) {
+      return lowerBound(high + 1) - lowerBound(low);
+    }
+
+    @Override
+    void forEach(int base, int low, int high, IntConsumer action) {
+      for (int i = lowerBound(low); i < size && values[i] <= high; i++) {
+        action.accept(base | values[i]);
+      }
+    }
+
+    private int lowerBound(int value) {
+      if (value > 0xFFFF) {
+        return size;
+      }
+      int index = Arrays.binarySearch(values, 0, size, (char) value);
+      return index < 0 ? -index - 1 : index;
+    }
+
+    @Override
+    int numberOfRuns() {
+      int runs = 0;
+      for (int i = 0; i < size; i++) {
+        if (i == 0 || values[i] != values[i - 1] + 1) {
+          runs++;
+        }
+      }
+      return runs;
+    }
+
+    @Override
+    int sizeInBytes() {
+      return 2 * size;
+    }
+  }
+
+  /**
+   * A 65536-bit bitmap.
+   */
+  static final class BitmapContainer extends Container {
+    final long[] words = new long[1024];
+    int cardinality;
+
+    static BitmapContainer from(Container source) {
+      BitmapContainer bitmap = new BitmapContainer();
+      source.forEach(0, 0, 0xFFFF, value -> bitmap.words[value >>> 6] |= 1L << value);
+      bitmap.cardinality = source.cardinality();
+      return bitmap;
+    }
+
+    @Override
+    Container add(char value) {
+      long before = words[value >>> 6];
+      long after = before | (1L << value);
+      if (before == after) {
+        return this;
+      }
+      words[value >>> 6] = after;
+      cardinality++;
+      // re-evaluate the representation every 4096 values and once the chunk is full
+      return (cardinality & (ARRAY_MAX - 1)) == 0 ? optimize() : this;
+    }
+
+    @Override
+    boolean contains(char value) {
+      return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    int countRange(int low, int high) {
+      int first = low >>> 6;
+      int last = high >>> 6;
+      long firstMask = -1L << low;
+      long lastMask = -1L >>> (63 - (high & 63));
+      if (first == last) {
+        return Long.bitCount(words[first] & firstMask & lastMask);
+      }
+      int count = Long.bitCount(words[first] & firstMask);
+      for (int i = first + 1; i < last; i++) {
+        count += Long.bitCount(words[i]);
+      }
+      return count + Long.bitCount(words[last] & lastMask);
+    }
+
+    @Override
+    void forEach(int base, int low, int high, IntConsumer action) {
+      for (int i = low >>> 6; i <= high >>> 6; i++) {
+        long word = words[i];
+        if (i == low >>> 6) {
+          word &= -1L << low;
+        }
+        if (i == high >>> 6) {
+          word &= -1L >>> (63 - (high & 63));
+        }
+        while (word != 0) {
+          action.accept(base | (i << 6) | Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+    }
+
+    @Override
+    int numberOfRuns() {
+      int runs = 0;
+      long previous = 0;
+      for (long word : words) {
+        // a run starts at every set bit whose lower neighbour is clear
+        runs += Long.bitCount(word & ~((word << 1) | (previous >>> 63)));
+        previous = word;
+      }
+      return runs;
+    }
+
+    @Override
+    int sizeInBytes() {
+      return 8192;
+    }
+  }
+
+  /**
+   * Runs of consecutive values, each stored as a start and a length minus one.
+   */
+  static final class RunContainer extends Container {
+    // starts[i] .. starts[i] + lengths[i] is the i-th run
+    char[] starts;
+    char[] lengths;
+    int runs;
+    int cardinality;
+
+    static RunContainer from(Container source, int runCount) {
+      RunContainer container = new RunContainer();
+      container.starts = new char[Math.max(4, runCount)];
+      container.lengths = new char[Math.max(4, runCount)];
+      source.forEach(0, 0, 0xFFFF, value -> {
+        int last = container.runs - 1;
+        if (last >= 0 && container.starts[last] + container.lengths[last] + 1 == value) {
+          container.lengths[last]++;
+        } else {
+          container.starts[container.runs] = (char) value;
+          container.lengths[container.runs] = 0;
+          container.runs++;
+        }
+      });
+      container.cardinality = source.cardinality();
+      return container;
+    }
+
+    /**
+     * @return the index of the last run starting at or before value, or -1
+     */
+    private int runAtOrBefore(int value) {
+      int low = 0;
+      int high = runs - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        if (starts[middle] <= value) {
+          low = middle + 1;
+        } else {
+          high = middle - 1;
+        }
+      }
+      return high;
+    }
+
+    @Override
+    Container add(char value) {
+      int index = runAtOrBefore(value);
+      if (index >= 0 && value <= starts[index] + lengths[index]) {
+        return this;
+      }
+      cardinality++;
+      boolean extendsPrevious = index >= 0 && starts[index] + lengths[index] + 1 == value;
+      boolean extendsNext = index + 1 < runs && starts[index + 1] == value + 1;
+      if (extendsPrevious && extendsNext) {
+        // the value closes the gap between two runs
+        lengths[index] += lengths[index + 1] + 2;
+        System.arraycopy(starts, index + 2, starts, index + 1, runs - index - 2);
+        System.arraycopy(lengths, index + 2, lengths, index + 1, runs - index - 2);
+        runs--;
+      } else if (extendsPrevious) {
+        lengths[index]++;
+      } else if (extendsNext) {
+        starts[index + 1] = value;
+        lengths[index + 1]++;
+      } else {
+        if (runs == starts.length) {
+          starts = Arrays.copyOf(starts, runs * 2);
+          lengths = Arrays.copyOf(lengths, runs * 2);
+        }
+        System.arraycopy(starts, index + 1, starts, index + 2, runs - index - 1);
+        System.arraycopy(lengths, index + 1, lengths, index + 2, runs - index - 1);
+        starts[index + 1] = value;
+        lengths[index + 1] = 0;
+        runs++;
+        // a new run may have made the encoding larger than an array or a bitmap
+        int denseBytes = cardinality <= ARRAY_MAX ? 2 * cardinality : 8192;
+        if (sizeInBytes() > denseBytes) {
+          return optimize();
+        }
+      }
+      return this;
+    }
+
+    @Override
+    boolean contains(char value) {
+      int index = runAtOrBefore(value);
+      return index >= 0 && value <= starts[index] + lengths[index];
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    int countRange(int low, int high) {
+      int count = 0;
+      for (int i = Math.max(0, runAtOrBefore(low)); i < runs && starts[i] <= high; i++) {
+        int start = Math.max(starts[i], low);
+        int end = Math.min(starts[i] + lengths[i], high);
+        if (start <= end) {
+          count += end - start + 1;
+        }
+      }
+      return count;
+    }
+
+    @Override
+    void forEach(int base, int low, int high, IntConsumer action) {
+      for (int i = Math.max(0, runAtOrBefore(low)); i < runs && starts[i] <= high; i++) {
+        int end = Math.min(starts[i] + lengths[i], high);
+        for (int value = Math.max(starts[i], low); value <= end; value++) {
+          action.accept(base | value);
+        }
+      }
+    }
+
+    @Override
+    int numberOfRuns() {
+      return runs;
+    }
+
+    @Override
+    int sizeInBytes() {
+      return 4 * runs;
+    }
+  }
+}
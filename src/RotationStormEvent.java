@@ -0,0 +1,24 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when a window of {@link TreeEvents#ROTATION_WINDOW} consecutive inserts performed at
+ * least {@link TreeEvents#ROTATION_STORM_THRESHOLD} rotations. The event spans the whole window.
+ */
+@Name("ppt.RotationStorm")
+@Label("Rotation Storm")
+@Category("Predicate Partition Tree")
+@Description("A burst of rebalancing rotations across a window of inserts")
+public class RotationStormEvent extends jdk.jfr.Event {
+
+  @Label("Tree")
+  String tree;
+
+  @Label("Inserts")
+  int inserts;
+
+  @Label("Rotations")
+  int rotations;
+}
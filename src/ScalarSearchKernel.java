@@ -0,0 +1,24 @@
+/**
+ * The portable search kernel. Each comparison is turned into 0 or 1 and summed, which the JIT
+ * compiles to branch-free code and may auto-vectorize.
+ */
+public class ScalarSearchKernel implements IntSearchKernel {
+
+  @Override
+  public int countLess(int[] keys, int size, int key) {
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      count += keys[i] < key ? 1 : 0;
+    }
+    return count;
+  }
+
+  @Override
+  public int countLessOrEqual(int[] keys, int size, int key) {
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      count += keys[i] <= key ? 1 : 0;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,29 @@
+/**
+ * Chooses the search kernel used by the wide-node trees. The Vector API kernel is used when it was
+ * compiled from src-vector and the jdk.incubator.vector module is present at runtime, unless
+ * -Dppt.search.scalar=true forces the scalar kernel; otherwise the scalar kernel is used. It is
+ * loaded by name so that nothing in src depends on the incubator module.
+ */
+final class SearchKernels {
+
+  // the kernel selected for this JVM
+  static final IntSearchKernel DEFAULT = select();
+
+  private SearchKernels() {
+  }
+
+  private static IntSearchKernel select() {
+    if (!Boolean.getBoolean("ppt.search.scalar")) {
+      try {
+        IntSearchKernel kernel = (IntSearchKernel) Class.forName("VectorSearchKernel")
+            .getDeclaredConstructor().newInstance();
+        // touch the vector classes now so a missing module fails here rather than mid-search
+        kernel.countLess(new int[1], 1, 0);
+        return kernel;
+      } catch (ReflectiveOperationException | LinkageError e) {
+        // src-vector was not compiled in, or the incubator module was not added to this JVM
+      }
+    }
+    return new ScalarSearchKernel();
+  }
+}
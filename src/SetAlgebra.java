@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+/**
+ * Union, intersection and difference of parity-partitioned trees in linear time. Each parity
+ * partition is handled on its own: the distinct values of both inputs are read in order, merged in
+ * one pass, and the result is bulk-built as a balanced tree, so no value is inserted or looked up
+ * one at a time. The inputs are not modified; duplicates collapse to one value.
+ */
+public final class SetAlgebra {
+
+  private enum Op {
+    UNION, INTERSECT, DIFFERENCE
+  }
+
+  private SetAlgebra() {
+  }
+
+  /**
+   * @return a new AMT holding every value in a or b
+   */
+  public static AMT union(AMT a, AMT b) {
+    return combine(a, b, Op.UNION);
+  }
+
+  /**
+   * @return a new AMT holding every value in both a and b
+   */
+  public static AMT intersect(AMT a, AMT b) {
+    return combine(a, b, Op.INTERSECT);
+  }
+
+  /**
+   * @return a new AMT holding every value in a but not in b
+   */
+  public static AMT difference(AMT a, AMT b) {
+    return combine(a, b, Op.DIFFERENCE);
+  }
+
+  /**
+   * @return a new DualRBT, in the mode of a, holding every value in a or b
+   */
+  public static DualRBT union(DualRBT a, DualRBT b) {
+    return combine(a, b, Op.UNION);
+  }
+
+  /**
+   * @return a new DualRBT, in the mode of a, holding every value in both a and b
+   */
+  public static DualRBT intersect(DualRBT a, DualRBT b) {
+    return combine(a, b, Op.INTERSECT);
+  }
+
+  /**
+   * @return a new DualRBT, in the mode of a, holding every value in a but not in b
+   */
+  public static DualRBT difference(DualRBT a, DualRBT b) {
+    return combine(a, b, Op.DIFFERENCE);
+  }
+
+  /**
+   * Merges two arrays of strictly ascending values into their union.
+   */
+  public static int[] union(int[] a, int[] b) {
+    return merge(a, b, Op.UNION);
+  }
+
+  /**
+   * Merges two arrays of strictly ascending values into their intersection.
+   */
+  public static int[] intersect(int[] a, int[] b) {
+    return merge(a, b, Op.INTERSECT);
+  }
+
+  /**
+   * Merges two arrays of strictly ascending values into the values of a that are not in b.
+   */
+  public static int[] difference(int[] a, int[] b) {
+    return merge(a, b, Op.DIFFERENCE);
+  }
+
+  private static AMT combine(AMT a, AMT b, Op op) {
+    int[] evens = merge(FrozenAMT.distinct(a.iterator(true)), FrozenAMT.distinct(b.iterator(true)),
+        op);
+    int[] odds = merge(FrozenAMT.distinct(a.iterator(false)),
+        FrozenAMT.distinct(b.iterator(false)), op);
+    return AMT.fromSorted(evens, odds);
+  }
+
+  private static DualRBT combine(DualRBT a, DualRBT b, Op op) {
+    int[] evens = merge(a.distinct(true), b.distinct(true), op);
+    int[] odds = merge(a.distinct(false), b.distinct(false), op);
+    return DualRBT.fromSorted(a.mode(), evens, odds);
+  }
+
+  /**
+   * Walks both arrays once, keeping the values the operation selects. The result is in strictly
+   * ascending order.
+   */
+  private static int[] merge(int[] a, int[] b, Op op) {
+    int capacity = op == Op.UNION ? a.length + b.length
+        : op == Op.INTERSECT ? Math.min(a.length, b.length) : a.length;
+    int[] result = new int[capacity];
+    int n = 0;
+    int i = 0;
+    int j = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        if (op != Op.INTERSECT) {
+          result[n++] = a[i];
+        }
+        i++;
+      } else if (a[i] > b[j]) {
+        if (op == Op.UNION) {
+          result[n++] = b[j];
+        }
+        j++;
+      } else {
+        if (op != Op.DIFFERENCE) {
+          result[n++] = a[i];
+        }
+        i++;
+        j++;
+      }
+    }
+    if (op != Op.INTERSECT) {
+      while (i < a.length) {
+        result[n++] = a[i++];
+      }
+    }
+    if (op == Op.UNION) {
+      while (j < b.length) {
+        result[n++] = b[j++];
+      }
+    }
+    return n == capacity ? result : Arrays.copyOf(result, n);
+  }
+}
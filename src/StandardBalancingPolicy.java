@@ -0,0 +1,248 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The common balancing schemes for a BalancedTree. Each repairs the tree bottom-up along the path
+ * of the new node, changing its shape only through BSTRotation.rotate.
+ */
+public enum StandardBalancingPolicy implements BalancingPolicy {
+
+  /**
+   * Left-leaning red-black tree: a red-black tree whose red nodes are always left children, so
+   * it mirrors a 2-3 tree. The metadata is 1 for a red node and 0 for a black one. Height at most
+   * 2 log2(n).
+   */
+  LLRB {
+    @Override
+    public int initialMetadata() {
+      return RED;
+    }
+
+    @Override
+    public <T extends Comparable<T>> void afterInsert(BalancedTree<T> tree,
+        BalancedNode<T> node) {
+      for (BalancedNode<T> h = node.getUp(); h != null; h = h.getUp()) {
+        if (isRed(h.getRight()) && !isRed(h.getLeft())) {
+          h = rotateRecolor(tree, h.getRight(), h);
+        }
+        if (isRed(h.getLeft()) && isRed(h.getLeft().getLeft())) {
+          h = rotateRecolor(tree, h.getLeft(), h);
+        }
+        if (isRed(h.getLeft()) && isRed(h.getRight())) {
+          h.metadata ^= RED;
+          h.getLeft().metadata ^= RED;
+          h.getRight().metadata ^= RED;
+        }
+      }
+      tree.getRoot().metadata = BLACK;
+    }
+  },
+
+  /**
+   * AA tree: a red-black tree in which only right children may be red, written with levels
+   * instead of colors. The metadata is the node's level, 1 for a leaf. Height at most 2 log2(n).
+   */
+  AA {
+    @Override
+    public int initialMetadata() {
+      return 1;
+    }
+
+    @Override
+    public <T extends Comparable<T>> void afterInsert(BalancedTree<T> tree,
+        BalancedNode<T> node) {
+      for (BalancedNode<T> t = node.getUp(); t != null; t = t.getUp()) {
+        // skew: a left child on the same level is rotated up
+        BalancedNode<T> left = t.getLeft();
+        if (left != null && left.metadata == t.metadata) {
+          tree.rotate(left, t);
+          t = left;
+        }
+        // split: two right children on the same level are split by raising the middle one
+        BalancedNode<T> right = t.getRight();
+        if (right != null && right.getRight() != null
+            && right.getRight().metadata == t.metadata) {
+          tree.rotate(right, t);
+          right.metadata++;
+          t = right;
+        }
+      }
+    }
+  },
+
+  /**
+   * AVL tree: the heights of the two subtrees of every node differ by at most one, for the
+   * shallowest trees and fastest lookups of these schemes at the cost of more rebalancing work.
+   * The metadata is the height of the node's subtree, 1 for a leaf. Height at most 1.44 log2(n).
+   */
+  AVL {
+    @Override
+    public int initialMetadata() {
+      return 1;
+    }
+
+    @Override
+    public <T extends Comparable<T>> void afterInsert(BalancedTree<T> tree,
+        BalancedNode<T> node) {
+      for (BalancedNode<T> n = node.getUp(); n != null; n = n.getUp()) {
+        int before = n.metadata;
+        updateHeight(n);
+        int balance = heightOf(n.getLeft()) - heightOf(n.getRight());
+        if (balance > 1 || balance < -1) {
+          BalancedNode<T> child = balance > 1 ? n.getLeft() : n.getRight();
+          // a zig-zag is first turned into a zig-zig
+          BalancedNode<T> inner = balance > 1 ? child.getRight() : child.getLeft();
+          BalancedNode<T> outer = balance > 1 ? child.getLeft() : child.getRight();
+          if (heightOf(inner) > heightOf(outer)) {
+            tree.rotate(inner, child);
+            updateHeight(child);
+            updateHeight(inner);
+            child = inner;
+          }
+          tree.rotate(child, n);
+          updateHeight(n);
+          updateHeight(child);
+          // the subtree is back to its height before the insert, so no ancestor changes
+          return;
+        }
+        if (n.metadata == before) {
+          return;
+        }
+      }
+    }
+  },
+
+  /**
+   * Treap: every node gets a random priority and the tree is kept in heap order on the
+   * priorities, which makes its shape that of a random insertion order whatever the real order.
+   * The metadata is the priority. Expected height O(log n).
+   */
+  TREAP {
+    @Override
+    public int initialMetadata() {
+      return ThreadLocalRandom.current().nextInt();
+    }
+
+    @Override
+    public <T extends Comparable<T>> void afterInsert(BalancedTree<T> tree,
+        BalancedNode<T> node) {
+      while (node.getUp() != null && node.metadata > node.getUp().metadata) {
+        tree.rotate(node, node.getUp());
+      }
+    }
+  },
+
+  /**
+   * Scapegoat tree: no metadata at all. When an insert lands deeper than log_(3/2)(n), the
+   * lowest ancestor with a child holding more than 2/3 of its subtree is rebuilt into a perfectly
+   * balanced subtree with the Day-Stout-Warren rotations. Height at most log_(3/2)(n) + 1.
+   */
+  SCAPEGOAT {
+    @Override
+    public int initialMetadata() {
+      return 0;
+    }
+
+    @Override
+    public <T extends Comparable<T>> void afterInsert(BalancedTree<T> tree,
+        BalancedNode<T> node) {
+      int depth = 0;
+      for (BSTNode<T> n = node.getUp(); n != null; n = n.getUp()) {
+        depth++;
+      }
+      if (depth <= Math.log(tree.size()) / Math.log(1.5)) {
+        return;
+      }
+      BSTNode<T> child = node;
+      int childSize = 1;
+      for (BSTNode<T> parent = node.getUp(); parent != null; parent = parent.getUp()) {
+        BSTNode<T> sibling = parent.getLeft() == child ? parent.getRight() : parent.getLeft();
+        int parentSize = childSize + 1 + sizeOf(sibling);
+        if (3 * childSize > 2 * parentSize) {
+          rebuild(tree, parent, parentSize);
+          return;
+        }
+        child = parent;
+        childSize = parentSize;
+      }
+    }
+  };
+
+  private static final int RED = 1;
+  private static final int BLACK = 0;
+
+  private static boolean isRed(BalancedNode<?> node) {
+    return node != null && node.metadata == RED;
+  }
+
+  /**
+   * Rotates child above parent, handing it parent's color and coloring parent red.
+   */
+  private static <T extends Comparable<T>> BalancedNode<T> rotateRecolor(BalancedTree<T> tree,
+      BalancedNode<T> child, BalancedNode<T> parent) {
+    child.metadata = parent.metadata;
+    parent.metadata = RED;
+    tree.rotate(child, parent);
+    return child;
+  }
+
+  private static int heightOf(BalancedNode<?> node) {
+    return node == null ? 0 : node.metadata;
+  }
+
+  private static void updateHeight(BalancedNode<?> node) {
+    node.metadata = 1 + Math.max(heightOf(node.getLeft()), heightOf(node.getRight()));
+  }
+
+  private static int sizeOf(BSTNode<?> node) {
+    return node == null ? 0 : 1 + sizeOf(node.getLeft()) + sizeOf(node.getRight());
+  }
+
+  /**
+   * Rebuilds the subtree at top into a balanced one in place: right rotations first straighten it
+   * into a vine of right children, then rounds of left rotations at every other vine node fold
+   * the vine into a complete tree.
+   */
+  private static <T extends Comparable<T>> void rebuild(BalancedTree<T> tree, BSTNode<T> top,
+      int size) {
+    BSTNode<T> vineTop = top;
+    BSTNode<T> node = top;
+    while (node != null) {
+      BSTNode<T> left = node.getLeft();
+      if (left != null) {
+        tree.rotate(left, node);
+        if (node == vineTop) {
+          vineTop = left;
+        }
+        node = left;
+      } else {
+        node = node.getRight();
+      }
+    }
+
+    // the first round leaves exactly a perfect tree's worth of nodes on the vine
+    int leaves = size + 1 - Integer.highestOneBit(size + 1);
+    vineTop = compress(tree, vineTop, leaves);
+    for (int remaining = size - leaves; remaining > 1; ) {
+      remaining /= 2;
+      vineTop = compress(tree, vineTop, remaining);
+    }
+  }
+
+  /**
+   * Rotates every other node of the vine at top, count times, and returns the new top.
+   */
+  private static <T extends Comparable<T>> BSTNode<T> compress(BalancedTree<T> tree,
+      BSTNode<T> top, int count) {
+    BSTNode<T> newTop = top;
+    BSTNode<T> node = top;
+    for (int i = 0; i < count; i++) {
+      BSTNode<T> right = node.getRight();
+      tree.rotate(right, node);
+      if (i == 0) {
+        newTop = right;
+      }
+      node = right.getRight();
+    }
+    return newTop;
+  }
+}
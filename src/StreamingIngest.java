@@ -0,0 +1,304 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads values into an IngestTarget from a file or channel without boxing them. The input is read
+ * through one direct ByteBuffer and parsed straight into int batches; a reader thread (the
+ * caller's) parses and routes each value to its partition's batch, while one inserter thread per
+ * partition inserts full batches into the target, so parsing overlaps with insertion.
+ *
+ * Memory use is fixed by the buffer size and the batch pool, whatever the size of the input: each
+ * partition owns POOL_BATCHES batches, and the reader waits for an inserter to hand one back when
+ * all are full.
+ */
+public final class StreamingIngest {
+
+  /**
+   * The layout of the input.
+   */
+  public enum Format {
+    /** Consecutive 32-bit little-endian ints. */
+    INT32_LE,
+    /** One decimal int per line, with optional sign, surrounding spaces and blank lines. */
+    TEXT
+  }
+
+  static final int BUFFER_BYTES = 1 << 20;
+  static final int BATCH_SIZE = 8192;
+
+  // the number of batches each partition cycles through between the reader and its inserter
+  static final int POOL_BATCHES = 8;
+
+  // how long a failed ingest waits for its inserters to finish the insert each may be running
+  static final long ABORT_JOIN_MILLIS = 10_000;
+
+  private StreamingIngest() {
+  }
+
+  /**
+   * Loads every value of a file into target.
+   *
+   * @return the number of values loaded
+   * @throws IOException if the file cannot be read or is malformed, or an insert fails; values
+   *                     before the failure may have been inserted
+   */
+  public static long ingest(Path file, Format format, IngestTarget target) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return ingest(channel, format, target);
+    }
+  }
+
+  /**
+   * Loads every value of a channel into target, reading until the end of the stream. The channel
+   * is not closed.
+   *
+   * @return the number of values loaded
+   * @throws IOException if the channel cannot be read or is malformed, or an insert fails; values
+   *                     before the failure may have been inserted
+   */
+  public static long ingest(ReadableByteChannel channel, Format format, IngestTarget target)
+      throws IOException {
+    Pipeline pipeline = new Pipeline(target);
+    try {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      if (format == Format.INT32_LE) {
+        readInts(channel, buffer, pipeline);
+      } else {
+        readText(channel, buffer, pipeline);
+      }
+    } catch (IOException | RuntimeException e) {
+      pipeline.abort();
+      throw e;
+    } catch (InterruptedException e) {
+      pipeline.abort();
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while ingesting", e);
+    }
+    return pipeline.finish();
+  }
+
+  private static void readInts(ReadableByteChannel channel, ByteBuffer buffer, Pipeline pipeline)
+      throws IOException, InterruptedException {
+    while (channel.read(buffer) >= 0) {
+      buffer.flip();
+      while (buffer.remaining() >= 4) {
+        pipeline.accept(buffer.getInt());
+      }
+      // a value split across reads stays at the front of the buffer
+      buffer.compact();
+      pipeline.checkFailure();
+    }
+    if (buffer.position() != 0) {
+      throw new IOException("Input ends in the middle of a value");
+    }
+  }
+
+  private static void readText(ReadableByteChannel channel, ByteBuffer buffer, Pipeline pipeline)
+      throws IOException, InterruptedException {
+    // the number being parsed, which may span reads
+    long value = 0;
+    boolean signed = false;
+    boolean negative = false;
+    boolean inNumber = false;
+    boolean afterNumber = false;
+    long line = 1;
+    while (channel.read(buffer) >= 0) {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        byte b = buffer.get();
+        if (b >= '0' && b <= '9' && !afterNumber) {
+          value = value * 10 + (b - '0');
+          if (value > (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) {
+            throw new IOException("Value out of range on line " + line);
+          }
+          inNumber = true;
+        } else if (b == '\n') {
+          if (inNumber) {
+            pipeline.accept((int) (negative ? -value : value));
+          } else if (signed) {
+            throw new IOException("Malformed value on line " + line);
+          }
+          value = 0;
+          signed = false;
+          negative = false;
+          inNumber = false;
+          afterNumber = false;
+          line++;
+        } else if (b == ' ' || b == '\t' || b == '\r') {
+          afterNumber = inNumber || signed;
+        } else if ((b == '-' || b == '+') && !inNumber && !signed) {
+          signed = true;
+          negative = b == '-';
+        } else {
+          throw new IOException("Malformed value on line " + line);
+        }
+      }
+      buffer.clear();
+      pipeline.checkFailure();
+    }
+    if (inNumber) {
+      pipeline.accept((int) (negative ? -value : value));
+    } else if (signed) {
+      throw new IOException("Malformed value on line " + line);
+    }
+  }
+
+  /**
+   * The batches and inserter threads of one ingestion.
+   */
+  private static final class Pipeline {
+    private final IngestTarget target;
+    private final Inserter[] inserters;
+    private final int[][] current;
+    private final int[] counts;
+    private long total;
+
+    Pipeline(IngestTarget target) {
+      this.target = target;
+      int partitions = target.partitionCount();
+      inserters = new Inserter[partitions];
+      current = new int[partitions][];
+      counts = new int[partitions];
+      for (int p = 0; p < partitions; p++) {
+        inserters[p] = new Inserter(target, p);
+        current[p] = inserters[p].free.poll();
+        inserters[p].start();
+      }
+    }
+
+    void accept(int value) throws InterruptedException, IOException {
+      int partition = inserters.length == 1 ? 0 : target.partitionOf(value);
+      int[] batch = current[partition];
+      batch[counts[partition]++] = value;
+      if (counts[partition] == batch.length) {
+        inserters[partition].full.put(new Batch(batch, batch.length));
+        // blocks while the inserter is POOL_BATCHES batches behind
+        current[partition] = inserters[partition].free.take();
+        counts[partition] = 0;
+        checkFailure();
+      }
+      total++;
+    }
+
+    void checkFailure() throws IOException {
+      for (Inserter inserter : inserters) {
+        if (inserter.failure != null) {
+          throw new IOException("Insert failed", inserter.failure);
+        }
+      }
+    }
+
+    /**
+     * Hands over the partial batches, waits for every inserter, and reports any failure.
+     */
+    long finish() throws IOException {
+      try {
+        for (int p = 0; p < inserters.length; p++) {
+          if (counts[p] > 0) {
+            inserters[p].full.put(new Batch(current[p], counts[p]));
+          }
+          inserters[p].full.put(Batch.END);
+        }
+        for (Inserter inserter : inserters) {
+          inserter.join();
+        }
+      } catch (InterruptedException e) {
+        abort();
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while ingesting", e);
+      }
+      checkFailure();
+      return total;
+    }
+
+    /**
+     * Stops every inserter without waiting for queued batches, then waits up to
+     * ABORT_JOIN_MILLIS for the inserts already running, so that the target is no longer being
+     * modified when the failure reaches the caller.
+     */
+    void abort() {
+      for (Inserter inserter : inserters) {
+        inserter.interrupt();
+      }
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ABORT_JOIN_MILLIS);
+      try {
+        for (Inserter inserter : inserters) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining > 0) {
+            TimeUnit.NANOSECONDS.timedJoin(inserter, remaining);
+          }
+        }
+      } catch (InterruptedException e) {
+        // stop waiting, but let the caller see the interrupt
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * A run of values for one partition; END tells the inserter to stop.
+   */
+  private static final class Batch {
+    static final Batch END = new Batch(new int[0], 0);
+
+    final int[] values;
+    final int count;
+
+    Batch(int[] values, int count) {
+      this.values = values;
+      this.count = count;
+    }
+  }
+
+  /**
+   * Inserts the batches of one partition and returns each array to the pool once done with it.
+   * After a failed insert it keeps returning arrays, so the reader never blocks on a dead stage.
+   */
+  private static final class Inserter extends Thread {
+    private final IngestTarget target;
+    private final int partition;
+    final BlockingQueue<Batch> full = new ArrayBlockingQueue<>(POOL_BATCHES + 1);
+    final BlockingQueue<int[]> free = new ArrayBlockingQueue<>(POOL_BATCHES);
+    volatile Throwable failure;
+
+    Inserter(IngestTarget target, int partition) {
+      super("ingest-partition-" + partition);
+      setDaemon(true);
+      this.target = target;
+      this.partition = partition;
+      for (int i = 0; i < POOL_BATCHES; i++) {
+        free.add(new int[BATCH_SIZE]);
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          Batch batch = full.take();
+          if (batch == Batch.END) {
+            return;
+          }
+          if (failure == null) {
+            try {
+              target.insert(partition, batch.values, batch.count);
+            } catch (RuntimeException e) {
+              failure = e;
+            }
+          }
+          free.put(batch.values);
+        }
+      } catch (InterruptedException e) {
+        // aborted by the reader
+      }
+    }
+  }
+}
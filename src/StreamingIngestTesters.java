@@ -0,0 +1,70 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for StreamingIngest on temporary binary and text files.
+ */
+public class StreamingIngestTesters {
+
+  @Test
+  public void testStreamingIngest() throws Exception {
+    Path binary = Files.createTempFile("ingest", ".bin");
+    Path text = Files.createTempFile("ingest", ".txt");
+    try {
+      // more values than one batch and one read buffer, so both boundaries are crossed
+      int[] values = new int[300000];
+      Random random = new Random(43);
+      ByteBuffer bytes = ByteBuffer.allocate(4 * values.length)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      StringBuilder lines = new StringBuilder();
+      for (int i = 0; i < values.length; i++) {
+        values[i] = random.nextInt(1000000) + 1;
+        bytes.putInt(values[i]);
+        lines.append(i % 3 == 0 ? " +" : "").append(values[i]).append(i % 5 == 0 ? "\r\n" : "\n");
+      }
+      Files.write(binary, bytes.array());
+      Files.write(text, lines.toString().getBytes(StandardCharsets.US_ASCII));
+
+      AMT amt = new AMT();
+      DualRBT dual = new DualRBT(DualRBT.Mode.PRIMITIVE);
+      RedBlackTree<Integer> rbt = new RedBlackTree<>();
+      Assertions.assertEquals(values.length, StreamingIngest.ingest(binary,
+          StreamingIngest.Format.INT32_LE, IngestTarget.of(amt)));
+      Assertions.assertEquals(values.length, StreamingIngest.ingest(text,
+          StreamingIngest.Format.TEXT, IngestTarget.of(dual)));
+      Assertions.assertEquals(values.length, StreamingIngest.ingest(text,
+          StreamingIngest.Format.TEXT, IngestTarget.of(rbt)));
+      Assertions.assertEquals(values.length, amt.size());
+      Assertions.assertEquals(values.length, dual.size());
+      Assertions.assertEquals(values.length, rbt.size());
+      for (int i = 0; i < values.length; i += 997) {
+        Assertions.assertTrue(amt.contains(values[i]));
+        Assertions.assertTrue(dual.contains(values[i]));
+        Assertions.assertTrue(rbt.contains(values[i]));
+      }
+
+      Files.write(text, "1\n2x\n".getBytes(StandardCharsets.US_ASCII));
+      Assertions.assertThrows(IOException.class, () -> StreamingIngest.ingest(text,
+          StreamingIngest.Format.TEXT, IngestTarget.of(new AMT())));
+      // a failed ingest returns only after its inserters have stopped
+      Assertions.assertTrue(Thread.getAllStackTraces().keySet().stream()
+          .noneMatch(thread -> thread.getName().startsWith("ingest-partition-")));
+      Files.write(text, "-5\n".getBytes(StandardCharsets.US_ASCII));
+      IOException failure = Assertions.assertThrows(IOException.class,
+          () -> StreamingIngest.ingest(text, StreamingIngest.Format.TEXT, IngestTarget.of(
+              new AMT())));
+      Assertions.assertTrue(failure.getCause() instanceof IllegalArgumentException);
+    } finally {
+      Files.delete(binary);
+      Files.delete(text);
+    }
+  }
+}
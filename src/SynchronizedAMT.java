@@ -0,0 +1,175 @@
+import java.util.PrimitiveIterator;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * A thread-safe AMT. Lookups share a read lock so they can run in parallel, while inserts take the
+ * write lock because they may fill slots and relink nodes anywhere along the insertion path.
+ */
+public class SynchronizedAMT extends AMT {
+
+  // guards every access to the underlying tree
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  public SynchronizedAMT() {
+    super();
+  }
+
+  public SynchronizedAMT(boolean multiset) {
+    super(multiset);
+  }
+
+  @Override
+  public void insert(int value) {
+    lock.writeLock().lock();
+    try {
+      super.insert(value);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void enableBloomFilter(int expectedPerPartition, double falsePositiveRate) {
+    lock.writeLock().lock();
+    try {
+      super.enableBloomFilter(expectedPerPartition, falsePositiveRate);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void rebuildBloomFilter() {
+    lock.writeLock().lock();
+    try {
+      super.rebuildBloomFilter();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Not supported: concurrent readers would update the cache under the shared read lock.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public HotKeyCache enableHotKeyCache(int maxEntries) {
+    throw new UnsupportedOperationException("The hot-key cache is not thread-safe");
+  }
+
+  /**
+   * Not supported: lookups through a cursor walk remembered paths without taking the lock.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public AMTCursor cursor() {
+    throw new UnsupportedOperationException("Cursors are not thread-safe");
+  }
+
+  @Override
+  public boolean contains(int data) {
+    lock.readLock().lock();
+    try {
+      return super.contains(data);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return super.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int count(int data) {
+    lock.readLock().lock();
+    try {
+      return super.count(data);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void containsAllSorted(int[] sorted, boolean[] results) {
+    lock.readLock().lock();
+    try {
+      super.containsAllSorted(sorted, results);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns an iterator over a copy of the partition taken under the read lock, so it can be used
+   * while other threads insert, but does not see their inserts.
+   */
+  @Override
+  public PrimitiveIterator.OfInt iterator(boolean isEven) {
+    lock.readLock().lock();
+    try {
+      IntStream.Builder values = IntStream.builder();
+      super.iterator(isEven).forEachRemaining((IntConsumer) values::add);
+      return values.build().iterator();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Scans one partition under the read lock, so action must not insert into this tree.
+   */
+  @Override
+  public void forEachInRange(boolean isEven, int low, int high, IntConsumer action) {
+    lock.readLock().lock();
+    try {
+      super.forEachInRange(isEven, low, high, action);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Scans one partition under the read lock, so action must not insert into this tree.
+   */
+  @Override
+  public boolean forEachInRangeWhile(boolean isEven, int low, int high, IntPredicate action) {
+    lock.readLock().lock();
+    try {
+      return super.forEachInRangeWhile(isEven, low, high, action);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public FrozenAMT freeze() {
+    lock.readLock().lock();
+    try {
+      return super.freeze();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public AMTMetrics.Snapshot metricsSnapshot() {
+    lock.readLock().lock();
+    try {
+      return super.metricsSnapshot();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
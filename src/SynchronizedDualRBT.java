@@ -0,0 +1,120 @@
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * A thread-safe DualRBT. The even and odd trees are independent, so each one is guarded by its own
+ * read-write lock: writers on one parity never block readers or writers on the other.
+ */
+class SynchronizedDualRBT extends DualRBT {
+
+  // guards the even and odd trees respectively
+  private final ReentrantReadWriteLock evenLock = new ReentrantReadWriteLock();
+  private final ReentrantReadWriteLock oddLock = new ReentrantReadWriteLock();
+
+  public SynchronizedDualRBT() {
+    super();
+  }
+
+  public SynchronizedDualRBT(boolean multiset) {
+    super(multiset);
+  }
+
+  public SynchronizedDualRBT(Mode mode) {
+    super(mode);
+  }
+
+  @Override
+  public void insert(int value) {
+    ReentrantReadWriteLock lock = (value % 2 == 0) ? evenLock : oddLock;
+    lock.writeLock().lock();
+    try {
+      super.insert(value);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean contains(int value) {
+    ReentrantReadWriteLock lock = (value % 2 == 0) ? evenLock : oddLock;
+    lock.readLock().lock();
+    try {
+      return super.contains(value);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    evenLock.readLock().lock();
+    oddLock.readLock().lock();
+    try {
+      return super.size();
+    } finally {
+      oddLock.readLock().unlock();
+      evenLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int count(int value) {
+    ReentrantReadWriteLock lock = (value % 2 == 0) ? evenLock : oddLock;
+    lock.readLock().lock();
+    try {
+      return super.count(value);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Scans one partition under its read lock, so action must not insert into this tree.
+   */
+  @Override
+  public void forEachInRange(boolean isEven, int low, int high, IntConsumer action) {
+    ReentrantReadWriteLock lock = isEven ? evenLock : oddLock;
+    lock.readLock().lock();
+    try {
+      super.forEachInRange(isEven, low, high, action);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public FrozenAMT freeze() {
+    evenLock.readLock().lock();
+    oddLock.readLock().lock();
+    try {
+      return super.freeze();
+    } finally {
+      oddLock.readLock().unlock();
+      evenLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void enableBloomFilter(int expectedPerPartition, double falsePositiveRate) {
+    evenLock.writeLock().lock();
+    oddLock.writeLock().lock();
+    try {
+      super.enableBloomFilter(expectedPerPartition, falsePositiveRate);
+    } finally {
+      oddLock.writeLock().unlock();
+      evenLock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void rebuildBloomFilter() {
+    evenLock.writeLock().lock();
+    oddLock.writeLock().lock();
+    try {
+      super.rebuildBloomFilter();
+    } finally {
+      oddLock.writeLock().unlock();
+      evenLock.writeLock().unlock();
+    }
+  }
+}
@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * A client for TreeServer. Every call sends its request at once and returns a CompletableFuture,
+ * so any number of requests can be in flight on one connection. A reader thread matches response
+ * frames to requests by id. The client may be shared by several threads.
+ */
+public class TreeClient implements AutoCloseable {
+
+  private final SocketChannel channel;
+  private final Thread reader;
+  private final AtomicInteger nextRequestId = new AtomicInteger();
+
+  // requests awaiting their response, by request id
+  private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+
+  // why the reader thread stopped, or null while it runs
+  private volatile IOException failure;
+
+  /**
+   * A request awaiting its response: the future to complete and, for a scan, where to pass values.
+   */
+  private static final class Pending {
+    final CompletableFuture<Object> future = new CompletableFuture<>();
+    final IntConsumer scanAction;
+    long scanned;
+
+    Pending(IntConsumer scanAction) {
+      this.scanAction = scanAction;
+    }
+  }
+
+  /**
+   * Connects to a TreeServer.
+   *
+   * @param address the server's address
+   * @throws IOException if the connection fails
+   */
+  public TreeClient(InetSocketAddress address) throws IOException {
+    channel = SocketChannel.open(address);
+    channel.socket().setTcpNoDelay(true);
+    reader = new Thread(this::readResponses, "tree-client-reader");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  /**
+   * Inserts a batch of values.
+   *
+   * @return a future completing with the number of values inserted
+   */
+  public CompletableFuture<Integer> insertAll(int... values) {
+    return send(id -> TreeProtocol.intBatch(TreeProtocol.INSERT_BATCH, id, values), null);
+  }
+
+  /**
+   * Looks up a batch of values.
+   *
+   * @return a future completing with whether each value is in the tree, in request order
+   */
+  public CompletableFuture<boolean[]> containsAll(int... values) {
+    return send(id -> TreeProtocol.intBatch(TreeProtocol.CONTAINS_BATCH, id, values), null);
+  }
+
+  /**
+   * Counts the values in [low, high].
+   *
+   * @return a future completing with the count, including duplicates
+   */
+  public CompletableFuture<Long> countInRange(int low, int high) {
+    return send(id -> TreeProtocol.range(TreeProtocol.RANGE_COUNT, id, low, high), null);
+  }
+
+  /**
+   * Streams the values in [low, high] to action as their frames arrive: the even partition first,
+   * then the odd partition, each in ascending order. Action runs on the client's reader thread.
+   *
+   * @return a future completing with the number of values passed once the last frame has arrived
+   */
+  public CompletableFuture<Long> scan(int low, int high, IntConsumer action) {
+    return send(id -> TreeProtocol.range(TreeProtocol.RANGE_SCAN, id, low, high), action);
+  }
+
+  /**
+   * Closes the connection. Requests still in flight complete exceptionally.
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+    try {
+      reader.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private interface FrameBuilder {
+    ByteBuffer build(int requestId);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> CompletableFuture<T> send(FrameBuilder builder, IntConsumer scanAction) {
+    int id = nextRequestId.getAndIncrement();
+    Pending request = new Pending(scanAction);
+    pending.put(id, request);
+    // the reader may have failed the pending requests before this one was added
+    IOException error = failure;
+    if (error != null) {
+      pending.remove(id);
+      request.future.completeExceptionally(error);
+      return (CompletableFuture<T>) (CompletableFuture<?>) request.future;
+    }
+    ByteBuffer frame = builder.build(id);
+    try {
+      synchronized (channel) {
+        while (frame.hasRemaining()) {
+          channel.write(frame);
+        }
+      }
+    } catch (IOException e) {
+      pending.remove(id);
+      request.future.completeExceptionally(e);
+    }
+    return (CompletableFuture<T>) (CompletableFuture<?>) request.future;
+  }
+
+  /**
+   * Reads response frames until the connection closes or a frame cannot be decoded, then closes
+   * the connection and fails every request still pending.
+   */
+  private void readResponses() {
+    ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+    IOException error;
+    try {
+      while (true) {
+        lengthBuffer.clear();
+        readFully(lengthBuffer);
+        int length = lengthBuffer.flip().getInt();
+        if (length < TreeProtocol.HEADER_BYTES || length > TreeProtocol.MAX_FRAME_BYTES) {
+          throw new IOException("Bad frame length " + length);
+        }
+        ByteBuffer frame = ByteBuffer.allocate(length);
+        readFully(frame);
+        dispatch(frame.flip());
+      }
+    } catch (IOException e) {
+      error = new IOException("Connection closed", e);
+    } catch (RuntimeException e) {
+      // a frame shorter than its payload, for example
+      error = new IOException("Malformed response frame", e);
+    }
+    failure = error;
+    try {
+      channel.close();
+    } catch (IOException e) {
+      error.addSuppressed(e);
+    }
+    for (Pending request : pending.values()) {
+      request.future.completeExceptionally(error);
+    }
+    pending.clear();
+  }
+
+  private void readFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new IOException("Connection closed by server");
+      }
+    }
+  }
+
+  private void dispatch(ByteBuffer frame) throws IOException {
+    byte opcode = frame.get();
+    int id = frame.getInt();
+    Pending request = pending.get(id);
+    if (request == null) {
+      throw new IOException("Response to unknown request " + id);
+    }
+    switch (opcode) {
+      case TreeProtocol.INSERT_BATCH:
+        complete(id, request, frame.getInt());
+        break;
+      case TreeProtocol.CONTAINS_BATCH: {
+        boolean[] results = new boolean[frame.getInt()];
+        for (int i = 0; i < results.length; i += 8) {
+          byte bits = frame.get();
+          for (int j = i; j < Math.min(i + 8, results.length); j++) {
+            results[j] = (bits & (1 << (j & 7))) != 0;
+          }
+        }
+        complete(id, request, results);
+        break;
+      }
+      case TreeProtocol.RANGE_COUNT:
+        complete(id, request, frame.getLong());
+        break;
+      case TreeProtocol.RANGE_SCAN: {
+        boolean last = frame.get() != 0;
+        int count = frame.getInt();
+        try {
+          // after the action has failed, the rest of the scan is only drained
+          for (int i = 0; i < count && !request.future.isDone(); i++) {
+            request.scanAction.accept(frame.getInt());
+          }
+        } catch (RuntimeException e) {
+          request.future.completeExceptionally(e);
+        }
+        request.scanned += count;
+        if (last) {
+          complete(id, request, request.scanned);
+        }
+        break;
+      }
+      case TreeProtocol.STATUS_ERROR:
+        pending.remove(id);
+        request.future.completeExceptionally(
+            new IllegalArgumentException(TreeProtocol.readError(frame)));
+        break;
+      default:
+        throw new IOException("Unknown opcode " + opcode);
+    }
+  }
+
+  private void complete(int id, Pending request, Object result) {
+    pending.remove(id);
+    request.future.complete(result);
+  }
+}
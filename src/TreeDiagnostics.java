@@ -0,0 +1,258 @@
+import java.util.ArrayDeque;
+
+/**
+ * Verifies the red-black and search-order invariants of AMT and RedBlackTree instances and reports
+ * on their shape. Every check is a single iterative O(n) walk, so it can be run after each batch of
+ * a soak test, and it does not recurse, so degenerate trees of any depth can be inspected.
+ */
+public class TreeDiagnostics {
+
+  /**
+   * The result of checking one tree.
+   */
+  public static class Report {
+    public int nodeCount;
+    public int height;
+    // 2 * log2(n+1), the maximum height of a valid red-black tree with n nodes
+    public double heightBound;
+    public boolean rootBlack = true;
+    public boolean blackHeightConsistent = true;
+    // black height of the first root-to-leaf path, or 0 for an empty tree
+    public int blackHeight;
+    public int redRedViolations;
+    // ordering violations of the even partition, or of the whole tree for a RedBlackTree
+    public int evenOrderViolations;
+    // ordering violations of the odd partition, always 0 for a RedBlackTree
+    public int oddOrderViolations;
+    // filled slots of each partition below an empty slot of the same parity, always 0 for a
+    // RedBlackTree; searches stop at an empty slot, so these values cannot be found
+    public int evenFilledBelowEmpty;
+    public int oddFilledBelowEmpty;
+    // fraction of AMTNodes whose even and odd slots are filled, always 1 for a RedBlackTree
+    public double evenFillRatio = 1.0;
+    public double oddFillRatio = 1.0;
+
+    /**
+     * @return true if the tree is within the red-black height bound
+     */
+    public boolean heightWithinBound() {
+      return height <= heightBound;
+    }
+
+    /**
+     * @return true if all red-black and ordering invariants hold
+     */
+    public boolean isValid() {
+      return rootBlack && blackHeightConsistent && redRedViolations == 0
+          && evenOrderViolations == 0 && oddOrderViolations == 0 && evenFilledBelowEmpty == 0
+          && oddFilledBelowEmpty == 0 && heightWithinBound();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("nodes=%d, height=%d (bound %.1f), root black=%b, black height=%d "
+              + "(consistent=%b), red-red=%d, order violations even=%d odd=%d, "
+              + "filled below empty even=%d odd=%d, fill even=%.2f odd=%.2f", nodeCount, height,
+          heightBound, rootBlack, blackHeight, blackHeightConsistent, redRedViolations,
+          evenOrderViolations, oddOrderViolations, evenFilledBelowEmpty, oddFilledBelowEmpty,
+          evenFillRatio, oddFillRatio);
+    }
+  }
+
+  /**
+   * One pending node of the walk over an AMT, together with the state of its search path.
+   */
+  private static class AMTFrame {
+    final AMTNode node;
+    final int depth;
+    final int blackCount;
+    // open interval bounds for each partition implied by the ancestors' slots
+    final long evenLow;
+    final long evenHigh;
+    final long oddLow;
+    final long oddHigh;
+    // whether an ancestor's slot of each partition is empty
+    final boolean evenEmptyAbove;
+    final boolean oddEmptyAbove;
+
+    AMTFrame(AMTNode node, int depth, int blackCount, long evenLow, long evenHigh, long oddLow,
+        long oddHigh, boolean evenEmptyAbove, boolean oddEmptyAbove) {
+      this.node = node;
+      this.depth = depth;
+      this.blackCount = blackCount;
+      this.evenLow = evenLow;
+      this.evenHigh = evenHigh;
+      this.oddLow = oddLow;
+      this.oddHigh = oddHigh;
+      this.evenEmptyAbove = evenEmptyAbove;
+      this.oddEmptyAbove = oddEmptyAbove;
+    }
+  }
+
+  /**
+   * Checks an AMT. Within each partition, a search stops at an empty slot, so an empty slot must
+   * have no filled slots of its parity below it; any that are found are counted on their own.
+   * Empty slots do not bound the order of the filled slots below them.
+   *
+   * @param tree the tree to check
+   * @return the diagnostics report
+   */
+  public static Report check(AMT tree) {
+    Report report = new Report();
+    AMTNode root = tree.root;
+    if (root == null) {
+      return report;
+    }
+    report.rootBlack = !root.isRed();
+    report.blackHeight = -1;
+    int evenFilled = 0;
+    int oddFilled = 0;
+
+    ArrayDeque<AMTFrame> stack = new ArrayDeque<>();
+    stack.push(new AMTFrame(root, 1, root.isRed() ? 0 : 1, Long.MIN_VALUE, Long.MAX_VALUE,
+        Long.MIN_VALUE, Long.MAX_VALUE, false, false));
+    while (!stack.isEmpty()) {
+      AMTFrame frame = stack.pop();
+      AMTNode node = frame.node;
+      report.nodeCount++;
+      report.height = Math.max(report.height, frame.depth);
+
+      int even = node.even();
+      int odd = node.odd();
+      if (even != 0) {
+        evenFilled++;
+        if (even < frame.evenLow || even > frame.evenHigh) {
+          report.evenOrderViolations++;
+        }
+        if (frame.evenEmptyAbove) {
+          report.evenFilledBelowEmpty++;
+        }
+      }
+      if (odd != 0) {
+        oddFilled++;
+        if (odd < frame.oddLow || odd > frame.oddHigh) {
+          report.oddOrderViolations++;
+        }
+        if (frame.oddEmptyAbove) {
+          report.oddFilledBelowEmpty++;
+        }
+      }
+
+      AMTNode[] children = {node.getLeft(), node.getRight()};
+      for (int i = 0; i < 2; i++) {
+        AMTNode child = children[i];
+        if (child == null) {
+          checkBlackHeight(report, frame.blackCount);
+          continue;
+        }
+        if (node.isRed() && child.isRed()) {
+          report.redRedViolations++;
+        }
+        // an empty slot leaves the bounds as they are
+        boolean left = i == 0;
+        boolean evenEmpty = even == 0;
+        boolean oddEmpty = odd == 0;
+        stack.push(new AMTFrame(child, frame.depth + 1,
+            frame.blackCount + (child.isRed() ? 0 : 1),
+            left || evenEmpty ? frame.evenLow : Math.max(frame.evenLow, even),
+            !left || evenEmpty ? frame.evenHigh : Math.min(frame.evenHigh, even),
+            left || oddEmpty ? frame.oddLow : Math.max(frame.oddLow, odd),
+            !left || oddEmpty ? frame.oddHigh : Math.min(frame.oddHigh, odd),
+            frame.evenEmptyAbove || evenEmpty, frame.oddEmptyAbove || oddEmpty));
+      }
+    }
+
+    report.heightBound = heightBound(report.nodeCount);
+    report.evenFillRatio = evenFilled / (double) report.nodeCount;
+    report.oddFillRatio = oddFilled / (double) report.nodeCount;
+    return report;
+  }
+
+  /**
+   * One pending node of the walk over a RedBlackTree, together with the state of its search path.
+   */
+  private static class RBTFrame<T> {
+    final RBTNode<T> node;
+    final int depth;
+    final int blackCount;
+    // closed bounds implied by the ancestors, or null when unbounded
+    final T low;
+    final T high;
+
+    RBTFrame(RBTNode<T> node, int depth, int blackCount, T low, T high) {
+      this.node = node;
+      this.depth = depth;
+      this.blackCount = blackCount;
+      this.low = low;
+      this.high = high;
+    }
+  }
+
+  /**
+   * Checks a RedBlackTree. Duplicates may end up on either side of an equal key after rotations,
+   * so the order bounds are inclusive.
+   *
+   * @param tree the tree to check
+   * @return the diagnostics report
+   */
+  public static <T extends Comparable<T>> Report check(RedBlackTree<T> tree) {
+    Report report = new Report();
+    RBTNode<T> root = (RBTNode<T>) tree.root;
+    if (root == null) {
+      return report;
+    }
+    report.rootBlack = !root.isRed();
+    report.blackHeight = -1;
+
+    ArrayDeque<RBTFrame<T>> stack = new ArrayDeque<>();
+    stack.push(new RBTFrame<>(root, 1, root.isRed() ? 0 : 1, null, null));
+    while (!stack.isEmpty()) {
+      RBTFrame<T> frame = stack.pop();
+      RBTNode<T> node = frame.node;
+      T data = node.getData();
+      report.nodeCount++;
+      report.height = Math.max(report.height, frame.depth);
+
+      if ((frame.low != null && data.compareTo(frame.low) < 0)
+          || (frame.high != null && data.compareTo(frame.high) > 0)) {
+        report.evenOrderViolations++;
+      }
+
+      RBTNode<T> left = node.getLeft();
+      RBTNode<T> right = node.getRight();
+      for (RBTNode<T> child : java.util.Arrays.asList(left, right)) {
+        if (child == null) {
+          checkBlackHeight(report, frame.blackCount);
+          continue;
+        }
+        if (node.isRed() && child.isRed()) {
+          report.redRedViolations++;
+        }
+        stack.push(new RBTFrame<>(child, frame.depth + 1,
+            frame.blackCount + (child.isRed() ? 0 : 1),
+            child == left ? frame.low : data, child == left ? data : frame.high));
+      }
+    }
+
+    report.heightBound = heightBound(report.nodeCount);
+    return report;
+  }
+
+  /**
+   * Records the black count of a root-to-null path and checks it against the first one seen.
+   */
+  private static void checkBlackHeight(Report report, int blackCount) {
+    if (report.blackHeight == -1) {
+      report.blackHeight = blackCount;
+    } else if (report.blackHeight != blackCount) {
+      report.blackHeightConsistent = false;
+    }
+  }
+
+  /**
+   * @return 2 * log2(n+1), the height bound of a red-black tree with n nodes
+   */
+  private static double heightBound(int nodeCount) {
+    return 2 * Math.log(nodeCount + 1) / Math.log(2);
+  }
+}
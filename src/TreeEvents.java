@@ -0,0 +1,68 @@
+/**
+ * Settings and shared helpers for the JFR events emitted by the trees. The duration thresholds of
+ * TreeInsertEvent and BulkOperationEvent are ordinary JFR settings; the depth and rotation
+ * thresholds below are not durations, so they are read once from system properties instead.
+ */
+final class TreeEvents {
+
+  // minimum search depth that produces a TreeLookupEvent
+  static final int LOOKUP_DEPTH_THRESHOLD = Integer.getInteger("ppt.jfr.lookupDepth", 40);
+
+  // number of inserts in one rotation storm window
+  static final int ROTATION_WINDOW = Integer.getInteger("ppt.jfr.rotationWindow", 1024);
+
+  // minimum rotations within one window that produce a RotationStormEvent
+  static final int ROTATION_STORM_THRESHOLD = Integer.getInteger("ppt.jfr.rotationStorm", 1024);
+
+  private TreeEvents() {
+  }
+
+  /**
+   * @return the name of the partition the value belongs to
+   */
+  static String parityOf(int value) {
+    return value % 2 == 0 ? "even" : "odd";
+  }
+
+  /**
+   * Counts rotations over consecutive windows of inserts for a single tree and commits a
+   * RotationStormEvent when a window exceeds the threshold. Like the trees it belongs to, this
+   * class is not thread-safe.
+   */
+  static class RotationWindow {
+
+    private final String tree;
+    private RotationStormEvent event;
+    private int inserts;
+    private int rotations;
+
+    RotationWindow(String tree) {
+      this.tree = tree;
+    }
+
+    /**
+     * Records one completed insert that performed the given number of rotations.
+     */
+    void afterInsert(int insertRotations) {
+      if (event == null) {
+        event = new RotationStormEvent();
+        event.begin();
+      }
+      inserts++;
+      rotations += insertRotations;
+      if (inserts < ROTATION_WINDOW) {
+        return;
+      }
+      event.end();
+      if (rotations >= ROTATION_STORM_THRESHOLD && event.shouldCommit()) {
+        event.tree = tree;
+        event.inserts = inserts;
+        event.rotations = rotations;
+        event.commit();
+      }
+      event = null;
+      inserts = 0;
+      rotations = 0;
+    }
+  }
+}
@@ -0,0 +1,34 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Recorded when a single insert into a tree takes longer than the configured threshold. The
+ * threshold defaults to 1 ms and can be changed in a JFR settings file through the "threshold"
+ * setting of ppt.TreeInsert.
+ */
+@Name("ppt.TreeInsert")
+@Label("Slow Tree Insert")
+@Category("Predicate Partition Tree")
+@Description("An insert that exceeded the duration threshold")
+@Threshold("1 ms")
+public class TreeInsertEvent extends jdk.jfr.Event {
+
+  @Label("Tree")
+  String tree;
+
+  @Label("Key")
+  String key;
+
+  @Label("Parity")
+  String parity;
+
+  @Label("Depth")
+  @Description("Depth at which the inserted key is found after the insert")
+  int depth;
+
+  @Label("Rotations")
+  int rotations;
+}
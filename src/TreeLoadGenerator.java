@@ -0,0 +1,151 @@
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures TreeServer over loopback: it starts a server on a populated AMT, opens several client
+ * connections, and keeps a fixed number of pipelined requests in flight on each for a fixed time.
+ * Reports requests and values per second and the latency distribution of the requests.
+ *
+ * Usage: java TreeLoadGenerator [connections] [pipelineDepth] [batchSize] [readPercent] [seconds]
+ */
+public class TreeLoadGenerator {
+
+  private static final int DATA_SIZE = 1_000_000;
+  private static final int MAX_VALUE = 4_000_000;
+
+  // latencies beyond this many requests are not recorded
+  private static final int MAX_LATENCY_SAMPLES = 4_000_000;
+
+  public static void main(String[] args) throws Exception {
+    int connections = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    int pipelineDepth = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+    int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+    int readPercent = args.length > 3 ? Integer.parseInt(args[3]) : 95;
+    int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+    AMT tree = new AMT();
+    SplittableRandom random = new SplittableRandom(42);
+    for (int i = 0; i < DATA_SIZE; i++) {
+      tree.insert(random.nextInt(MAX_VALUE) + 1);
+    }
+
+    try (TreeServer server = new TreeServer(tree,
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+      System.out.printf("Connections: %d, Pipeline depth: %d, Batch size: %d, Reads: %d%%%n",
+          connections, pipelineDepth, batchSize, readPercent);
+      Result result = run(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.port()),
+          connections, pipelineDepth, batchSize, readPercent, seconds * 1_000_000_000L);
+      System.out.println(result);
+    }
+  }
+
+  /**
+   * The outcome of a load run.
+   */
+  static final class Result {
+    final long requests;
+    final long values;
+    final long elapsedNanos;
+    final long[] latenciesNanos;
+
+    Result(long requests, long values, long elapsedNanos, long[] latenciesNanos) {
+      this.requests = requests;
+      this.values = values;
+      this.elapsedNanos = elapsedNanos;
+      this.latenciesNanos = latenciesNanos;
+    }
+
+    double requestsPerSecond() {
+      return requests * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @param quantile in [0, 1]
+     * @return the latency below which the given share of recorded requests completed, in nanos
+     */
+    long latencyNanos(double quantile) {
+      if (latenciesNanos.length == 0) {
+        return 0;
+      }
+      int index = (int) Math.min(latenciesNanos.length - 1, quantile * latenciesNanos.length);
+      return latenciesNanos[index];
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Requests: %.0f/s, Values: %.0f/s, Latency p50: %.1f us, p99: %.1f us,"
+              + " p99.9: %.1f us, max: %.1f us",
+          requestsPerSecond(), values * 1e9 / elapsedNanos, latencyNanos(0.5) / 1000.0,
+          latencyNanos(0.99) / 1000.0, latencyNanos(0.999) / 1000.0,
+          latencyNanos(1) / 1000.0);
+    }
+  }
+
+  /**
+   * Runs the load against a server and waits for every request to complete.
+   */
+  static Result run(InetSocketAddress address, int connections, int pipelineDepth, int batchSize,
+      int readPercent, long durationNanos) throws Exception {
+    long[] latencies = new long[MAX_LATENCY_SAMPLES];
+    AtomicInteger recorded = new AtomicInteger();
+    LongAdder requests = new LongAdder();
+    LongAdder values = new LongAdder();
+    TreeClient[] clients = new TreeClient[connections];
+    Thread[] drivers = new Thread[connections];
+    for (int c = 0; c < connections; c++) {
+      clients[c] = new TreeClient(address);
+    }
+
+    long startTime = System.nanoTime();
+    long deadline = startTime + durationNanos;
+    for (int c = 0; c < connections; c++) {
+      TreeClient client = clients[c];
+      SplittableRandom random = new SplittableRandom(c * 31L + 7);
+      drivers[c] = new Thread(() -> {
+        // each permit is one request allowed in flight
+        Semaphore inFlight = new Semaphore(pipelineDepth);
+        try {
+          while (System.nanoTime() < deadline) {
+            inFlight.acquire();
+            int[] batch = new int[batchSize];
+            for (int i = 0; i < batchSize; i++) {
+              batch[i] = random.nextInt(MAX_VALUE) + 1;
+            }
+            long sent = System.nanoTime();
+            boolean read = random.nextInt(100) < readPercent;
+            (read ? client.containsAll(batch) : client.insertAll(batch)).whenComplete(
+                (response, error) -> {
+                  int slot = recorded.getAndIncrement();
+                  if (slot < latencies.length) {
+                    latencies[slot] = System.nanoTime() - sent;
+                  }
+                  requests.increment();
+                  values.add(batchSize);
+                  inFlight.release();
+                });
+          }
+          inFlight.acquire(pipelineDepth);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      drivers[c].start();
+    }
+    for (Thread driver : drivers) {
+      driver.join();
+    }
+    long elapsed = System.nanoTime() - startTime;
+    for (TreeClient client : clients) {
+      client.close();
+    }
+
+    long[] sorted = Arrays.copyOf(latencies, Math.min(recorded.get(), latencies.length));
+    Arrays.sort(sorted);
+    return new Result(requests.sum(), values.sum(), elapsed, sorted);
+  }
+}
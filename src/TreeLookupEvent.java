@@ -0,0 +1,31 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when a lookup visits at least {@link TreeEvents#LOOKUP_DEPTH_THRESHOLD} nodes. Depth
+ * rather than duration is the trigger because single lookups are far below the resolution of a
+ * duration threshold, while a deep path is what makes them slow in aggregate.
+ */
+@Name("ppt.DeepLookup")
+@Label("Deep Tree Lookup")
+@Category("Predicate Partition Tree")
+@Description("A lookup whose search path reached the depth threshold")
+public class TreeLookupEvent extends jdk.jfr.Event {
+
+  @Label("Tree")
+  String tree;
+
+  @Label("Key")
+  String key;
+
+  @Label("Parity")
+  String parity;
+
+  @Label("Depth")
+  int depth;
+
+  @Label("Found")
+  boolean found;
+}
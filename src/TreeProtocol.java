@@ -0,0 +1,101 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary protocol spoken by TreeServer and TreeClient. Every message is a frame:
+ *
+ * <pre>
+ *   int  length     number of bytes after this field
+ *   byte opcode     the operation, or STATUS_ERROR in a response to a failed request
+ *   int  requestId  chosen by the client and echoed in every response frame
+ *   ...  payload
+ * </pre>
+ *
+ * All integers are big-endian. Request payloads:
+ *
+ * <pre>
+ *   INSERT_BATCH    int count, int[count] values
+ *   CONTAINS_BATCH  int count, int[count] values
+ *   RANGE_COUNT     int low, int high
+ *   RANGE_SCAN      int low, int high
+ * </pre>
+ *
+ * Response payloads:
+ *
+ * <pre>
+ *   INSERT_BATCH    int count of values inserted
+ *   CONTAINS_BATCH  int count, then (count + 7) / 8 bytes, bit i of byte i / 8 set if found
+ *   RANGE_COUNT     long count
+ *   RANGE_SCAN      one or more frames of: byte last (1 on the final frame), int count,
+ *                   int[count] values, even partition first, each partition ascending
+ *   STATUS_ERROR    int length, UTF-8 message
+ * </pre>
+ *
+ * Requests are pipelined: a client may send any number of requests without waiting, and the
+ * server answers the requests of one connection in the order they were sent.
+ */
+final class TreeProtocol {
+
+  static final byte INSERT_BATCH = 1;
+  static final byte CONTAINS_BATCH = 2;
+  static final byte RANGE_COUNT = 3;
+  static final byte RANGE_SCAN = 4;
+  static final byte STATUS_ERROR = -1;
+
+  // opcode and request id
+  static final int HEADER_BYTES = 5;
+
+  // frames longer than this are rejected and their connection closed
+  static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+  // the number of values in each RANGE_SCAN response frame but the last
+  static final int SCAN_CHUNK = 4096;
+
+  private TreeProtocol() {
+  }
+
+  /**
+   * Allocates a frame with room for payloadBytes and writes its length and header.
+   */
+  static ByteBuffer frame(byte opcode, int requestId, int payloadBytes) {
+    ByteBuffer buffer = ByteBuffer.allocate(4 + HEADER_BYTES + payloadBytes);
+    buffer.putInt(HEADER_BYTES + payloadBytes);
+    buffer.put(opcode);
+    buffer.putInt(requestId);
+    return buffer;
+  }
+
+  static ByteBuffer intBatch(byte opcode, int requestId, int[] values) {
+    ByteBuffer buffer = frame(opcode, requestId, 4 + 4 * values.length);
+    buffer.putInt(values.length);
+    buffer.asIntBuffer().put(values);
+    buffer.position(buffer.limit());
+    return buffer.flip();
+  }
+
+  static ByteBuffer range(byte opcode, int requestId, int low, int high) {
+    return frame(opcode, requestId, 8).putInt(low).putInt(high).flip();
+  }
+
+  static ByteBuffer error(int requestId, String message) {
+    byte[] bytes = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+    return frame(STATUS_ERROR, requestId, 4 + bytes.length).putInt(bytes.length).put(bytes).flip();
+  }
+
+  static int[] readInts(ByteBuffer buffer) {
+    int count = buffer.getInt();
+    if (count < 0 || count > buffer.remaining() / 4) {
+      throw new IllegalArgumentException("Bad value count " + count);
+    }
+    int[] values = new int[count];
+    buffer.asIntBuffer().get(values);
+    buffer.position(buffer.position() + 4 * count);
+    return values;
+  }
+
+  static String readError(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,348 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.function.IntPredicate;
+
+/**
+ * A non-blocking server that exposes an AMT over TreeProtocol. One thread runs a selector loop
+ * that accepts connections, reads pipelined request frames, applies them to the tree and queues
+ * the responses; since it is the only thread touching the tree, no lock is needed. Requests are
+ * answered in order per connection, and a connection stops being read while it has more than
+ * MAX_PENDING_WRITE_BYTES of responses the client has not taken yet, or while it has a range scan
+ * in progress. A scan produces its frames one at a time as the client takes them, so a large
+ * range is never held in memory; it sees inserts made by other connections while it runs only
+ * beyond the point it has reached.
+ */
+public class TreeServer implements AutoCloseable {
+
+  // stop reading from a connection while this much of its output is still queued
+  static final int MAX_PENDING_WRITE_BYTES = 4 * 1024 * 1024;
+
+  private final AMT tree;
+  private final Selector selector;
+  private final ServerSocketChannel serverChannel;
+  private final Thread loop;
+  private volatile boolean closed;
+
+  /**
+   * The state of one client connection: the frame being read, the responses not yet written and
+   * the range scan whose remaining frames are still to be produced, if any.
+   */
+  private static final class Connection {
+    final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+    ByteBuffer frameBuffer;
+    final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+    long pendingBytes;
+    Scan scan;
+  }
+
+  /**
+   * The position of a range scan between its frames. Each frame restarts the traversal of the
+   * current partition at the last value sent and skips the copies of it that were already sent,
+   * so no iterator is kept across modifications of the tree.
+   */
+  private static final class Scan implements IntPredicate {
+    final int requestId;
+    final int low;
+    final int high;
+    final int[] chunk = new int[TreeProtocol.SCAN_CHUNK];
+    int count;
+    // the partition being scanned, even first
+    boolean isEven = true;
+    // the value the next frame starts at, and how many copies of it were already sent
+    int from;
+    int sent;
+    // copies of from still to be skipped by the current traversal
+    int toSkip;
+
+    Scan(int requestId, int low, int high) {
+      this.requestId = requestId;
+      this.low = low;
+      this.high = high;
+      this.from = low;
+    }
+
+    @Override
+    public boolean test(int value) {
+      if (value == from && toSkip > 0) {
+        toSkip--;
+        return true;
+      }
+      if (count == chunk.length) {
+        return false;
+      }
+      chunk[count++] = value;
+      if (value == from) {
+        sent++;
+      } else {
+        from = value;
+        sent = 1;
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Binds to address and starts serving tree on a new thread. The tree must not be accessed by
+   * any other thread while the server is open.
+   *
+   * @param tree    the tree requests are applied to
+   * @param address the address to bind; port 0 picks a free port
+   * @throws IOException if the address cannot be bound
+   */
+  public TreeServer(AMT tree, InetSocketAddress address) throws IOException {
+    this.tree = tree;
+    this.selector = Selector.open();
+    this.serverChannel = ServerSocketChannel.open();
+    serverChannel.bind(address);
+    serverChannel.configureBlocking(false);
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    this.loop = new Thread(this::run, "tree-server");
+    loop.setDaemon(true);
+    loop.start();
+  }
+
+  /**
+   * @return the port the server is bound to
+   */
+  public int port() {
+    return serverChannel.socket().getLocalPort();
+  }
+
+  /**
+   * Stops the selector loop and closes every connection.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    selector.wakeup();
+    try {
+      loop.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (SelectionKey key : selector.keys()) {
+      key.channel().close();
+    }
+    selector.close();
+  }
+
+  private void run() {
+    try {
+      while (!closed) {
+        selector.select();
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          try {
+            if (key.isAcceptable()) {
+              accept();
+            } else {
+              if (key.isReadable()) {
+                read(key);
+              }
+              if (key.isValid() && key.isWritable()) {
+                write(key);
+              }
+            }
+          } catch (IOException | RuntimeException e) {
+            // a broken or misbehaving client only loses its own connection
+            key.cancel();
+            key.channel().close();
+          }
+        }
+      }
+    } catch (IOException | ClosedSelectorException e) {
+      closed = true;
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel = serverChannel.accept();
+    if (channel == null) {
+      return;
+    }
+    channel.configureBlocking(false);
+    channel.socket().setTcpNoDelay(true);
+    channel.register(selector, SelectionKey.OP_READ, new Connection());
+  }
+
+  /**
+   * Reads whatever the client has sent and handles every complete frame in it.
+   */
+  private void read(SelectionKey key) throws IOException {
+    SocketChannel channel = (SocketChannel) key.channel();
+    Connection connection = (Connection) key.attachment();
+    while (connection.pendingBytes < MAX_PENDING_WRITE_BYTES && connection.scan == null) {
+      if (connection.frameBuffer == null) {
+        if (channel.read(connection.lengthBuffer) < 0) {
+          throw new IOException("Connection closed by client");
+        }
+        if (connection.lengthBuffer.hasRemaining()) {
+          break;
+        }
+        int length = connection.lengthBuffer.flip().getInt();
+        connection.lengthBuffer.clear();
+        if (length < TreeProtocol.HEADER_BYTES || length > TreeProtocol.MAX_FRAME_BYTES) {
+          throw new IOException("Bad frame length " + length);
+        }
+        connection.frameBuffer = ByteBuffer.allocate(length);
+      }
+      if (channel.read(connection.frameBuffer) < 0) {
+        throw new IOException("Connection closed by client");
+      }
+      if (connection.frameBuffer.hasRemaining()) {
+        break;
+      }
+      ByteBuffer frame = connection.frameBuffer.flip();
+      connection.frameBuffer = null;
+      handle(frame, connection);
+    }
+    updateInterest(key, connection);
+  }
+
+  /**
+   * Applies one request frame to the tree and queues its response frames.
+   */
+  private void handle(ByteBuffer frame, Connection connection) {
+    byte opcode = frame.get();
+    int requestId = frame.getInt();
+    try {
+      switch (opcode) {
+        case TreeProtocol.INSERT_BATCH: {
+          int[] values = TreeProtocol.readInts(frame);
+          // a batch is applied whole or not at all
+          for (int value : values) {
+            if (value < 1) {
+              throw new IllegalArgumentException("Value must be greater than or equal to 1");
+            }
+          }
+          tree.insertAll(values);
+          enqueue(connection, TreeProtocol.frame(opcode, requestId, 4).putInt(values.length)
+              .flip());
+          break;
+        }
+        case TreeProtocol.CONTAINS_BATCH: {
+          int[] values = TreeProtocol.readInts(frame);
+          ByteBuffer response = TreeProtocol.frame(opcode, requestId, 4 + (values.length + 7) / 8);
+          response.putInt(values.length);
+          byte bits = 0;
+          for (int i = 0; i < values.length; i++) {
+            if (values[i] >= 1 && tree.contains(values[i])) {
+              bits |= (byte) (1 << (i & 7));
+            }
+            if ((i & 7) == 7 || i == values.length - 1) {
+              response.put(bits);
+              bits = 0;
+            }
+          }
+          enqueue(connection, response.flip());
+          break;
+        }
+        case TreeProtocol.RANGE_COUNT: {
+          PartitionQuery query = PartitionQuery.all().between(frame.getInt(), frame.getInt());
+          enqueue(connection, TreeProtocol.frame(opcode, requestId, 8)
+              .putLong(query.count(tree)).flip());
+          break;
+        }
+        case TreeProtocol.RANGE_SCAN:
+          // the frames are produced by write as the client takes them
+          connection.scan = new Scan(requestId, frame.getInt(), frame.getInt());
+          break;
+        default:
+          enqueue(connection, TreeProtocol.error(requestId, "Unknown opcode " + opcode));
+      }
+    } catch (RuntimeException e) {
+      enqueue(connection, TreeProtocol.error(requestId, e.getMessage()));
+    }
+  }
+
+  /**
+   * Queues the next frame of the connection's range scan, of up to SCAN_CHUNK values, and ends
+   * the scan after its last frame.
+   */
+  private void nextScanFrame(Connection connection) {
+    Scan scan = connection.scan;
+    scan.count = 0;
+    boolean last = false;
+    while (true) {
+      scan.toSkip = scan.sent;
+      if (!tree.forEachInRangeWhile(scan.isEven, scan.from, scan.high, scan)) {
+        break;
+      }
+      if (!scan.isEven) {
+        last = true;
+        break;
+      }
+      scan.isEven = false;
+      scan.from = scan.low;
+      scan.sent = 0;
+    }
+    enqueue(connection, scanFrame(scan.requestId, scan.chunk, scan.count, last));
+    if (last) {
+      connection.scan = null;
+    }
+  }
+
+  private static ByteBuffer scanFrame(int requestId, int[] values, int count, boolean last) {
+    ByteBuffer buffer = TreeProtocol.frame(TreeProtocol.RANGE_SCAN, requestId, 5 + 4 * count);
+    buffer.put((byte) (last ? 1 : 0));
+    buffer.putInt(count);
+    buffer.asIntBuffer().put(values, 0, count);
+    buffer.position(buffer.limit());
+    return buffer.flip();
+  }
+
+  private static void enqueue(Connection connection, ByteBuffer response) {
+    connection.pending.add(response);
+    connection.pendingBytes += response.remaining();
+  }
+
+  /**
+   * Writes queued responses until the socket buffer is full or nothing is left, producing the
+   * next frame of a range scan whenever the queue runs empty.
+   */
+  private void write(SelectionKey key) throws IOException {
+    SocketChannel channel = (SocketChannel) key.channel();
+    Connection connection = (Connection) key.attachment();
+    while (true) {
+      if (connection.pending.isEmpty()) {
+        if (connection.scan == null) {
+          break;
+        }
+        nextScanFrame(connection);
+      }
+      ByteBuffer head = connection.pending.peek();
+      int written = channel.write(head);
+      connection.pendingBytes -= written;
+      if (head.hasRemaining()) {
+        break;
+      }
+      connection.pending.poll();
+    }
+    updateInterest(key, connection);
+  }
+
+  /**
+   * Reads while the connection's output is below its limit and no scan is in progress, and writes
+   * while any output is queued or still to be produced.
+   */
+  private static void updateInterest(SelectionKey key, Connection connection) {
+    int ops = 0;
+    if (connection.pendingBytes < MAX_PENDING_WRITE_BYTES && connection.scan == null) {
+      ops |= SelectionKey.OP_READ;
+    }
+    if (!connection.pending.isEmpty() || connection.scan != null) {
+      ops |= SelectionKey.OP_WRITE;
+    }
+    key.interestOps(ops);
+  }
+}
@@ -0,0 +1,100 @@
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for TreeServer and TreeClient over a loopback connection.
+ */
+public class TreeServerTesters {
+
+  @Test
+  public void testTreeServer() throws Exception {
+    AMT tree = new AMT();
+    InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    try (TreeServer server = new TreeServer(tree, loopback);
+        TreeClient client = new TreeClient(new InetSocketAddress(
+            InetAddress.getLoopbackAddress(), server.port()))) {
+      int[] values = new int[20000];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = i + 1;
+      }
+      // pipelined: every request is sent before any response is awaited
+      CompletableFuture<Integer> inserted = client.insertAll(values);
+      CompletableFuture<boolean[]> found = client.containsAll(5, 20000, 20001);
+      CompletableFuture<Long> counted = client.countInRange(100, 199);
+      List<Integer> scanned = new ArrayList<>();
+      CompletableFuture<Long> scan = client.scan(1, 10000, scanned::add);
+      // the valid 3 must not be inserted when the batch is rejected
+      CompletableFuture<Integer> rejected = client.insertAll(3, 0);
+
+      Assertions.assertEquals(20000, (int) inserted.get());
+      Assertions.assertArrayEquals(new boolean[] {true, true, false}, found.get());
+      Assertions.assertEquals(100L, (long) counted.get());
+      Assertions.assertEquals(10000L, (long) scan.get());
+      Assertions.assertEquals(2, (int) scanned.get(0));
+      Assertions.assertEquals(1, (int) scanned.get(5000));
+      ExecutionException error = Assertions.assertThrows(ExecutionException.class, rejected::get);
+      Assertions.assertTrue(error.getCause() instanceof IllegalArgumentException);
+      Assertions.assertTrue(client.containsAll(1).get()[0]);
+      Assertions.assertEquals(1, tree.count(3));
+
+      // duplicates that straddle a frame boundary are each sent once, even with inserts
+      // from another connection landing between the frames
+      int[] copies = new int[TreeProtocol.SCAN_CHUNK + 100];
+      Arrays.fill(copies, 20002);
+      client.insertAll(copies).get();
+      List<Integer> duplicates = new ArrayList<>();
+      try (TreeClient other = new TreeClient(new InetSocketAddress(
+          InetAddress.getLoopbackAddress(), server.port()))) {
+        CompletableFuture<Long> duplicateScan = client.scan(19999, 20003, duplicates::add);
+        other.insertAll(1, 20001).get();
+        // the scan is complete before its values are counted
+        long duplicateCount = duplicateScan.get();
+        Assertions.assertEquals(duplicateCount, duplicates.size());
+      }
+      Assertions.assertEquals(20000, (int) duplicates.get(0));
+      Assertions.assertEquals(copies.length, Collections.frequency(duplicates, 20002));
+      Assertions.assertTrue(duplicates.size() == copies.length + 2
+          || duplicates.size() == copies.length + 3);
+    }
+    Assertions.assertEquals(20000 + TreeProtocol.SCAN_CHUNK + 100 + 2, tree.size());
+  }
+
+  @Test
+  public void testTreeClientMalformedResponses() throws Exception {
+    // a negative length, and a valid length around an INSERT_BATCH response without its count
+    byte[][] responses = {
+        {-1, -1, -1, -1},
+        {0, 0, 0, 5, TreeProtocol.INSERT_BATCH, 0, 0, 0, 0}};
+    for (byte[] response : responses) {
+      try (ServerSocketChannel fake = ServerSocketChannel.open()) {
+        fake.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try (TreeClient client = new TreeClient((InetSocketAddress) fake.getLocalAddress());
+            SocketChannel accepted = fake.accept()) {
+          CompletableFuture<Integer> inserted = client.insertAll(1);
+          CompletableFuture<Long> counted = client.countInRange(1, 2);
+          accepted.write(ByteBuffer.wrap(response));
+          // every pending request fails instead of hanging once the reader gives up
+          Assertions.assertThrows(ExecutionException.class,
+              () -> inserted.get(10, TimeUnit.SECONDS));
+          Assertions.assertThrows(ExecutionException.class,
+              () -> counted.get(10, TimeUnit.SECONDS));
+          Assertions.assertThrows(ExecutionException.class,
+              () -> client.insertAll(2).get(10, TimeUnit.SECONDS));
+        }
+      }
+    }
+  }
+}
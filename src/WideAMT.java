@@ -0,0 +1,170 @@
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * A partition tree with the same insert/contains contract as AMT whose partitions are wide-node
+ * B+-trees instead of one shared binary tree. Each node packs 16 to 64 keys of one parity into a
+ * primitive array, which keeps the tree only a handful of levels deep at 10^7 entries and turns
+ * most of the cache misses of a binary descent into scans of adjacent keys. Duplicates are stored
+ * once, so contains behaves exactly like AMT while size() counts distinct values.
+ */
+public class WideAMT implements ParityPartitionedTree {
+
+  // the even and odd partitions
+  private final IntBPlusTree evenTree;
+  private final IntBPlusTree oddTree;
+
+  /**
+   * Creates an empty tree with the default node capacity.
+   */
+  public WideAMT() {
+    this(IntBPlusTree.DEFAULT_NODE_CAPACITY);
+  }
+
+  /**
+   * Creates an empty tree.
+   *
+   * @param nodeCapacity the maximum number of keys in a node, between 16 and 64
+   * @throws IllegalArgumentException if nodeCapacity is outside [16, 64]
+   */
+  public WideAMT(int nodeCapacity) {
+    this.evenTree = new IntBPlusTree(nodeCapacity);
+    this.oddTree = new IntBPlusTree(nodeCapacity);
+  }
+
+  public void insert(int value) {
+    if (value < 1) {
+      throw new IllegalArgumentException("Value must be greater than or equal to 1");
+    }
+    partitionOf(value).insert(value);
+  }
+
+  public boolean contains(int value) {
+    return value >= 1 && partitionOf(value).contains(value);
+  }
+
+  /**
+   * Checks a batch of values. The probes of each partition are sorted and looked up in one
+   * descent of its B+-tree, so the nodes on paths they share are visited and searched once
+   * instead of once per probe.
+   *
+   * @param probes  the values to check for, in any order
+   * @param results receives, for each probe, whether the tree contains it
+   * @throws IllegalArgumentException if results is shorter than probes
+   */
+  public void containsAll(int[] probes, boolean[] results) {
+    if (results.length < probes.length) {
+      throw new IllegalArgumentException("The results array is shorter than the probes array");
+    }
+    // each probe is packed above its index, so sorting orders by value and keeps the index
+    long[] evens = new long[probes.length];
+    long[] odds = new long[probes.length];
+    int evenCount = 0;
+    int oddCount = 0;
+    for (int i = 0; i < probes.length; i++) {
+      results[i] = false;
+      if (probes[i] >= 1) {
+        long packed = (long) probes[i] << 32 | i;
+        if (probes[i] % 2 == 0) {
+          evens[evenCount++] = packed;
+        } else {
+          odds[oddCount++] = packed;
+        }
+      }
+    }
+    containsAllSorted(evenTree, evens, evenCount, results);
+    containsAllSorted(oddTree, odds, oddCount, results);
+  }
+
+  /**
+   * Private helper method to look up the first count packed probes in partition.
+   */
+  private static void containsAllSorted(IntBPlusTree partition, long[] packed, int count,
+      boolean[] results) {
+    Arrays.sort(packed, 0, count);
+    int[] sorted = new int[count];
+    for (int i = 0; i < count; i++) {
+      sorted[i] = (int) (packed[i] >> 32);
+    }
+    boolean[] found = new boolean[count];
+    partition.containsAllSorted(sorted, 0, count, found);
+    for (int i = 0; i < count; i++) {
+      results[(int) packed[i]] = found[i];
+    }
+  }
+
+  /**
+   * Removes value from the tree.
+   *
+   * @param value the value to remove
+   * @return true if the value was removed, false if it was not present
+   */
+  public boolean remove(int value) {
+    return value >= 1 && partitionOf(value).remove(value);
+  }
+
+  /**
+   * @return the number of distinct values in the tree
+   */
+  public int size() {
+    return evenTree.size() + oddTree.size();
+  }
+
+  /**
+   * @return the number of node levels of the deeper partition
+   */
+  public int height() {
+    return Math.max(evenTree.height(), oddTree.height());
+  }
+
+  /**
+   * Passes every value of one partition in [low, high] to action in ascending order.
+   *
+   * @param isEven true to scan the even partition, false for the odd partition
+   * @param low    the smallest value to visit
+   * @param high   the largest value to visit
+   * @param action receives each value in the range
+   */
+  @Override
+  public void forEachInRange(boolean isEven, int low, int high, IntConsumer action) {
+    (isEven ? evenTree : oddTree).forEachInRange(low, high, action);
+  }
+
+  /**
+   * Passes every value in [low, high] to action in ascending order, merging the leaf chains of
+   * both partitions.
+   *
+   * @param low    the smallest value to visit
+   * @param high   the largest value to visit
+   * @param action receives each value in the range
+   */
+  public void forEachInRange(int low, int high, IntConsumer action) {
+    PrimitiveIterator.OfInt evens = evenTree.iterator(low);
+    PrimitiveIterator.OfInt odds = oddTree.iterator(low);
+    boolean hasEven = evens.hasNext();
+    boolean hasOdd = odds.hasNext();
+    int even = hasEven ? evens.nextInt() : 0;
+    int odd = hasOdd ? odds.nextInt() : 0;
+    while (hasEven || hasOdd) {
+      // the partitions never share a value, so ties are impossible
+      boolean takeEven = hasEven && (!hasOdd || even < odd);
+      int value = takeEven ? even : odd;
+      if (value > high) {
+        return;
+      }
+      action.accept(value);
+      if (takeEven) {
+        hasEven = evens.hasNext();
+        even = hasEven ? evens.nextInt() : 0;
+      } else {
+        hasOdd = odds.hasNext();
+        odd = hasOdd ? odds.nextInt() : 0;
+      }
+    }
+  }
+
+  private IntBPlusTree partitionOf(int value) {
+    return (value % 2 == 0) ? evenTree : oddTree;
+  }
+}